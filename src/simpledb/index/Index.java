@@ -1,5 +1,6 @@
 package simpledb.index;
 
+import java.util.Map;
 import simpledb.query.Constant;
 import simpledb.record.RID;
 
@@ -39,6 +40,16 @@ public interface Index {
     */
    public void    insert(Constant dataval, RID datarid);
    
+   /**
+    * Inserts an index record having the specified
+    * dataval and dataRID values, together with the
+    * values of the fields included in the index.
+    * @param dataval the dataval in the new index record.
+    * @param datarid the dataRID in the new index record.
+    * @param incvals the included values, keyed by index record field
+    */
+   public void    insert(Constant dataval, RID datarid, Map<String,Constant> incvals);
+   
    /**
     * Deletes the index record having the specified
     * dataval and dataRID values.
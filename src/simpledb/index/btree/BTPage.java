@@ -1,6 +1,7 @@
 package simpledb.index.btree;
 
 import static java.sql.Types.INTEGER;
+import java.util.*;
 import simpledb.file.BlockId;
 import simpledb.tx.Transaction;
 import simpledb.record.*;
@@ -11,12 +12,18 @@ import simpledb.query.Constant;
  * in particular, their records are stored in sorted order, 
  * and pages split when full.
  * A BTNode object contains this common functionality.
+ * The page header holds the flag, the number of records,
+ * and the block number of the next leaf page (-1 if none).
+ * The dataval of a multi-column index is a composite constant,
+ * whose columns are stored in the fields "dataval", "key1", "key2", ...
  * @author Edward Sciore
  */
 public class BTPage {
+   private static final int HEADER_SIZE = 3 * Integer.BYTES;
    private Transaction tx;
    private BlockId currentblk;
    private Layout layout;
+   private List<String> keyflds;
    
    /**
     * Open a node for the specified B-tree block.
@@ -28,9 +35,24 @@ public class BTPage {
       this.tx = tx;
       this.currentblk = currentblk;
       this.layout = layout;
+      keyflds = keyFields(layout.schema());
       tx.pin(currentblk);
    }
    
+   /**
+    * Return the names of the fields holding the
+    * columns of the dataval in the specified schema.
+    * @param sch the schema of a B-tree file
+    * @return the names of the key fields, in column order
+    */
+   static List<String> keyFields(Schema sch) {
+      List<String> flds = new ArrayList<>();
+      flds.add("dataval");
+      for (int i=1; sch.hasField("key" + i); i++)
+         flds.add("key" + i);
+      return flds;
+   }
+   
    /**
     * Calculate the position where the first record having
     * the specified search key should be, then returns
@@ -62,6 +84,18 @@ public class BTPage {
       return slotpos(getNumRecs()+1) >= tx.blockSize();
    }
    
+   /**
+    * Return the largest number of records that the page
+    * can hold without being considered full.
+    * @return the record capacity of the page
+    */
+   public int capacity() {
+      int n = (tx.blockSize() - HEADER_SIZE) / layout.slotSize();
+      while (n > 0 && slotpos(n+1) >= tx.blockSize())
+         n--;
+      return n;
+   }
+   
    /**
     * Split the page at the specified position.
     * A new page is created, and the records of the page
@@ -85,7 +119,12 @@ public class BTPage {
     * @return the dataval of the record at that slot
     */
    public Constant getDataVal(int slot) {
-      return getVal(slot, "dataval");
+      if (keyflds.size() == 1)
+         return getVal(slot, "dataval");
+      List<Constant> vals = new ArrayList<>();
+      for (String fldname : keyflds)
+         vals.add(getVal(slot, fldname));
+      return new Constant(vals);
    }
    
    /**
@@ -114,14 +153,16 @@ public class BTPage {
       BlockId blk = tx.append(currentblk.fileName());
       tx.pin(blk);
       format(blk, flag);
+      tx.unpin(blk);
       return blk;
    }
  
    public void format(BlockId blk, int flag) {
       tx.setInt(blk, 0, flag, false);
       tx.setInt(blk, Integer.BYTES, 0, false);  // #records = 0
+      tx.setInt(blk, 2*Integer.BYTES, -1, false);  // no sibling
       int recsize = layout.slotSize();
-      for (int pos=2*Integer.BYTES; pos+recsize<=tx.blockSize(); pos += recsize)
+      for (int pos=HEADER_SIZE; pos+recsize<=tx.blockSize(); pos += recsize)
          makeDefaultRecord(blk, pos);
    }
    
@@ -154,12 +195,41 @@ public class BTPage {
     */
    public void insertDir(int slot, Constant val, int blknum) {
       insert(slot);
-      setVal(slot, "dataval", val);
+      setDataVal(slot, val);
       setInt(slot, "block", blknum);
    }
    
    // Methods called only by BTreeLeaf
    
+   /**
+    * Return the block number of the next leaf page,
+    * or -1 if this is the last leaf.
+    * @return the block number of the next leaf page
+    */
+   public int getSibling() {
+      return tx.getInt(currentblk, 2*Integer.BYTES);
+   }
+   
+   /**
+    * Set the block number of the next leaf page.
+    * @param blknum the block number of the next leaf page
+    */
+   public void setSibling(int blknum) {
+      tx.setInt(currentblk, 2*Integer.BYTES, blknum, true);
+   }
+   
+   /**
+    * Link the specified newly-split leaf page into the
+    * chain of leaves, immediately after this page.
+    * @param newblk a reference to the new leaf block
+    */
+   public void linkSibling(BlockId newblk) {
+      BTPage newpage = new BTPage(tx, newblk, layout);
+      newpage.setSibling(getSibling());
+      newpage.close();
+      setSibling(newblk.number());
+   }
+   
    /**
     * Return the dataRID value stored in the specified leaf index record.
     * @param slot the slot of the desired index record
@@ -177,11 +247,25 @@ public class BTPage {
     */
    public void insertLeaf(int slot, Constant val, RID rid) {
       insert(slot);
-      setVal(slot, "dataval", val);
+      setDataVal(slot, val);
       setInt(slot, "block", rid.blockNumber());
       setInt(slot, "id", rid.slot());
    }
    
+   /**
+    * Insert a leaf index record at the specified slot,
+    * holding the specified included values.
+    * @param slot the slot of the desired index record
+    * @param val the new dataval
+    * @param rid the new dataRID
+    * @param incvals the included values, keyed by field name
+    */
+   public void insertLeaf(int slot, Constant val, RID rid, Map<String,Constant> incvals) {
+      insertLeaf(slot, val, rid);
+      for (String fldname : incvals.keySet())
+         setVal(slot, fldname, incvals.get(fldname));
+   }
+   
    /**
     * Delete the index record at the specified slot.
     * @param slot the slot of the deleted index record
@@ -213,7 +297,14 @@ public class BTPage {
       return tx.getString(currentblk, pos);
    }
    
-   private Constant getVal(int slot, String fldname) {
+   /**
+    * Return the value of the specified field of the
+    * index record at the specified slot.
+    * @param slot the slot of an index record
+    * @param fldname the name of the field
+    * @return the value of that field
+    */
+   public Constant getVal(int slot, String fldname) {
       int type = layout.schema().type(fldname);
       if (type == INTEGER)
          return new Constant(getInt(slot, fldname));
@@ -239,6 +330,14 @@ public class BTPage {
          setString(slot, fldname, val.asString());
    }
    
+   private void setDataVal(int slot, Constant val) {
+      if (keyflds.size() == 1)
+         setVal(slot, "dataval", val);
+      else
+         for (int i=0; i<keyflds.size(); i++)
+            setVal(slot, keyflds.get(i), val.asList().get(i));
+   }
+   
    private void setNumRecs(int n) {
       tx.setInt(currentblk, Integer.BYTES, n, true);
    }
@@ -274,6 +373,6 @@ public class BTPage {
    
    private int slotpos(int slot) {
       int slotsize = layout.slotSize();
-      return Integer.BYTES + Integer.BYTES + (slot * slotsize);
+      return HEADER_SIZE + (slot * slotsize);
    }
 }
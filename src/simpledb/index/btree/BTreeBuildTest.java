@@ -0,0 +1,83 @@
+package simpledb.index.btree;
+
+import java.io.File;
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.plan.Planner;
+import simpledb.index.Index;
+import simpledb.query.Constant;
+
+/**
+ * Build a B-tree index over a loaded table, with one key
+ * repeated often enough to need overflow blocks, and compare it
+ * with the same index built by inserting one record at a time.
+ * The loaded index must have fewer leaves, find the records of
+ * every key, and stay correct as more records are inserted.
+ */
+public class BTreeBuildTest {
+   public static void main(String[] args) {
+      deleteDir(new File("btreebuildtest"));
+      SimpleDB db = new SimpleDB("btreebuildtest");
+      Transaction tx = db.newTx();
+      Planner planner = db.planner();
+      planner.executeUpdate("create table T(A int, B varchar(9))", tx);
+      planner.executeUpdate("create table U(A int, B varchar(9))", tx);
+      planner.executeUpdate("create index UA on U(A) using btree", tx);
+      Map<Integer,Integer> counts = new HashMap<>();
+      Random r = new Random(26);
+      for (int i=0; i<2000; i++) {
+         int a = (i % 10 == 0) ? -5 : r.nextInt(300);
+         insert(planner, a, i, tx);
+         counts.merge(a, 1, Integer::sum);
+      }
+      planner.executeUpdate("create index TA on T(A) using btree", tx);
+      tx.commit();
+
+      tx = db.newTx();
+      int loaded = tx.size("taleaf"), inserted = tx.size("ualeaf");
+      System.out.println("leaf blocks when loaded " + loaded + ", when inserted " + inserted);
+      boolean ok = loaded < inserted && check(db, tx, counts);
+      for (int i=0; i<500; i++) {
+         int a = r.nextInt(400) - 50;
+         insert(planner, a, 2000 + i, tx);
+         counts.merge(a, 1, Integer::sum);
+      }
+      ok = ok && check(db, tx, counts);
+      ok = ok && tx.availableBuffs() == SimpleDB.BUFFER_SIZE;
+      tx.commit();
+      System.out.println(ok ? "btree build ok" : "btree build FAILED");
+   }
+
+   private static void insert(Planner planner, int a, int i, Transaction tx) {
+      planner.executeUpdate("insert into T(A,B) values(" + a + ", 'b" + i + "')", tx);
+      planner.executeUpdate("insert into U(A,B) values(" + a + ", 'b" + i + "')", tx);
+   }
+
+   private static boolean check(SimpleDB db, Transaction tx, Map<Integer,Integer> counts) {
+      boolean ok = true;
+      for (String tblname : new String[] {"t", "u"}) {
+         Index idx = db.mdMgr().getIndexInfo(tblname, tx).get("a").open();
+         for (int a=-60; a<=360; a++) {
+            int n = 0;
+            idx.beforeFirst(new Constant(a));
+            while (idx.next())
+               n++;
+            if (n != counts.getOrDefault(a, 0)) {
+               System.out.println(tblname + ": " + n + " records for " + a
+                     + " instead of " + counts.getOrDefault(a, 0));
+               ok = false;
+            }
+         }
+         idx.close();
+      }
+      return ok;
+   }
+
+   private static void deleteDir(File f) {
+      if (f.isDirectory())
+         for (File child : f.listFiles())
+            deleteDir(child);
+      f.delete();
+   }
+}
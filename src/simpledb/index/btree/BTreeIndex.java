@@ -1,17 +1,21 @@
 package simpledb.index.btree;
 
 import static java.sql.Types.INTEGER;
+import java.util.*;
 import simpledb.file.BlockId;
 import simpledb.tx.Transaction;
 import simpledb.record.*;
 import simpledb.index.Index;
 import simpledb.query.Constant;
+import simpledb.query.Range;
+import simpledb.query.Scan;
 
 /**
  * A B-tree implementation of the Index interface.
  * @author Edward Sciore
  */
 public class BTreeIndex implements Index {
+   public static final double FILL_FACTOR = 0.9;
    private Transaction tx;
    private Layout dirLayout, leafLayout;
    private String leaftbl;
@@ -36,12 +40,14 @@ public class BTreeIndex implements Index {
          BlockId blk = tx.append(leaftbl);
          BTPage node = new BTPage(tx, blk, leafLayout);
          node.format(blk, -1);
+         node.close();
       }
 
       // deal with the directory
       Schema dirsch = new Schema();
       dirsch.add("block",   leafLayout.schema());
-      dirsch.add("dataval", leafLayout.schema());
+      for (String fldname : BTPage.keyFields(leafLayout.schema()))
+         dirsch.add(fldname, leafLayout.schema());
       String dirtbl = idxname + "dir";
       dirLayout = new Layout(dirsch);
       rootblk = new BlockId(dirtbl, 0);
@@ -51,11 +57,7 @@ public class BTreeIndex implements Index {
          BTPage node = new BTPage(tx, rootblk, dirLayout);
          node.format(rootblk, 0);
          // insert initial directory entry
-         int fldtype = dirsch.type("dataval");
-         Constant minval = (fldtype == INTEGER) ?
-               new Constant(Integer.MIN_VALUE) :
-               new Constant("");
-         node.insertDir(0, minval, 0);
+         node.insertDir(0, minVal(), 0);
          node.close();
       }
    }
@@ -79,9 +81,30 @@ public class BTreeIndex implements Index {
       leaf = new BTreeLeaf(tx, leafblk, leafLayout, searchkey);
    }
 
+   /**
+    * Traverse the directory to find the leaf block containing
+    * the lower bound of the specified range
+    * (or the leftmost leaf, if the range has no lower bound),
+    * and position the leaf page before that key.
+    * Subsequent calls to next return each leaf record whose
+    * dataval lies in the range, in sorted order,
+    * following the chain of sibling leaves.
+    * @param range the range of search keys
+    */
+   public void beforeFirst(Range range) {
+      close();
+      Constant startkey = (range.low() != null) ? range.low() : minVal();
+      BTreeDir root = new BTreeDir(tx, rootblk, dirLayout);
+      int blknum = root.search(startkey);
+      root.close();
+      BlockId leafblk = new BlockId(leaftbl, blknum);
+      leaf = new BTreeLeaf(tx, leafblk, leafLayout, startkey, range);
+   }
+
    /**
     * Move to the next leaf record having the
-    * previously-specified search key.
+    * previously-specified search key
+    * (or lying in the previously-specified range).
     * Returns false if there are no more such leaf records.
     * @see simpledb.index.Index#next()
     */
@@ -97,6 +120,16 @@ public class BTreeIndex implements Index {
       return leaf.getDataRid();
    }
 
+   /**
+    * Return the value of the specified field
+    * of the current leaf record.
+    * @param fldname the name of the leaf record field
+    * @return the value of that field
+    */
+   public Constant getVal(String fldname) {
+      return leaf.getVal(fldname);
+   }
+
    /**
     * Insert the specified record into the index.
     * The method first traverses the directory to find
@@ -109,8 +142,17 @@ public class BTreeIndex implements Index {
     * @see simpledb.index.Index#insert(simpledb.query.Constant, simpledb.record.RID)
     */
    public void insert(Constant dataval, RID datarid) {
+      insert(dataval, datarid, new HashMap<>());
+   }
+
+   /**
+    * Insert the specified record, holding the specified
+    * included values, into the index.
+    * @see simpledb.index.Index#insert(simpledb.query.Constant, simpledb.record.RID, java.util.Map)
+    */
+   public void insert(Constant dataval, RID datarid, Map<String,Constant> incvals) {
       beforeFirst(dataval);
-      DirEntry e = leaf.insert(datarid);
+      DirEntry e = leaf.insert(datarid, incvals);
       leaf.close();
       if (e == null)
          return;
@@ -134,6 +176,48 @@ public class BTreeIndex implements Index {
       leaf.close();
    }
 
+   /**
+    * Build the index bottom-up from the specified scan,
+    * whose records must be sorted by their dataval.
+    * The scan must have the fields "dataval", "block" and "id",
+    * as well as any other fields of the leaf records;
+    * the records of a multi-column index must be sorted
+    * by each of the key fields in turn.
+    * Leaf pages are filled left to right up to the specified
+    * fill factor; all records having the same dataval are kept
+    * in the same leaf, using overflow blocks if necessary.
+    * The directory is then built one level at a time from the
+    * first dataval of each page in the level below,
+    * until the entries fit into the root.
+    * If the index is not empty, the records are simply
+    * inserted one at a time.
+    * @param src the sorted index records
+    * @param fillfactor the fraction of each page to fill
+    */
+   public void bulkLoad(Scan src, double fillfactor) {
+      close();
+      leaf = null;
+      if (!isEmpty()) {
+         while (src.next()) {
+            RID rid = new RID(src.getInt("block"), src.getInt("id"));
+            insert(dataVal(src), rid, includedValues(src));
+         }
+         return;
+      }
+      List<DirEntry> entries = loadLeaves(src, fillfactor);
+      BTPage root = new BTPage(tx, rootblk, dirLayout);
+      int level = 0;
+      while (entries.size() > root.capacity()) {
+         entries = loadDirLevel(root, entries, level, fillfactor);
+         level++;
+      }
+      root.delete(0);
+      for (int i=0; i<entries.size(); i++)
+         root.insertDir(i, entries.get(i).dataVal(), entries.get(i).blockNumber());
+      root.setFlag(level);
+      root.close();
+   }
+
    /**
     * Close the index by closing its open leaf page,
     * if necessary.
@@ -144,6 +228,125 @@ public class BTreeIndex implements Index {
          leaf.close();
    }
 
+   private boolean isEmpty() {
+      if (tx.size(leaftbl) > 1 || tx.size(rootblk.fileName()) > 1)
+         return false;
+      BTPage page = new BTPage(tx, new BlockId(leaftbl, 0), leafLayout);
+      int n = page.getNumRecs();
+      page.close();
+      return n == 0;
+   }
+
+   private List<DirEntry> loadLeaves(Scan src, double fillfactor) {
+      List<DirEntry> entries = new ArrayList<>();
+      BlockId blk = new BlockId(leaftbl, 0);
+      BTPage page = new BTPage(tx, blk, leafLayout);
+      int capacity = page.capacity();
+      int target = Math.max(1, (int) (capacity * fillfactor));
+      entries.add(new DirEntry(minVal(), blk.number()));
+      Constant prevkey = null;
+      int runstart = 0;
+      boolean overflowing = false;
+      while (src.next()) {
+         Constant key = dataVal(src);
+         RID rid = new RID(src.getInt("block"), src.getInt("id"));
+         boolean newkey = (prevkey == null) || !key.equals(prevkey);
+         if (newkey && page.getNumRecs() > 0
+               && (overflowing || page.getNumRecs() >= target)) {
+            // start a new leaf for this key
+            BlockId newblk = page.appendNew(-1);
+            page.close();
+            BTPage prevleaf = new BTPage(tx, blk, leafLayout);
+            prevleaf.linkSibling(newblk);
+            prevleaf.close();
+            blk = newblk;
+            page = new BTPage(tx, blk, leafLayout);
+            entries.add(new DirEntry(key, blk.number()));
+            overflowing = false;
+         }
+         else if (!newkey && page.getNumRecs() >= capacity) {
+            if (runstart > 0) {
+               // move the current key's records to a new leaf
+               blk = page.split(runstart, -1);
+               page.linkSibling(blk);
+               page.close();
+               page = new BTPage(tx, blk, leafLayout);
+               entries.add(new DirEntry(key, blk.number()));
+            }
+            else {
+               // the leaf holds only this key, so chain an overflow block
+               BlockId overflowblk = page.appendNew(-1);
+               page.setFlag(overflowblk.number());
+               page.close();
+               page = new BTPage(tx, overflowblk, leafLayout);
+               overflowing = true;
+            }
+            runstart = 0;
+         }
+         if (newkey)
+            runstart = page.getNumRecs();
+         page.insertLeaf(page.getNumRecs(), key, rid, includedValues(src));
+         prevkey = key;
+      }
+      page.close();
+      return entries;
+   }
+
+   private List<DirEntry> loadDirLevel(BTPage root, List<DirEntry> children,
+                                       int level, double fillfactor) {
+      List<DirEntry> entries = new ArrayList<>();
+      int target = Math.max(2, (int) (root.capacity() * fillfactor));
+      BTPage page = null;
+      for (DirEntry e : children) {
+         if (page == null || page.getNumRecs() >= target) {
+            if (page != null)
+               page.close();
+            BlockId blk = root.appendNew(level);
+            page = new BTPage(tx, blk, dirLayout);
+            entries.add(new DirEntry(e.dataVal(), blk.number()));
+         }
+         page.insertDir(page.getNumRecs(), e.dataVal(), e.blockNumber());
+      }
+      page.close();
+      return entries;
+   }
+
+   private Constant dataVal(Scan src) {
+      List<String> keyflds = BTPage.keyFields(leafLayout.schema());
+      if (keyflds.size() == 1)
+         return src.getVal("dataval");
+      List<Constant> vals = new ArrayList<>();
+      for (String fldname : keyflds)
+         vals.add(src.getVal(fldname));
+      return new Constant(vals);
+   }
+
+   private Map<String,Constant> includedValues(Scan src) {
+      Map<String,Constant> incvals = new HashMap<>();
+      List<String> keyflds = BTPage.keyFields(leafLayout.schema());
+      for (String fldname : leafLayout.schema().fields())
+         if (!keyflds.contains(fldname) && !fldname.equals("block") && !fldname.equals("id"))
+            incvals.put(fldname, src.getVal(fldname));
+      return incvals;
+   }
+
+   private Constant minVal() {
+      List<String> keyflds = BTPage.keyFields(dirLayout.schema());
+      if (keyflds.size() == 1)
+         return minVal("dataval");
+      List<Constant> vals = new ArrayList<>();
+      for (String fldname : keyflds)
+         vals.add(minVal(fldname));
+      return new Constant(vals);
+   }
+
+   private Constant minVal(String fldname) {
+      int fldtype = dirLayout.schema().type(fldname);
+      return (fldtype == INTEGER) ?
+            new Constant(Integer.MIN_VALUE) :
+            new Constant("");
+   }
+
    /**
     * Estimate the number of block accesses
     * required to find all index records having
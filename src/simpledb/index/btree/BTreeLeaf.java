@@ -1,9 +1,11 @@
 package simpledb.index.btree;
 
+import java.util.Map;
 import simpledb.file.BlockId;
 import simpledb.tx.Transaction;
 import simpledb.record.*;
 import simpledb.query.Constant;
+import simpledb.query.Range;
 
 /**
  * An object that holds the contents of a B-tree leaf block.
@@ -16,6 +18,8 @@ public class BTreeLeaf {
    private BTPage contents;
    private int currentslot;
    private String filename;
+   private Range range = null;
+   private int nextleaf;
 
    /**
     * Opens a buffer to hold the specified leaf block.
@@ -35,6 +39,26 @@ public class BTreeLeaf {
       filename = blk.fileName();            
    }
 
+   /**
+    * Opens a buffer to hold the specified leaf block,
+    * for scanning the records whose dataval lies in the
+    * specified range.
+    * The buffer is positioned immediately before the first record
+    * having the specified start key (if any).
+    * Subsequent calls to next will follow the overflow blocks
+    * and the sibling leaves until the end of the range.
+    * @param blk a reference to the disk block
+    * @param layout the metadata of the B-tree leaf file
+    * @param startkey the key at which the scan starts
+    * @param range the range of datavals
+    * @param tx the calling transaction
+    */
+   public BTreeLeaf(Transaction tx, BlockId blk, Layout layout, Constant startkey, Range range) {
+      this(tx, blk, layout, startkey);
+      this.range = range;
+      nextleaf = contents.getSibling();
+   }
+
    /**
     * Closes the leaf page.
     */
@@ -49,6 +73,8 @@ public class BTreeLeaf {
     * @return false if there are no more leaf records for the search key
     */
    public boolean next() {
+      if (range != null)
+         return nextInRange();
       currentslot++;
       if (currentslot >= contents.getNumRecs()) 
          return tryOverflow();
@@ -66,6 +92,15 @@ public class BTreeLeaf {
       return contents.getDataRid(currentslot);
    }
 
+   /**
+    * Returns the value of the specified field of the current leaf record.
+    * @param fldname the name of the field
+    * @return the value of that field in the current record
+    */
+   public Constant getVal(String fldname) {
+      return contents.getVal(currentslot, fldname);
+   }
+
    /**
     * Deletes the leaf record having the specified dataRID
     * @param datarid the dataRId whose record is to be deleted
@@ -89,20 +124,22 @@ public class BTreeLeaf {
     * then the block does not split; instead, all but one of the
     * records are placed into an overflow block.
     * @param datarid the dataRID value of the new record
+    * @param incvals the included values of the new record
     * @return the directory entry of the newly-split page, if one exists.
     */
-   public DirEntry insert(RID datarid) {
+   public DirEntry insert(RID datarid, Map<String,Constant> incvals) {
       if (contents.getFlag() >= 0 && contents.getDataVal(0).compareTo(searchkey) > 0) {
          Constant firstval = contents.getDataVal(0);
          BlockId newblk = contents.split(0, contents.getFlag());
+         contents.linkSibling(newblk);
          currentslot = 0;
          contents.setFlag(-1);
-         contents.insertLeaf(currentslot, searchkey, datarid); 
+         contents.insertLeaf(currentslot, searchkey, datarid, incvals); 
          return new DirEntry(firstval, newblk.number());  
       }
 
       currentslot++;
-      contents.insertLeaf(currentslot, searchkey, datarid);
+      contents.insertLeaf(currentslot, searchkey, datarid, incvals);
       if (!contents.isFull())
          return null;
       // else page is full, so split it
@@ -129,10 +166,44 @@ public class BTreeLeaf {
                splitpos--;
          }
          BlockId newblk = contents.split(splitpos, -1);
+         contents.linkSibling(newblk);
          return new DirEntry(splitkey, newblk.number());
       }
    }
 
+   private boolean nextInRange() {
+      while (true) {
+         currentslot++;
+         if (currentslot >= contents.getNumRecs()) {
+            if (!moveToNextPage())
+               return false;
+            continue;
+         }
+         Constant val = contents.getDataVal(currentslot);
+         if (!range.isBelowHigh(val))
+            return false;
+         if (range.isAboveLow(val))
+            return true;
+      }
+   }
+
+   /**
+    * Moves to the next overflow block of the current leaf,
+    * or else to the next leaf in the sibling chain.
+    */
+   private boolean moveToNextPage() {
+      int flag = contents.getFlag();
+      int nextblk = (flag >= 0) ? flag : nextleaf;
+      if (nextblk < 0)
+         return false;
+      contents.close();
+      contents = new BTPage(tx, new BlockId(filename, nextblk), layout);
+      if (flag < 0)
+         nextleaf = contents.getSibling();
+      currentslot = -1;
+      return true;
+   }
+
    private boolean tryOverflow() {
       Constant firstkey = contents.getDataVal(0);
       int flag = contents.getFlag();
@@ -1,94 +1,159 @@
 package simpledb.index.hash;
 
+import java.util.*;
+import simpledb.file.BlockId;
 import simpledb.tx.Transaction;
 import simpledb.record.*;
 import simpledb.index.Index;
 import simpledb.query.*;
 
 /**
- * A static hash implementation of the Index interface.
- * A fixed number of buckets is allocated (currently, 100),
- * and each bucket is implemented as a file of index records.
+ * An extendible hash implementation of the Index interface.
+ * The directory file holds the global depth followed by
+ * 2^depth entries, each the block number of a bucket;
+ * the low-order bits of a search key's hash value select
+ * the directory entry.
+ * Each bucket is a block of the bucket file, whose flag
+ * holds its local depth and whose sibling pointer links
+ * any overflow blocks.
+ * A full bucket is split in two (doubling the directory if its
+ * local depth equals the global depth), so a lookup reads one
+ * directory block and one bucket however large the index grows.
+ * Only records whose hash values cannot be told apart
+ * are placed in overflow blocks.
  * @author Edward Sciore
  */
 public class HashIndex implements Index {
-	public static int NUM_BUCKETS = 100;
-   private Transaction tx;
-	private String idxname;
+	private static final int MAX_DEPTH = 16;
+	private Transaction tx;
+	private String dirfile, bucketfile;
 	private Layout layout;
 	private Constant searchkey = null;
-	private TableScan ts = null;
+	private HashPage page = null;
+	private int currentslot;
 
 	/**
 	 * Opens a hash index for the specified index.
+	 * The directory and bucket files are created
+	 * if they did not exist, with a single empty bucket.
 	 * @param idxname the name of the index
 	 * @param sch the schema of the index records
 	 * @param tx the calling transaction
 	 */
 	public HashIndex(Transaction tx, String idxname, Layout layout) {
-      this.tx = tx;
-		this.idxname = idxname;
+		this.tx = tx;
 		this.layout = layout;
+		dirfile = idxname + "hashdir";
+		bucketfile = idxname + "bucket";
+		if (tx.size(dirfile) == 0) {
+			BlockId blk = tx.append(bucketfile);
+			HashPage bucket = new HashPage(tx, blk, layout);
+			bucket.format(0);
+			bucket.close();
+			tx.append(dirfile);
+			setGlobalDepth(0);
+			setDirEntry(0, blk.number());
+		}
 	}
 
 	/**
 	 * Positions the index before the first index record
 	 * having the specified search key.
-	 * The method hashes the search key to determine the bucket,
-	 * and then opens a table scan on the file
-	 * corresponding to the bucket.
-	 * The table scan for the previous bucket (if any) is closed.
+	 * The method hashes the search key to find the directory
+	 * entry, and then opens the bucket that it refers to.
+	 * The page of the previous bucket (if any) is closed.
 	 * @see simpledb.index.Index#beforeFirst(simpledb.query.Constant)
 	 */
 	public void beforeFirst(Constant searchkey) {
 		close();
 		this.searchkey = searchkey;
-		int bucket = searchkey.hashCode() % NUM_BUCKETS;
-		String tblname = idxname + bucket;
-		ts = new TableScan(tx, tblname, layout);
+		int blknum = dirEntry(hash(searchkey) & mask(globalDepth()));
+		page = new HashPage(tx, new BlockId(bucketfile, blknum), layout);
+		currentslot = -1;
 	}
 
 	/**
 	 * Moves to the next record having the search key.
-	 * The method loops through the table scan for the bucket,
-	 * looking for a matching record, and returning false
-	 * if there are no more such records.
+	 * The method loops through the records of the bucket
+	 * and its overflow blocks, looking for a matching record,
+	 * and returning false if there are no more such records.
 	 * @see simpledb.index.Index#next()
 	 */
 	public boolean next() {
-		while (ts.next())
-			if (ts.getVal("dataval").equals(searchkey))
+		while (true) {
+			currentslot++;
+			if (currentslot >= page.getNumRecs()) {
+				int overflow = page.getOverflow();
+				if (overflow < 0)
+					return false;
+				page.close();
+				page = new HashPage(tx, new BlockId(bucketfile, overflow), layout);
+				currentslot = -1;
+			}
+			else if (page.getDataVal(currentslot).equals(searchkey))
 				return true;
-		return false;
+		}
 	}
 
 	/**
 	 * Retrieves the dataRID from the current record
-	 * in the table scan for the bucket.
+	 * of the bucket.
 	 * @see simpledb.index.Index#getDataRid()
 	 */
 	public RID getDataRid() {
-		int blknum = ts.getInt("block");
-		int id = ts.getInt("id");
-		return new RID(blknum, id);
+		return page.getDataRid(currentslot);
 	}
 
 	/**
-	 * Inserts a new record into the table scan for the bucket.
+	 * Inserts a new record into the bucket for the search key.
 	 * @see simpledb.index.Index#insert(simpledb.query.Constant, simpledb.record.RID)
 	 */
 	public void insert(Constant val, RID rid) {
-		beforeFirst(val);
-		ts.insert();
-		ts.setInt("block", rid.blockNumber());
-		ts.setInt("id", rid.slot());
-		ts.setVal("dataval", val);
+		insert(val, rid, new HashMap<>());
+	}
+
+	/**
+	 * Inserts a new record, holding the specified included values,
+	 * into the bucket for the search key.
+	 * If the bucket is full, it is split and the insertion retried;
+	 * if splitting cannot separate the bucket's records
+	 * from the new one, an overflow block is chained instead.
+	 * @see simpledb.index.Index#insert(simpledb.query.Constant, simpledb.record.RID, java.util.Map)
+	 */
+	public void insert(Constant val, RID rid, Map<String,Constant> incvals) {
+		close();
+		int h = hash(val);
+		while (true) {
+			int gd = globalDepth();
+			int blknum = dirEntry(h & mask(gd));
+			HashPage last = lastPage(blknum);
+			if (!last.isFull()) {
+				last.insert(val, rid, incvals);
+				last.close();
+				return;
+			}
+			last.close();
+			HashPage bucket = new HashPage(tx, new BlockId(bucketfile, blknum), layout);
+			int ld = bucket.getDepth();
+			bucket.close();
+			if (ld < MAX_DEPTH && canSplit(blknum, h)) {
+				if (ld == gd)
+					doubleDirectory(gd);
+				split(blknum, ld, h);
+			}
+			else {
+				HashPage overflow = appendOverflow(lastPage(blknum));
+				overflow.insert(val, rid, incvals);
+				overflow.close();
+				return;
+			}
+		}
 	}
 
 	/**
-	 * Deletes the specified record from the table scan for
-	 * the bucket.  The method starts at the beginning of the
-	 * scan, and loops through the records until the
+	 * Deletes the specified record from the bucket
+	 * for the search key.  The method starts at the beginning of the
+	 * bucket, and loops through the records until the
 	 * specified record is found.
 	 * @see simpledb.index.Index#delete(simpledb.query.Constant, simpledb.record.RID)
 	 */
@@ -96,31 +161,165 @@ public class HashIndex implements Index {
 		beforeFirst(val);
 		while(next())
 			if (getDataRid().equals(rid)) {
-				ts.delete();
+				page.delete(currentslot);
 				return;
 			}
 	}
 
 	/**
-	 * Closes the index by closing the current table scan.
+	 * Closes the index by closing the current bucket page.
 	 * @see simpledb.index.Index#close()
 	 */
 	public void close() {
-		if (ts != null)
-			ts.close();
+		if (page != null)
+			page.close();
+		page = null;
 	}
 
 	/**
 	 * Returns the cost of searching an index file having the
 	 * specified number of blocks.
-	 * The method assumes that all buckets are about the
-	 * same size, and so the cost is simply the size of
-	 * the bucket.
-	 * @param numblocks the number of blocks of index records
+	 * A search reads one directory block and one bucket,
+	 * regardless of the size of the index.
+	 * @param numblocks the number of blocks of index records (not used here)
 	 * @param rpb the number of records per block (not used here)
 	 * @return the cost of traversing the index
 	 */
 	public static int searchCost(int numblocks, int rpb){
-		return numblocks / HashIndex.NUM_BUCKETS;
+		return 2;
+	}
+
+	private static int hash(Constant val) {
+		int h = val.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	private static int mask(int depth) {
+		return (1 << depth) - 1;
+	}
+
+	/**
+	 * Returns true if some record of the bucket would be
+	 * separated from a record having the specified hash value
+	 * by splitting the bucket up to the maximum depth.
+	 */
+	private boolean canSplit(int blknum, int h) {
+		while (blknum >= 0) {
+			HashPage p = new HashPage(tx, new BlockId(bucketfile, blknum), layout);
+			for (int slot=0; slot<p.getNumRecs(); slot++)
+				if (((hash(p.getDataVal(slot)) ^ h) & mask(MAX_DEPTH)) != 0) {
+					p.close();
+					return true;
+				}
+			blknum = p.getOverflow();
+			p.close();
+		}
+		return false;
+	}
+
+	/**
+	 * Splits the bucket having the specified local depth,
+	 * moving the records whose hash value has bit ld set
+	 * to a new bucket, and pointing the corresponding
+	 * directory entries to it.
+	 * @param blknum the block number of the bucket
+	 * @param ld the local depth of the bucket
+	 * @param h a hash value that selects the bucket
+	 */
+	private void split(int blknum, int ld, int h) {
+		HashPage bucket = new HashPage(tx, new BlockId(bucketfile, blknum), layout);
+		BlockId newblk = bucket.appendNew(ld+1);
+		bucket.setDepth(ld+1);
+		bucket.close();
+
+		HashPage dest = new HashPage(tx, newblk, layout);
+		while (blknum >= 0) {
+			HashPage p = new HashPage(tx, new BlockId(bucketfile, blknum), layout);
+			int slot = 0;
+			while (slot < p.getNumRecs()) {
+				if (((hash(p.getDataVal(slot)) >> ld) & 1) == 0)
+					slot++;
+				else {
+					if (dest.isFull())
+						dest = appendOverflow(dest);
+					p.transferRecord(slot, dest);
+				}
+			}
+			blknum = p.getOverflow();
+			p.close();
+		}
+		dest.close();
+
+		int step = 1 << (ld+1);
+		int size = 1 << globalDepth();
+		for (int i = (h & mask(ld)) | (1 << ld); i < size; i += step)
+			setDirEntry(i, newblk.number());
+	}
+
+	private void doubleDirectory(int gd) {
+		int size = 1 << gd;
+		for (int i=0; i<size; i++)
+			setDirEntry(size + i, dirEntry(i));
+		setGlobalDepth(gd + 1);
+	}
+
+	private HashPage lastPage(int blknum) {
+		HashPage p = new HashPage(tx, new BlockId(bucketfile, blknum), layout);
+		while (p.getOverflow() >= 0) {
+			BlockId next = new BlockId(bucketfile, p.getOverflow());
+			p.close();
+			p = new HashPage(tx, next, layout);
+		}
+		return p;
+	}
+
+	/**
+	 * Chains a new overflow block after the specified
+	 * (last) page of a bucket, closing that page
+	 * and returning the new one.
+	 */
+	private HashPage appendOverflow(HashPage last) {
+		BlockId blk = last.appendNew(-1);
+		last.setOverflow(blk.number());
+		last.close();
+		return new HashPage(tx, blk, layout);
+	}
+
+	// The directory file holds the global depth at position 0,
+	// followed by the directory entries.
+
+	private int globalDepth() {
+		return readDir(0);
+	}
+
+	private void setGlobalDepth(int gd) {
+		writeDir(0, gd);
+	}
+
+	private int dirEntry(int i) {
+		return readDir(i+1);
+	}
+
+	private void setDirEntry(int i, int blknum) {
+		writeDir(i+1, blknum);
+	}
+
+	private int readDir(int pos) {
+		int perblock = tx.blockSize() / Integer.BYTES;
+		BlockId blk = new BlockId(dirfile, pos / perblock);
+		tx.pin(blk);
+		int val = tx.getInt(blk, (pos % perblock) * Integer.BYTES);
+		tx.unpin(blk);
+		return val;
+	}
+
+	private void writeDir(int pos, int val) {
+		int perblock = tx.blockSize() / Integer.BYTES;
+		while (tx.size(dirfile) <= pos / perblock)
+			tx.append(dirfile);
+		BlockId blk = new BlockId(dirfile, pos / perblock);
+		tx.pin(blk);
+		tx.setInt(blk, (pos % perblock) * Integer.BYTES, val, true);
+		tx.unpin(blk);
 	}
 }
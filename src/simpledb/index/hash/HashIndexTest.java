@@ -0,0 +1,68 @@
+package simpledb.index.hash;
+
+import java.io.File;
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.record.*;
+import simpledb.query.Constant;
+
+/**
+ * Insert enough records into an extendible hash index to split
+ * its buckets and double its directory several times, with one key
+ * repeated until its bucket overflows, then delete some records
+ * and look up every key.
+ */
+public class HashIndexTest {
+	public static void main(String[] args) {
+		deleteDir(new File("hashindextest"));
+		SimpleDB db = new SimpleDB("hashindextest");
+		Transaction tx = db.newTx();
+		Schema sch = new Schema();
+		sch.addIntField("block");
+		sch.addIntField("id");
+		sch.addStringField("dataval", 10);
+		Layout layout = new Layout(sch);
+
+		HashIndex idx = new HashIndex(tx, "test", layout);
+		Map<String,Set<String>> expected = new HashMap<>();
+		Random r = new Random(30);
+		for (int i=0; i<3000; i++) {
+			String key = (i % 5 == 0) ? "dup" : "k" + r.nextInt(1000);
+			RID rid = new RID(i / 10, i % 10);
+			idx.insert(new Constant(key), rid);
+			expected.computeIfAbsent(key, k -> new HashSet<>()).add(rid.toString());
+		}
+		for (String key : new String[] {"dup", "k1", "k2", "k3"})
+			for (int i=0; i<3000; i+=2) {
+				RID rid = new RID(i / 10, i % 10);
+				if (expected.containsKey(key) && expected.get(key).remove(rid.toString()))
+					idx.delete(new Constant(key), rid);
+			}
+
+		boolean ok = tx.size("testhashdir") > 1 && tx.size("testbucket") > 100;
+		for (String key : expected.keySet()) {
+			Set<String> found = new HashSet<>();
+			idx.beforeFirst(new Constant(key));
+			while (idx.next())
+				found.add(idx.getDataRid().toString());
+			if (!found.equals(expected.get(key))) {
+				System.out.println("wrong records for " + key + ": " + found.size()
+						+ " instead of " + expected.get(key).size());
+				ok = false;
+			}
+		}
+		idx.close();
+		System.out.println("directory blocks " + tx.size("testhashdir")
+				+ ", bucket blocks " + tx.size("testbucket"));
+		tx.commit();
+		System.out.println(ok ? "hash index ok" : "hash index FAILED");
+	}
+
+	private static void deleteDir(File f) {
+		if (f.isDirectory())
+			for (File child : f.listFiles())
+				deleteDir(child);
+		f.delete();
+	}
+}
@@ -0,0 +1,216 @@
+package simpledb.index.hash;
+
+import static java.sql.Types.INTEGER;
+import java.util.Map;
+import simpledb.file.BlockId;
+import simpledb.tx.Transaction;
+import simpledb.record.*;
+import simpledb.query.Constant;
+
+/**
+ * A block of the bucket file of an extendible hash index.
+ * The page header holds the local depth of the bucket,
+ * the number of records, and the block number of the
+ * next overflow block of the bucket (-1 if none).
+ * The records of a bucket are not kept in any order:
+ * a new record is appended, and a deleted record is
+ * replaced by the last record of the page.
+ */
+public class HashPage {
+	private static final int HEADER_SIZE = 3 * Integer.BYTES;
+	private Transaction tx;
+	private BlockId currentblk;
+	private Layout layout;
+
+	/**
+	 * Open a page for the specified bucket block.
+	 * @param tx the calling transaction
+	 * @param currentblk a reference to the bucket block
+	 * @param layout the metadata of the index records
+	 */
+	public HashPage(Transaction tx, BlockId currentblk, Layout layout) {
+		this.tx = tx;
+		this.currentblk = currentblk;
+		this.layout = layout;
+		tx.pin(currentblk);
+	}
+
+	/**
+	 * Close the page by unpinning its buffer.
+	 */
+	public void close() {
+		if (currentblk != null)
+			tx.unpin(currentblk);
+		currentblk = null;
+	}
+
+	/**
+	 * Initialize the page as an empty bucket block
+	 * having the specified local depth.
+	 * @param depth the local depth of the bucket
+	 */
+	public void format(int depth) {
+		tx.setInt(currentblk, 0, depth, false);
+		tx.setInt(currentblk, Integer.BYTES, 0, false);  // #records = 0
+		tx.setInt(currentblk, 2*Integer.BYTES, -1, false);  // no overflow
+	}
+
+	/**
+	 * Append a new, empty block to the bucket file,
+	 * having the specified local depth.
+	 * @param depth the local depth of the new block
+	 * @return a reference to the newly-created block
+	 */
+	public BlockId appendNew(int depth) {
+		BlockId blk = tx.append(currentblk.fileName());
+		HashPage page = new HashPage(tx, blk, layout);
+		page.format(depth);
+		page.close();
+		return blk;
+	}
+
+	/**
+	 * Return true if no further record fits in the page.
+	 * @return true if the page is full
+	 */
+	public boolean isFull() {
+		return slotpos(getNumRecs()+1) > tx.blockSize();
+	}
+
+	/**
+	 * Return the local depth of the bucket.
+	 * @return the local depth
+	 */
+	public int getDepth() {
+		return tx.getInt(currentblk, 0);
+	}
+
+	/**
+	 * Set the local depth of the bucket.
+	 * @param depth the new local depth
+	 */
+	public void setDepth(int depth) {
+		tx.setInt(currentblk, 0, depth, true);
+	}
+
+	/**
+	 * Return the block number of the next overflow block,
+	 * or -1 if this is the last block of the bucket.
+	 * @return the block number of the next overflow block
+	 */
+	public int getOverflow() {
+		return tx.getInt(currentblk, 2*Integer.BYTES);
+	}
+
+	/**
+	 * Set the block number of the next overflow block.
+	 * @param blknum the block number of the next overflow block
+	 */
+	public void setOverflow(int blknum) {
+		tx.setInt(currentblk, 2*Integer.BYTES, blknum, true);
+	}
+
+	/**
+	 * Return the number of index records in this page.
+	 * @return the number of index records in this page
+	 */
+	public int getNumRecs() {
+		return tx.getInt(currentblk, Integer.BYTES);
+	}
+
+	/**
+	 * Return the dataval of the record at the specified slot.
+	 * @param slot the slot of an index record
+	 * @return the dataval of the record at that slot
+	 */
+	public Constant getDataVal(int slot) {
+		return getVal(slot, "dataval");
+	}
+
+	/**
+	 * Return the dataRID of the record at the specified slot.
+	 * @param slot the slot of an index record
+	 * @return the dataRID of the record at that slot
+	 */
+	public RID getDataRid(int slot) {
+		return new RID(getVal(slot, "block").asInt(), getVal(slot, "id").asInt());
+	}
+
+	/**
+	 * Append an index record holding the specified
+	 * dataval, dataRID and included values.
+	 * The page must not be full.
+	 * @param val the dataval
+	 * @param rid the dataRID
+	 * @param incvals the included values, keyed by field name
+	 */
+	public void insert(Constant val, RID rid, Map<String,Constant> incvals) {
+		int slot = getNumRecs();
+		setNumRecs(slot+1);
+		setVal(slot, "dataval", val);
+		setVal(slot, "block", new Constant(rid.blockNumber()));
+		setVal(slot, "id", new Constant(rid.slot()));
+		for (String fldname : incvals.keySet())
+			setVal(slot, fldname, incvals.get(fldname));
+	}
+
+	/**
+	 * Delete the index record at the specified slot,
+	 * moving the last record of the page into it.
+	 * @param slot the slot of the deleted index record
+	 */
+	public void delete(int slot) {
+		int last = getNumRecs()-1;
+		if (slot < last)
+			copyRecord(last, this, slot);
+		setNumRecs(last);
+	}
+
+	/**
+	 * Move the index record at the specified slot
+	 * to the end of the specified page.
+	 * @param slot the slot of the moved index record
+	 * @param dest the page receiving the record
+	 */
+	public void transferRecord(int slot, HashPage dest) {
+		int destslot = dest.getNumRecs();
+		dest.setNumRecs(destslot+1);
+		copyRecord(slot, dest, destslot);
+		delete(slot);
+	}
+
+	// Private methods
+
+	private void copyRecord(int from, HashPage dest, int to) {
+		for (String fldname : layout.schema().fields())
+			dest.setVal(to, fldname, getVal(from, fldname));
+	}
+
+	private Constant getVal(int slot, String fldname) {
+		int pos = fldpos(slot, fldname);
+		if (layout.schema().type(fldname) == INTEGER)
+			return new Constant(tx.getInt(currentblk, pos));
+		else
+			return new Constant(tx.getString(currentblk, pos));
+	}
+
+	private void setVal(int slot, String fldname, Constant val) {
+		int pos = fldpos(slot, fldname);
+		if (layout.schema().type(fldname) == INTEGER)
+			tx.setInt(currentblk, pos, val.asInt(), true);
+		else
+			tx.setString(currentblk, pos, val.asString(), true);
+	}
+
+	private void setNumRecs(int n) {
+		tx.setInt(currentblk, Integer.BYTES, n, true);
+	}
+
+	private int fldpos(int slot, String fldname) {
+		return slotpos(slot) + layout.offset(fldname);
+	}
+
+	private int slotpos(int slot) {
+		return HEADER_SIZE + slot * layout.slotSize();
+	}
+}
@@ -0,0 +1,145 @@
+package simpledb.index.planner;
+
+import java.util.*;
+
+import simpledb.record.*;
+import simpledb.query.*;
+import simpledb.metadata.IndexInfo;
+import simpledb.plan.Plan;
+import simpledb.index.Index;
+import simpledb.index.query.BatchedIndexJoinScan;
+import simpledb.server.SimpleDB;
+
+/** The Plan class corresponding to the batched version of the
+  * <i>indexjoin</i> relational algebra operator.
+  * The LHS records are read in batches that fit into the
+  * memory budget; the index is searched once for each distinct
+  * join value of a batch, and the data records are fetched in
+  * the order of their RIDs.
+  * The join types and the estimates of the output are those
+  * of the unbatched index join.
+  */
+public class BatchedIndexJoinPlan implements Plan {
+   private Plan p1, p2;
+   private IndexInfo ii;
+   private List<String> joinfields;
+   private String jointype;
+   private Predicate residual;
+   private IndexJoinPlan joinplan;
+
+   /**
+    * Implements the batched join operator of the specified type,
+    * searching the right-hand index for the composite value
+    * of several left-hand fields, which correspond
+    * in order to the key fields of the index.
+    * @param p1 the left-hand plan
+    * @param p2 the right-hand plan
+    * @param ii information about the right-hand index
+    * @param joinfields the left-hand fields used for joining
+    * @param jointype one of "inner", "left", "semi" or "anti"
+    * @param residual the rest of the join predicate
+    */
+   public BatchedIndexJoinPlan(Plan p1, Plan p2, IndexInfo ii, List<String> joinfields,
+                               String jointype, Predicate residual) {
+      this.p1 = p1;
+      this.p2 = p2;
+      this.ii = ii;
+      this.joinfields = joinfields;
+      this.jointype = jointype;
+      this.residual = residual;
+      // not opened; just for analysis
+      joinplan = new IndexJoinPlan(p1, p2, ii, joinfields, jointype, residual);
+   }
+
+   /**
+    * Opens a batched indexjoin scan for this query.
+    * @see simpledb.plan.Plan#open()
+    */
+   public Scan open() {
+      Scan s = p1.open();
+      // throws an exception if p2 is not a tableplan
+      TableScan ts = (TableScan) p2.open();
+      Index idx = ii.open();
+      return new BatchedIndexJoinScan(s, p1.schema().fields(), idx, joinfields, ts,
+                                      jointype, residual, batchSize());
+   }
+
+   /**
+    * Estimates the number of block accesses to compute the join.
+    * Each batch searches the index once per distinct join value
+    * and reads each RHS block holding a match at most once.
+    * The formula is:
+    * <pre> B(batchedindexjoin(p1,p2,idx)) = B(p1) + S*B(idx)
+    *       + N*min{B(p2), R(indexjoin(p1,p2,idx))/N} </pre>
+    * where N is the number of batches and S the number of searches,
+    * which is at most V(p1,F) per batch.
+    * @see simpledb.plan.Plan#blocksAccessed()
+    */
+   public int blocksAccessed() {
+      double r1 = Math.max(1, p1.recordsOutput());
+      double batches = Math.ceil(r1 / batchSize());
+      double values = 1;
+      for (String fldname : joinfields)
+         values *= Math.max(1, p1.distinctValues(fldname));
+      double searches = Math.min(r1, batches * Math.min(values, batchSize()));
+      double fetches = batches * Math.min(p2.blocksAccessed(), joinplan.recordsOutput() / batches);
+      double total = p1.blocksAccessed() + searches * ii.blocksAccessed() + fetches;
+      return (int) Math.min(Integer.MAX_VALUE, total);
+   }
+
+   /**
+    * Estimates the number of output records in the join,
+    * which is the same as for the unbatched index join.
+    * @see simpledb.plan.Plan#recordsOutput()
+    */
+   public int recordsOutput() {
+      return joinplan.recordsOutput();
+   }
+
+   /**
+    * Estimates the number of distinct values for the
+    * specified field.
+    * @see simpledb.plan.Plan#distinctValues(java.lang.String)
+    */
+   public int distinctValues(String fldname) {
+      return joinplan.distinctValues(fldname);
+   }
+
+   /**
+    * Estimates the fraction of the join records whose
+    * value of the field lies in the range.
+    * @see simpledb.plan.Plan#rangeFraction(java.lang.String, simpledb.query.Range)
+    */
+   public double rangeFraction(String fldname, Range range) {
+      return joinplan.rangeFraction(fldname, range);
+   }
+
+   /**
+    * Returns the schema of the index join.
+    * @see simpledb.plan.Plan#schema()
+    */
+   public Schema schema() {
+      return joinplan.schema();
+   }
+
+   /**
+    * Return the order of the records of the query.
+    * The records of each batch are output in the order
+    * of the RHS records, so there is no particular order.
+    * @see simpledb.plan.Plan#ordering()
+    */
+   public Sort ordering() {
+      return new Sort();
+   }
+
+   /**
+    * Return the number of LHS records that fit into the memory budget.
+    */
+   private int batchSize() {
+      return Math.max(1, SimpleDB.MEMORY_BUDGET / new Layout(p1.schema()).slotSize());
+   }
+
+   public String toString() {
+      return "batched " + joinplan.toString();
+   }
+}
@@ -0,0 +1,95 @@
+package simpledb.index.planner;
+
+import java.io.File;
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.plan.*;
+import simpledb.query.*;
+import simpledb.metadata.IndexInfo;
+
+/**
+ * Join a table with repeated join values to an indexed table
+ * by a batched index join, as an inner, left, semi and anti join,
+ * with batches holding the whole table, a few records, or one.
+ * Each join must return exactly the records of its type, and
+ * every buffer must be released once the scan is closed.
+ */
+public class BatchedIndexJoinTest {
+   public static void main(String[] args) {
+      deleteDir(new File("batchedindexjointest"));
+      SimpleDB db = new SimpleDB("batchedindexjointest");
+      Transaction tx = db.newTx();
+      Planner planner = db.planner();
+      planner.executeUpdate("create table L(K int, LV int)", tx);
+      planner.executeUpdate("create table R(RK int, RV int)", tx);
+      planner.executeUpdate("create index RRK on R(RK) using btree", tx);
+      Random r = new Random(48);
+      List<int[]> ls = new ArrayList<>();
+      Map<Integer,List<Integer>> rs = new HashMap<>();
+      for (int i=0; i<800; i++) {
+         int k = r.nextInt(300);
+         planner.executeUpdate("insert into L(K,LV) values(" + k + ", " + i + ")", tx);
+         ls.add(new int[] {k, i});
+      }
+      for (int i=0; i<600; i++) {
+         int rk = r.nextInt(400);
+         planner.executeUpdate("insert into R(RK,RV) values(" + rk + ", " + i + ")", tx);
+         rs.computeIfAbsent(rk, k -> new ArrayList<>()).add(i);
+      }
+      tx.commit();
+
+      boolean ok = true;
+      int budget = SimpleDB.MEMORY_BUDGET;
+      for (int mem : new int[] {budget, 100, 1}) {
+         SimpleDB.MEMORY_BUDGET = mem;
+         tx = db.newTx();
+         IndexInfo ii = db.mdMgr().getIndexInfo("r", tx).get("rk");
+         for (String type : new String[] {"inner", "left", "semi", "anti"}) {
+            List<String> expected = new ArrayList<>();
+            for (int[] l : ls) {
+               List<Integer> rvs = rs.getOrDefault(l[0], Collections.emptyList());
+               if (type.equals("inner") || type.equals("left"))
+                  for (int rv : rvs)
+                     expected.add(l[1] + " " + rv);
+               if ((type.equals("left") || type.equals("anti")) && rvs.isEmpty())
+                  expected.add(l[1] + (type.equals("left") ? " null" : ""));
+               if (type.equals("semi") && !rvs.isEmpty())
+                  expected.add(l[1] + "");
+            }
+            Collections.sort(expected);
+            Plan p = new BatchedIndexJoinPlan(new TablePlan(tx, "l", db.mdMgr()),
+                  new TablePlan(tx, "r", db.mdMgr()), ii, Arrays.asList("k"), type, new Predicate());
+            boolean withrhs = type.equals("inner") || type.equals("left");
+            List<String> found = new ArrayList<>();
+            Scan s = p.open();
+            while (s.next()) {
+               String rec = s.getInt("lv") + "";
+               if (withrhs) {
+                  Constant rv = s.getVal("rv");
+                  rec += " " + (rv.isNull() ? "null" : rv.toString());
+               }
+               found.add(rec);
+            }
+            s.close();
+            Collections.sort(found);
+            if (!found.equals(expected)) {
+               System.out.println(type + " join: " + found.size() + " records instead of "
+                     + expected.size() + " with a budget of " + mem);
+               ok = false;
+            }
+         }
+         ok = ok && tx.availableBuffs() == SimpleDB.BUFFER_SIZE;
+         tx.commit();
+      }
+      SimpleDB.MEMORY_BUDGET = budget;
+      System.out.println(ok ? "batched index join ok" : "batched index join FAILED");
+   }
+
+   private static void deleteDir(File f) {
+      if (f.isDirectory())
+         for (File child : f.listFiles())
+            deleteDir(child);
+      f.delete();
+   }
+}
@@ -0,0 +1,109 @@
+package simpledb.index.planner;
+
+import simpledb.record.*;
+import simpledb.query.*;
+import simpledb.plan.Plan;
+import simpledb.metadata.IndexInfo;
+import simpledb.index.query.IndexEntryScan;
+
+/** The Plan class that presents each record of a table
+  * as the index record that would be built for it.
+  * It is used to sort the index records of an existing
+  * table before building a new index over it.
+  */
+public class IndexEntryPlan implements Plan {
+   private Plan p;
+   private IndexInfo ii;
+   private String fldname;
+   
+   /**
+    * Creates a plan of the records of the specified index
+    * for the underlying table.
+    * @param p the table plan
+    * @param ii information about the index
+    */
+   public IndexEntryPlan(Plan p, IndexInfo ii) {
+      this.p = p;
+      this.ii = ii;
+      this.fldname = ii.getFieldName();
+   }
+   
+   /**
+    * Creates an index entry scan over the table.
+    * @see simpledb.plan.Plan#open()
+    */
+   public Scan open() {
+      // throws an exception if p is not a tableplan
+      UpdateScan s = (UpdateScan) p.open();
+      return new IndexEntryScan(s, ii);
+   }
+   
+   /**
+    * Estimates the number of block accesses,
+    * which is the same as in the underlying table.
+    * @see simpledb.plan.Plan#blocksAccessed()
+    */
+   public int blocksAccessed() {
+      return p.blocksAccessed();
+   }
+   
+   /**
+    * Estimates the number of index records,
+    * which is the number of records in the table.
+    * @see simpledb.plan.Plan#recordsOutput()
+    */
+   public int recordsOutput() {
+      return p.recordsOutput();
+   }
+   
+   /**
+    * Estimates the number of distinct values of the
+    * dataval field, which is that of the indexed field,
+    * and of each other key field and included field.
+    * Each dataRID is distinct.
+    * @see simpledb.plan.Plan#distinctValues(java.lang.String)
+    */
+   public int distinctValues(String fname) {
+      for (String tblfld : ii.coveredSchema().fields())
+         if (fname.equals(ii.indexColumn(tblfld)))
+            return p.distinctValues(tblfld);
+      return p.recordsOutput();
+   }
+
+   /**
+    * Estimates the fraction of the index records whose value
+    * of the field lies in the range, which is that of the
+    * corresponding field of the table; the customary guesses
+    * are used for the dataRID.
+    * @see simpledb.plan.Plan#rangeFraction(java.lang.String, simpledb.query.Range)
+    */
+   public double rangeFraction(String fldname, Range range) {
+      for (String tblfld : ii.coveredSchema().fields())
+         if (fldname.equals(ii.indexColumn(tblfld)))
+            return p.rangeFraction(tblfld, range);
+      return range.guessFraction(p.recordsOutput());
+   }
+   
+   /**
+    * Returns the schema of the index records.
+    * @see simpledb.plan.Plan#schema()
+    */
+   public Schema schema() {
+      return ii.getIndexLayout().schema();
+   }
+   
+   /**
+    * Return the order of the records of the query.
+    * The index records are in the order of the table,
+    * which is no particular order.
+    * @see simpledb.plan.Plan#ordering()
+    */
+   public Sort ordering() {
+      return new Sort();
+   }
+
+
+   public String toString() {
+      return String.format("index entries (%s) of %s", fldname, p.toString());
+   }
+}
@@ -1,5 +1,7 @@
 package simpledb.index.planner;
 
+import java.util.*;
+
 import simpledb.record.*;
 import simpledb.query.*;
 import simpledb.metadata.IndexInfo;
@@ -9,12 +11,18 @@ import simpledb.index.query.IndexJoinScan;
 
 /** The Plan class corresponding to the <i>indexjoin</i>
   * relational algebra operator.
+  * Besides the inner join, the plan implements the left outer join,
+  * the semi join and the anti join, in which the LHS is preserved.
+  * A multi-column index is searched for the composite value
+  * of as many LHS join fields as the index has key fields.
   * @author Edward Sciore
   */
 public class IndexJoinPlan implements Plan {
    private Plan p1, p2;
    private IndexInfo ii;
-   private String joinfield;
+   private List<String> joinfields;
+   private String jointype;
+   private Predicate residual;
    private Schema sch = new Schema();
    
    /**
@@ -26,12 +34,50 @@ public class IndexJoinPlan implements Plan {
     * @param joinfield the left-hand field used for joining
     */
    public IndexJoinPlan(Plan p1, Plan p2, IndexInfo ii, String joinfield) {
+      this(p1, p2, ii, joinfield, "inner", new Predicate());
+   }
+   
+   /**
+    * Implements the join operator of the specified type,
+    * using the specified LHS and RHS plans.
+    * Records match if the index finds the RHS record for the
+    * LHS join value and they satisfy the residual predicate.
+    * The schema of a semi or anti join is that of the LHS.
+    * @param p1 the left-hand plan
+    * @param p2 the right-hand plan
+    * @param ii information about the right-hand index
+    * @param joinfield the left-hand field used for joining
+    * @param jointype one of "inner", "left", "semi" or "anti"
+    * @param residual the rest of the join predicate
+    */
+   public IndexJoinPlan(Plan p1, Plan p2, IndexInfo ii, String joinfield,
+                        String jointype, Predicate residual) {
+      this(p1, p2, ii, Arrays.asList(joinfield), jointype, residual);
+   }
+   
+   /**
+    * Implements the join operator of the specified type,
+    * searching the right-hand index for the composite value
+    * of several left-hand fields, which correspond
+    * in order to the key fields of the index.
+    * @param p1 the left-hand plan
+    * @param p2 the right-hand plan
+    * @param ii information about the right-hand index
+    * @param joinfields the left-hand fields used for joining
+    * @param jointype one of "inner", "left", "semi" or "anti"
+    * @param residual the rest of the join predicate
+    */
+   public IndexJoinPlan(Plan p1, Plan p2, IndexInfo ii, List<String> joinfields,
+                        String jointype, Predicate residual) {
       this.p1 = p1;
       this.p2 = p2;
       this.ii = ii;
-      this.joinfield = joinfield;
+      this.joinfields = joinfields;
+      this.jointype = jointype;
+      this.residual = residual;
       sch.addAll(p1.schema());
-      sch.addAll(p2.schema());
+      if (!jointype.equals("semi") && !jointype.equals("anti"))
+         sch.addAll(p2.schema());
    }
    
    /**
@@ -43,7 +89,7 @@ public class IndexJoinPlan implements Plan {
       // throws an exception if p2 is not a tableplan
       TableScan ts = (TableScan) p2.open();
       Index idx = ii.open();
-      return new IndexJoinScan(s, idx, joinfield, ts);
+      return new IndexJoinScan(s, idx, joinfields, ts, jointype, residual);
    }
    
    /**
@@ -54,18 +100,33 @@ public class IndexJoinPlan implements Plan {
     * @see simpledb.plan.Plan#blocksAccessed()
     */
    public int blocksAccessed() {
-      return p1.blocksAccessed()
-         + (p1.recordsOutput() * ii.blocksAccessed());
+      double total = p1.blocksAccessed()
+         + ((double) p1.recordsOutput() * ii.blocksAccessed())
+         + recordsOutput();
+      return (int) Math.min(Integer.MAX_VALUE, total);
    }
    
    /**
     * Estimates the number of output records in the join.
     * The formula is:
     * <pre> R(indexjoin(p1,p2,idx)) = R(p1)*R(idx) </pre>
+    * A left join outputs at least R(p1) records;
+    * a semi join at most R(p1), and an anti join the rest.
     * @see simpledb.plan.Plan#recordsOutput()
     */
    public int recordsOutput() {
-      return p1.recordsOutput() * ii.recordsOutput();
+      int inner = p1.recordsOutput() * ii.recordsOutput();
+      int matching = Math.min(p1.recordsOutput(), inner);
+      switch (jointype) {
+         case "left":
+            return Math.max(p1.recordsOutput(), inner);
+         case "semi":
+            return matching;
+         case "anti":
+            return Math.max(1, p1.recordsOutput() - matching);
+         default:
+            return inner;
+      }
    }
    
    /**
@@ -79,6 +140,19 @@ public class IndexJoinPlan implements Plan {
       else
          return p2.distinctValues(fldname);
    }
+
+   /**
+    * Estimate the fraction of the join records whose value
+    * of the field lies in the range, which is the same
+    * as in the appropriate underlying query.
+    * @see simpledb.plan.Plan#rangeFraction(java.lang.String, simpledb.query.Range)
+    */
+   public double rangeFraction(String fldname, Range range) {
+      if (p1.schema().hasField(fldname))
+         return p1.rangeFraction(fldname, range);
+      else
+         return p2.rangeFraction(fldname, range);
+   }
    
    /**
     * Returns the schema of the index join.
@@ -87,9 +161,25 @@ public class IndexJoinPlan implements Plan {
    public Schema schema() {
       return sch;
    }
+   
+   /**
+    * Return the order of the records of the query.
+    * The index is searched for each LHS record in turn,
+    * so the records are in the order of the LHS.
+    * @see simpledb.plan.Plan#ordering()
+    */
+   public Sort ordering() {
+      return p1.ordering();
+   }
+
 
    public String toString(){
-      return String.format("[{%s} indexjoin {index (%s) using %s}](%s=%s)",
-              p1.toString(), p2.toString(), ii.getFieldName(), joinfield, ii.getFieldName());
+      String type = jointype.equals("inner") ? "" : jointype + " ";
+      String rest = residual.isEmpty() ? "" : " and " + residual;
+      StringJoiner on = new StringJoiner(" and ");
+      for (int i = 0; i < joinfields.size(); i++)
+         on.add(joinfields.get(i) + "=" + ii.keyFields().get(i));
+      return String.format("[{%s} %sindexjoin {index (%s) using %s}](%s%s)",
+              p1.toString(), type, p2.toString(), String.join(", ", ii.keyFields()), on, rest);
    }
 }
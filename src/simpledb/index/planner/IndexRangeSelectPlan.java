@@ -0,0 +1,114 @@
+package simpledb.index.planner;
+
+import simpledb.record.*;
+import simpledb.query.*;
+import simpledb.metadata.IndexInfo;
+import simpledb.plan.Plan;
+import simpledb.index.btree.BTreeIndex;
+import simpledb.index.query.IndexRangeSelectScan;
+
+/** The Plan class corresponding to the <i>indexselect</i>
+  * relational algebra operator, for a selection
+  * on a range of values of the indexed field.
+  */
+public class IndexRangeSelectPlan implements Plan {
+   private Plan p;
+   private IndexInfo ii;
+   private Range range;
+   private String tblname;
+   
+   /**
+    * Creates a new range indexselect node in the query tree
+    * for the specified B-tree index and range.
+    * @param p the input table
+    * @param ii information about the index
+    * @param range the range of the indexed field
+    * @param tblname the name of the table
+    */
+   public IndexRangeSelectPlan(Plan p, IndexInfo ii, Range range, String tblname) {
+      this.p = p;
+      this.ii = ii;
+      this.range = range;
+      this.tblname = tblname;
+   }
+   
+   /** 
+    * Creates a new range indexselect scan for this query
+    * @see simpledb.plan.Plan#open()
+    */
+   public Scan open() {
+      // throws an exception if p is not a tableplan.
+      TableScan ts = (TableScan) p.open();
+      // throws an exception if the index is not a B-tree.
+      BTreeIndex idx = (BTreeIndex) ii.open();
+      return new IndexRangeSelectScan(ts, idx, range);
+   }
+   
+   /**
+    * Estimates the number of block accesses to compute the 
+    * index selection, which is the cost of scanning the
+    * index over the range plus the number of matching data records.
+    * @see simpledb.plan.Plan#blocksAccessed()
+    */
+   public int blocksAccessed() {
+      return ii.rangeBlocksAccessed(range) + recordsOutput();
+   }
+   
+   /**
+    * Estimates the number of output records in the index selection,
+    * which is the number of records in the range.
+    * @see simpledb.plan.Plan#recordsOutput()
+    */
+   public int recordsOutput() {
+      return ii.rangeRecordsOutput(range);
+   }
+   
+   /** 
+    * Returns the distinct values of the data table,
+    * but not more than the size of the output.
+    * @see simpledb.plan.Plan#distinctValues(java.lang.String)
+    */
+   public int distinctValues(String fldname) {
+      return Math.min(p.distinctValues(fldname), recordsOutput());
+   }
+
+   /**
+    * Returns the fraction of the selected records whose value
+    * of the field lies in the range: for the indexed field, the
+    * fraction of the intersection with the index range among
+    * the records of the index range, and otherwise the fraction
+    * in the data table.
+    * @see simpledb.plan.Plan#rangeFraction(java.lang.String, simpledb.query.Range)
+    */
+   public double rangeFraction(String fldname, Range range) {
+      if (ii.isComposite() || !fldname.equals(ii.getFieldName()))
+         return p.rangeFraction(fldname, range);
+      double fraction = p.rangeFraction(fldname, this.range);
+      if (fraction <= 0)
+         return 0;
+      return Math.min(1, p.rangeFraction(fldname, range.intersect(this.range)) / fraction);
+   }
+   
+   /**
+    * Returns the schema of the data table.
+    * @see simpledb.plan.Plan#schema()
+    */
+   public Schema schema() {
+      return p.schema(); 
+   }
+   
+   /**
+    * Return the order of the records of the query.
+    * The B-tree index returns the records of the range
+    * in ascending order of the indexed fields.
+    * @see simpledb.plan.Plan#ordering()
+    */
+   public Sort ordering() {
+      return Sort.ascending(ii.keyFields());
+   }
+
+
+   public String toString() {
+      return String.format("Index Range Scan %s (%s in %s)", tblname, String.join(", ", ii.keyFields()), range);
+   }
+}
@@ -70,6 +70,19 @@ public class IndexSelectPlan implements Plan {
    public int distinctValues(String fldname) {
       return ii.distinctValues(fldname);
    }
+
+   /**
+    * Returns the fraction of the selected records whose value
+    * of the field lies in the range: all or none of them
+    * for the indexed field, and otherwise the fraction
+    * in the data table.
+    * @see simpledb.plan.Plan#rangeFraction(java.lang.String, simpledb.query.Range)
+    */
+   public double rangeFraction(String fldname, Range range) {
+      if (!ii.isComposite() && fldname.equals(ii.getFieldName()))
+         return range.contains(val) ? 1 : 0;
+      return p.rangeFraction(fldname, range);
+   }
    
    /**
     * Returns the schema of the data table.
@@ -78,6 +91,17 @@ public class IndexSelectPlan implements Plan {
    public Schema schema() {
       return p.schema(); 
    }
+   
+   /**
+    * Return the order of the records of the query.
+    * All of the selected records have the same search key,
+    * so they are trivially sorted on the indexed fields.
+    * @see simpledb.plan.Plan#ordering()
+    */
+   public Sort ordering() {
+      return Sort.ascending(ii.keyFields());
+   }
+
 
    public String toString() { return "Index Scan " + tblname;}
 }
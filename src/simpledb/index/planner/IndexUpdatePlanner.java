@@ -7,7 +7,9 @@ import simpledb.metadata.*;
 import simpledb.query.*;
 import simpledb.parse.*;
 import simpledb.plan.*;
+import simpledb.materialize.SortPlan;
 import simpledb.index.Index;
+import simpledb.index.btree.BTreeIndex;
 
 /**
  * A modification of the basic update planner.
@@ -31,19 +33,16 @@ public class IndexUpdatePlanner implements UpdatePlanner {
       s.insert();
       RID rid = s.getRid();
       
-      // then modify each field, inserting an index record if appropriate
-      Map<String,IndexInfo> indexes = mdm.getIndexInfo(tblname, tx);
+      // then modify each field
       Iterator<Constant> valIter = data.vals().iterator();
-      for (String fldname : data.fields()) {
-         Constant val = valIter.next();
-         s.setVal(fldname, val);
-         
-         IndexInfo ii = indexes.get(fldname);
-         if (ii != null) {
-            Index idx = ii.open();
-            idx.insert(val, rid);
-            idx.close();
-         }
+      for (String fldname : data.fields())
+         s.setVal(fldname, valIter.next());
+      
+      // then insert a record into each index
+      for (IndexInfo ii : mdm.getIndexes(tblname, tx)) {
+         Index idx = ii.open();
+         idx.insert(ii.keyValue(s), rid, ii.includedValues(s));
+         idx.close();
       }
       s.close();
       return 1;
@@ -53,16 +52,16 @@ public class IndexUpdatePlanner implements UpdatePlanner {
       String tblname = data.tableName();
       Plan p = new TablePlan(tx, tblname, mdm);
       p = new SelectPlan(p, data.pred());
-      Map<String,IndexInfo> indexes = mdm.getIndexInfo(tblname, tx);
+      List<IndexInfo> indexes = mdm.getIndexes(tblname, tx);
       
       UpdateScan s = (UpdateScan) p.open();
       int count = 0;
       while(s.next()) {
          // first, delete the record's RID from every index
          RID rid = s.getRid();
-         for (String fldname : indexes.keySet()) {
-            Constant val = s.getVal(fldname);
-            Index idx = indexes.get(fldname).open();
+         for (IndexInfo ii : indexes) {
+            Constant val = ii.keyValue(s);
+            Index idx = ii.open();
             idx.delete(val, rid);
             idx.close();
          }
@@ -80,26 +79,33 @@ public class IndexUpdatePlanner implements UpdatePlanner {
       Plan p = new TablePlan(tx, tblname, mdm);
       p = new SelectPlan(p, data.pred());
       
-      IndexInfo ii = mdm.getIndexInfo(tblname, tx).get(fldname);
-      Index idx = (ii == null) ? null : ii.open();
+      // the indexes whose records hold the modified field
+      Map<IndexInfo,Index> indexes = new HashMap<>();
+      for (IndexInfo ii : mdm.getIndexes(tblname, tx))
+         if (ii.dependsOn(fldname))
+            indexes.put(ii, ii.open());
       
       UpdateScan s = (UpdateScan) p.open();
       int count = 0;
       while(s.next()) {
          // first, update the record
          Constant newval = data.newValue().evaluate(s);
-         Constant oldval = s.getVal(fldname);
+         Map<IndexInfo,Constant> oldkeys = new HashMap<>();
+         for (IndexInfo ii : indexes.keySet())
+            oldkeys.put(ii, ii.keyValue(s));
          s.setVal(data.targetField(), newval);
          
-         // then update the appropriate index, if it exists
-         if (idx != null) {
-            RID rid = s.getRid();
-            idx.delete(oldval, rid);
-            idx.insert(newval, rid);
+         // then replace the record's entry in the appropriate indexes
+         RID rid = s.getRid();
+         for (IndexInfo ii : indexes.keySet()) {
+            Index idx = indexes.get(ii);
+            idx.delete(oldkeys.get(ii), rid);
+            idx.insert(ii.keyValue(s), rid, ii.includedValues(s));
          }
          count++;
       }
-      if (idx != null) idx.close();
+      for (Index idx : indexes.values())
+         idx.close();
       s.close();
       return count;
    }
@@ -114,8 +120,45 @@ public class IndexUpdatePlanner implements UpdatePlanner {
       return 0;
    }
    
+   /**
+    * Creates the index and loads it with the records
+    * already in the table.
+    * A B-tree index is built bottom-up from the index records
+    * sorted by dataval; other indexes insert each record in turn.
+    */
    public int executeCreateIndex(CreateIndexData data, Transaction tx) {
-      mdm.createIndex(data.indexName(), data.tableName(), data.fieldName(), data.indexType(), tx);
+      String tblname = data.tableName();
+      mdm.createIndex(data.indexName(), tblname, data.fieldNames(),
+                      data.includeFields(), data.indexType(), tx);
+      IndexInfo ii = null;
+      for (IndexInfo info : mdm.getIndexes(tblname, tx))
+         if (info.getIndexName().equals(data.indexName()))
+            ii = info;
+      Plan tp = new TablePlan(tx, tblname, mdm);
+      Index idx = ii.open();
+      if (idx instanceof BTreeIndex) {
+         List<Expression> sortflds = new ArrayList<>();
+         for (String keyfld : ii.keyFields())
+            sortflds.add(new Expression(ii.indexColumn(keyfld)));
+         sortflds.add(new Expression("block"));
+         sortflds.add(new Expression("id"));
+         List<String> sortTypes = new ArrayList<>(Collections.nCopies(sortflds.size(), "asc"));
+         Sort sort = new Sort(sortflds, sortTypes);
+         Scan s = new SortPlan(tx, new IndexEntryPlan(tp, ii), sort).open();
+         ((BTreeIndex) idx).bulkLoad(s, BTreeIndex.FILL_FACTOR);
+         s.close();
+      }
+      else {
+         UpdateScan s = (UpdateScan) tp.open();
+         while (s.next())
+            idx.insert(ii.keyValue(s), s.getRid(), ii.includedValues(s));
+         s.close();
+      }
+      idx.close();
       return 0;
    }
+   
+   public int executeAnalyze(AnalyzeData data, Transaction tx) {
+      return mdm.analyze(data.tableName(), tx);
+   }
 }
@@ -0,0 +1,234 @@
+package simpledb.index.query;
+
+import java.util.*;
+
+import simpledb.index.Index;
+import simpledb.materialize.RecordComparator;
+import simpledb.record.RID;
+import simpledb.record.TableScan;
+import simpledb.query.*;
+
+/**
+ * The scan class for the batched version of the indexjoin
+ * relational algebra operator.
+ * Instead of searching the index once for each LHS record,
+ * the scan reads a batch of LHS records into memory and
+ * searches the index once for each distinct join value of
+ * the batch, in key order.
+ * The data records found are then fetched in the order of
+ * their RIDs, so that each block of the RHS table is read
+ * at most once per batch.
+ * The records of a batch are output in RID order rather than
+ * in the order of the LHS.
+ * Like IndexJoinScan, the scan implements the inner, left outer,
+ * semi and anti joins; the unmatched LHS records of a left or
+ * anti join are output after the matches of their batch.
+ */
+public class BatchedIndexJoinScan implements Scan {
+   private Scan lhs;
+   private Index idx;
+   private List<String> joinfields;
+   private String jointype;
+   private Predicate residual;
+   private TableScan rhs;
+   private int batchsize;
+   private List<String> lhsfields = new ArrayList<>();
+   private Map<String,Integer> positions = new HashMap<>();
+   private List<Constant[]> batch = new ArrayList<>();
+   private List<Probe> probes = new ArrayList<>();
+   private boolean[] matched = new boolean[0];
+   private int probe, rowpos, padpos, current;
+   private boolean lhsdone, padded;
+
+   /**
+    * A data record found by the index, together with the
+    * positions in the batch of the LHS records that it joins.
+    */
+   private static class Probe {
+      RID rid;
+      List<Integer> rows;
+
+      Probe(RID rid, List<Integer> rows) {
+         this.rid = rid;
+         this.rows = rows;
+      }
+   }
+
+   /**
+    * Creates a batched index join scan of the specified type
+    * for the specified LHS scan and RHS index.
+    * Records match if the index finds the RHS record for the
+    * LHS join value and they satisfy the residual predicate.
+    * @param lhs the LHS scan
+    * @param lhsfields the fields of the LHS scan
+    * @param idx the RHS index
+    * @param joinfields the LHS fields whose value is the search key
+    * @param rhs the RHS scan
+    * @param jointype one of "inner", "left", "semi" or "anti"
+    * @param residual the rest of the join predicate
+    * @param batchsize the number of LHS records in a batch
+    */
+   public BatchedIndexJoinScan(Scan lhs, Collection<String> lhsfields, Index idx, List<String> joinfields,
+                               TableScan rhs, String jointype, Predicate residual, int batchsize) {
+      this.lhs = lhs;
+      this.idx = idx;
+      this.joinfields = joinfields;
+      this.rhs = rhs;
+      this.jointype = jointype;
+      this.residual = residual;
+      this.batchsize = Math.max(1, batchsize);
+      for (String fldname : lhsfields) {
+         positions.put(fldname, this.lhsfields.size());
+         this.lhsfields.add(fldname);
+      }
+      beforeFirst();
+   }
+
+   /**
+    * Positions the scan before the first record.
+    * The first batch is read by the first call to next.
+    * @see simpledb.query.Scan#beforeFirst()
+    */
+   public void beforeFirst() {
+      lhs.beforeFirst();
+      lhsdone = false;
+      batch.clear();
+      probes.clear();
+      matched = new boolean[0];
+      probe = rowpos = padpos = 0;
+      padded = false;
+   }
+
+   /**
+    * Moves the scan to the next record.
+    * The method moves to the next LHS record of the current
+    * data record that satisfies the residual predicate;
+    * once the data records of the batch are done, it moves to
+    * the next unmatched LHS record of a left or anti join.
+    * A semi join outputs each LHS record at its first match,
+    * and an anti join only marks it as matched.
+    * Then the next batch is read; if there are no more
+    * LHS records, the method returns false.
+    * @see simpledb.query.Scan#next()
+    */
+   public boolean next() {
+      while (true) {
+         while (probe < probes.size()) {
+            List<Integer> rows = probes.get(probe).rows;
+            while (rowpos < rows.size()) {
+               current = rows.get(rowpos++);
+               boolean once = jointype.equals("semi") || jointype.equals("anti");
+               if ((once && matched[current]) || !residual.isSatisfied(this))
+                  continue;
+               matched[current] = true;
+               if (!jointype.equals("anti"))
+                  return true;
+            }
+            probe++;
+            rowpos = 0;
+            if (probe < probes.size())
+               rhs.moveToRid(probes.get(probe).rid);
+         }
+         if (jointype.equals("left") || jointype.equals("anti"))
+            while (padpos < batch.size()) {
+               current = padpos++;
+               if (!matched[current]) {
+                  padded = true;
+                  return true;
+               }
+            }
+         if (!nextBatch())
+            return false;
+      }
+   }
+
+   /**
+    * Returns the integer value of the specified field.
+    * @see simpledb.query.Scan#getInt(java.lang.String)
+    */
+   public int getInt(String fldname) {
+      return getVal(fldname).asInt();
+   }
+
+   /**
+    * Returns the Constant value of the specified field.
+    * The value of an LHS field comes from the current
+    * record of the batch.
+    * @see simpledb.query.Scan#getVal(java.lang.String)
+    */
+   public Constant getVal(String fldname) {
+      Integer pos = positions.get(fldname);
+      if (pos != null)
+         return batch.get(current)[pos];
+      return padded ? Constant.NULL : rhs.getVal(fldname);
+   }
+
+   /**
+    * Returns the string value of the specified field.
+    * @see simpledb.query.Scan#getString(java.lang.String)
+    */
+   public String getString(String fldname) {
+      return getVal(fldname).asString();
+   }
+
+   /** Returns true if the field is in the schema.
+     * @see simpledb.query.Scan#hasField(java.lang.String)
+     */
+   public boolean hasField(String fldname) {
+      if (jointype.equals("semi") || jointype.equals("anti"))
+         return positions.containsKey(fldname);
+      return positions.containsKey(fldname) || rhs.hasField(fldname);
+   }
+
+   /**
+    * Closes the scan by closing its LHS scan and its RHS index.
+    * @see simpledb.query.Scan#close()
+    */
+   public void close() {
+      lhs.close();
+      idx.close();
+      rhs.close();
+   }
+
+   /**
+    * Reads the next batch of LHS records into memory and
+    * groups them by their join value; a null join value
+    * matches nothing.
+    * The index is searched for each join value in key order,
+    * and the RIDs found are sorted by block and slot.
+    * Returns false if there are no more LHS records.
+    */
+   private boolean nextBatch() {
+      batch.clear();
+      probes.clear();
+      probe = rowpos = padpos = 0;
+      padded = false;
+      TreeMap<Constant,List<Integer>> groups = new TreeMap<>();
+      while (!lhsdone && batch.size() < batchsize) {
+         if (!lhs.next()) {
+            lhsdone = true;
+            break;
+         }
+         Constant[] row = new Constant[lhsfields.size()];
+         for (int i=0; i<row.length; i++)
+            row[i] = lhs.getVal(lhsfields.get(i));
+         Constant key = RecordComparator.keyValue(lhs, joinfields);
+         if (!key.isNull())
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(batch.size());
+         batch.add(row);
+      }
+      if (batch.isEmpty())
+         return false;
+      matched = new boolean[batch.size()];
+      for (Map.Entry<Constant,List<Integer>> e : groups.entrySet()) {
+         idx.beforeFirst(e.getKey());
+         while (idx.next())
+            probes.add(new Probe(idx.getDataRid(), e.getValue()));
+      }
+      probes.sort(Comparator.comparingInt((Probe p) -> p.rid.blockNumber())
+                            .thenComparingInt(p -> p.rid.slot()));
+      if (!probes.isEmpty())
+         rhs.moveToRid(probes.get(0).rid);
+      return true;
+   }
+}
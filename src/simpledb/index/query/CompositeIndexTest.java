@@ -0,0 +1,66 @@
+package simpledb.index.query;
+
+import java.io.File;
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.plan.*;
+import simpledb.query.*;
+import simpledb.parse.Parser;
+
+/**
+ * Select records through a two-column B-tree index, by the
+ * full key and by its first column alone, also after updates
+ * and deletions that change the indexed columns.
+ * Each query must use the index and return exactly the
+ * matching records.
+ */
+public class CompositeIndexTest {
+   public static void main(String[] args) {
+      deleteDir(new File("compositeindextest"));
+      SimpleDB db = new SimpleDB("compositeindextest");
+      Transaction tx = db.newTx();
+      Planner planner = db.planner();
+      planner.executeUpdate("create table T(A int, B varchar(9), C int)", tx);
+      Random r = new Random(29);
+      for (int i=0; i<1500; i++)
+         planner.executeUpdate("insert into T(A,B,C) values(" + r.nextInt(50) + ", 'b"
+               + r.nextInt(20) + "', " + i + ")", tx);
+      planner.executeUpdate("create index TAB on T(A, B) using btree", tx);
+      planner.executeUpdate("update T set B = 'b3' where C < 100", tx);
+      planner.executeUpdate("delete from T where C >= 1400", tx);
+      tx.commit();
+
+      tx = db.newTx();
+      boolean ok = true;
+      String[] preds = {"A = 7 and B = 'b3'", "B = 'b11' and A = 42", "A = 13", "A = 60"};
+      for (String pred : preds) {
+         Plan p = planner.createQueryPlan("select C from T where " + pred, tx);
+         Plan scan = new SelectPlan(new TablePlan(tx, "t", db.mdMgr()), new Parser(pred).predicate());
+         List<Integer> found = values(p), expected = values(scan);
+         if (!found.equals(expected) || !p.toString().contains("Index")) {
+            System.out.println(pred + ": " + found.size() + " records instead of " + expected.size() + " by " + p);
+            ok = false;
+         }
+      }
+      tx.commit();
+      System.out.println(ok ? "composite index ok" : "composite index FAILED");
+   }
+
+   private static List<Integer> values(Plan p) {
+      List<Integer> vals = new ArrayList<>();
+      Scan s = p.open();
+      while (s.next())
+         vals.add(s.getInt("c"));
+      s.close();
+      Collections.sort(vals);
+      return vals;
+   }
+
+   private static void deleteDir(File f) {
+      if (f.isDirectory())
+         for (File child : f.listFiles())
+            deleteDir(child);
+      f.delete();
+   }
+}
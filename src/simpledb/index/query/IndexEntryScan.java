@@ -0,0 +1,73 @@
+package simpledb.index.query;
+
+import java.util.*;
+import simpledb.query.*;
+import simpledb.metadata.IndexInfo;
+
+/**
+ * The scan class corresponding to the index entry plan.
+ * Each record of the underlying table scan is presented
+ * as an index record, having the fields
+ * "dataval", "block" and "id", and a field
+ * for each other key field and included field of the index.
+ */
+public class IndexEntryScan implements Scan {
+   private UpdateScan s;
+   private IndexInfo ii;
+   private Map<String,String> tblflds = new HashMap<>();
+   
+   /**
+    * Creates an index entry scan for the specified
+    * table scan and index.
+    * @param s the table scan
+    * @param ii information about the index
+    */
+   public IndexEntryScan(UpdateScan s, IndexInfo ii) {
+      this.s = s;
+      this.ii = ii;
+      for (String tblfld : ii.coveredSchema().fields())
+         tblflds.put(ii.indexColumn(tblfld), tblfld);
+   }
+   
+   public void beforeFirst() {
+      s.beforeFirst();
+   }
+   
+   public boolean next() {
+      return s.next();
+   }
+   
+   public int getInt(String fname) {
+      return getVal(fname).asInt();
+   }
+   
+   public String getString(String fname) {
+      return getVal(fname).asString();
+   }
+   
+   /**
+    * Returns the components of the current
+    * record's RID for the block and id,
+    * and the value of the corresponding table field
+    * for the dataval and every other field.
+    * @see simpledb.query.Scan#getVal(java.lang.String)
+    */
+   public Constant getVal(String fname) {
+      if (fname.equals("block"))
+         return new Constant(s.getRid().blockNumber());
+      else if (fname.equals("id"))
+         return new Constant(s.getRid().slot());
+      else if (tblflds.containsKey(fname))
+         return s.getVal(tblflds.get(fname));
+      else
+         throw new RuntimeException("field " + fname + " not found.");
+   }
+   
+   public boolean hasField(String fname) {
+      return ii.getIndexLayout().schema().hasField(fname);
+   }
+   
+   public void close() {
+      s.close();
+   }
+}
@@ -1,6 +1,9 @@
 package simpledb.index.query;
 
+import java.util.*;
+
 import simpledb.index.Index;
+import simpledb.materialize.RecordComparator;
 import simpledb.record.TableScan;
 import simpledb.query.*;
 
@@ -10,13 +13,22 @@ import simpledb.query.*;
  * The code is very similar to that of ProductScan, 
  * which makes sense because an index join is essentially
  * the product of each LHS record with the matching RHS index records.
+ * The scan also implements the left outer join, which outputs
+ * an unmatched LHS record with null RHS fields, the semi join,
+ * which outputs each matched LHS record once,
+ * and the anti join, which outputs the unmatched LHS records.
+ * The search key of a multi-column index is the composite
+ * value of several LHS join fields.
  * @author Edward Sciore
  */
 public class IndexJoinScan implements Scan {
    private Scan lhs;
    private Index idx;
-   private String joinfield;
+   private List<String> joinfields;
+   private String jointype;
+   private Predicate residual;
    private TableScan rhs;  
+   private boolean searching, nullkey, matched, padded;
    
    /**
     * Creates an index join scan for the specified LHS scan and 
@@ -27,39 +39,75 @@ public class IndexJoinScan implements Scan {
     * @param rhs the RHS scan
     */
    public IndexJoinScan(Scan lhs, Index idx, String joinfield, TableScan rhs) {
+      this(lhs, idx, Arrays.asList(joinfield), rhs, "inner", new Predicate());
+   }
+   
+   /**
+    * Creates an index join scan of the specified type
+    * for the specified LHS scan and RHS index.
+    * Records match if the index finds the RHS record for the
+    * LHS join value and they satisfy the residual predicate.
+    * @param lhs the LHS scan
+    * @param idx the RHS index
+    * @param joinfields the LHS fields whose value is the search key
+    * @param rhs the RHS scan
+    * @param jointype one of "inner", "left", "semi" or "anti"
+    * @param residual the rest of the join predicate
+    */
+   public IndexJoinScan(Scan lhs, Index idx, List<String> joinfields, TableScan rhs,
+                        String jointype, Predicate residual) {
       this.lhs = lhs;
       this.idx  = idx;
-      this.joinfield = joinfield;
+      this.joinfields = joinfields;
       this.rhs = rhs;
+      this.jointype = jointype;
+      this.residual = residual;
       beforeFirst();
    }
    
    /**
     * Positions the scan before the first record.
-    * That is, the LHS scan will be positioned at its
-    * first record, and the index will be positioned
-    * before the first record for the join value.
+    * That is, the LHS scan will be positioned before its
+    * first record, which is read by the first call to next.
     * @see simpledb.query.Scan#beforeFirst()
     */
    public void beforeFirst() {
       lhs.beforeFirst();
-      lhs.next();
-      resetIndex();
+      searching = false;
    }
    
    /**
     * Moves the scan to the next record.
-    * The method moves to the next index record, if possible.
-    * Otherwise, it moves to the next LHS record and the
-    * first index record.
+    * The method moves to the next index record whose data record
+    * satisfies the residual predicate, if possible.
+    * Otherwise, after an unmatched LHS record is output
+    * by a left or anti join, it moves to the next LHS record
+    * and the first index record.
+    * A semi join moves on after the first match, and an anti join
+    * after the first match without outputting it.
     * If there are no more LHS records, the method returns false.
     * @see simpledb.query.Scan#next()
     */
    public boolean next() {
       while (true) {
-         if (idx.next()) {
-            rhs.moveToRid(idx.getDataRid());
-            return true;
+         if (searching) {
+            while (!nullkey && idx.next()) {
+               rhs.moveToRid(idx.getDataRid());
+               if (!residual.isSatisfied(this))
+                  continue;
+               matched = true;
+               if (jointype.equals("inner") || jointype.equals("left"))
+                  return true;
+               searching = false;
+               if (jointype.equals("semi"))
+                  return true;
+               break;
+            }
+            searching = false;
+            if (!matched && (jointype.equals("left") || jointype.equals("anti"))) {
+               padded = true;
+               return true;
+            }
          }
          if (!lhs.next())
             return false;
@@ -72,8 +120,8 @@ public class IndexJoinScan implements Scan {
     * @see simpledb.query.Scan#getVal(java.lang.String)
     */
    public int getInt(String fldname) {
-      if (rhs.hasField(fldname))
-         return rhs.getInt(fldname);
+      if (fromRhs(fldname))
+         return padded ? 0 : rhs.getInt(fldname);
       else  
          return lhs.getInt(fldname);
    }
@@ -83,8 +131,8 @@ public class IndexJoinScan implements Scan {
     * @see simpledb.query.Scan#getVal(java.lang.String)
     */
    public Constant getVal(String fldname) {
-      if (rhs.hasField(fldname))
-         return rhs.getVal(fldname);
+      if (fromRhs(fldname))
+         return padded ? Constant.NULL : rhs.getVal(fldname);
       else
          return lhs.getVal(fldname);
    }
@@ -94,8 +142,8 @@ public class IndexJoinScan implements Scan {
     * @see simpledb.query.Scan#getVal(java.lang.String)
     */
    public String getString(String fldname) {
-      if (rhs.hasField(fldname))
-         return rhs.getString(fldname);
+      if (fromRhs(fldname))
+         return padded ? null : rhs.getString(fldname);
       else
          return lhs.getString(fldname);
    }
@@ -104,6 +152,8 @@ public class IndexJoinScan implements Scan {
      * @see simpledb.query.Scan#hasField(java.lang.String)
      */
    public boolean hasField(String fldname) {
+      if (jointype.equals("semi") || jointype.equals("anti"))
+         return lhs.hasField(fldname);
       return rhs.hasField(fldname) || lhs.hasField(fldname);
    }
    
@@ -117,8 +167,24 @@ public class IndexJoinScan implements Scan {
       rhs.close();
    }
 
+   /**
+    * Return true if the value of the field comes from the RHS,
+    * which is not output by a semi or anti join.
+    */
+   private boolean fromRhs(String fldname) {
+      if (jointype.equals("semi") || jointype.equals("anti"))
+         return !lhs.hasField(fldname);
+      return rhs.hasField(fldname);
+   }
+
    private void resetIndex() {
-      Constant searchkey = lhs.getVal(joinfield);
-      idx.beforeFirst(searchkey);
+      matched = false;
+      padded = false;
+      searching = true;
+      Constant searchkey = RecordComparator.keyValue(lhs, joinfields);
+      // a null join value matches nothing
+      nullkey = searchkey.isNull();
+      if (!nullkey)
+         idx.beforeFirst(searchkey);
    }
 }
@@ -0,0 +1,79 @@
+package simpledb.index.query;
+
+import simpledb.index.btree.BTreeIndex;
+import simpledb.metadata.IndexInfo;
+import simpledb.query.*;
+
+/**
+ * The scan class corresponding to the index-only plan.
+ * The field values are read from the leaf records
+ * of a covering B-tree index, without accessing
+ * the data table.
+ */
+public class IndexOnlyScan implements Scan {
+   private BTreeIndex idx;
+   private IndexInfo ii;
+   private Range range;
+   
+   /**
+    * Creates an index-only scan for the specified
+    * index and range.
+    * @param idx the B-tree index
+    * @param ii information about the index
+    * @param range the range of the indexed field
+    */
+   public IndexOnlyScan(BTreeIndex idx, IndexInfo ii, Range range) {
+      this.idx = idx;
+      this.ii = ii;
+      this.range = range;
+      beforeFirst();
+   }
+   
+   /**
+    * Positions the scan before the first index record
+    * in the range.
+    * @see simpledb.query.Scan#beforeFirst()
+    */
+   public void beforeFirst() {
+      idx.beforeFirst(range);
+   }
+   
+   /**
+    * Moves the index to the next record in the range.
+    * @see simpledb.query.Scan#next()
+    */
+   public boolean next() {
+      return idx.next();
+   }
+   
+   public int getInt(String fldname) {
+      return getVal(fldname).asInt();
+   }
+   
+   public String getString(String fldname) {
+      return getVal(fldname).asString();
+   }
+   
+   /**
+    * Returns the value of the specified field,
+    * as held in the current index record.
+    * @see simpledb.query.Scan#getVal(java.lang.String)
+    */
+   public Constant getVal(String fldname) {
+      if (!hasField(fldname))
+         throw new RuntimeException("field " + fldname + " not found.");
+      return idx.getVal(ii.indexColumn(fldname));
+   }
+   
+   public boolean hasField(String fldname) {
+      return ii.dependsOn(fldname);
+   }
+   
+   /**
+    * Closes the scan by closing the index.
+    * @see simpledb.query.Scan#close()
+    */
+   public void close() {
+      idx.close();
+   }
+}
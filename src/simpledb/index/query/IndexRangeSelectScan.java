@@ -0,0 +1,81 @@
+package simpledb.index.query;
+
+import simpledb.record.RID;
+import simpledb.index.btree.BTreeIndex;
+import simpledb.record.TableScan;
+import simpledb.query.*;
+
+/**
+ * The scan class corresponding to the select relational
+ * algebra operator, for a range of values of an indexed field.
+ * The B-tree index returns the matching records in
+ * sorted order of the indexed field.
+ */
+public class IndexRangeSelectScan implements Scan {
+   private TableScan ts;
+   private BTreeIndex idx;
+   private Range range;
+   
+   /**
+    * Creates an index select scan for the specified
+    * index and range.
+    * @param ts the table scan of the data table
+    * @param idx the B-tree index
+    * @param range the range of the indexed field
+    */
+   public IndexRangeSelectScan(TableScan ts, BTreeIndex idx, Range range) {
+      this.ts  = ts;
+      this.idx = idx;
+      this.range = range;
+      beforeFirst();
+   }
+   
+   /**
+    * Positions the scan before the first record,
+    * which in this case means positioning the index
+    * before the first key of the range.
+    * @see simpledb.query.Scan#beforeFirst()
+    */
+   public void beforeFirst() {
+      idx.beforeFirst(range);
+   }
+   
+   /**
+    * Moves the index to the next record in the range,
+    * and the tablescan to the corresponding data record.
+    * @see simpledb.query.Scan#next()
+    */
+   public boolean next() {
+      boolean ok = idx.next();
+      if (ok) {
+         RID rid = idx.getDataRid();
+         ts.moveToRid(rid);
+      }
+      return ok;
+   }
+   
+   public int getInt(String fldname) {
+      return ts.getInt(fldname);
+   }
+   
+   public String getString(String fldname) {
+      return ts.getString(fldname);
+   }
+   
+   public Constant getVal(String fldname) {
+      return ts.getVal(fldname);
+   }
+   
+   public boolean hasField(String fldname) {
+      return ts.hasField(fldname);
+   }
+   
+   /**
+    * Closes the scan by closing the index and the tablescan.
+    * @see simpledb.query.Scan#close()
+    */
+   public void close() {
+      idx.close();
+      ts.close();
+   }
+}
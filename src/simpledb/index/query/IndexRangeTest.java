@@ -0,0 +1,96 @@
+package simpledb.index.query;
+
+import java.io.File;
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.plan.*;
+import simpledb.query.*;
+import simpledb.record.TableScan;
+import simpledb.index.btree.BTreeIndex;
+import simpledb.index.planner.IndexRangeSelectPlan;
+import simpledb.metadata.IndexInfo;
+import simpledb.parse.Parser;
+
+/**
+ * Select records by ranges of an indexed field, and scan the
+ * whole index in key order along its chain of leaves.
+ * Each range, read through the index and by the plan the
+ * planner chooses, must return exactly the records whose value
+ * lies in it.
+ */
+public class IndexRangeTest {
+   public static void main(String[] args) {
+      deleteDir(new File("indexrangetest"));
+      SimpleDB db = new SimpleDB("indexrangetest");
+      Transaction tx = db.newTx();
+      Planner planner = db.planner();
+      planner.executeUpdate("create table T(A int, B varchar(9))", tx);
+      planner.executeUpdate("create index TA on T(A) using btree", tx);
+      List<Integer> vals = new ArrayList<>();
+      Random r = new Random(27);
+      for (int i=0; i<2000; i++) {
+         int a = r.nextInt(1000);
+         planner.executeUpdate("insert into T(A,B) values(" + a + ", 'b" + i + "')", tx);
+         vals.add(a);
+      }
+      tx.commit();
+
+      tx = db.newTx();
+      boolean ok = true;
+      String[] preds = {"A < 5", "A > 990", "A <= 20", "A >= 985", "A > 100 and A <= 110", "120 > A and A >= 117"};
+      int[][] bounds = {{0, 4}, {991, 999}, {0, 20}, {985, 999}, {101, 110}, {117, 119}};
+      IndexInfo ii = db.mdMgr().getIndexInfo("t", tx).get("a");
+      for (int i=0; i<preds.length; i++) {
+         Range range = new Parser(preds[i]).predicate().rangeOn("a");
+         Plan indexplan = new IndexRangeSelectPlan(new TablePlan(tx, "t", db.mdMgr()), ii, range, "t");
+         Plan chosen = planner.createQueryPlan("select A from T where " + preds[i], tx);
+         for (Plan p : new Plan[] {indexplan, chosen}) {
+            Scan s = p.open();
+            int n = 0;
+            while (s.next()) {
+               int a = s.getInt("a");
+               if (a < bounds[i][0] || a > bounds[i][1])
+                  ok = false;
+               n++;
+            }
+            s.close();
+            int lo = bounds[i][0], hi = bounds[i][1];
+            long expected = vals.stream().filter(v -> v >= lo && v <= hi).count();
+            if (n != expected) {
+               System.out.println(preds[i] + ": " + n + " records instead of " + expected + " by " + p);
+               ok = false;
+            }
+         }
+      }
+
+      // an unbounded range scans every leaf in key order
+      BTreeIndex idx = (BTreeIndex) db.mdMgr().getIndexInfo("t", tx).get("a").open();
+      TableScan ts = (TableScan) new TablePlan(tx, "t", db.mdMgr()).open();
+      idx.beforeFirst(new Range(null, false, null, false));
+      int n = 0, prev = -1;
+      while (idx.next()) {
+         ts.moveToRid(idx.getDataRid());
+         int a = ts.getInt("a");
+         if (a < prev)
+            ok = false;
+         prev = a;
+         n++;
+      }
+      idx.close();
+      ts.close();
+      if (n != vals.size()) {
+         System.out.println("full scan found " + n + " records instead of " + vals.size());
+         ok = false;
+      }
+      tx.commit();
+      System.out.println(ok ? "index range ok" : "index range FAILED");
+   }
+
+   private static void deleteDir(File f) {
+      if (f.isDirectory())
+         for (File child : f.listFiles())
+            deleteDir(child);
+      f.delete();
+   }
+}
@@ -0,0 +1,112 @@
+package simpledb.materialize;
+
+import java.io.File;
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.plan.*;
+import simpledb.query.*;
+
+/**
+ * Aggregate a table into two partial states, merge them, and
+ * compare the result with aggregating the whole table at once.
+ * Then group the table by hashing, with memory budgets small
+ * enough to spill: with plain aggregates, whose partial states
+ * are smaller than the wide records of the table and so are
+ * spilled and merged, and with DISTINCT aggregates.
+ * Every group must have the aggregates of its values.
+ */
+public class AggregateStateTest {
+   public static void main(String[] args) {
+      deleteDir(new File("aggregatestatetest"));
+      SimpleDB db = new SimpleDB("aggregatestatetest");
+      Transaction tx = db.newTx();
+      Planner planner = db.planner();
+      planner.executeUpdate("create table T(A int, C int, D varchar(60))", tx);
+      Map<Integer,List<Integer>> values = new TreeMap<>();
+      Random r = new Random(38);
+      for (int i=0; i<2000; i++) {
+         int a = r.nextInt(200), c = r.nextInt(30) - 10;
+         planner.executeUpdate("insert into T(A,C,D) values(" + a + ", " + c + ", 'd" + i + "')", tx);
+         values.computeIfAbsent(a, k -> new ArrayList<>()).add(c);
+      }
+      tx.commit();
+
+      tx = db.newTx();
+      boolean ok = true;
+      Plan tp = new TablePlan(tx, "t", db.mdMgr());
+      AggregationFn[] fns = {new CountFn("c"), new SumFn("c"), new MinFn("c"),
+            new MaxFn("c"), new AvgFn("c")};
+      for (AggregationFn fn : fns) {
+         int size = fn.stateSize();
+         long[] state = new long[2 * size];
+         fn.init(state, 0);
+         fn.init(state, size);
+         Scan s = tp.open();
+         s.next();
+         fn.processFirst(s);
+         fn.accumulate(state, 0, s);
+         for (int i=1; s.next(); i++) {
+            fn.processNext(s);
+            fn.accumulate(state, (i % 2) * size, s);
+         }
+         s.close();
+         fn.merge(state, 0, state, size);
+         if (!fn.finalValue(state, 0).equals(fn.value())) {
+            System.out.println(fn.fieldName() + " merges to " + fn.finalValue(state, 0)
+                  + " instead of " + fn.value());
+            ok = false;
+         }
+      }
+      tx.commit();
+
+      int budget = SimpleDB.MEMORY_BUDGET;
+      for (int mem : new int[] {budget, 200, 1}) {
+         SimpleDB.MEMORY_BUDGET = mem;
+         tx = db.newTx();
+         HashGroupByPlan p = new HashGroupByPlan(tx, new TablePlan(tx, "t", db.mdMgr()),
+               Arrays.asList("a"), Arrays.asList(new CountFn("c"), new SumFn("c")));
+         ok = p.spillsStates() && check(p, values, mem, tx) && ok;
+         p = new HashGroupByPlan(tx, new TablePlan(tx, "t", db.mdMgr()), Arrays.asList("a"),
+               Arrays.asList(new DistinctAggFn(new CountFn("c")), new DistinctAggFn(new SumFn("c"))));
+         Map<Integer,List<Integer>> distinct = new TreeMap<>();
+         for (Map.Entry<Integer,List<Integer>> e : values.entrySet())
+            distinct.put(e.getKey(), new ArrayList<>(new HashSet<>(e.getValue())));
+         ok = check(p, distinct, mem, tx) && ok;
+         tx.commit();
+      }
+      SimpleDB.MEMORY_BUDGET = budget;
+      System.out.println(ok ? "aggregate state ok" : "aggregate state FAILED");
+   }
+
+   private static boolean check(Plan p, Map<Integer,List<Integer>> values, int mem, Transaction tx) {
+      boolean ok = true;
+      int groups = 0;
+      Scan s = p.open();
+      while (s.next()) {
+         List<Integer> vals = values.get(s.getInt("a"));
+         int sum = vals.stream().mapToInt(Integer::intValue).sum();
+         if (s.getInt("count(c)") != vals.size() || s.getInt("sum(c)") != sum) {
+            System.out.println("group " + s.getInt("a") + " has " + s.getInt("count(c)")
+                  + " values summing to " + s.getInt("sum(c)")
+                  + " instead of " + vals.size() + " and " + sum + " by " + p);
+            ok = false;
+         }
+         groups++;
+      }
+      s.close();
+      if (groups != values.size() || tx.availableBuffs() != SimpleDB.BUFFER_SIZE) {
+         System.out.println(groups + " groups instead of " + values.size()
+               + " with a budget of " + mem + ", " + tx.availableBuffs() + " buffers available");
+         ok = false;
+      }
+      return ok;
+   }
+
+   private static void deleteDir(File f) {
+      if (f.isDirectory())
+         for (File child : f.listFiles())
+            deleteDir(child);
+      f.delete();
+   }
+}
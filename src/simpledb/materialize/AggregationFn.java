@@ -1,6 +1,7 @@
 package simpledb.materialize;
 
 import simpledb.query.*;
+import simpledb.record.Schema;
 
 /**
  * The interface implemented by aggregation functions.
@@ -41,6 +42,60 @@ public interface AggregationFn extends Field {
     */
    Constant value();
 
+   /**
+    * Return the number of long slots in the partial state
+    * of the function.
+    * A partial state is the aggregation of some records of a group;
+    * partial states of the same group can be merged, so that a
+    * group may be aggregated in separate stages.
+    * The state of each group is held by the caller,
+    * at the specified position of a long array.
+    * @return the number of slots in the partial state
+    */
+   int stateSize();
+
+   /**
+    * Return true if the function can keep its partial state
+    * in long slots for input records of the specified schema.
+    * @param sch the schema of the aggregated records
+    * @return true if the partial state methods can be used
+    */
+   boolean hasPartialState(Schema sch);
+
+   /**
+    * Set the partial state to that of an empty group.
+    * @param state the array holding the partial state
+    * @param pos the position of the state in the array
+    */
+   void init(long[] state, int pos);
+
+   /**
+    * Add the current record of the specified scan
+    * to the partial state.
+    * @param state the array holding the partial state
+    * @param pos the position of the state in the array
+    * @param s the scan to aggregate over
+    */
+   void accumulate(long[] state, int pos, Scan s);
+
+   /**
+    * Add another partial state of the same group
+    * to the partial state.
+    * @param state the array holding the partial state
+    * @param pos the position of the state in the array
+    * @param other the array holding the other partial state
+    * @param otherpos the position of the other state in its array
+    */
+   void merge(long[] state, int pos, long[] other, int otherpos);
+
+   /**
+    * Return the aggregation value of the partial state.
+    * @param state the array holding the partial state
+    * @param pos the position of the state in the array
+    * @return the computed aggregation value
+    */
+   Constant finalValue(long[] state, int pos);
+
    /**
     * Return a string containing the type of aggregate function
     * @return a string containing the type of aggregate function
@@ -0,0 +1,98 @@
+package simpledb.materialize;
+
+import java.io.File;
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.plan.*;
+import simpledb.query.*;
+
+/**
+ * Estimate the number of distinct values and two percentiles
+ * of each group of a table, where the groups range from a few
+ * distinct values to nearly all distinct.
+ * The estimates must be close to the exact values, also when
+ * a tiny memory budget spills the sketches and merges them;
+ * the distinct counts must then be the same as without spilling.
+ */
+public class ApproxAggregateTest {
+   public static void main(String[] args) {
+      deleteDir(new File("approxaggregatetest"));
+      SimpleDB db = new SimpleDB("approxaggregatetest");
+      Transaction tx = db.newTx();
+      Planner planner = db.planner();
+      planner.executeUpdate("create table T(A int, C int)", tx);
+      int[] domains = {50, 500, 5000, 1000000};
+      List<List<Integer>> values = new ArrayList<>();
+      for (int a=0; a<domains.length; a++)
+         values.add(new ArrayList<>());
+      Random r = new Random(39);
+      for (int i=0; i<6000; i++) {
+         int a = r.nextInt(domains.length), c = r.nextInt(domains[a]);
+         planner.executeUpdate("insert into T(A,C) values(" + a + ", " + c + ")", tx);
+         values.get(a).add(c);
+      }
+      tx.commit();
+      for (List<Integer> vals : values)
+         Collections.sort(vals);
+
+      boolean ok = true;
+      Map<Integer,Integer> unspilled = new HashMap<>();
+      int budget = SimpleDB.MEMORY_BUDGET;
+      for (int mem : new int[] {budget, 1}) {
+         SimpleDB.MEMORY_BUDGET = mem;
+         tx = db.newTx();
+         List<AggregationFn> aggfns = Arrays.asList(new ApproxCountDistinctFn("c"),
+               new ApproxPercentileFn("c", 50), new ApproxPercentileFn("c", 90));
+         Plan p = new HashGroupByPlan(tx, new TablePlan(tx, "t", db.mdMgr()),
+               Arrays.asList("a"), aggfns);
+         Scan s = p.open();
+         while (s.next()) {
+            int a = s.getInt("a");
+            List<Integer> vals = values.get(a);
+            int exact = new HashSet<>(vals).size();
+            int estimate = s.getInt("approx_count_distinct(c)");
+            if (Math.abs(estimate - exact) > 0.1 * exact) {
+               System.out.println("group " + a + " has about " + estimate + " distinct values instead of " + exact);
+               ok = false;
+            }
+            if (mem == budget)
+               unspilled.put(a, estimate);
+            else if (unspilled.get(a) != estimate) {
+               System.out.println("group " + a + " spilled has about " + estimate
+                     + " distinct values instead of " + unspilled.get(a));
+               ok = false;
+            }
+            for (int pct : new int[] {50, 90}) {
+               int v = s.getInt("approx_percentile(c," + pct + ")");
+               // the fraction of values up to the estimate
+               double rank = (double) upperBound(vals, v) / vals.size();
+               if (Math.abs(rank - pct / 100.0) > 0.05) {
+                  System.out.println("group " + a + " has " + pct + "th percentile " + v
+                        + ", at the " + Math.round(100 * rank) + "th");
+                  ok = false;
+               }
+            }
+         }
+         s.close();
+         tx.commit();
+      }
+      SimpleDB.MEMORY_BUDGET = budget;
+      ok = ok && unspilled.size() == domains.length;
+      System.out.println(ok ? "approximate aggregates ok" : "approximate aggregates FAILED");
+   }
+
+   private static int upperBound(List<Integer> sorted, int v) {
+      int n = 0;
+      while (n < sorted.size() && sorted.get(n) <= v)
+         n++;
+      return n;
+   }
+
+   private static void deleteDir(File f) {
+      if (f.isDirectory())
+         for (File child : f.listFiles())
+            deleteDir(child);
+      f.delete();
+   }
+}
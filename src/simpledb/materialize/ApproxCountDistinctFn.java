@@ -0,0 +1,170 @@
+package simpledb.materialize;
+
+import simpledb.query.*;
+import simpledb.record.Schema;
+
+/**
+ * The <i>approx_count_distinct</i> aggregation function,
+ * which estimates the number of distinct values of a field
+ * with a HyperLogLog sketch.
+ * The sketch has 2^PRECISION registers of 6 bits,
+ * packed ten to a long, so each group uses a fixed
+ * amount of memory however many values it has;
+ * the standard error of the estimate is about 1.04/sqrt(2^PRECISION).
+ */
+public class ApproxCountDistinctFn implements AggregationFn {
+   public static final int PRECISION = 10;
+   private static final int NUMREGS = 1 << PRECISION;
+   private static final int REGS_PER_SLOT = 10;
+   private static final int NUMSLOTS = (NUMREGS + REGS_PER_SLOT - 1) / REGS_PER_SLOT;
+   private String fldname;
+   private long[] state = new long[NUMSLOTS];
+
+   /**
+    * Create an approximate distinct count function for the specified field.
+    * @param fldname the name of the aggregated field
+    */
+   public ApproxCountDistinctFn(String fldname) {
+      this.fldname = fldname;
+   }
+
+   /**
+    * Start a new sketch holding the field value
+    * of the current record.
+    * @see simpledb.materialize.AggregationFn#processFirst(simpledb.query.Scan)
+    */
+   public void processFirst(Scan s) {
+      init(state, 0);
+      accumulate(state, 0, s);
+   }
+
+   /**
+    * Add the field value of the current record to the sketch.
+    * @see simpledb.materialize.AggregationFn#processNext(simpledb.query.Scan)
+    */
+   public void processNext(Scan s) {
+      accumulate(state, 0, s);
+   }
+
+   /**
+    * Return the field's name, prepended by "approx_count_distinct(" and appended with ")".
+    * @see simpledb.materialize.AggregationFn#fieldName()
+    */
+   public String fieldName() {
+      return "approx_count_distinct(" + fldname + ")";
+   }
+
+   /**
+    * Return the field's original name
+    * @see simpledb.materialize.AggregationFn#fieldName()
+    */
+   public String originalFieldName() {return fldname;}
+
+   /**
+    * Return the current estimate.
+    * @see simpledb.materialize.AggregationFn#value()
+    */
+   public Constant value() {
+      return finalValue(state, 0);
+   }
+
+   /**
+    * Return the number of long slots holding the registers.
+    * @see simpledb.materialize.AggregationFn#stateSize()
+    */
+   public int stateSize() {
+      return NUMSLOTS;
+   }
+
+   /**
+    * Return true, since values of any type can be hashed.
+    * @see simpledb.materialize.AggregationFn#hasPartialState(simpledb.record.Schema)
+    */
+   public boolean hasPartialState(Schema sch) {
+      return true;
+   }
+
+   /**
+    * Start an empty sketch, with every register zero.
+    * @see simpledb.materialize.AggregationFn#init(long[], int)
+    */
+   public void init(long[] state, int pos) {
+      for (int i=0; i<NUMSLOTS; i++)
+         state[pos+i] = 0;
+   }
+
+   /**
+    * Hash the field value of the current record, unless it is null.
+    * The high bits of the hash choose a register, which is raised
+    * to the position of the first one bit in the remaining bits.
+    * A sketch of only null values thus estimates 0.
+    * @see simpledb.materialize.AggregationFn#accumulate(long[], int, simpledb.query.Scan)
+    */
+   public void accumulate(long[] state, int pos, Scan s) {
+      Constant val = s.getVal(fldname);
+      if (val.isNull())
+         return;
+      long h = val.hash64();
+      int reg = (int) (h >>> (64 - PRECISION));
+      int rank = Long.numberOfLeadingZeros(h << PRECISION) + 1;
+      if (rank > 64 - PRECISION)
+         rank = 64 - PRECISION + 1;
+      if (rank > register(state, pos, reg))
+         setRegister(state, pos, reg, rank);
+   }
+
+   /**
+    * Merge the other sketch into this one,
+    * by taking the maximum of each register.
+    * @see simpledb.materialize.AggregationFn#merge(long[], int, long[], int)
+    */
+   public void merge(long[] state, int pos, long[] other, int otherpos) {
+      for (int reg=0; reg<NUMREGS; reg++) {
+         int r = register(other, otherpos, reg);
+         if (r > register(state, pos, reg))
+            setRegister(state, pos, reg, r);
+      }
+   }
+
+   /**
+    * Return the HyperLogLog estimate of the sketch,
+    * using linear counting when the estimate is small
+    * and some registers are still zero.
+    * @see simpledb.materialize.AggregationFn#finalValue(long[], int)
+    */
+   public Constant finalValue(long[] state, int pos) {
+      double sum = 0;
+      int zeros = 0;
+      for (int reg=0; reg<NUMREGS; reg++) {
+         int r = register(state, pos, reg);
+         sum += Math.scalb(1.0, -r);
+         if (r == 0)
+            zeros++;
+      }
+      double alpha = 0.7213 / (1 + 1.079 / NUMREGS);
+      double estimate = alpha * NUMREGS * NUMREGS / sum;
+      if (estimate <= 2.5 * NUMREGS && zeros > 0)
+         estimate = NUMREGS * Math.log((double) NUMREGS / zeros);
+      return new Constant((int) Math.round(estimate));
+   }
+
+   @Override
+   public boolean isAggregate() {
+      return true;
+   }
+
+   public String toString(){ return "ApproxCountDistinct {" +  originalFieldName() + "}";}
+
+   public String toStringDistinct(){ return toString();}
+
+   private static int register(long[] state, int pos, int reg) {
+      long slot = state[pos + reg / REGS_PER_SLOT];
+      return (int) (slot >>> (6 * (reg % REGS_PER_SLOT))) & 0x3F;
+   }
+
+   private static void setRegister(long[] state, int pos, int reg, int val) {
+      int i = pos + reg / REGS_PER_SLOT;
+      int shift = 6 * (reg % REGS_PER_SLOT);
+      state[i] = (state[i] & ~(0x3FL << shift)) | ((long) val << shift);
+   }
+}
@@ -0,0 +1,236 @@
+package simpledb.materialize;
+
+import java.util.*;
+import simpledb.query.*;
+import simpledb.record.Schema;
+import static java.sql.Types.INTEGER;
+
+/**
+ * The <i>approx_percentile</i> aggregation function,
+ * which estimates a percentile of an integer field
+ * with a KLL-style quantile sketch.
+ * The sketch is a stack of LEVELS compactors of K values each;
+ * a value at level h stands for 2^h input values.
+ * When a compactor fills, its values are sorted and every
+ * other one (alternately the odd or even ones) is moved up a level,
+ * so each group uses a fixed amount of memory.
+ * Values reaching a full top level are compacted into it,
+ * which loses weight only after K * 2^LEVELS values.
+ */
+public class ApproxPercentileFn implements AggregationFn {
+   public static final int K = 64;
+   public static final int LEVELS = 20;
+   private static final int ITEMS = 1 + LEVELS;
+   private static final int NUMSLOTS = ITEMS + LEVELS * K / 2;
+   private String fldname;
+   private int percent;
+   private long[] state = new long[NUMSLOTS];
+
+   /**
+    * Create an approximate percentile function for the specified field.
+    * @param fldname the name of the aggregated field
+    * @param percent the percentile, from 0 to 100
+    */
+   public ApproxPercentileFn(String fldname, int percent) {
+      if (percent < 0 || percent > 100)
+         throw new IllegalArgumentException("percentile must be between 0 and 100");
+      this.fldname = fldname;
+      this.percent = percent;
+   }
+
+   /**
+    * Start a new sketch holding the field value
+    * of the current record.
+    * @see simpledb.materialize.AggregationFn#processFirst(simpledb.query.Scan)
+    */
+   public void processFirst(Scan s) {
+      init(state, 0);
+      accumulate(state, 0, s);
+   }
+
+   /**
+    * Add the field value of the current record to the sketch.
+    * @see simpledb.materialize.AggregationFn#processNext(simpledb.query.Scan)
+    */
+   public void processNext(Scan s) {
+      accumulate(state, 0, s);
+   }
+
+   /**
+    * Return the field's name and percentile, as in "approx_percentile(f,90)".
+    * @see simpledb.materialize.AggregationFn#fieldName()
+    */
+   public String fieldName() {
+      return "approx_percentile(" + fldname + "," + percent + ")";
+   }
+
+   /**
+    * Return the field's original name
+    * @see simpledb.materialize.AggregationFn#fieldName()
+    */
+   public String originalFieldName() {return fldname;}
+
+   /**
+    * Return the current estimate.
+    * @see simpledb.materialize.AggregationFn#value()
+    */
+   public Constant value() {
+      return finalValue(state, 0);
+   }
+
+   /**
+    * Return the number of long slots of the sketch:
+    * the number of values, the size of each level,
+    * and the values, two to a slot.
+    * @see simpledb.materialize.AggregationFn#stateSize()
+    */
+   public int stateSize() {
+      return NUMSLOTS;
+   }
+
+   /**
+    * Return true if the field is an integer field.
+    * @see simpledb.materialize.AggregationFn#hasPartialState(simpledb.record.Schema)
+    */
+   public boolean hasPartialState(Schema sch) {
+      return !sch.hasField(fldname) || sch.type(fldname) == INTEGER;
+   }
+
+   /**
+    * Start an empty sketch.
+    * @see simpledb.materialize.AggregationFn#init(long[], int)
+    */
+   public void init(long[] state, int pos) {
+      Arrays.fill(state, pos, pos + NUMSLOTS, 0);
+   }
+
+   /**
+    * Add the field value of the current record to level 0,
+    * unless it is null.
+    * @see simpledb.materialize.AggregationFn#accumulate(long[], int, simpledb.query.Scan)
+    */
+   public void accumulate(long[] state, int pos, Scan s) {
+      Constant val = s.getVal(fldname);
+      if (val.isNull())
+         return;
+      state[pos]++;
+      insert(state, pos, 0, val.asInt());
+   }
+
+   /**
+    * Merge the other sketch into this one, by adding the
+    * values of each of its levels to the same level here.
+    * @see simpledb.materialize.AggregationFn#merge(long[], int, long[], int)
+    */
+   public void merge(long[] state, int pos, long[] other, int otherpos) {
+      state[pos] += other[otherpos];
+      for (int h=0; h<LEVELS; h++) {
+         int n = size(other, otherpos, h);
+         for (int i=0; i<n; i++)
+            insert(state, pos, h, item(other, otherpos, h, i));
+      }
+   }
+
+   /**
+    * Return the value whose weighted rank in the sketch
+    * is the requested percentile,
+    * or null if the sketch holds no values.
+    * @see simpledb.materialize.AggregationFn#finalValue(long[], int)
+    */
+   public Constant finalValue(long[] state, int pos) {
+      if (state[pos] == 0)
+         return Constant.NULL;
+      List<long[]> weighted = new ArrayList<>();
+      long total = 0;
+      for (int h=0; h<LEVELS; h++)
+         for (int i=0; i<size(state, pos, h); i++) {
+            weighted.add(new long[] {item(state, pos, h, i), 1L << h});
+            total += 1L << h;
+         }
+      weighted.sort((a, b) -> Long.compare(a[0], b[0]));
+      long target = Math.max(1, (long) Math.ceil(total * percent / 100.0));
+      long cum = 0;
+      for (long[] w : weighted) {
+         cum += w[1];
+         if (cum >= target)
+            return new Constant((int) w[0]);
+      }
+      return new Constant((int) weighted.get(weighted.size()-1)[0]);
+   }
+
+   @Override
+   public boolean isAggregate() {
+      return true;
+   }
+
+   public String toString(){ return "ApproxPercentile {" +  originalFieldName() + ", " + percent + "}";}
+
+   public String toStringDistinct(){ return toString();}
+
+   /**
+    * Add a value to the specified level,
+    * compacting the level first if it is full.
+    */
+   private void insert(long[] state, int pos, int h, int val) {
+      if (size(state, pos, h) == K)
+         compact(state, pos, h);
+      int n = size(state, pos, h);
+      setItem(state, pos, h, n, val);
+      setSize(state, pos, h, n+1);
+   }
+
+   /**
+    * Sort the values of a level and move every other one
+    * to the level above, starting with the first or second
+    * value on alternate compactions.
+    * The top level keeps those values itself.
+    */
+   private void compact(long[] state, int pos, int h) {
+      int n = size(state, pos, h);
+      int[] vals = new int[n];
+      for (int i=0; i<n; i++)
+         vals[i] = item(state, pos, h, i);
+      Arrays.sort(vals);
+      long count = state[pos+1+h] >>> 32;
+      int offset = (int) (count & 1);
+      state[pos+1+h] = (count + 1) << 32;
+      if (h+1 < LEVELS) {
+         for (int i=offset; i<n; i+=2)
+            insert(state, pos, h+1, vals[i]);
+      }
+      else {
+         int m = 0;
+         for (int i=offset; i<n; i+=2)
+            setItem(state, pos, h, m++, vals[i]);
+         setSize(state, pos, h, m);
+      }
+   }
+
+   // Slot 0 holds the number of values added.
+   // Slot 1+h holds the number of compactions of level h
+   // in its high half and the size of level h in its low half.
+   // The values of level h follow, two to a slot.
+
+   private static int size(long[] state, int pos, int h) {
+      return (int) state[pos+1+h];
+   }
+
+   private static void setSize(long[] state, int pos, int h, int n) {
+      state[pos+1+h] = (state[pos+1+h] & 0xFFFFFFFF00000000L) | n;
+   }
+
+   private static int item(long[] state, int pos, int h, int i) {
+      int idx = h*K + i;
+      long slot = state[pos + ITEMS + idx/2];
+      return (idx % 2 == 0) ? (int) slot : (int) (slot >>> 32);
+   }
+
+   private static void setItem(long[] state, int pos, int h, int i, int val) {
+      int idx = h*K + i;
+      int s = pos + ITEMS + idx/2;
+      if (idx % 2 == 0)
+         state[s] = (state[s] & 0xFFFFFFFF00000000L) | (val & 0xFFFFFFFFL);
+      else
+         state[s] = (state[s] & 0xFFFFFFFFL) | ((long) val << 32);
+   }
+}
@@ -1,6 +1,8 @@
 package simpledb.materialize;
 
 import simpledb.query.*;
+import simpledb.record.Schema;
+import static java.sql.Types.INTEGER;
 
 /**
  * The <i>average</i> aggregation function.
@@ -21,26 +23,28 @@ public class AvgFn implements AggregationFn {
 
     /**
      * Start a new average.
-     * Since SimpleDB does not support null values,
-     * every record will be counted,
-     * regardless of the field.
-     * The current count is thus set to 1.
+     * The current count is set to 1,
+     * unless the field of the current record is null,
+     * in which case it is set to 0.
      * @see simpledb.materialize.AggregationFn#processFirst(simpledb.query.Scan)
      */
     public void processFirst(Scan s) {
-        count = 1;
-        sum = s.getInt(fldname);
+        count = 0;
+        sum = 0;
+        processNext(s);
     }
 
     /**
-     * Since SimpleDB does not support null values,
-     * this method always increments the count,
-     * regardless of the field.
+     * Increment the count and add the field value to the sum,
+     * unless the field of the current record is null.
      * @see simpledb.materialize.AggregationFn#processNext(simpledb.query.Scan)
      */
     public void processNext(Scan s) {
-        count++;
-        sum += s.getInt(fldname);
+        Constant val = s.getVal(fldname);
+        if (!val.isNull()) {
+            count++;
+            sum += val.asInt();
+        }
     }
 
     /**
@@ -59,13 +63,76 @@ public class AvgFn implements AggregationFn {
     public String originalFieldName() {return fldname;}
 
     /**
-     * Return the current average score.
+     * Return the current average score,
+     * or null if every value was null.
      * @see simpledb.materialize.AggregationFn#value()
      */
     public Constant value() {
+        if (count == 0)
+            return Constant.NULL;
         return new Constant(sum / count);
     }
 
+    /**
+     * Return the number of long slots in the partial state.
+     * @see simpledb.materialize.AggregationFn#stateSize()
+     */
+    public int stateSize() {
+        return 2;
+    }
+
+    /**
+     * Return true if the field is an integer field, so its
+     * values can be kept in the partial state.
+     * @see simpledb.materialize.AggregationFn#hasPartialState(simpledb.record.Schema)
+     */
+    public boolean hasPartialState(Schema sch) {
+        return !sch.hasField(fldname) || sch.type(fldname) == INTEGER;
+    }
+
+    /**
+     * Start an empty average, whose state
+     * is the sum followed by the count.
+     * @see simpledb.materialize.AggregationFn#init(long[], int)
+     */
+    public void init(long[] state, int pos) {
+        state[pos] = 0;
+        state[pos+1] = 0;
+    }
+
+    /**
+     * Add the field value of the current record to the sum,
+     * and increment the count, unless the field is null.
+     * @see simpledb.materialize.AggregationFn#accumulate(long[], int, simpledb.query.Scan)
+     */
+    public void accumulate(long[] state, int pos, Scan s) {
+        Constant val = s.getVal(fldname);
+        if (!val.isNull()) {
+            state[pos] += val.asInt();
+            state[pos+1]++;
+        }
+    }
+
+    /**
+     * Add the other sum and count to these.
+     * @see simpledb.materialize.AggregationFn#merge(long[], int, long[], int)
+     */
+    public void merge(long[] state, int pos, long[] other, int otherpos) {
+        state[pos] += other[otherpos];
+        state[pos+1] += other[otherpos+1];
+    }
+
+    /**
+     * Return the sum divided by the count,
+     * or null if every value was null.
+     * @see simpledb.materialize.AggregationFn#finalValue(long[], int)
+     */
+    public Constant finalValue(long[] state, int pos) {
+        if (state[pos+1] == 0)
+            return Constant.NULL;
+        return new Constant((int) (state[pos] / state[pos+1]));
+    }
+
     public boolean isAggregate() {
         return true;
     }
@@ -0,0 +1,161 @@
+package simpledb.materialize;
+
+import simpledb.tx.Transaction;
+import simpledb.plan.Plan;
+import simpledb.query.*;
+import simpledb.record.*;
+
+import java.util.*;
+
+/**
+ * The Plan class for the <i>bandjoin</i> operator,
+ * which joins on comparisons rather than equalities.
+ * A field of the RHS is bounded by fields of the LHS,
+ * below by a term such as "F2 &gt; F1" and above by a term
+ * such as "F2 &lt;= F3"; either term may be missing.
+ * The RHS is sorted on the bounded field and the LHS on the
+ * field of its lower bound, so that the records are joined
+ * in a single pass through the LHS, rereading only the RHS
+ * records of each band.
+ */
+public class BandJoinPlan implements Plan {
+   private Plan p1, p2;
+   private String fldname2, lowfld, highfld;
+   private boolean lowinclusive, highinclusive;
+   private Term low, high;
+   private Schema sch = new Schema();
+
+   /**
+    * Creates a bandjoin plan for the two specified queries.
+    * Each bound is a term comparing the RHS field with a
+    * field of the LHS.
+    * @param p1 the LHS query plan
+    * @param p2 the RHS query plan
+    * @param fldname2 the RHS field that is bounded
+    * @param low the term giving the lower bound of the field, or null if none
+    * @param high the term giving the upper bound of the field, or null if none
+    * @param tx the calling transaction
+    */
+   public BandJoinPlan(Transaction tx, Plan p1, Plan p2, String fldname2, Term low, Term high) {
+      this.fldname2 = fldname2;
+      this.low = low;
+      this.high = high;
+      if (low != null) {
+         lowfld = low.equatesWithField(fldname2);
+         lowinclusive = low.comparatorWithField(fldname2).equals(">=");
+      }
+      if (high != null) {
+         highfld = high.equatesWithField(fldname2);
+         highinclusive = high.comparatorWithField(fldname2).equals("<=");
+      }
+      Sort sort1 = (lowfld == null) ? new Sort() : Sort.ascending(Arrays.asList(lowfld));
+      this.p1 = p1.ordering().satisfies(sort1) ? p1 : new SortPlan(tx, p1, sort1);
+      // the RHS is repositioned to the start of each band,
+      // so it is always a sort plan
+      this.p2 = new SortPlan(tx, p2, Sort.ascending(Arrays.asList(fldname2)));
+      sch.addAll(p1.schema());
+      sch.addAll(p2.schema());
+   }
+
+   /**
+    * The method sorts its two underlying scans,
+    * unless they are already sorted.
+    * It then returns a bandjoin scan of the two sorted scans.
+    * @see simpledb.plan.Plan#open()
+    */
+   public Scan open() {
+      Scan s1 = p1.open();
+      SortScan s2 = (SortScan) p2.open();
+      return new BandJoinScan(s1, s2, fldname2, lowfld, lowinclusive, highfld, highinclusive);
+   }
+
+   /**
+    * Return the number of block accesses required to
+    * bandjoin the sorted tables.
+    * Each table is read once, plus the one-time cost of
+    * each input that has to be sorted; in addition, an LHS
+    * record whose band spans several blocks of the RHS
+    * rereads all but the first of them.
+    * A band bounded on one side only is assumed to
+    * cover half of the RHS.
+    * @see simpledb.plan.Plan#blocksAccessed()
+    */
+   public int blocksAccessed() {
+      int b1 = p1.blocksAccessed(), b2 = p2.blocksAccessed();
+      double r1 = Math.max(1, p1.recordsOutput()), r2 = Math.max(1, p2.recordsOutput());
+      double bandblocks = (low == null || high == null) ? b2 / 2.0
+                        : b2 * recordsOutput() / (r1 * r2);
+      double rereads = r1 * Math.max(0, bandblocks - 1);
+      double total = b1 + b2 + MergeJoinPlan.sortCost(p1)
+                   + MergeJoinPlan.sortCost(p2) + rereads;
+      return (int) Math.min(Integer.MAX_VALUE, total);
+   }
+
+   /**
+    * Return the number of records in the join,
+    * which is the number of records in the product
+    * reduced by each of the bounding terms.
+    * @see simpledb.plan.Plan#recordsOutput()
+    */
+   public int recordsOutput() {
+      double product = (double) p1.recordsOutput() * p2.recordsOutput();
+      if (low != null)
+         product /= low.reductionFactor(this);
+      if (high != null)
+         product /= high.reductionFactor(this);
+      return (int) Math.min(Integer.MAX_VALUE, product);
+   }
+
+   /**
+    * Estimate the distinct number of field values in the join.
+    * Since the join does not increase or decrease field values,
+    * the estimate is the same as in the appropriate underlying query.
+    * @see simpledb.plan.Plan#distinctValues(java.lang.String)
+    */
+   public int distinctValues(String fldname) {
+      if (p1.schema().hasField(fldname))
+         return p1.distinctValues(fldname);
+      else
+         return p2.distinctValues(fldname);
+   }
+
+   /**
+    * Estimate the fraction of the join records whose value
+    * of the field lies in the range, which is the same
+    * as in the appropriate underlying query.
+    * @see simpledb.plan.Plan#rangeFraction(java.lang.String, simpledb.query.Range)
+    */
+   public double rangeFraction(String fldname, Range range) {
+      if (p1.schema().hasField(fldname))
+         return p1.rangeFraction(fldname, range);
+      else
+         return p2.rangeFraction(fldname, range);
+   }
+
+   /**
+    * Return the schema of the join,
+    * which is the union of the schemas of the underlying queries.
+    * @see simpledb.plan.Plan#schema()
+    */
+   public Schema schema() {
+      return sch;
+   }
+
+   /**
+    * Return the order of the join, which is that of
+    * the LHS, since it is read once in order.
+    * @see simpledb.plan.Plan#ordering()
+    */
+   public Sort ordering() {
+      return p1.ordering();
+   }
+
+   public String toString() {
+      StringJoiner on = new StringJoiner(" and ");
+      if (low != null)
+         on.add(low.toString());
+      if (high != null)
+         on.add(high.toString());
+      return String.format("{%s} bandjoin {%s} on (%s)", p1.toString(), p2.toString(), on);
+   }
+}
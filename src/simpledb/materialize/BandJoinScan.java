@@ -0,0 +1,166 @@
+package simpledb.materialize;
+
+import simpledb.query.*;
+
+/**
+ * The Scan class for the <i>bandjoin</i> operator.
+ * Each LHS record is joined with the RHS records whose
+ * band field lies between a lower bound and an upper bound
+ * taken from fields of the LHS record, as in the join
+ * condition "start &lt;= ts and ts &lt; finish".
+ * Either bound may be missing.
+ * The RHS scan is sorted on the band field, so that the
+ * matching records of an LHS record are adjacent;
+ * the LHS scan is sorted on its lower bound field, so that
+ * the first matching RHS record never moves backwards.
+ */
+public class BandJoinScan implements Scan {
+   private Scan s1;
+   private SortScan s2;
+   private String fldname2, lowfld, highfld;
+   private boolean lowinclusive, highinclusive;
+   private Range band;
+   private boolean hasmore2, inband, advance2, marked;
+
+   /**
+    * Create a bandjoin scan for the two underlying sorted scans.
+    * @param s1 the LHS scan, sorted on the lower bound field
+    * @param s2 the RHS scan, sorted on the band field
+    * @param fldname2 the RHS band field
+    * @param lowfld the LHS field of the lower bound, or null if none
+    * @param lowinclusive true if the band includes the lower bound
+    * @param highfld the LHS field of the upper bound, or null if none
+    * @param highinclusive true if the band includes the upper bound
+    */
+   public BandJoinScan(Scan s1, SortScan s2, String fldname2,
+                       String lowfld, boolean lowinclusive,
+                       String highfld, boolean highinclusive) {
+      this.s1 = s1;
+      this.s2 = s2;
+      this.fldname2 = fldname2;
+      this.lowfld = lowfld;
+      this.lowinclusive = lowinclusive;
+      this.highfld = highfld;
+      this.highinclusive = highinclusive;
+      beforeFirst();
+   }
+
+   /**
+    * Close the scan by closing the two underlying scans.
+    * @see simpledb.query.Scan#close()
+    */
+   public void close() {
+      s1.close();
+      s2.close();
+   }
+
+   /**
+    * Position the scan before the first record.
+    * The RHS scan is moved past its records having a null
+    * band field, which match nothing, and its position is
+    * saved as the start of the first band.
+    * @see simpledb.query.Scan#beforeFirst()
+    */
+   public void beforeFirst() {
+      s1.beforeFirst();
+      s2.beforeFirst();
+      hasmore2 = s2.next();
+      while (hasmore2 && s2.getVal(fldname2).isNull())
+         hasmore2 = s2.next();
+      marked = hasmore2;
+      if (marked)
+         s2.savePosition();
+      inband = false;
+   }
+
+   /**
+    * Move to the next record.
+    * <P>
+    * While the current LHS record is joined with its band,
+    * move to the next RHS record; the band ends at the first
+    * RHS record above the upper bound.
+    * Then move to the next LHS record, whose lower bound is
+    * not smaller than that of the previous one.
+    * Reposition the RHS scan to the start of the previous band
+    * and move it forward until it is not below the new lower bound;
+    * that position is saved as the start of the new band.
+    * When either scan runs out of records, return false.
+    * @see simpledb.query.Scan#next()
+    */
+   public boolean next() {
+      while (true) {
+         if (inband) {
+            if (advance2)
+               hasmore2 = s2.next();
+            advance2 = true;
+            if (hasmore2 && band.isBelowHigh(s2.getVal(fldname2)))
+               return true;
+            inband = false;
+         }
+         if (!marked || !s1.next())
+            return false;
+         Constant low = (lowfld == null) ? null : s1.getVal(lowfld);
+         Constant high = (highfld == null) ? null : s1.getVal(highfld);
+         // a comparison with a null value is never true
+         if ((low != null && low.isNull()) || (high != null && high.isNull()))
+            continue;
+         band = new Range(low, lowinclusive, high, highinclusive);
+         s2.restorePosition();
+         hasmore2 = true;
+         if (low != null) {
+            while (hasmore2 && !band.isAboveLow(s2.getVal(fldname2)))
+               hasmore2 = s2.next();
+            // no later LHS record has a smaller lower bound
+            if (!hasmore2) {
+               marked = false;
+               return false;
+            }
+            s2.savePosition();
+         }
+         inband = true;
+         advance2 = false;
+      }
+   }
+
+   /**
+    * Return the integer value of the specified field.
+    * The value is obtained from whichever scan
+    * contains the field.
+    * @see simpledb.query.Scan#getInt(java.lang.String)
+    */
+   public int getInt(String fldname) {
+      return getVal(fldname).asInt();
+   }
+
+   /**
+    * Return the string value of the specified field.
+    * The value is obtained from whichever scan
+    * contains the field.
+    * @see simpledb.query.Scan#getString(java.lang.String)
+    */
+   public String getString(String fldname) {
+      return getVal(fldname).asString();
+   }
+
+   /**
+    * Return the value of the specified field.
+    * The value is obtained from whichever scan
+    * contains the field.
+    * @see simpledb.query.Scan#getVal(java.lang.String)
+    */
+   public Constant getVal(String fldname) {
+      if (s1.hasField(fldname))
+         return s1.getVal(fldname);
+      else
+         return s2.getVal(fldname);
+   }
+
+   /**
+    * Return true if the specified field is in
+    * either of the underlying scans.
+    * @see simpledb.query.Scan#hasField(java.lang.String)
+    */
+   public boolean hasField(String fldname) {
+      return s1.hasField(fldname) || s2.hasField(fldname);
+   }
+}
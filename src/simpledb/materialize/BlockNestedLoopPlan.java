@@ -1,14 +1,25 @@
 package simpledb.materialize;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import simpledb.multibuffer.BufferNeeds;
 import simpledb.plan.Plan;
 import simpledb.query.Predicate;
+import simpledb.query.Range;
 import simpledb.query.Scan;
+import simpledb.query.Term;
 import simpledb.query.UpdateScan;
+import simpledb.query.Sort;
 import simpledb.record.Schema;
 import simpledb.tx.Transaction;
 
 /**
  * The Plan class for the <i>nestedloopjoin</i> operator.
+ * The LHS is materialized and read in chunks sized from the
+ * available buffers; the RHS is read once per chunk.
+ * The join fields equated by the predicate are matched
+ * through an in-memory hash table of each chunk.
  * @author Tan Jia Wei Joe
  */
 public class BlockNestedLoopPlan implements Plan {
@@ -16,49 +27,65 @@ public class BlockNestedLoopPlan implements Plan {
     private Transaction tx;
     private Plan lhs, rhs;
     private Schema schema = new Schema();
-    private Predicate pred;
-    private int numBuffers;
+    private Predicate pred, residual;
+    private List<String> lhsKeys = new ArrayList<>(), rhsKeys = new ArrayList<>();
 
     /**
      * Creates a nested loop join plan for the two specified queries.
      * @param lhs the LHS query plan
      * @param rhs the RHS query plan
      * @param pred the joining predicate
-     * @param numBuffers the number of buffers to use to store each block
      * @param tx the calling transaction
      */
-    public BlockNestedLoopPlan(Transaction tx, Plan lhs, Plan rhs, Predicate pred, int numBuffers) {
+    public BlockNestedLoopPlan(Transaction tx, Plan lhs, Plan rhs, Predicate pred) {
         this.tx = tx;
         this.lhs = lhs;
         this.rhs = rhs;
         this.pred = pred;
-        this.numBuffers = numBuffers;
         schema.addAll(lhs.schema());
         schema.addAll(rhs.schema());
+        // the terms equating an LHS field with an RHS field
+        // are matched by hashing, and the rest are tested
+        residual = pred;
+        for (Term t : pred.equiJoinTerms(lhs.schema(), rhs.schema())) {
+            List<String> flds = t.fields();
+            boolean first = lhs.schema().hasField(flds.get(0));
+            lhsKeys.add(flds.get(first ? 0 : 1));
+            rhsKeys.add(flds.get(first ? 1 : 0));
+            residual = residual.without(t);
+        }
     }
 
     /**
      * A scan for this query is created and returned, as follows.
-     * First, the method materializes its LHS queries.
-     * It creates a chunk plan for each block based on the number of buffers to use, saving them in a list.
-     * Finally, it creates a multiscan for this list of plans and returns that scan.
+     * First, the method materializes its LHS query.
+     * It then opens the RHS query and returns a scan that
+     * reads the materialized LHS a chunk at a time.
      * @see Plan#open()
      */
     public Scan open() {
         TempTable tt = copyRecordsFrom(lhs);
         Scan rhsScan = rhs.open();
-        return new BlockNestedLoopScan(tx, rhsScan, tt.tableName(), tt.getLayout(), pred, numBuffers);
+        return new BlockNestedLoopScan(tx, rhsScan, tt.tableName(), tt.getLayout(), lhsKeys, rhsKeys, residual);
     }
 
     /**
      * Returns the number of page accesses required to perform the join.
-     * Formula = |LHS| + (ceil(|LHS|/block_size) * |RHS|)
+     * The LHS query is read once and its materialized copy
+     * is read once, a chunk at a time; the RHS is read once per chunk.
+     * <pre> B(join(p1,p2)) = B(p1) + B(temp) + C(temp)*B(p2) </pre>
+     * where C(temp) is the number of chunks of the materialized LHS.
+     * The method uses the current number of available buffers
+     * to calculate C(temp), and so this value may differ
+     * when the query scan is opened.
      * @return number of page (block) accesses
      */
     public int blocksAccessed() {
         int size = new MaterializePlan(tx, lhs).blocksAccessed();
-        int numchunks = (int) Math.ceil(size / numBuffers);
-        return lhs.blocksAccessed() + (numchunks * rhs.blocksAccessed());
+        int chunksize = Math.max(1, BufferNeeds.bestFactor(tx.availableBuffs(), size));
+        int numchunks = (int) Math.ceil((double) size / chunksize);
+        double total = lhs.blocksAccessed() + size + (double) numchunks * rhs.blocksAccessed();
+        return (int) Math.min(Integer.MAX_VALUE, total);
     }
 
     /**
@@ -70,7 +97,8 @@ public class BlockNestedLoopPlan implements Plan {
      * @return number of records output by the join.
      */
     public int recordsOutput() {
-        return lhs.recordsOutput() * rhs.recordsOutput() / pred.reductionFactor(this);
+        double product = (double) lhs.recordsOutput() * rhs.recordsOutput();
+        return (int) Math.min(Integer.MAX_VALUE, product / pred.reductionFactor(this));
     }
 
     /**
@@ -87,6 +115,19 @@ public class BlockNestedLoopPlan implements Plan {
         }
     }
 
+    /**
+     * Estimate the fraction of the join records whose value
+     * of the field lies in the range, which is the same
+     * as in the appropriate underlying query.
+     * @see simpledb.plan.Plan#rangeFraction(java.lang.String, simpledb.query.Range)
+     */
+    public double rangeFraction(String fldname, Range range) {
+        if (lhs.schema().hasField(fldname))
+            return lhs.rangeFraction(fldname, range);
+        else
+            return rhs.rangeFraction(fldname, range);
+    }
+
     /**
      * Return the schema of the product,
      * which is the union of the schemas of the underlying queries.
@@ -96,6 +137,16 @@ public class BlockNestedLoopPlan implements Plan {
     public Schema schema() {
         return schema;
     }
+    
+    /**
+     * Return the order of the records of the query.
+     * The records are in no particular order.
+     * @see simpledb.plan.Plan#ordering()
+     */
+    public Sort ordering() {
+        return new Sort();
+    }
+
 
     /**
      * Materialises the target plan.
@@ -118,7 +169,7 @@ public class BlockNestedLoopPlan implements Plan {
     }
 
     public String toString(){
-        return String.format("[{%s} block-nested loop join ](%s)",
+        return String.format("[{%s} block-nested loop join {%s}](%s)",
                 lhs.toString(), rhs.toString(), pred.toString());
     }
 }
\ No newline at end of file
@@ -1,49 +1,72 @@
 package simpledb.materialize;
 
+import java.util.*;
+
+import simpledb.multibuffer.BufferNeeds;
 import simpledb.multibuffer.ChunkScan;
 import simpledb.query.Constant;
 import simpledb.query.Predicate;
-import simpledb.query.ProductScan;
 import simpledb.query.Scan;
 import simpledb.record.Layout;
 import simpledb.tx.Transaction;
 
 /**
  * The Scan class for the <i>nestedloopjoin</i> operator.
+ * The materialized LHS table is read a chunk at a time,
+ * as many blocks as the available buffers allow.
+ * The records of a chunk are copied into memory, hashed on
+ * their join fields if the join equates fields, and the
+ * RHS scan is then read once for the chunk, each RHS record
+ * being matched against the chunk records having its join values.
  *
  * @author Tan Jia Wei Joe
  */
 public class BlockNestedLoopScan implements Scan {
     private Transaction tx;
     private Scan rhsScan; // Scan for the rhs table
-    private Scan lhsBlockScan; // Scan for the current block
-    private Scan joinedScan; // Scan for the cross pdt between lhs block and rhs table
     private String lhsTableName;
     private Layout lhsLayout;
     private int lhsTableSize;
     private int nextBlock;
     private Predicate joinPredicate;
+    private List<String> lhsFields, lhsKeys, rhsKeys;
+    private Map<String,Integer> positions = new HashMap<>();
+    private List<Constant[]> chunk = new ArrayList<>(); // records of the current LHS chunk
+    private Map<Constant,List<Constant[]>> chunkTable = new HashMap<>(); // the chunk, hashed on the LHS keys
+    private List<Constant[]> matches = Collections.emptyList(); // chunk records of the current RHS record
+    private int matchIndex;
+    private Constant[] lhsRow;
+    private boolean hasChunk;
 
     private final int CHUNK_SIZE;
 
     /**
      * Creates the scan class for the nested loop join of the LHS scan and a table.
+     * Records match if each LHS key field equals the corresponding
+     * RHS key field and they satisfy the joining predicate.
      * @param rhsScan the RHS scan
      * @param lhsTableName the name of the LHS table
      * @param lhsLayout the metadata for the LHS table
-     * @param joinPredicate the joining predicate
+     * @param lhsKeys the LHS fields equated with RHS fields, which may be empty
+     * @param rhsKeys the corresponding RHS fields
+     * @param joinPredicate the rest of the joining predicate
      * @param tx the current transaction
-     * @param numBuffers the number of buffers to use to store the block of the LHS table
      */
-    public BlockNestedLoopScan(Transaction tx, Scan rhsScan, String lhsTableName, Layout lhsLayout, Predicate joinPredicate, int numBuffers) {
+    public BlockNestedLoopScan(Transaction tx, Scan rhsScan, String lhsTableName, Layout lhsLayout,
+                               List<String> lhsKeys, List<String> rhsKeys, Predicate joinPredicate) {
         this.tx = tx;
         this.rhsScan = rhsScan;
         this.lhsTableName = lhsTableName;
         this.lhsLayout = lhsLayout;
         this.lhsTableSize = tx.size(this.lhsTableName + ".tbl");
+        this.lhsKeys = lhsKeys;
+        this.rhsKeys = rhsKeys;
         this.joinPredicate = joinPredicate;
+        lhsFields = lhsLayout.schema().fields();
+        for (int i = 0; i < lhsFields.size(); i++)
+            positions.put(lhsFields.get(i), i);
 
-        CHUNK_SIZE = numBuffers;
+        CHUNK_SIZE = BufferNeeds.bestFactor(tx.availableBuffs(), lhsTableSize);
 
         beforeFirst();
     }
@@ -54,26 +77,33 @@ public class BlockNestedLoopScan implements Scan {
      */
     public void beforeFirst() {
         nextBlock = 0;
-        useNextBlock();
+        hasChunk = useNextBlock();
     }
 
     /**
-     * Moves to the next record in the current LHS block.
-     * If there are no more records in the current block,
-     * then move to the next LHS block and the beginning of the RHS scan.
+     * Moves to the next joined record.
+     * The next chunk record that matches the current RHS record is
+     * used, if any; otherwise the RHS scan moves to its next record
+     * and finds its matching chunk records.
+     * When the RHS scan is done, the next chunk of the LHS table
+     * is read and the RHS scan starts again.
      * @see Scan#next()
      */
     public boolean next() {
-        // If this crosspdt finished, move to next chunk
-        while (!joinedScan.next()) {
-            if (!useNextBlock()) { // Finished looping over left table
-                return false;
+        while (hasChunk) {
+            while (matchIndex < matches.size()) {
+                lhsRow = matches.get(matchIndex++);
+                if (joinPredicate.isSatisfied(this))
+                    return true;
             }
+            if (rhsScan.next()) {
+                matches = candidates();
+                matchIndex = 0;
+            }
+            else
+                hasChunk = useNextBlock();
         }
-        if (!joinPredicate.isSatisfied(this)) {
-            return next(); // Recurse until find a tuple that satisfies conditions
-        }
-        return true;
+        return false;
     }
 
     /**
@@ -83,7 +113,7 @@ public class BlockNestedLoopScan implements Scan {
      * @see simpledb.query.Scan#getInt(java.lang.String)
      */
     public int getInt(String fldname) {
-        return joinedScan.getInt(fldname);
+        return getVal(fldname).asInt();
     }
 
     /**
@@ -93,17 +123,20 @@ public class BlockNestedLoopScan implements Scan {
      * @see simpledb.query.Scan#getString(java.lang.String)
      */
     public String getString(String fldname) {
-        return joinedScan.getString(fldname);
+        return getVal(fldname).asString();
     }
 
     /**
      * Returns the value of the specified field.
-     * The value is obtained from whichever scan
-     * contains the field.
+     * The value is obtained from the current chunk record
+     * or the RHS scan, whichever contains the field.
      * @see simpledb.query.Scan#getVal(java.lang.String)
      */
     public Constant getVal(String fldname) {
-        return joinedScan.getVal(fldname);
+        Integer pos = positions.get(fldname);
+        if (pos != null)
+            return lhsRow[pos];
+        return rhsScan.getVal(fldname);
     }
 
     /**
@@ -112,31 +145,61 @@ public class BlockNestedLoopScan implements Scan {
      * @see simpledb.query.Scan#hasField(java.lang.String)
      */
     public boolean hasField(String fldname) {
-        return joinedScan.hasField(fldname);
+        return positions.containsKey(fldname) || rhsScan.hasField(fldname);
     }
 
     /**
-     * Closes the scan by closing the underlying product scan.
+     * Closes the scan by closing the RHS scan;
+     * the chunks are unpinned as soon as they are read.
      */
     public void close() {
-        joinedScan.close();
+        rhsScan.close();
     }
 
     /**
-     * Moves to the next block in the LHS table and opens a new ChunkScan.
-     * The new ChunkScan is then used as part of the ProductScan with the RHS table.
-     * Closes the scan for the previous block, if it exists.
+     * Returns the chunk records that may match the current
+     * RHS record: those having its key values, or the whole
+     * chunk if the join equates no fields.
+     */
+    private List<Constant[]> candidates() {
+        if (lhsKeys.isEmpty())
+            return chunk;
+        Constant key = RecordComparator.keyValue(rhsScan, rhsKeys);
+        if (key.isNull())
+            return Collections.emptyList();
+        return chunkTable.getOrDefault(key, Collections.emptyList());
+    }
+
+    /**
+     * Reads the next chunk of the LHS table into memory,
+     * hashing its records on their key values, and
+     * repositions the RHS scan to its start.
+     * Records having a null key value match nothing and are skipped.
+     * Returns false if the LHS table has no more blocks.
      */
     private boolean useNextBlock() {
+        chunk.clear();
+        chunkTable.clear();
+        matches = Collections.emptyList();
         if (nextBlock >= lhsTableSize)
             return false;
-        if (lhsBlockScan != null) {
-            lhsBlockScan.close();
+        int lastBlock = Math.min(nextBlock + CHUNK_SIZE, lhsTableSize) - 1;
+        ChunkScan lhsBlockScan = new ChunkScan(tx, lhsTableName + ".tbl", lhsLayout, nextBlock, lastBlock);
+        while (lhsBlockScan.next()) {
+            Constant[] row = new Constant[lhsFields.size()];
+            for (int i = 0; i < row.length; i++)
+                row[i] = lhsBlockScan.getVal(lhsFields.get(i));
+            if (lhsKeys.isEmpty()) {
+                chunk.add(row);
+                continue;
+            }
+            Constant key = RecordComparator.keyValue(lhsBlockScan, lhsKeys);
+            if (!key.isNull())
+                chunkTable.computeIfAbsent(key, k -> new ArrayList<>()).add(row);
         }
-        lhsBlockScan = new ChunkScan(tx, lhsTableName + ".tbl", lhsLayout, nextBlock, nextBlock + CHUNK_SIZE - 1); // get next block (chunk)
+        lhsBlockScan.close();
         rhsScan.beforeFirst(); // reposition right pointer to start of right table
-        joinedScan = new ProductScan(lhsBlockScan, rhsScan);
-        nextBlock += CHUNK_SIZE;
+        nextBlock = lastBlock + 1;
         return true;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,80 @@
+package simpledb.materialize;
+
+import java.io.File;
+import java.util.*;
+import java.util.function.BiPredicate;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.plan.*;
+import simpledb.query.*;
+import simpledb.parse.Parser;
+
+/**
+ * Join a table of many blocks with another by block nested
+ * loops, on an equality with a further term, which hashes each
+ * chunk, and on an inequality that almost no pair satisfies.
+ * Each join must return exactly the matching pairs, and every
+ * buffer must be released once the scan is closed.
+ */
+public class BlockNestedLoopTest {
+   public static void main(String[] args) {
+      deleteDir(new File("blocknestedlooptest"));
+      SimpleDB db = new SimpleDB("blocknestedlooptest");
+      Transaction tx = db.newTx();
+      Planner planner = db.planner();
+      planner.executeUpdate("create table R(A int, X int)", tx);
+      planner.executeUpdate("create table S(B int, Y int)", tx);
+      Random r = new Random(47);
+      List<int[]> rs = new ArrayList<>(), ss = new ArrayList<>();
+      for (int i=0; i<1500; i++) {
+         int a = r.nextInt(400);
+         planner.executeUpdate("insert into R(A,X) values(" + a + ", " + i + ")", tx);
+         rs.add(new int[] {a, i});
+      }
+      for (int i=0; i<500; i++) {
+         int b = r.nextInt(400);
+         planner.executeUpdate("insert into S(B,Y) values(" + b + ", " + i + ")", tx);
+         ss.add(new int[] {b, i});
+      }
+      tx.commit();
+
+      String[] preds = {"a = b and x > y", "a = b", "x < y and b > 398"};
+      List<BiPredicate<int[],int[]>> matches = Arrays.asList(
+            (rr, s) -> rr[0] == s[0] && rr[1] > s[1],
+            (rr, s) -> rr[0] == s[0],
+            (rr, s) -> rr[1] < s[1] && s[0] > 398);
+      tx = db.newTx();
+      boolean ok = true;
+      for (int i=0; i<preds.length; i++) {
+         List<String> expected = new ArrayList<>();
+         for (int[] rr : rs)
+            for (int[] s : ss)
+               if (matches.get(i).test(rr, s))
+                  expected.add(rr[1] + " " + s[1]);
+         Collections.sort(expected);
+         Plan p = new BlockNestedLoopPlan(tx, new TablePlan(tx, "r", db.mdMgr()),
+               new TablePlan(tx, "s", db.mdMgr()), new Parser(preds[i]).predicate());
+         List<String> found = new ArrayList<>();
+         Scan s = p.open();
+         while (s.next())
+            found.add(s.getInt("x") + " " + s.getInt("y"));
+         s.close();
+         Collections.sort(found);
+         if (!found.equals(expected)) {
+            System.out.println(preds[i] + ": " + found.size() + " records instead of "
+                  + expected.size() + " by " + p);
+            ok = false;
+         }
+      }
+      ok = ok && tx.availableBuffs() == SimpleDB.BUFFER_SIZE;
+      tx.commit();
+      System.out.println(ok ? "block nested loop ok" : "block nested loop FAILED");
+   }
+
+   private static void deleteDir(File f) {
+      if (f.isDirectory())
+         for (File child : f.listFiles())
+            deleteDir(child);
+      f.delete();
+   }
+}
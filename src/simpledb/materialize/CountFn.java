@@ -1,6 +1,7 @@
 package simpledb.materialize;
 
 import simpledb.query.*;
+import simpledb.record.Schema;
 
 /**
  * The <i>count</i> aggregation function.
@@ -20,24 +21,24 @@ public class CountFn implements AggregationFn {
    
    /**
     * Start a new count.
-    * Since SimpleDB does not support null values,
-    * every record will be counted,
-    * regardless of the field.
-    * The current count is thus set to 1.
+    * The current count is set to 1,
+    * unless the field of the current record is null
+    * (as it is in the unmatched records of an outer join),
+    * in which case it is set to 0.
     * @see simpledb.materialize.AggregationFn#processFirst(simpledb.query.Scan)
     */
    public void processFirst(Scan s) {
-      count = 1;
+      count = s.getVal(fldname).isNull() ? 0 : 1;
    }
    
    /**
-    * Since SimpleDB does not support null values,
-    * this method always increments the count,
-    * regardless of the field.
+    * Increment the count, unless the field of
+    * the current record is null.
     * @see simpledb.materialize.AggregationFn#processNext(simpledb.query.Scan)
     */
    public void processNext(Scan s) {
-      count++;
+      if (!s.getVal(fldname).isNull())
+         count++;
    }
    
    /**
@@ -62,6 +63,55 @@ public class CountFn implements AggregationFn {
       return new Constant(count);
    }
 
+   /**
+    * Return the number of long slots in the partial state.
+    * @see simpledb.materialize.AggregationFn#stateSize()
+    */
+   public int stateSize() {
+      return 1;
+   }
+
+   /**
+    * Return true, since counting needs only the count.
+    * @see simpledb.materialize.AggregationFn#hasPartialState(simpledb.record.Schema)
+    */
+   public boolean hasPartialState(Schema sch) {
+      return true;
+   }
+
+   /**
+    * Start an empty count.
+    * @see simpledb.materialize.AggregationFn#init(long[], int)
+    */
+   public void init(long[] state, int pos) {
+      state[pos] = 0;
+   }
+
+   /**
+    * Increment the count, unless the field is null.
+    * @see simpledb.materialize.AggregationFn#accumulate(long[], int, simpledb.query.Scan)
+    */
+   public void accumulate(long[] state, int pos, Scan s) {
+      if (!s.getVal(fldname).isNull())
+         state[pos]++;
+   }
+
+   /**
+    * Add the other count to this one.
+    * @see simpledb.materialize.AggregationFn#merge(long[], int, long[], int)
+    */
+   public void merge(long[] state, int pos, long[] other, int otherpos) {
+      state[pos] += other[otherpos];
+   }
+
+   /**
+    * Return the count.
+    * @see simpledb.materialize.AggregationFn#finalValue(long[], int)
+    */
+   public Constant finalValue(long[] state, int pos) {
+      return new Constant((int) state[pos]);
+   }
+
    @Override
    public boolean isAggregate() {
       return true;
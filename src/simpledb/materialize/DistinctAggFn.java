@@ -3,15 +3,22 @@ package simpledb.materialize;
 import java.util.HashSet;
 import java.util.Set;
 import simpledb.query.*;
+import simpledb.record.Schema;
 
 
 /**
  * The <i>distinct</i> aggregation function.
+ * The values of a group seen so far are kept in a set,
+ * unless the records of each group are known to be
+ * sorted on the field, in which case only the
+ * previous value is kept.
  * @author Edward Sciore
  */
 public class DistinctAggFn implements AggregationFn {
     private AggregationFn fn;
     private Set<Constant> uniqueValues;
+    private boolean sorted = false;
+    private Constant lastValue;
 
     /**
      * Create an distinct on the specified field, before aggregating.
@@ -32,10 +39,13 @@ public class DistinctAggFn implements AggregationFn {
      */
     public void processFirst(Scan s) {
         Constant now = s.getVal(originalFieldName());
-        uniqueValues.add(now);
+        if (sorted)
+            lastValue = now;
+        else {
+            uniqueValues.clear();
+            uniqueValues.add(now);
+        }
         fn.processFirst(s);
-
-
     }
 
     /**
@@ -46,13 +56,13 @@ public class DistinctAggFn implements AggregationFn {
      */
     public void processNext(Scan s) {
         Constant constant = s.getVal(originalFieldName());
-//        if (uniqueValues.contains(constant)) {
-//            return;
-//        }
-//        uniqueValues.add(constant);
-//        fn.processNext(s);
-
-        if (!uniqueValues.contains(constant)) {
+        if (sorted) {
+            if (!constant.equals(lastValue)) {
+                lastValue = constant;
+                fn.processNext(s);
+            }
+        }
+        else if (!uniqueValues.contains(constant)) {
             uniqueValues.add(constant);
             fn.processNext(s);
         }
@@ -80,6 +90,52 @@ public class DistinctAggFn implements AggregationFn {
         return fn.value();
     }
 
+    /**
+     * Specify whether the records of each group are sorted
+     * on the field, so that equal values are adjacent
+     * and no set of values need be kept.
+     * @param sorted true if each group is sorted on the field
+     */
+    public void setSorted(boolean sorted) {
+        this.sorted = sorted;
+    }
+
+    /**
+     * Return the number of slots of the partial state of the
+     * underlying function, which is the partial state here.
+     * It is used by HashGroupByPlan, whose input is first made
+     * distinct on the group fields and this field,
+     * so that each value of a group is aggregated once.
+     * @see simpledb.materialize.AggregationFn#stateSize()
+     */
+    public int stateSize() {
+        return fn.stateSize();
+    }
+
+    /**
+     * Return true if the underlying function has a partial state.
+     * @see simpledb.materialize.AggregationFn#hasPartialState(simpledb.record.Schema)
+     */
+    public boolean hasPartialState(Schema sch) {
+        return fn.hasPartialState(sch);
+    }
+
+    public void init(long[] state, int pos) {
+        fn.init(state, pos);
+    }
+
+    public void accumulate(long[] state, int pos, Scan s) {
+        fn.accumulate(state, pos, s);
+    }
+
+    public void merge(long[] state, int pos, long[] other, int otherpos) {
+        fn.merge(state, pos, other, otherpos);
+    }
+
+    public Constant finalValue(long[] state, int pos) {
+        return fn.finalValue(state, pos);
+    }
+
     public boolean isAggregate() {
         return true;
     }
@@ -2,18 +2,27 @@ package simpledb.materialize;
 
 import java.util.*;
 import simpledb.tx.Transaction;
-import simpledb.record.Schema;
+import simpledb.record.*;
 import simpledb.plan.Plan;
 import simpledb.query.*;
+import simpledb.server.SimpleDB;
 
 /**
  * The Plan class for the <i>distinct</i> operator.
+ * If the underlying query is sorted on the selected fields,
+ * duplicates are removed by comparing adjacent records;
+ * otherwise the records seen are kept in a hash set
+ * bounded by the memory budget, spilling to temporary tables.
+ * A sorted distinct may also output unselected fields,
+ * such as those of an order by clause.
  * @author Edward Sciore
  */
 public class DistinctPlan implements Plan {
+    private Transaction tx;
     private Plan p;
-    private Schema sch ;
-    private List<String> fields;
+    private Schema sch = new Schema();
+    private List<String> fields, keyfields = new ArrayList<>();
+    private boolean sorted;
 
     /**
      * Create a distinct plan for the underlying query.
@@ -23,10 +32,44 @@ public class DistinctPlan implements Plan {
      * @param tx the calling transaction
      */
     public DistinctPlan(Transaction tx, Plan p, List<String> fields) {
+        this(tx, p, fields, false);
+    }
+
+    /**
+     * Create a distinct plan for the underlying query,
+     * which may be sorted on the selected fields.
+     * @param tx the calling transaction
+     * @param p a plan for the underlying query
+     * @param fields the selected fields
+     * @param sorted true if the underlying query is sorted on the selected fields
+     */
+    public DistinctPlan(Transaction tx, Plan p, List<String> fields, boolean sorted) {
+        this.tx = tx;
         this.p = p;
-        this.sch = p.schema();
         this.fields = fields;
+        this.sorted = sorted;
+        for (String fldname : p.schema().fields())
+            if (fields.contains(fldname)) {
+                sch.add(fldname, p.schema());
+                keyfields.add(fldname);
+            }
+    }
 
+    /**
+     * Create a distinct plan for an underlying query that is
+     * sorted on the selected fields, which also outputs the
+     * specified unselected fields of the first record
+     * of each distinct tuple.
+     * @param tx the calling transaction
+     * @param p a plan for the underlying query
+     * @param fields the selected fields
+     * @param carried the unselected fields to be output
+     */
+    public DistinctPlan(Transaction tx, Plan p, List<String> fields, List<String> carried) {
+        this(tx, p, fields, true);
+        for (String fldname : carried)
+            if (p.schema().hasField(fldname) && !sch.hasField(fldname))
+                sch.add(fldname, p.schema());
     }
 
     /**
@@ -36,8 +79,11 @@ public class DistinctPlan implements Plan {
      * @see simpledb.plan.Plan#open()
      */
     public Scan open() {
-        Scan s = p.open(); // this should sort the table before grouping
-        return new DistinctScan(s, sch.fields(), fields);
+        Scan s = p.open();
+        if (sorted)
+            return new SortedDistinctScan(s, keyfields, sch.fields());
+        int capacity = Math.max(1, SimpleDB.MEMORY_BUDGET / new Layout(sch).slotSize());
+        return new DistinctScan(tx, s, sch, capacity);
     }
 
     /**
@@ -79,17 +125,38 @@ public class DistinctPlan implements Plan {
     }
 
     /**
-     * Returns the schema of the output table.
-     * The schema consists of the group fields,
-     * plus one field for each aggregation function.
+     * Estimate the fraction of the records whose value of the
+     * field lies in the range, which is the same as in
+     * the underlying query.
+     * @see simpledb.plan.Plan#rangeFraction(java.lang.String, simpledb.query.Range)
+     */
+    public double rangeFraction(String fldname, Range range) {
+        return p.rangeFraction(fldname, range);
+    }
+
+    /**
+     * Returns the schema of the output table,
+     * which consists of the selected fields
+     * and any unselected fields that are output.
      * @see simpledb.plan.Plan#schema()
      */
     public Schema schema() {
         return sch;
     }
+    
+    /**
+     * Return the order of the records of the query.
+     * A sorted distinct keeps the order of the underlying query;
+     * otherwise the records are in no particular order.
+     * @see simpledb.plan.Plan#ordering()
+     */
+    public Sort ordering() {
+        return sorted ? p.ordering().restrictTo(sch) : new Sort();
+    }
+
 
     public String toString() {
-        String res = "Distinct {";
+        String res = sorted ? "Sorted Distinct {" : "Distinct {";
         res += p.toString();
         res += "}";
         return res;
@@ -3,135 +3,208 @@ package simpledb.materialize;
 import java.util.*;
 
 import simpledb.query.*;
+import simpledb.record.Schema;
+import simpledb.tx.Transaction;
 
 /**
  * The Scan class for the <i>distinct</i> operator.
+ * The tuples seen so far are kept in a hash set,
+ * which holds at most a given number of tuples.
+ * Once the set is full, a tuple that is not in it
+ * is hash-partitioned into a temporary table;
+ * after the underlying scan is exhausted, each partition
+ * is scanned for distinct tuples in the same way.
  * @author Edward Sciore
  */
 public class DistinctScan implements Scan {
-    private Scan s;
-    private List<String> fields;
+    private static final int MAX_DEPTH = 8;
+    private Transaction tx;
+    private Scan s, current;
+    private Schema keysch;
+    private List<String> keyfields;
     private Set<List<Constant>> uniqueRecords;
-    private List<String> selectFields;
+    private int capacity, depth;
+    private TempTable[] parts;
+    private UpdateScan[] spills;
+    private boolean[] used;
+    private Deque<Partition> pending = new ArrayDeque<>();
 
     /**
      * Create a distinct scan.
-     * @param s the distinct scan
+     * @param tx the calling transaction
+     * @param s the underlying scan
+     * @param keysch the schema of the selected fields,
+     * which are compared and spilled
+     * @param capacity the number of tuples to hold in memory
      */
-    public DistinctScan(Scan s, List<String> fields, List<String> selectFields) {
+    public DistinctScan(Transaction tx, Scan s, Schema keysch, int capacity) {
+        this.tx = tx;
         this.s = s;
-        uniqueRecords = new HashSet<>();
-        this.fields = fields;
-        this.selectFields = selectFields;
+        this.keysch = keysch;
+        this.capacity = capacity;
+        keyfields = keysch.fields();
         beforeFirst();
     }
 
     /**
-     * Position the scan before the first group.
-     * Internally, the underlying scan is always
-     * positioned at the first record of a group, which
-     * means that this method moves to the
-     * first underlying record.
+     * Position the scan before the first tuple
+     * of the underlying scan, discarding the tuples
+     * seen and any spilled partitions.
      * @see simpledb.query.Scan#beforeFirst()
      */
     public void beforeFirst() {
+        closePartitions();
+        pending.clear();
         s.beforeFirst();
+        current = s;
+        depth = 0;
+        uniqueRecords = new HashSet<>();
     }
 
     /**
-     * Move to the next tuple.
-     * Adds the list of constants of the tuple into the set
-     * constants that are already in the set is not added
-     * List of Constants added are within the selectfields
+     * Move to the next tuple that has not been seen.
+     * A tuple not in the set is added to it if there is room,
+     * and is otherwise written to a spill partition to be
+     * returned later, if it is not a duplicate there.
+     * When the current scan is exhausted, the next
+     * partition is opened.
      * @see simpledb.query.Scan#next()
      */
     public boolean next() {
-
-        if(!s.next()) {
-            return false;
-        }
-
-        List<Constant> currentTuple = new ArrayList<>();
-        for(String field :fields){
-            if(selectFields.contains(field)){
-                currentTuple.add(getVal(field));
-            }
-        }
-
-        //while the next tuple already exists
-        while(uniqueRecords.contains(currentTuple)){
-            if(!s.next()){
-                return false;
-            } else {
-                currentTuple = new ArrayList<>();
-                for(String field :fields){
-                    if(selectFields.contains(field)){
-                        currentTuple.add(getVal(field));
-                    }
+        while (true) {
+            while (current.next()) {
+                List<Constant> currentTuple = new ArrayList<>(keyfields.size());
+                for (String field : keyfields)
+                    currentTuple.add(current.getVal(field));
+                if (uniqueRecords.contains(currentTuple))
+                    continue;
+                if (uniqueRecords.size() < capacity || depth >= MAX_DEPTH) {
+                    uniqueRecords.add(currentTuple);
+                    return true;
                 }
+                spill(currentTuple);
             }
+            closePartitions();
+            if (pending.isEmpty())
+                return false;
+            Partition part = pending.pop();
+            current = part.table.open();
+            depth = part.depth;
+            uniqueRecords = new HashSet<>();
         }
-        uniqueRecords.add(currentTuple);
-
-        return true;
-
     }
 
     /**
-     * Close the scan by closing the underlying scan.
+     * Close the scan by closing the underlying scan
+     * and any open partition.
      * @see simpledb.query.Scan#close()
      */
     public void close() {
+        closePartitions();
         s.close();
     }
 
     /**
-     * Get the Constant value of the specified field.
-     * If the field is a group field, then its value can
-     * be obtained from the saved group value.
-     * Otherwise, the value is obtained from the
-     * appropriate aggregation function.
+     * Get the Constant value of the specified field
+     * from the current tuple.
      * @see simpledb.query.Scan#getVal(java.lang.String)
      */
-    public Constant getVal(String fldname) { // all fields in the schema must be in groupBy or be aggregated
-        if (fields.contains(fldname))
-            return s.getVal(fldname);
+    public Constant getVal(String fldname) {
+        if (keysch.hasField(fldname))
+            return current.getVal(fldname);
 
         throw new RuntimeException("field " + fldname + " not found.");
     }
 
     /**
-     * Get the integer value of the specified field.
-     * If the field is a group field, then its value can
-     * be obtained from the saved group value.
-     * Otherwise, the value is obtained from the
-     * appropriate aggregation function.
-     * @see simpledb.query.Scan#getVal(java.lang.String)
+     * Get the integer value of the specified field
+     * from the current tuple.
+     * @see simpledb.query.Scan#getInt(java.lang.String)
      */
     public int getInt(String fldname) {
         return getVal(fldname).asInt();
     }
 
     /**
-     * Get the string value of the specified field.
-     * If the field is a group field, then its value can
-     * be obtained from the saved group value.
-     * Otherwise, the value is obtained from the
-     * appropriate aggregation function.
-     * @see simpledb.query.Scan#getVal(java.lang.String)
+     * Get the string value of the specified field
+     * from the current tuple.
+     * @see simpledb.query.Scan#getString(java.lang.String)
      */
     public String getString(String fldname) {
         return getVal(fldname).asString();
     }
 
-    /** Return true if the specified field is either a
-     * grouping field or created by an aggregation function.
+    /** Return true if the specified field is one
+     * of the selected fields.
      * @see simpledb.query.Scan#hasField(java.lang.String)
      */
     public boolean hasField(String fldname) {
-        if (fields.contains(fldname))
-            return true;
-        return false;
+        return keysch.hasField(fldname);
+    }
+
+    /**
+     * Write the tuple to the spill partition chosen by
+     * hashing it, creating the partitions on first use.
+     */
+    private void spill(List<Constant> tuple) {
+        if (spills == null) {
+            int numparts = Math.max(2, tx.availableBuffs() - 2);
+            parts = new TempTable[numparts];
+            spills = new UpdateScan[numparts];
+            used = new boolean[numparts];
+            for (int i = 0; i < numparts; i++) {
+                parts[i] = new TempTable(tx, keysch);
+                spills[i] = parts[i].open();
+            }
+        }
+        int i = partition(tuple, depth, spills.length);
+        used[i] = true;
+        spills[i].insert();
+        for (int j = 0; j < keyfields.size(); j++)
+            spills[i].setVal(keyfields.get(j), tuple.get(j));
+    }
+
+    /**
+     * Close the partitions being written, queueing those
+     * that received tuples, and the partition being read.
+     */
+    private void closePartitions() {
+        if (spills != null) {
+            for (int i = 0; i < spills.length; i++) {
+                spills[i].close();
+                if (used[i])
+                    pending.push(new Partition(parts[i], depth + 1));
+            }
+            spills = null;
+        }
+        if (current != null && current != s) {
+            current.close();
+            current = s;
+        }
+    }
+
+    /**
+     * Choose a partition for the tuple, rehashing
+     * differently at each depth so that the tuples of
+     * a partition are spread when it is partitioned again.
+     */
+    private static int partition(List<Constant> tuple, int depth, int numparts) {
+        int h = tuple.hashCode() ^ (depth * 0x9E3779B9);
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return Math.floorMod(h, numparts);
     }
-}
 
+    private static class Partition {
+        TempTable table;
+        int depth;
+
+        Partition(TempTable table, int depth) {
+            this.table = table;
+            this.depth = depth;
+        }
+    }
+}
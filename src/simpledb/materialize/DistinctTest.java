@@ -0,0 +1,85 @@
+package simpledb.materialize;
+
+import java.io.File;
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.plan.*;
+import simpledb.query.*;
+
+/**
+ * Remove duplicate tuples from a table by hashing, once with
+ * room for every tuple and then with memory budgets so small
+ * that the tuples spill into partitions, and once from the
+ * table sorted on the selected fields.
+ * Every distinct tuple must appear exactly once, and every
+ * buffer must be released once the scan is closed.
+ */
+public class DistinctTest {
+   public static void main(String[] args) {
+      deleteDir(new File("distincttest"));
+      SimpleDB db = new SimpleDB("distincttest");
+      Transaction tx = db.newTx();
+      Planner planner = db.planner();
+      planner.executeUpdate("create table T(A int, B varchar(9), C int)", tx);
+      Set<String> expected = new TreeSet<>();
+      Random r = new Random(37);
+      for (int i=0; i<3000; i++) {
+         int a = r.nextInt(40);
+         String b = "b" + r.nextInt(25);
+         planner.executeUpdate("insert into T(A,B,C) values(" + a + ", '" + b + "', " + i + ")", tx);
+         expected.add(a + " " + b);
+      }
+      tx.commit();
+
+      boolean ok = true;
+      List<String> fields = Arrays.asList("a", "b");
+      int budget = SimpleDB.MEMORY_BUDGET;
+      for (int mem : new int[] {budget, 200, 1}) {
+         SimpleDB.MEMORY_BUDGET = mem;
+         tx = db.newTx();
+         Plan p = new DistinctPlan(tx, new TablePlan(tx, "t", db.mdMgr()), fields);
+         ok = check(p, expected, "a budget of " + mem, tx) && ok;
+         tx.commit();
+      }
+      SimpleDB.MEMORY_BUDGET = budget;
+
+      tx = db.newTx();
+      Sort sort = new Sort(new Expression("a"), "asc");
+      sort.conjoinWith(new Sort(new Expression("b"), "asc"));
+      Plan sorted = new SortPlan(tx, new TablePlan(tx, "t", db.mdMgr()), sort);
+      ok = check(new DistinctPlan(tx, sorted, fields, true), expected, "sorted input", tx) && ok;
+      tx.commit();
+      System.out.println(ok ? "distinct ok" : "distinct FAILED");
+   }
+
+   private static boolean check(Plan p, Set<String> expected, String what, Transaction tx) {
+      boolean ok = true;
+      Set<String> found = new TreeSet<>();
+      Scan s = p.open();
+      while (s.next()) {
+         String tuple = s.getInt("a") + " " + s.getString("b");
+         if (!found.add(tuple)) {
+            System.out.println(tuple + " returned twice from " + what);
+            ok = false;
+         }
+      }
+      s.close();
+      if (!found.equals(expected)) {
+         System.out.println(found.size() + " tuples instead of " + expected.size() + " from " + what);
+         ok = false;
+      }
+      if (tx.availableBuffs() != SimpleDB.BUFFER_SIZE) {
+         System.out.println((SimpleDB.BUFFER_SIZE - tx.availableBuffs()) + " buffers still pinned");
+         ok = false;
+      }
+      return ok;
+   }
+
+   private static void deleteDir(File f) {
+      if (f.isDirectory())
+         for (File child : f.listFiles())
+            deleteDir(child);
+      f.delete();
+   }
+}
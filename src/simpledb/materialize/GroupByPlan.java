@@ -8,6 +8,8 @@ import simpledb.query.*;
 
 /**
  * The Plan class for the <i>groupby</i> operator.
+ * The underlying query is sorted on the group fields,
+ * unless its records are already in that order.
  * @author Edward Sciore
  */
 public class GroupByPlan implements Plan {
@@ -25,10 +27,11 @@ public class GroupByPlan implements Plan {
     * @param p a plan for the underlying query
     * @param groupfields the group fields
     * @param aggfns the aggregation functions
+    * @param sort the order that groups the records
     * @param tx the calling transaction
     */
    public GroupByPlan(Transaction tx, Plan p, List<String> groupfields, List<AggregationFn> aggfns, Sort sort) {
-      this.p = new SortPlan(tx, p, sort); // TODO to be changed later
+      this.p = p.ordering().satisfies(sort) ? p : new SortPlan(tx, p, sort);
       this.groupfields = groupfields;
       this.aggfns = aggfns;
 //      this.sch = p.schema();
@@ -46,7 +49,7 @@ public class GroupByPlan implements Plan {
     */
    public Scan open() {
       Scan s = p.open(); // this should sort the table before grouping
-      return new GroupByScan(s, groupfields, aggfns);
+      return new GroupByScan(s, groupfields, aggfns, p.schema());
    }
    
    /**
@@ -89,6 +92,20 @@ public class GroupByPlan implements Plan {
       else
          return recordsOutput();
    }
+
+   /**
+    * Estimate the fraction of the groups whose value of the
+    * field lies in the range.  For a grouping field, it is
+    * the fraction in the underlying query; for an aggregate
+    * field, the customary guesses are used.
+    * @see simpledb.plan.Plan#rangeFraction(java.lang.String, simpledb.query.Range)
+    */
+   public double rangeFraction(String fldname, Range range) {
+      if (p.schema().hasField(fldname))
+         return p.rangeFraction(fldname, range);
+      else
+         return range.guessFraction(recordsOutput());
+   }
    
    /**
     * Returns the schema of the output table.
@@ -99,6 +116,15 @@ public class GroupByPlan implements Plan {
    public Schema schema() {
       return sch;
    }
+   
+   /**
+    * Return the order of the groups, which is
+    * the order of the sorted records on the group fields.
+    * @see simpledb.plan.Plan#ordering()
+    */
+   public Sort ordering() {
+      return p.ordering().restrictTo(sch);
+   }
 
    public String toString() {
       return String.format("%s group by %s%s",
@@ -3,6 +3,8 @@ package simpledb.materialize;
 import java.util.*;
 
 import simpledb.query.*;
+import simpledb.record.Schema;
+import static java.sql.Types.INTEGER;
 
 /**
  * The Scan class for the <i>groupby</i> operator.
@@ -12,19 +14,33 @@ public class GroupByScan implements Scan {
    private Scan s;
    private List<String> groupfields;
    private List<AggregationFn> aggfns;
-   private GroupValue groupval;
+   private String[] keyfields;
+   private boolean[] isint;
+   private int[] intkey;
+   private String[] strkey;
    private boolean moregroups;
    
    /**
     * Create a groupby scan, given a grouped table scan.
+    * The key of the current group is held in buffers
+    * that are reused from group to group,
+    * with integer fields kept as primitive values.
     * @param s the grouped scan
     * @param groupfields the group fields
     * @param aggfns the aggregation functions
+    * @param sch the schema of the grouped scan
     */
-   public GroupByScan(Scan s, List<String> groupfields, List<AggregationFn> aggfns) {
+   public GroupByScan(Scan s, List<String> groupfields, List<AggregationFn> aggfns, Schema sch) {
       this.s = s;
       this.groupfields = groupfields;
       this.aggfns = aggfns;
+      int n = groupfields.size();
+      keyfields = groupfields.toArray(new String[n]);
+      isint = new boolean[n];
+      intkey = new int[n];
+      strkey = new String[n];
+      for (int i=0; i<n; i++)
+         isint[i] = sch.type(keyfields[i]) == INTEGER;
       beforeFirst();
    }
    
@@ -46,7 +62,10 @@ public class GroupByScan implements Scan {
     * The key of the group is determined by the 
     * group values at the current record.
     * The method repeatedly reads underlying records until
-    * it encounters a record having a different key.
+    * it encounters a record having a different key,
+    * comparing the fields of each record in place
+    * with the saved key, so that no objects are created
+    * for the records of a group.
     * The aggregation functions are called for each record
     * in the group. 
     * The values of the grouping fields for the group are saved.
@@ -57,10 +76,9 @@ public class GroupByScan implements Scan {
          return false;
       for (AggregationFn fn : aggfns)
          fn.processFirst(s);
-      groupval = new GroupValue(s, groupfields);
+      saveKey();
       while(moregroups = s.next()) {
-         GroupValue gv = new GroupValue(s, groupfields);
-         if (!groupval.equals(gv))
+         if (!sameKey())
             break;
          for (AggregationFn fn : aggfns)
             fn.processNext(s);
@@ -68,6 +86,24 @@ public class GroupByScan implements Scan {
       return true;
    }
    
+   private void saveKey() {
+      for (int i=0; i<keyfields.length; i++) {
+         if (isint[i])
+            intkey[i] = s.getInt(keyfields[i]);
+         else
+            strkey[i] = s.getString(keyfields[i]);
+      }
+   }
+   
+   private boolean sameKey() {
+      for (int i=0; i<keyfields.length; i++) {
+         if (isint[i] ? s.getInt(keyfields[i]) != intkey[i]
+                      : !s.getString(keyfields[i]).equals(strkey[i]))
+            return false;
+      }
+      return true;
+   }
+   
    /**
     * Close the scan by closing the underlying scan.
     * @see simpledb.query.Scan#close()
@@ -85,8 +121,9 @@ public class GroupByScan implements Scan {
     * @see simpledb.query.Scan#getVal(java.lang.String)
     */
    public Constant getVal(String fldname) { // all fields in the schema must be in groupBy or be aggregated
-      if (groupfields.contains(fldname))
-         return groupval.getVal(fldname);
+      for (int i=0; i<keyfields.length; i++)
+         if (keyfields[i].equals(fldname))
+            return isint[i] ? new Constant(intkey[i]) : new Constant(strkey[i]);
       for (AggregationFn fn : aggfns)
          if (fn.fieldName().equals(fldname))
          return fn.value();
@@ -102,6 +139,9 @@ public class GroupByScan implements Scan {
     * @see simpledb.query.Scan#getVal(java.lang.String)
     */
    public int getInt(String fldname) {
+      for (int i=0; i<keyfields.length; i++)
+         if (isint[i] && keyfields[i].equals(fldname))
+            return intkey[i];
       return getVal(fldname).asInt();
    }
    
@@ -114,6 +154,9 @@ public class GroupByScan implements Scan {
     * @see simpledb.query.Scan#getVal(java.lang.String)
     */
    public String getString(String fldname) {
+      for (int i=0; i<keyfields.length; i++)
+         if (!isint[i] && keyfields[i].equals(fldname))
+            return strkey[i];
       return getVal(fldname).asString();
    }
    
@@ -0,0 +1,74 @@
+package simpledb.materialize;
+
+import java.io.File;
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.plan.*;
+import simpledb.query.*;
+
+/**
+ * Group a table by a string and an integer field with a
+ * sort-based group by, where groups share either field with
+ * their neighbours and some strings are prefixes of others.
+ * Every group must appear once, with the right aggregates.
+ */
+public class GroupByTest {
+   public static void main(String[] args) {
+      deleteDir(new File("groupbytest"));
+      SimpleDB db = new SimpleDB("groupbytest");
+      Transaction tx = db.newTx();
+      Planner planner = db.planner();
+      planner.executeUpdate("create table T(A int, B varchar(9), C int)", tx);
+      Map<String,int[]> expected = new TreeMap<>();
+      Random r = new Random(36);
+      String[] bs = {"b", "b1", "b10", "b100", "c", "c1"};
+      for (int i=0; i<1500; i++) {
+         int a = r.nextInt(12) - 6, c = r.nextInt(100);
+         String b = bs[r.nextInt(bs.length)];
+         planner.executeUpdate("insert into T(A,B,C) values(" + a + ", '" + b + "', " + c + ")", tx);
+         int[] g = expected.computeIfAbsent(b + " " + a, k -> new int[2]);
+         g[0]++;
+         g[1] += c;
+      }
+      tx.commit();
+
+      tx = db.newTx();
+      List<AggregationFn> aggfns = Arrays.asList(new CountFn("c"), new SumFn("c"));
+      Sort sort = new Sort(new Expression("b"), "asc");
+      sort.conjoinWith(new Sort(new Expression("a"), "asc"));
+      Plan p = new GroupByPlan(tx, new TablePlan(tx, "t", db.mdMgr()),
+            Arrays.asList("b", "a"), aggfns, sort);
+      Map<String,int[]> found = new TreeMap<>();
+      boolean ok = true;
+      Scan s = p.open();
+      while (s.next()) {
+         String key = s.getString("b") + " " + s.getInt("a");
+         int[] g = {s.getInt("count(c)"), s.getInt("sum(c)")};
+         if (found.put(key, g) != null) {
+            System.out.println("group " + key + " returned twice");
+            ok = false;
+         }
+      }
+      s.close();
+      tx.commit();
+      if (found.size() != expected.size()) {
+         System.out.println(found.size() + " groups instead of " + expected.size());
+         ok = false;
+      }
+      for (Map.Entry<String,int[]> e : expected.entrySet())
+         if (!Arrays.equals(e.getValue(), found.get(e.getKey()))) {
+            System.out.println("group " + e.getKey() + " has " + Arrays.toString(found.get(e.getKey()))
+                  + " instead of " + Arrays.toString(e.getValue()));
+            ok = false;
+         }
+      System.out.println(ok ? "group by ok" : "group by FAILED");
+   }
+
+   private static void deleteDir(File f) {
+      if (f.isDirectory())
+         for (File child : f.listFiles())
+            deleteDir(child);
+      f.delete();
+   }
+}
@@ -0,0 +1,253 @@
+package simpledb.materialize;
+
+import java.util.*;
+import simpledb.tx.Transaction;
+import simpledb.record.*;
+import simpledb.plan.Plan;
+import simpledb.query.*;
+import simpledb.server.SimpleDB;
+
+/**
+ * The Plan class for the hash-based <i>groupby</i> operator.
+ * Unlike GroupByPlan, the input does not need to be sorted:
+ * the groups are aggregated in an in-memory hash table,
+ * and when the table is full, either the partial states of its
+ * groups are spilled to temporary tables, to be merged later,
+ * or the records of groups not in the table are spilled,
+ * to be aggregated later.
+ * Distinct aggregates, which must all be on the same field,
+ * are computed over the distinct values of the group fields
+ * and that field, so that each value is aggregated once.
+ */
+public class HashGroupByPlan implements Plan {
+   private Transaction tx;
+   private Plan p;
+   private List<String> groupfields;
+   private List<AggregationFn> aggfns;
+   private Schema sch = new Schema();
+   private Schema statesch = new Schema();
+   private boolean distinctinput;
+   private int statesize = 0;
+   
+   /**
+    * Create a hash groupby plan for the underlying query.
+    * @param tx the calling transaction
+    * @param p a plan for the underlying query
+    * @param groupfields the group fields
+    * @param aggfns the aggregation functions
+    */
+   public HashGroupByPlan(Transaction tx, Plan p, List<String> groupfields, List<AggregationFn> aggfns) {
+      this.tx = tx;
+      this.groupfields = groupfields;
+      this.aggfns = aggfns;
+      String distinctfld = distinctField(aggfns);
+      if (distinctfld != null) {
+         List<String> fields = new ArrayList<>(groupfields);
+         fields.add(distinctfld);
+         p = new DistinctPlan(tx, p, fields);
+         distinctinput = true;
+      }
+      this.p = p;
+      for (String fldname : groupfields) {
+         sch.add(fldname, p.schema());
+         statesch.add(fldname, p.schema());
+      }
+      for (AggregationFn fn : aggfns) {
+         sch.addIntField(fn.fieldName());
+         statesize += fn.stateSize();
+      }
+      addStateFields(statesize);
+   }
+   
+   /**
+    * Open a hash groupby scan over the underlying query.
+    * @see simpledb.plan.Plan#open()
+    */
+   public Scan open() {
+      Scan s = p.open();
+      return new HashGroupByScan(tx, s, statesch, p.schema(), spillsStates(),
+                                 groupfields, aggfns, groupCapacity());
+   }
+   
+   /**
+    * Return true if a spilled partial state takes no more
+    * space than an input record.  Each spilled state then
+    * replaces at least one input record of the same size,
+    * so spilling states never writes more than spilling records.
+    * Otherwise, as for the sketches of the approximate
+    * aggregates, the groups in the table stay there and
+    * the records of the other groups are spilled.
+    * @return true if the partial states are spilled
+    */
+   public boolean spillsStates() {
+      int slotsperrec = (statesch.fields().size() - groupfields.size()) / 2;
+      int staterecs = (statesize + slotsperrec - 1) / slotsperrec;
+      long statebytes = (long) staterecs * new Layout(statesch).slotSize();
+      return statebytes <= new Layout(p.schema()).slotSize();
+   }
+   
+   /**
+    * Return the number of groups that fit in the memory budget,
+    * each group taking the slot size of an output record
+    * plus the partial states of the aggregation functions.
+    * @return the capacity of the in-memory hash table
+    */
+   public int groupCapacity() {
+      long groupsize = new Layout(sch).slotSize();
+      for (AggregationFn fn : aggfns)
+         groupsize += Long.BYTES * fn.stateSize();
+      return (int) Math.max(1, SimpleDB.MEMORY_BUDGET / groupsize);
+   }
+   
+   /**
+    * Return true if every aggregation function can keep
+    * its state as a partial state, which is not so for
+    * the minimum of a string field, or for distinct aggregates
+    * on different fields or mixed with other aggregates.
+    * Otherwise the sort-based GroupByPlan must be used.
+    * @return true if this plan can compute the aggregates
+    */
+   public boolean hasPartialState() {
+      for (AggregationFn fn : aggfns)
+         if ((fn instanceof DistinctAggFn && !distinctinput) || !fn.hasPartialState(p.schema()))
+            return false;
+      return true;
+   }
+   
+   /**
+    * Return true if the estimated number of groups
+    * fits in the memory budget, so that the input
+    * is aggregated in a single pass.
+    * @return true if no records are expected to be spilled
+    */
+   public boolean fitsInMemory() {
+      return recordsOutput() <= groupCapacity();
+   }
+   
+   /**
+    * Return the number of blocks required to
+    * compute the aggregation, which is one pass
+    * through the underlying query.
+    * It does <i>not</i> include the cost of
+    * writing and reading spilled records.
+    * @see simpledb.plan.Plan#blocksAccessed()
+    */
+   public int blocksAccessed() {
+      return p.blocksAccessed();
+   }
+   
+   /**
+    * Return the number of groups.  Assuming equal distribution,
+    * this is the product of the distinct values
+    * for each grouping field, but not more than
+    * the number of input records.
+    * @see simpledb.plan.Plan#recordsOutput()
+    */
+   public int recordsOutput() {
+      long numgroups = 1;
+      for (String fldname : groupfields)
+         numgroups = Math.min(numgroups * p.distinctValues(fldname), Integer.MAX_VALUE);
+      if (!groupfields.isEmpty())
+         numgroups = Math.min(numgroups, p.recordsOutput());
+      return (int) numgroups;
+   }
+   
+   /**
+    * Return the number of distinct values for the
+    * specified field.  If the field is a grouping field,
+    * then the number of distinct values is the same
+    * as in the underlying query.
+    * If the field is an aggregate field, then we
+    * assume that all values are distinct.
+    * @see simpledb.plan.Plan#distinctValues(java.lang.String)
+    */
+   public int distinctValues(String fldname) {
+      if (p.schema().hasField(fldname))
+         return p.distinctValues(fldname);
+      else
+         return recordsOutput();
+   }
+
+   /**
+    * Estimate the fraction of the groups whose value of the
+    * field lies in the range.  For a grouping field, it is
+    * the fraction in the underlying query; for an aggregate
+    * field, the customary guesses are used.
+    * @see simpledb.plan.Plan#rangeFraction(java.lang.String, simpledb.query.Range)
+    */
+   public double rangeFraction(String fldname, Range range) {
+      if (p.schema().hasField(fldname))
+         return p.rangeFraction(fldname, range);
+      else
+         return range.guessFraction(recordsOutput());
+   }
+   
+   /**
+    * Returns the schema of the output table.
+    * The schema consists of the group fields,
+    * plus one field for each aggregation function.
+    * @see simpledb.plan.Plan#schema()
+    */
+   public Schema schema() {
+      return sch;
+   }
+   
+   /**
+    * Return the order of the records of the query.
+    * The groups are output from a hash table,
+    * in no particular order.
+    * @see simpledb.plan.Plan#ordering()
+    */
+   public Sort ordering() {
+      return new Sort();
+   }
+
+
+   /**
+    * Return the field of the aggregation functions if they are
+    * all distinct aggregates on the same field, or else null.
+    */
+   private static String distinctField(List<AggregationFn> aggfns) {
+      String fldname = null;
+      for (AggregationFn fn : aggfns) {
+         if (!(fn instanceof DistinctAggFn)
+               || (fldname != null && !fldname.equals(fn.originalFieldName())))
+            return null;
+         fldname = fn.originalFieldName();
+      }
+      return fldname;
+   }
+
+   /**
+    * Add to the schema of a spilled partial state the fields
+    * holding its long slots, each as two integers.
+    * A state that does not fit in a block is spilled as
+    * several records, each with as many slots as fit.
+    */
+   private void addStateFields(int statesize) {
+      int slots = Math.max(1, statesize);
+      while (slots > 1 && slotSize(statesch, slots) > tx.blockSize())
+         slots = (slots + 1) / 2;
+      while (slots < statesize && slotSize(statesch, slots + 1) <= tx.blockSize())
+         slots++;
+      for (int i=0; i<slots; i++) {
+         statesch.addIntField("#hi" + i);
+         statesch.addIntField("#lo" + i);
+      }
+   }
+
+   private static int slotSize(Schema keysch, int slots) {
+      Schema sch = new Schema();
+      sch.addAll(keysch);
+      for (int i=0; i<slots; i++) {
+         sch.addIntField("#hi" + i);
+         sch.addIntField("#lo" + i);
+      }
+      return new Layout(sch).slotSize();
+   }
+
+   public String toString() {
+      return String.format("%s hash group by %s%s",
+              p.toString(), groupfields.toString(), aggfns.isEmpty() ? "" : " aggregate to " + aggfns);
+   }
+}
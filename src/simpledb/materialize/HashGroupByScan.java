@@ -0,0 +1,319 @@
+package simpledb.materialize;
+
+import java.util.*;
+import simpledb.tx.Transaction;
+import simpledb.record.*;
+import simpledb.query.*;
+
+/**
+ * The Scan class for the hash-based <i>groupby</i> operator.
+ * The input is read into a hash table from group key to
+ * the partial states of the aggregation functions for that group,
+ * held together in a single long array.
+ * Once the table holds its capacity of groups and a record
+ * of a new group is read, one of two things happens.
+ * If partial states are spilled, the states in the table are
+ * hash-partitioned on their group keys into temporary tables,
+ * and the table is emptied; the states left at the end of the
+ * input are spilled as well, and each partition is then read
+ * in the same way, merging the partial states of each group.
+ * Otherwise the groups in the table stay there, and the record
+ * itself is hash-partitioned on its group key; each partition
+ * of records is then aggregated in the same way.
+ */
+public class HashGroupByScan implements Scan {
+   private static final int MAX_DEPTH = 8;
+   private Transaction tx;
+   private Scan s;
+   private Schema statesch, inputsch;
+   private boolean spillstates;
+   private List<String> groupfields;
+   private List<AggregationFn> aggfns;
+   private int capacity, slotsperrec;
+   private int[] statepos;
+   private int statesize = 0;
+   private TempTable[] parts;
+   private boolean[] used;
+   private RID[] ends;
+   private Deque<Partition> pending = new ArrayDeque<>();
+   private Iterator<Map.Entry<List<Constant>,long[]>> groupiter;
+   private Map.Entry<List<Constant>,long[]> current;
+   
+   /**
+    * Create a hash groupby scan over the specified scan.
+    * @param tx the calling transaction
+    * @param s the scan to be grouped
+    * @param statesch the fields of a spilled partial state:
+    * the group fields, followed by the high and low
+    * halves of the long slots of a record
+    * @param inputsch the fields of a spilled input record
+    * @param spillstates true if partial states are spilled,
+    * false if input records are
+    * @param groupfields the group fields
+    * @param aggfns the aggregation functions
+    * @param capacity the number of groups to hold in memory
+    */
+   public HashGroupByScan(Transaction tx, Scan s, Schema statesch, Schema inputsch, boolean spillstates,
+                          List<String> groupfields, List<AggregationFn> aggfns, int capacity) {
+      this.tx = tx;
+      this.s = s;
+      this.statesch = statesch;
+      this.inputsch = inputsch;
+      this.spillstates = spillstates;
+      this.groupfields = groupfields;
+      this.aggfns = aggfns;
+      this.capacity = capacity;
+      statepos = new int[aggfns.size()];
+      for (int i=0; i<statepos.length; i++) {
+         statepos[i] = statesize;
+         statesize += aggfns.get(i).stateSize();
+      }
+      slotsperrec = (statesch.fields().size() - groupfields.size()) / 2;
+      beforeFirst();
+   }
+   
+   /**
+    * Position the scan before the first group,
+    * by aggregating the underlying scan again.
+    * @see simpledb.query.Scan#beforeFirst()
+    */
+   public void beforeFirst() {
+      pending.clear();
+      s.beforeFirst();
+      aggregate(s, 0, false);
+   }
+   
+   /**
+    * Move to the next group.
+    * When the groups in memory are exhausted, the next
+    * spilled partition is aggregated.
+    * @see simpledb.query.Scan#next()
+    */
+   public boolean next() {
+      while (!groupiter.hasNext()) {
+         if (pending.isEmpty())
+            return false;
+         Partition part = pending.pop();
+         Scan ps = part.table.open();
+         aggregate(ps, part.depth, spillstates);
+         ps.close();
+      }
+      current = groupiter.next();
+      return true;
+   }
+   
+   /**
+    * Close the scan by closing the underlying scan.
+    * @see simpledb.query.Scan#close()
+    */
+   public void close() {
+      s.close();
+   }
+   
+   /**
+    * Get the Constant value of the specified field,
+    * from either the key of the current group
+    * or the appropriate aggregation function.
+    * @see simpledb.query.Scan#getVal(java.lang.String)
+    */
+   public Constant getVal(String fldname) {
+      int pos = groupfields.indexOf(fldname);
+      if (pos >= 0)
+         return current.getKey().get(pos);
+      long[] state = current.getValue();
+      for (int i=0; i<statepos.length; i++)
+         if (aggfns.get(i).fieldName().equals(fldname))
+            return aggfns.get(i).finalValue(state, statepos[i]);
+      throw new RuntimeException("field " + fldname + " not found.");
+   }
+   
+   public int getInt(String fldname) {
+      return getVal(fldname).asInt();
+   }
+   
+   public String getString(String fldname) {
+      return getVal(fldname).asString();
+   }
+   
+   /** Return true if the specified field is either a 
+    * grouping field or created by an aggregation function.
+    * @see simpledb.query.Scan#hasField(java.lang.String)
+    */
+   public boolean hasField(String fldname) {
+      if (groupfields.contains(fldname))
+         return true;
+      for (AggregationFn fn : aggfns)
+         if (fn.fieldName().equals(fldname))
+            return true;
+      return false;
+   }
+   
+   /**
+    * Read the records of the specified scan into a new hash table,
+    * accumulating input records or merging spilled partial states.
+    * When a record of a new group finds the table full, either
+    * the groups of the table or the record are spilled to the
+    * partitions, chosen by hashing the group keys; partitions
+    * that receive records are queued for later aggregation.
+    * Past the maximum depth, the table grows beyond its capacity.
+    */
+   private void aggregate(Scan src, int depth, boolean merging) {
+      Map<List<Constant>,long[]> groups = new HashMap<>();
+      long[] other = new long[statesize];
+      while (src.next()) {
+         List<Constant> key = new ArrayList<>(groupfields.size());
+         for (String fldname : groupfields)
+            key.add(src.getVal(fldname));
+         if (merging)
+            readState(src, other);
+         long[] state = groups.get(key);
+         if (state == null) {
+            if (groups.size() >= capacity && depth < MAX_DEPTH) {
+               if (!spillstates) {
+                  spillRecord(src, key, depth);
+                  continue;
+               }
+               spill(groups, depth);
+            }
+            state = new long[statesize];
+            for (int i=0; i<statepos.length; i++)
+               aggfns.get(i).init(state, statepos[i]);
+            groups.put(key, state);
+         }
+         for (int i=0; i<statepos.length; i++) {
+            if (merging)
+               aggfns.get(i).merge(state, statepos[i], other, statepos[i]);
+            else
+               aggfns.get(i).accumulate(state, statepos[i], src);
+         }
+      }
+      if (parts != null) {
+         if (spillstates)
+            spill(groups, depth);
+         for (int i=0; i<parts.length; i++)
+            if (used[i])
+               pending.push(new Partition(parts[i], depth+1));
+         parts = null;
+      }
+      groupiter = groups.entrySet().iterator();
+   }
+
+   /**
+    * Write the partial states of the groups to the partitions,
+    * creating them if this is the first spill of the input,
+    * and empty the table.
+    * Each partition is opened only while its states are written,
+    * so that a spill pins a single buffer, leaving the others
+    * to the underlying scan; writing resumes after the last
+    * state written, instead of searching the partition for space.
+    */
+   private void spill(Map<List<Constant>,long[]> groups, int depth) {
+      if (parts == null)
+         createPartitions(statesch);
+      List<List<Map.Entry<List<Constant>,long[]>>> byPart = new ArrayList<>();
+      for (int i=0; i<parts.length; i++)
+         byPart.add(new ArrayList<>());
+      for (Map.Entry<List<Constant>,long[]> e : groups.entrySet())
+         byPart.get(partition(e.getKey(), depth, parts.length)).add(e);
+      for (int i=0; i<parts.length; i++) {
+         if (byPart.get(i).isEmpty())
+            continue;
+         used[i] = true;
+         UpdateScan us = parts[i].open();
+         if (ends[i] != null)
+            us.moveToRid(ends[i]);
+         for (Map.Entry<List<Constant>,long[]> e : byPart.get(i))
+            writeState(us, e.getKey(), e.getValue());
+         ends[i] = us.getRid();
+         us.close();
+      }
+      groups.clear();
+   }
+
+   /**
+    * Write the current input record to the partition
+    * of its group key, creating the partitions if this
+    * is the first record of the input to be spilled.
+    */
+   private void spillRecord(Scan src, List<Constant> key, int depth) {
+      if (parts == null)
+         createPartitions(inputsch);
+      int i = partition(key, depth, parts.length);
+      used[i] = true;
+      UpdateScan us = parts[i].open();
+      if (ends[i] != null)
+         us.moveToRid(ends[i]);
+      us.insert();
+      for (String fldname : inputsch.fields())
+         us.setVal(fldname, src.getVal(fldname));
+      ends[i] = us.getRid();
+      us.close();
+   }
+
+   private void createPartitions(Schema sch) {
+      int numparts = Math.max(2, tx.availableBuffs() - 2);
+      parts = new TempTable[numparts];
+      used = new boolean[numparts];
+      ends = new RID[numparts];
+      for (int i=0; i<numparts; i++)
+         parts[i] = new TempTable(tx, sch);
+   }
+
+   /**
+    * Write a partial state as consecutive records, each holding
+    * the group key and as many of the long slots as fit.
+    */
+   private void writeState(UpdateScan us, List<Constant> key, long[] state) {
+      int slot = 0;
+      do {
+         us.insert();
+         for (int k=0; k<groupfields.size(); k++)
+            us.setVal(groupfields.get(k), key.get(k));
+         for (int j=0; j<slotsperrec && slot<statesize; j++, slot++) {
+            us.setInt("#hi" + j, (int) (state[slot] >>> 32));
+            us.setInt("#lo" + j, (int) state[slot]);
+         }
+      } while (slot < statesize);
+   }
+
+   /**
+    * Read the partial state whose first record is the current
+    * record of the scan, moving to its last record.
+    */
+   private void readState(Scan src, long[] state) {
+      int slot = 0;
+      while (true) {
+         for (int j=0; j<slotsperrec && slot<statesize; j++, slot++)
+            state[slot] = ((long) src.getInt("#hi" + j) << 32)
+                          | (src.getInt("#lo" + j) & 0xFFFFFFFFL);
+         if (slot >= statesize)
+            return;
+         src.next();
+      }
+   }
+   
+   /**
+    * Choose a partition for the group key, rehashing
+    * differently at each depth so that the groups of
+    * a partition are spread when it is partitioned again.
+    */
+   private static int partition(List<Constant> key, int depth, int numparts) {
+      int h = key.hashCode() ^ (depth * 0x9E3779B9);
+      h ^= h >>> 16;
+      h *= 0x85EBCA6B;
+      h ^= h >>> 13;
+      h *= 0xC2B2AE35;
+      h ^= h >>> 16;
+      return Math.floorMod(h, numparts);
+   }
+   
+   private static class Partition {
+      TempTable table;
+      int depth;
+      
+      Partition(TempTable table, int depth) {
+         this.table = table;
+         this.depth = depth;
+      }
+   }
+}
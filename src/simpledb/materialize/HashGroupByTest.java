@@ -0,0 +1,85 @@
+package simpledb.materialize;
+
+import java.io.File;
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.plan.*;
+import simpledb.query.*;
+
+/**
+ * Group a table with a hash group by, once with room for
+ * every group and then with memory budgets so small that
+ * the groups spill into partitions, recursively.
+ * Every group must appear once, with the right aggregates,
+ * and every buffer must be released once the scan is closed.
+ */
+public class HashGroupByTest {
+   public static void main(String[] args) {
+      deleteDir(new File("hashgroupbytest"));
+      SimpleDB db = new SimpleDB("hashgroupbytest");
+      Transaction tx = db.newTx();
+      Planner planner = db.planner();
+      planner.executeUpdate("create table T(A int, C int)", tx);
+      Map<Integer,int[]> expected = new TreeMap<>();
+      Random r = new Random(35);
+      for (int i=0; i<3000; i++) {
+         int a = r.nextInt(300), c = r.nextInt(1000);
+         planner.executeUpdate("insert into T(A,C) values(" + a + ", " + c + ")", tx);
+         int[] g = expected.computeIfAbsent(a, k -> new int[] {0, 0, Integer.MAX_VALUE, Integer.MIN_VALUE});
+         g[0]++;
+         g[1] += c;
+         g[2] = Math.min(g[2], c);
+         g[3] = Math.max(g[3], c);
+      }
+      tx.commit();
+
+      boolean ok = true;
+      int budget = SimpleDB.MEMORY_BUDGET;
+      for (int mem : new int[] {budget, 200, 1}) {
+         SimpleDB.MEMORY_BUDGET = mem;
+         tx = db.newTx();
+         List<AggregationFn> aggfns = Arrays.asList(new CountFn("c"), new SumFn("c"),
+               new MinFn("c"), new MaxFn("c"));
+         Plan p = new HashGroupByPlan(tx, new TablePlan(tx, "t", db.mdMgr()),
+               Arrays.asList("a"), aggfns);
+         Map<Integer,int[]> found = new TreeMap<>();
+         Scan s = p.open();
+         while (s.next()) {
+            int[] g = new int[aggfns.size()];
+            for (int i=0; i<g.length; i++)
+               g[i] = s.getInt(aggfns.get(i).fieldName());
+            if (found.put(s.getInt("a"), g) != null) {
+               System.out.println("group " + s.getInt("a") + " returned twice");
+               ok = false;
+            }
+         }
+         s.close();
+         if (found.size() != expected.size()) {
+            System.out.println(found.size() + " groups instead of " + expected.size()
+                  + " with a budget of " + mem);
+            ok = false;
+         }
+         for (Map.Entry<Integer,int[]> e : expected.entrySet())
+            if (!Arrays.equals(e.getValue(), found.get(e.getKey()))) {
+               System.out.println("group " + e.getKey() + " has " + Arrays.toString(found.get(e.getKey()))
+                     + " instead of " + Arrays.toString(e.getValue()) + " with a budget of " + mem);
+               ok = false;
+            }
+         if (tx.availableBuffs() != SimpleDB.BUFFER_SIZE) {
+            System.out.println((SimpleDB.BUFFER_SIZE - tx.availableBuffs()) + " buffers still pinned");
+            ok = false;
+         }
+         tx.commit();
+      }
+      SimpleDB.MEMORY_BUDGET = budget;
+      System.out.println(ok ? "hash group by ok" : "hash group by FAILED");
+   }
+
+   private static void deleteDir(File f) {
+      if (f.isDirectory())
+         for (File child : f.listFiles())
+            deleteDir(child);
+      f.delete();
+   }
+}
@@ -1,23 +1,40 @@
 package simpledb.materialize;
 
-import simpledb.multibuffer.BufferNeeds;
+import java.util.*;
+
 import simpledb.plan.Plan;
-import simpledb.query.Scan;
-import simpledb.query.UpdateScan;
+import simpledb.query.*;
+import simpledb.record.Layout;
 import simpledb.record.Schema;
 import simpledb.tx.Transaction;
-
-import java.util.*;
+import simpledb.server.SimpleDB;
 
 /**
- * The scan class corresponding to the hashjoin relational
- * algebra operator.
+ * The Plan class for the <i>hashjoin</i> operator.
+ * The join is a hybrid Grace hash join: the smaller input
+ * is the build input, whose records are held in an in-memory
+ * hash table if they fit in the memory budget; otherwise both
+ * inputs are hash-partitioned into temporary tables, except
+ * that the first build partition stays in memory and is probed
+ * as the probe input is partitioned.
+ * A Bloom filter of the build join values is pushed into the
+ * scan of the probe input, so that probe records that cannot
+ * match are discarded before they are joined or partitioned.
+ * <P>
+ * Besides the inner join, the plan implements the left outer join,
+ * the semi join and the anti join, in which the LHS is preserved;
+ * these build on the RHS, whatever its size, and probe with the LHS.
+ * <P>
+ * The join may be on several pairs of fields, in which case
+ * the records are hashed on the composite value of their join fields.
  * @author Ashley Lau
  */
 public class HashJoinPlan implements Plan {
     private final Transaction tx;
     private final Plan lhs, rhs;
-    private final String fldname1, fldname2;
+    private final List<String> fldnames1, fldnames2;
+    private final String jointype;
+    private final Predicate residual;
     private final Schema sch = new Schema();
 
     /**
@@ -25,83 +42,152 @@ public class HashJoinPlan implements Plan {
      * using the specified LHS and RHS plans.
      * @param p1 the left-hand plan
      * @param p2 the right-hand plan
-     * @param fldname1 information about the right-hand index
-     * @param fldname2 information about the left-hand index
+     * @param fldname1 the LHS join field
+     * @param fldname2 the RHS join field
      */
     public HashJoinPlan(Transaction tx, Plan p1, Plan p2, String fldname1, String fldname2) {
+        this(tx, p1, p2, fldname1, fldname2, "inner", new Predicate());
+    }
+
+    /**
+     * Implements the join operator of the specified type,
+     * using the specified LHS and RHS plans.
+     * Records match if their join fields are equal and they
+     * satisfy the residual predicate.
+     * The schema of a semi or anti join is that of the LHS.
+     * @param p1 the left-hand plan
+     * @param p2 the right-hand plan
+     * @param fldname1 the LHS join field
+     * @param fldname2 the RHS join field
+     * @param jointype one of "inner", "left", "semi" or "anti"
+     * @param residual the rest of the join predicate
+     */
+    public HashJoinPlan(Transaction tx, Plan p1, Plan p2, String fldname1, String fldname2,
+                        String jointype, Predicate residual) {
+        this(tx, p1, p2, Arrays.asList(fldname1), Arrays.asList(fldname2), jointype, residual);
+    }
+
+    /**
+     * Implements the join operator of the specified type
+     * on several pairs of join fields.
+     * Records match if each LHS join field equals the
+     * corresponding RHS join field and they satisfy the
+     * residual predicate.
+     * @param p1 the left-hand plan
+     * @param p2 the right-hand plan
+     * @param fldnames1 the LHS join fields
+     * @param fldnames2 the corresponding RHS join fields
+     * @param jointype one of "inner", "left", "semi" or "anti"
+     * @param residual the rest of the join predicate
+     */
+    public HashJoinPlan(Transaction tx, Plan p1, Plan p2, List<String> fldnames1, List<String> fldnames2,
+                        String jointype, Predicate residual) {
         this.tx = tx;
-        this.fldname1 = fldname1;
-        this.fldname2 = fldname2;
+        this.fldnames1 = fldnames1;
+        this.fldnames2 = fldnames2;
+        this.jointype = jointype;
+        this.residual = residual;
         this.lhs = p1;
         this.rhs = p2;
         sch.addAll(p1.schema());
-        sch.addAll(p2.schema());
+        if (!jointype.equals("semi") && !jointype.equals("anti"))
+            sch.addAll(p2.schema());
     }
 
     /**
-     * Opens an hashjoin scan for this query
+     * Opens a hashjoin scan for this query,
+     * building on the input having fewer bytes of records.
+     * The number of partitions is the number of budget-sized
+     * pieces of the build input, limited by the available buffers;
+     * a build input that fits in memory is not partitioned.
      * @see simpledb.plan.Plan#open()
      */
     public Scan open() {
-        Scan s1 = lhs.open();
-        // Determines the max amount of partitions for this hash join based on the buffer needs
-        int numOfBlocks = (int) Math.ceil(lhs.recordsOutput() / (double) tx.blockSize());
-        int numOfPartitions = BufferNeeds.bestRoot(tx.availableBuffs(), numOfBlocks + 1);;
-        List<TempTable> partition1 = partitionPlan(lhs.schema(), s1, fldname1, numOfPartitions);
-        s1.close();
-        Scan s2 = rhs.open();
-        List<TempTable> partition2 = partitionPlan(rhs.schema(), s2, fldname2, numOfPartitions);
-        s2.close();
-        return new HashJoinScan(partition1, partition2, fldname1, fldname2);
-    }
-
-    /**
-     * Partitions the plans based on the hashcode method of constant and the join fldname
-     */
-    private List<TempTable> partitionPlan(Schema sch, Scan s, String partfldname, int numOfPartitions) {
-        s.beforeFirst();
-        List<TempTable> tempPartitions = new ArrayList<>();
-        UpdateScan[] openedScans = new UpdateScan[numOfPartitions];
-        for (int i = 0; i < numOfPartitions; i++) { // creating of the partitions
-            TempTable currentTemp = new TempTable(tx, sch);
-            tempPartitions.add(currentTemp);
-            openedScans[i] = currentTemp.open();
-        }
-        while (s.next()) {
-            int idx = s.getVal(partfldname).hashCode() % numOfPartitions;
-            UpdateScan currScan = openedScans[idx];
-            currScan.insert();
-            for (String fld : sch.fields()) { // Populating the temp table to be processed by the next hash
-                currScan.setVal(fld, s.getVal(fld));
-            }
+        boolean buildlhs = buildsLhs();
+        Plan build = buildlhs ? lhs : rhs;
+        Plan probe = buildlhs ? rhs : lhs;
+        int capacity = capacity(build.schema());
+        Scan s1 = build.open();
+        Scan s2 = probe.open();
+        // the filter is applied by a select scan over the probe input,
+        // unless unmatched probe records are output
+        boolean pushfilter = jointype.equals("inner") || jointype.equals("semi");
+        if (pushfilter && !(s2 instanceof SelectScan))
+            s2 = new SelectScan(s2, new Predicate());
+        BloomFilter filter = new BloomFilter(build.recordsOutput());
+        int numparts = 1;
+        if (build.recordsOutput() > capacity) {
+            int needed = (int) Math.ceil(build.recordsOutput() / (double) capacity) + 1;
+            numparts = Math.min(needed, Math.max(2, tx.availableBuffs() - 2));
         }
-        for (Scan scan : openedScans) {
-            scan.close();
-        }
-        return tempPartitions;
+        return new HashJoinScan(tx, s1, s2, build.schema(), probe.schema(),
+                buildlhs ? fldnames1 : fldnames2, buildlhs ? fldnames2 : fldnames1,
+                numparts, capacity, filter, jointype, residual);
     }
 
     /**
      * Returns an estimate of the number of block accesses
-     * required to execute the query. The formula is:
-     * <pre> B(hashjoin(p1,p2)) = 3 * (B(p1), B(p2)) </pre>
-     * where B(p1) is the number of blocks of p1.
+     * required to execute the query.
+     * If the smaller input fits in memory, each input is read once;
+     * otherwise the records of both are also written to partitions
+     * and read back. The formula is then:
+     * <pre> B(hashjoin(p1,p2)) = B(p1) + B(p2) + 2 * (P(p1) + P(p2)) </pre>
+     * where B(p1) is the cost of p1 and P(p1) is the number
+     * of blocks its records occupy in the partitions.
      * @see simpledb.plan.Plan#blocksAccessed()
      */
     public int blocksAccessed() {
-        return 3 * (lhs.blocksAccessed() + rhs.blocksAccessed());
+        Plan build = buildsLhs() ? lhs : rhs;
+        int cost = lhs.blocksAccessed() + rhs.blocksAccessed();
+        if (build.recordsOutput() <= capacity(build.schema()))
+            return cost;
+        return cost + 2 * (partitionBlocks(lhs) + partitionBlocks(rhs));
+    }
+
+    private int partitionBlocks(Plan p) {
+        double rpb = Math.max(1, tx.blockSize() / new Layout(p.schema()).slotSize());
+        return (int) Math.ceil(p.recordsOutput() / rpb);
     }
 
     /**
      * Return the number of records in the join.
      * Assuming uniform distribution, the formula is:
      * <pre> R(hashjoin(p1,p2)) = R(p1)*R(p2)/max{V(p1,F1),V(p2,F2)}</pre>
+     * A join on several pairs of fields divides by the product
+     * of these maximums, but by no more than the larger of R(p1)
+     * and R(p2), since the fields are seldom independent.
+     * A left join outputs at least R(p1) records;
+     * a semi join at most R(p1), and an anti join the rest.
      * @see simpledb.plan.Plan#recordsOutput()
      */
     public int recordsOutput() {
-        int maxvals = Math.max(lhs.distinctValues(fldname1),
-                rhs.distinctValues(fldname2));
-        return (lhs.recordsOutput() * rhs.recordsOutput()) / maxvals;
+        return joinRecords(jointype, lhs, rhs, fldnames1, fldnames2);
+    }
+
+    /**
+     * Estimate the number of records output by a join of the
+     * specified type, as described for {@link #recordsOutput()}.
+     */
+    static int joinRecords(String jointype, Plan p1, Plan p2, List<String> fldnames1, List<String> fldnames2) {
+        double maxvals = 1;
+        for (int i = 0; i < fldnames1.size(); i++)
+            maxvals *= Math.max(1, Math.max(p1.distinctValues(fldnames1.get(i)),
+                    p2.distinctValues(fldnames2.get(i))));
+        if (fldnames1.size() > 1)
+            maxvals = Math.min(maxvals, Math.max(1, Math.max(p1.recordsOutput(), p2.recordsOutput())));
+        int inner = (int) Math.min(Integer.MAX_VALUE,
+                (double) p1.recordsOutput() * p2.recordsOutput() / maxvals);
+        int matching = Math.min(p1.recordsOutput(), inner);
+        switch (jointype) {
+            case "left":
+                return Math.max(p1.recordsOutput(), inner);
+            case "semi":
+                return matching;
+            case "anti":
+                return Math.max(1, p1.recordsOutput() - matching);
+            default:
+                return inner;
+        }
     }
 
     /**
@@ -117,6 +203,19 @@ public class HashJoinPlan implements Plan {
             return rhs.distinctValues(fldname);
     }
 
+    /**
+     * Estimate the fraction of the join records whose value
+     * of the field lies in the range, which is the same
+     * as in the appropriate underlying query.
+     * @see simpledb.plan.Plan#rangeFraction(java.lang.String, simpledb.query.Range)
+     */
+    public double rangeFraction(String fldname, Range range) {
+        if (lhs.schema().hasField(fldname))
+            return lhs.rangeFraction(fldname, range);
+        else
+            return rhs.rangeFraction(fldname, range);
+    }
+
     /**
      * Return the schema of the join,
      * which is the union of the schemas of the underlying queries.
@@ -125,10 +224,45 @@ public class HashJoinPlan implements Plan {
     public Schema schema() {
         return sch;
     }
+    
+    /**
+     * Return the order of the records of the query.
+     * The partitioned inputs are joined
+     * in no particular order.
+     * @see simpledb.plan.Plan#ordering()
+     */
+    public Sort ordering() {
+        return new Sort();
+    }
+
+
+    private boolean buildsLhs() {
+        return jointype.equals("inner") && bytes(lhs) <= bytes(rhs);
+    }
+
+    private static long bytes(Plan p) {
+        return (long) p.recordsOutput() * new Layout(p.schema()).slotSize();
+    }
+
+    private static int capacity(Schema sch) {
+        return Math.max(1, SimpleDB.MEMORY_BUDGET / new Layout(sch).slotSize());
+    }
 
+    /**
+     * Return the join conditions "F1 = F2 and ..." of the
+     * specified pairs of fields, for printing a plan.
+     */
+    static String equalities(List<String> fldnames1, List<String> fldnames2) {
+        StringJoiner sj = new StringJoiner(" and ");
+        for (int i = 0; i < fldnames1.size(); i++)
+            sj.add(fldnames1.get(i) + " = " + fldnames2.get(i));
+        return sj.toString();
+    }
 
     public String toString(){
-        return String.format("[{%s} hash join ](%s = %s)",
-                lhs.toString(), rhs.toString(), fldname1, fldname2);
+        String type = jointype.equals("inner") ? "" : jointype + " ";
+        String on = equalities(fldnames1, fldnames2) + (residual.isEmpty() ? "" : " and " + residual);
+        return String.format("[{%s} %shash join {%s}](%s)",
+                lhs.toString(), type, rhs.toString(), on);
     }
 }
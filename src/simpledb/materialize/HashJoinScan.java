@@ -4,165 +4,381 @@ import java.util.*;
 
 import simpledb.query.*;
 import simpledb.record.*;
+import simpledb.tx.Transaction;
 
 /**
  * The Scan class for the <i>hashjoin</i> operator.
+ * The build records are kept in memory as tuples,
+ * in a hash table from join value to the tuples having it.
+ * <P>
+ * When the build input is partitioned, partition 0 stays in
+ * memory (unless it outgrows the memory budget) and the others
+ * are written to temporary tables.  Probe records of partition 0
+ * are joined as they are read; the others are written to the
+ * matching probe partition, unless the build partition is empty.
+ * Each pair of partitions is then joined in turn, and a build
+ * partition that does not fit in memory is itself repartitioned,
+ * with a different hash function, together with its probe partition.
+ * <P>
+ * While the build input is read, its join values are added to a
+ * Bloom filter, which is given to the probe scan if it is a select
+ * scan, and is otherwise tested here before a probe record is
+ * looked up or partitioned.
+ * <P>
+ * Skewed join values are handled separately.
+ * The probe values that are written to partitions are counted in
+ * a count-min sketch; when a value turns out to be frequent,
+ * its build tuples are read from their partition into a separate
+ * in-memory table of hot values, and its later probe records are
+ * joined as they are read instead of being written out.
+ * The build values are also counted as each partition is written,
+ * and when a partition that is too large for memory is repartitioned,
+ * its most frequent value gets a partition of its own if it would
+ * fill half the memory.  A build partition that is too large
+ * for memory but holds a single join value cannot be split further,
+ * so it is joined a memory-load at a time, rescanning its probe
+ * partition for each load.
+ * <P>
+ * The scan also implements left outer, semi and anti joins,
+ * whose probe input is the preserved (left) side.  Each probe
+ * record is joined exactly once, whether from memory, from a hot
+ * value or from its partition, so its unmatched records can be output
+ * as soon as its candidate tuples have been tried; a partition joined
+ * a memory-load at a time notes which of its probe records matched,
+ * and outputs the unmatched ones in a final pass.
  * @author Ashley Lau
  */
 public class HashJoinScan implements Scan {
-    private UpdateScan s1, s2;
-    private final List<TempTable> partition1, partition2;
-    private final String fldname1, fldname2;
-    private HashMap<Integer, List<RID>> map;
-    private int currPartIdx;
-    private int currBucketElementIdx = 0; // To keep track of the current position element within the partition
-    private boolean hasMoreInPart2 = true;
-    private final int secondaryModulo;
-    private RID startingS1Position;
-
-    /**
-     * Create a hashjoin scan for the two underlying sorted scans.
-     * @param partition1 the partitions of LHS scan
-     * @param partition2 the partitions of RHS scan
-     * @param fldname1 the LHS join field
-     * @param fldname2 the RHS join field
-     */
-    public HashJoinScan(List<TempTable> partition1, List<TempTable> partition2, String fldname1, String fldname2) {
-        this.partition1 = partition1;
-        this.partition2 = partition2;
-        this.fldname1 = fldname1;
-        this.fldname2 = fldname2;
-        this.secondaryModulo = (int) (partition1.size() * 1.5);
-        beforeFirst();
+    private static final int MAX_DEPTH = 8;
+    private static final int MAX_HOT_VALUES = 16;
+    private static final int HOT_MIN = 64;
+    private static final int HOT_FRACTION = 64;
+    private static final List<Constant[]> NO_TUPLES = Collections.emptyList();
+    private final Transaction tx;
+    private final Scan buildscan, probescan;
+    private final Schema buildsch, probesch;
+    private final List<String> buildflds, probeflds;
+    private final String jointype;
+    private final Predicate residual;
+    private final int numparts, capacity;
+    private final Map<String,Integer> buildpos = new HashMap<>();
+    private final Deque<PartitionPair> pending = new ArrayDeque<>();
+    private final BloomFilter filter;
+    private final boolean pushfilter;
+    private final CountMinSketch sketch = new CountMinSketch(1024);
+    private final CountMinSketch buildsketch = new CountMinSketch(1024);
+    private final Map<Constant,List<Constant[]>> hot = new HashMap<>();
+    private final Set<Constant> cold = new HashSet<>();
+    private int hotcount, probecount;
+    private Map<Constant,List<Constant[]>> table;
+    private Scan probe;
+    private boolean partitioning;
+    private int memorypart;
+    private UpdateScan[] probespills;
+    private TempTable[] buildparts, probeparts;
+    private int[] buildcounts;
+    private boolean[] singlevalue;
+    private Constant[] topvals;
+    private int[] topcounts;
+    private UpdateScan chunkscan;
+    private boolean chunkdone;
+    private TempTable chunkprobe;
+    private boolean chunked, finalpass;
+    private final BitSet chunkmatched = new BitSet();
+    private int proberow;
+    private List<Constant[]> matches;
+    private int matchpos;
+    private boolean matched;
+    private Constant[] buildrow;
+
+    /**
+     * Create an inner hashjoin scan of the build and probe scans.
+     * @param tx the calling transaction
+     * @param buildscan the scan of the build (smaller) input
+     * @param probescan the scan of the probe input
+     * @param buildsch the schema of the build input
+     * @param probesch the schema of the probe input
+     * @param buildfld the join field of the build input
+     * @param probefld the join field of the probe input
+     * @param numparts the number of partitions, or 1 to hold the build input in memory
+     * @param capacity the number of build records that fit in memory
+     * @param filter an empty Bloom filter for the build join values
+     */
+    public HashJoinScan(Transaction tx, Scan buildscan, Scan probescan, Schema buildsch, Schema probesch,
+                        String buildfld, String probefld, int numparts, int capacity, BloomFilter filter) {
+        this(tx, buildscan, probescan, buildsch, probesch, Arrays.asList(buildfld), Arrays.asList(probefld),
+             numparts, capacity, filter, "inner", new Predicate());
     }
 
     /**
-     * Position the scan before the first partition and record for partitions 1 and 2
-     * @see simpledb.query.Scan#beforeFirst()
+     * Create a hashjoin scan of the build and probe scans
+     * having the specified join type.
+     * In a left join, a probe record that matches no build tuple
+     * is output with null build fields; a semi join outputs
+     * the probe records that match some build tuple,
+     * and an anti join those that match none.
+     * A pair of records matches if their join values are equal
+     * and they satisfy the residual predicate; the join value of a
+     * record having several join fields is their composite value.
+     * @param tx the calling transaction
+     * @param buildscan the scan of the build (smaller) input
+     * @param probescan the scan of the probe input
+     * @param buildsch the schema of the build input
+     * @param probesch the schema of the probe input
+     * @param buildflds the join fields of the build input
+     * @param probeflds the corresponding join fields of the probe input
+     * @param numparts the number of partitions, or 1 to hold the build input in memory
+     * @param capacity the number of build records that fit in memory,
+     * of which a quarter is set aside for hot join values when partitioning
+     * @param filter an empty Bloom filter for the build join values
+     * @param jointype one of "inner", "left", "semi" or "anti"
+     * @param residual the rest of the join predicate
      */
-    public void beforeFirst() {
-        this.currPartIdx = 0;
-        s1 = partition1.get(currPartIdx).open();
-        s2 = partition2.get(currPartIdx).open();
-        s1.beforeFirst();
-        s2.beforeFirst();
+    public HashJoinScan(Transaction tx, Scan buildscan, Scan probescan, Schema buildsch, Schema probesch,
+                        List<String> buildflds, List<String> probeflds, int numparts, int capacity,
+                        BloomFilter filter, String jointype, Predicate residual) {
+        this.tx = tx;
+        this.buildscan = buildscan;
+        this.probescan = probescan;
+        this.buildsch = buildsch;
+        this.probesch = probesch;
+        this.buildflds = buildflds;
+        this.probeflds = probeflds;
+        this.numparts = numparts;
+        this.capacity = capacity;
+        this.filter = filter;
+        this.jointype = jointype;
+        this.residual = residual;
+        // unmatched probe records are output by left and anti joins,
+        // so only the other joins may discard them in the probe scan
+        pushfilter = probescan instanceof SelectScan
+                && (jointype.equals("inner") || jointype.equals("semi"));
+        if (pushfilter)
+            ((SelectScan) probescan).setFilter(probeflds, filter);
+        List<String> fields = buildsch.fields();
+        for (int i = 0; i < fields.size(); i++)
+            buildpos.put(fields.get(i), i);
+        beforeFirst();
     }
 
     /**
-     * Close the scan by closing the two underlying scans.
-     * @see simpledb.query.Scan#close()
+     * Position the scan before the first joined record.
+     * The build input is read into memory and partitions,
+     * and the probe input is positioned at its start.
+     * @see simpledb.query.Scan#beforeFirst()
      */
-    public void close() {
-        s1.close();
-        s2.close();
+    public void beforeFirst() {
+        closePartitions();
+        pending.clear();
+        matches = null;
+        hot.clear();
+        cold.clear();
+        sketch.clear();
+        hotcount = probecount = 0;
+        buildscan.beforeFirst();
+        filter.clear();
+        int limit = (numparts == 1) ? capacity : capacity - hotLimit();
+        partitionBuild(buildscan, numparts, 0, limit, null);
+        probescan.beforeFirst();
+        probe = probescan;
+        partitioning = true;
+        probespills = new UpdateScan[numparts];
+        for (int i = 0; i < numparts; i++)
+            if (buildparts[i] != null && buildcounts[i] > 0) {
+                probeparts[i] = new TempTable(tx, probesch);
+                probespills[i] = probeparts[i].open();
+            }
     }
 
     /**
-     * Move to the s2 next record.  This is where the action is.
-     * <P>
-     * If the next current s2 record has the same join value and the current s1 bucket, moves the pointer of the element
-     * in curr s1 bucket to the next element in the bucket if possible, else moves to the next s2 record
+     * Move to the next joined record.
+     * The remaining build tuples matching the current probe record
+     * are returned first, followed by the probe record itself if it is
+     * unmatched in an outer or anti join; then the probe input is read
+     * until a record can be joined, because it belongs to the in-memory
+     * table or a hot join value or cannot match at all, writing the
+     * records of other partitions out; then the next pair of
+     * partitions is joined.
      * @see simpledb.query.Scan#next()
      */
     public boolean next() {
-        if (!hasMoreInPart2) { // move to the next bucket of partition2
-            map = null;
-            currPartIdx++;
-        }
-        if (currPartIdx >= partition1.size()) { // All buckets have been processed
-            return false;
-        }
-
-        if (map == null) { // Need to create hashmap for the currentPartition of s1
-            if (currPartIdx > 0) {
-                close();
-                s1 = partition1.get(currPartIdx).open();
-                s2 = partition2.get(currPartIdx).open();
+        while (true) {
+            if (matches != null) {
+                if (nextMatch())
+                    return true;
+                matches = null;
+                if (unmatched())
+                    return true;
+            }
+            while (probe.next()) {
+                if (chunked)
+                    proberow++;
+                matches = candidates(RecordComparator.keyValue(probe, probeflds));
+                if (matches != null) {
+                    matchpos = 0;
+                    matched = false;
+                    break;
+                }
             }
-            createHashTableForPartition();
-            hasMoreInPart2 = s2.next();
+            if (matches != null)
+                continue;
+            if (partitioning) {
+                partitioning = false;
+                for (int i = numparts - 1; i >= 0; i--)
+                    if (probespills[i] != null) {
+                        probespills[i].close();
+                        pending.push(pair(i, 1));
+                    }
+                probespills = null;
+            }
+            else {
+                probe.close();
+                probe = null;
+                if (chunked && nextChunk())
+                    continue;
+                chunked = false;
+            }
+            probe = null;
+            table = null;
+            if (!nextPartition())
+                return false;
         }
+    }
 
-        while (hasMoreInPart2) {
-            int secondaryHash = getSecondaryHash(s2, fldname2);
-            List<RID> bucket = map.get(secondaryHash);
+    /**
+     * Return the build tuples that may match the join value of the
+     * current probe record, which are none if the value is null or is
+     * not in the Bloom filter or its build partition is empty.
+     * Return null if the record was written to a probe partition instead.
+     */
+    private List<Constant[]> candidates(Constant key) {
+        if (key.isNull())
+            return NO_TUPLES;
+        if (!partitioning)
+            return table.getOrDefault(key, NO_TUPLES);
+        if (!pushfilter && !filter.mightContain(key))
+            return NO_TUPLES;
+        int i = partition(key, 0, numparts);
+        if (i == memorypart)
+            return table.getOrDefault(key, NO_TUPLES);
+        if (probespills[i] == null)
+            return NO_TUPLES;
+        List<Constant[]> rows = hotTuples(key, i);
+        if (rows != null)
+            return rows;
+        probespills[i].insert();
+        for (String fld : probesch.fields())
+            probespills[i].setVal(fld, probe.getVal(fld));
+        return null;
+    }
 
-            if (currBucketElementIdx >= bucket.size()) {
-                // If code reaches here, there are no more values in the s1 partition map for the current s2, hence
-                // reposition s1 to receive the next s2 value
-                s1.moveToRid(startingS1Position);
-                currBucketElementIdx = 0;
-                hasMoreInPart2 = s2.next();
+    /**
+     * Move to the next candidate build tuple that satisfies
+     * the residual predicate, and return true if the joined
+     * record is to be output: always in an inner or left join,
+     * for the first match in a semi join, and never in an anti join,
+     * where the first match only shows that the record is matched.
+     * When the build partition is joined in several memory-loads,
+     * the matched probe records are noted, so that a semi join outputs
+     * a record once, and the unmatched records can be found afterwards.
+     */
+    private boolean nextMatch() {
+        while (matchpos < matches.size()) {
+            buildrow = matches.get(matchpos++);
+            if (!residual.isSatisfied(this))
                 continue;
+            if (jointype.equals("inner") || jointype.equals("left")) {
+                matched = true;
+                if (chunked)
+                    chunkmatched.set(proberow);
+                return true;
             }
-            if (currBucketElementIdx == 0) {
-                startingS1Position = s1.getRid();
-            }
-            s1.moveToRid(bucket.get(currBucketElementIdx));
-            currBucketElementIdx++;
-            return true;
+            matchpos = matches.size();
+            boolean first = !(chunked && chunkmatched.get(proberow));
+            matched = true;
+            if (chunked)
+                chunkmatched.set(proberow);
+            return jointype.equals("semi") && first;
         }
-        return next();
+        return false;
     }
 
     /**
-     * Secondary hash so that Constants will be mapped to different buckets
+     * Return true if the current probe record, which has no more
+     * candidate tuples, is to be output as unmatched:
+     * in a left join, with null build fields, or in an anti join.
+     * When the build partition is joined in several memory-loads,
+     * this is decided only by the final pass over its probe partition.
      */
-    private int getSecondaryHash(Scan s, String fieldName) {
-        return s.getVal(fieldName).hashCode() % secondaryModulo % partition1.size();
+    private boolean unmatched() {
+        if (matched || !(jointype.equals("left") || jointype.equals("anti")))
+            return false;
+        if (chunked && (!finalpass || chunkmatched.get(proberow)))
+            return false;
+        buildrow = null;
+        return true;
     }
 
     /**
-     * Recreates the hashmap for new idx and populates it with the current s1 partition
+     * Start the next pass over the probe partition of a build
+     * partition that is joined in several memory-loads:
+     * a pass for each memory-load, and then, for a left or anti join,
+     * a final pass to output the unmatched records.
+     * Return false if there are no more passes.
      */
-    private void createHashTableForPartition() {
-        HashMap<Integer, List<RID>> map = new HashMap<>();
-        for (int i = 0; i < partition2.size(); i++) {
-            map.computeIfAbsent(i, k -> new ArrayList<>());
-        }
-        while(s1.next()) {
-            int hashVal = getSecondaryHash(s1, fldname1);
-            List<RID> row = map.get(hashVal);
-            row.add(s1.getRid());
+    private boolean nextChunk() {
+        if (finalpass || chunkdone || !loadChunk()) {
+            if (finalpass || !(jointype.equals("left") || jointype.equals("anti"))) {
+                chunkscan.close();
+                chunkscan = null;
+                return false;
+            }
+            finalpass = true;
+            table = new HashMap<>();
         }
-        this.map = map;
+        probe = chunkprobe.open();
+        proberow = -1;
+        return true;
+    }
+
+    /**
+     * Close the scan by closing the two underlying scans
+     * and any open partitions.
+     * @see simpledb.query.Scan#close()
+     */
+    public void close() {
+        closePartitions();
+        buildscan.close();
+        probescan.close();
     }
 
     /**
      * Return the integer value of the specified field.
-     * The value is obtained from whichever scan
-     * contains the field.
      * @see simpledb.query.Scan#getInt(java.lang.String)
      */
     public int getInt(String fldname) {
-        if (s1.hasField(fldname))
-            return s1.getInt(fldname);
-        else
-            return s2.getInt(fldname);
+        return getVal(fldname).asInt();
     }
 
     /**
-     * Return the value of the specified field.
-     * The value is obtained from whichever scan
-     * contains the field.
+     * Return the value of the specified field, from
+     * the current build tuple or the current probe record.
      * @see simpledb.query.Scan#getVal(java.lang.String)
      */
     public Constant getVal(String fldname) {
-        if (s1.hasField(fldname))
-            return s1.getVal(fldname);
+        Integer pos = buildpos.get(fldname);
+        if (pos != null)
+            return (buildrow == null) ? Constant.NULL : buildrow[pos];
         else
-            return s2.getVal(fldname);
+            return probe.getVal(fldname);
     }
 
     /**
      * Returns the string value of the specified field.
-     * @see simpledb.query.Scan#getVal(java.lang.String)
+     * @see simpledb.query.Scan#getString(java.lang.String)
      */
     public String getString(String fldname) {
-        if (s1.hasField(fldname))
-            return s1.getString(fldname);
-        else
-            return s2.getString(fldname);
+        return getVal(fldname).asString();
     }
 
     /**
@@ -171,6 +387,296 @@ public class HashJoinScan implements Scan {
      * @see simpledb.query.Scan#hasField(java.lang.String)
      */
     public boolean hasField(String fldname) {
-        return s1.hasField(fldname) || s2.hasField(fldname);
+        if (jointype.equals("semi") || jointype.equals("anti"))
+            return probesch.hasField(fldname);
+        return buildsch.hasField(fldname) || probesch.hasField(fldname);
+    }
+
+    /**
+     * Read the build records of the specified scan into
+     * the specified number of partitions.
+     * Partition 0 is kept in the in-memory table, until it holds
+     * more than the specified number of records, at which point
+     * it is written out like the others.
+     * If a heavy value is specified, its records are written to
+     * an extra partition, numbered n.
+     * The method also notes the most frequent value of each partition,
+     * and whether it is the only one.
+     */
+    private void partitionBuild(Scan src, int n, int depth, int limit, Constant heavy) {
+        int size = (heavy == null) ? n : n + 1;
+        buildparts = new TempTable[size];
+        probeparts = new TempTable[size];
+        buildcounts = new int[size];
+        singlevalue = new boolean[size];
+        topvals = new Constant[size];
+        topcounts = new int[size];
+        buildsketch.clear();
+        UpdateScan[] spills = new UpdateScan[size];
+        table = new HashMap<>();
+        memorypart = (limit > 0) ? 0 : -1;
+        int memcount = 0;
+        while (src.next()) {
+            Constant key = RecordComparator.keyValue(src, buildflds);
+            if (key.isNull())
+                continue;
+            if (depth == 0)
+                filter.add(key);
+            int i = route(key, heavy, depth, n);
+            int estimate = buildsketch.add(key);
+            if (topvals[i] == null)
+                singlevalue[i] = true;
+            else if (singlevalue[i] && !key.equals(topvals[i]))
+                singlevalue[i] = false;
+            if (estimate > topcounts[i]) {
+                topvals[i] = key;
+                topcounts[i] = estimate;
+            }
+            if (i == memorypart) {
+                if (memcount < limit) {
+                    table.computeIfAbsent(key, k -> new ArrayList<>()).add(tuple(src));
+                    memcount++;
+                    continue;
+                }
+                // partition 0 outgrew memory, so write it out
+                memorypart = -1;
+                spills[i] = openBuildPartition(i);
+                for (List<Constant[]> rows : table.values())
+                    for (Constant[] row : rows)
+                        writeBuild(spills[i], row);
+                buildcounts[i] = memcount;
+                table.clear();
+            }
+            if (spills[i] == null)
+                spills[i] = openBuildPartition(i);
+            writeBuild(spills[i], tuple(src));
+            buildcounts[i]++;
+        }
+        for (UpdateScan s : spills)
+            if (s != null)
+                s.close();
+    }
+
+    /**
+     * Join the next pending pair of partitions.
+     * If the build partition fits in memory, it is read into the
+     * table and its probe partition becomes the probe input.
+     * If it holds a single join value (or has been repartitioned
+     * too often), its first memory-load is read into the table,
+     * and the probe partition is rescanned for each later load.
+     * Otherwise both are split into partitions which are queued,
+     * with a partition of its own for a heavy value.
+     * Return false if no pairs remain.
+     */
+    private boolean nextPartition() {
+        while (!pending.isEmpty()) {
+            PartitionPair pair = pending.pop();
+            if (pair.buildcount <= capacity) {
+                // an empty build partition (kept for its unmatched
+                // probe records) has no temporary table
+                table = new HashMap<>();
+                if (pair.build != null) {
+                    UpdateScan bs = pair.build.open();
+                    partitionBuild(bs, 1, pair.depth, Integer.MAX_VALUE, null);
+                    bs.close();
+                }
+                probe = pair.probe.open();
+                return true;
+            }
+            if (pair.singlevalue || pair.depth >= MAX_DEPTH) {
+                chunkscan = pair.build.open();
+                chunkdone = false;
+                chunked = true;
+                finalpass = false;
+                chunkmatched.clear();
+                chunkprobe = pair.probe;
+                loadChunk();
+                probe = chunkprobe.open();
+                proberow = -1;
+                return true;
+            }
+            Constant heavy = null;
+            int rest = pair.buildcount, reserved = 3;
+            if (pair.topcount > capacity / 2) {
+                heavy = pair.topval;
+                rest = Math.max(0, rest - pair.topcount);
+                reserved++;
+            }
+            int n = Math.min((int) Math.ceil(rest / (double) capacity),
+                             tx.availableBuffs() - reserved);
+            n = Math.max(2, n);
+            UpdateScan bs = pair.build.open();
+            partitionBuild(bs, n, pair.depth, 0, heavy);
+            bs.close();
+            TempTable[] subbuild = buildparts, subprobe = probeparts;
+            UpdateScan[] spills = new UpdateScan[subbuild.length];
+            // the probe records of an empty build partition are
+            // discarded, unless they are output as unmatched
+            boolean keepall = jointype.equals("left") || jointype.equals("anti");
+            for (int i = 0; i < spills.length; i++)
+                if (buildcounts[i] > 0 || keepall) {
+                    subprobe[i] = new TempTable(tx, probesch);
+                    spills[i] = subprobe[i].open();
+                }
+            UpdateScan ps = pair.probe.open();
+            while (ps.next()) {
+                int i = route(RecordComparator.keyValue(ps, probeflds), heavy, pair.depth, n);
+                if (spills[i] != null) {
+                    spills[i].insert();
+                    for (String fld : probesch.fields())
+                        spills[i].setVal(fld, ps.getVal(fld));
+                }
+            }
+            ps.close();
+            for (int i = spills.length - 1; i >= 0; i--)
+                if (spills[i] != null) {
+                    spills[i].close();
+                    pending.push(pair(i, pair.depth + 1));
+                }
+        }
+        return false;
+    }
+
+    /**
+     * Read the next memory-load of the oversized build partition
+     * into the table.
+     * Return false if the partition has no more records.
+     */
+    private boolean loadChunk() {
+        table = new HashMap<>();
+        int count = 0;
+        while (count < capacity) {
+            if (!chunkscan.next()) {
+                chunkdone = true;
+                break;
+            }
+            Constant key = RecordComparator.keyValue(chunkscan, buildflds);
+            table.computeIfAbsent(key, k -> new ArrayList<>()).add(tuple(chunkscan));
+            count++;
+        }
+        return count > 0;
+    }
+
+    /**
+     * Return the build tuples of a hot join value belonging to the
+     * specified build partition, or null if the value is not hot.
+     * The value is counted in the sketch; once it accounts for a
+     * large enough share of the probe records seen so far, its
+     * build tuples are read from the partition and kept in memory,
+     * unless they would exceed the memory set aside for hot values.
+     * At most MAX_HOT_VALUES values are read in this way.
+     * A hot value having no build tuples (because the Bloom filter
+     * gave a false positive) maps to an empty list, so that its
+     * probe records are discarded.
+     */
+    private List<Constant[]> hotTuples(Constant key, int i) {
+        List<Constant[]> rows = hot.get(key);
+        if (rows != null)
+            return rows;
+        probecount++;
+        int estimate = sketch.add(key);
+        if (estimate < HOT_MIN || estimate * HOT_FRACTION < probecount
+                || hot.size() + cold.size() >= MAX_HOT_VALUES)
+            return null;
+        rows = new ArrayList<>();
+        UpdateScan bs = buildparts[i].open();
+        while (bs.next())
+            if (RecordComparator.keyValue(bs, buildflds).equals(key)) {
+                rows.add(tuple(bs));
+                if (hotcount + rows.size() > hotLimit()) {
+                    bs.close();
+                    cold.add(key);
+                    return null;
+                }
+            }
+        bs.close();
+        hotcount += rows.size();
+        hot.put(key, rows);
+        return rows;
+    }
+
+    private int hotLimit() {
+        return capacity / 4;
+    }
+
+    private PartitionPair pair(int i, int depth) {
+        return new PartitionPair(buildparts[i], probeparts[i], buildcounts[i],
+                                 topvals[i], topcounts[i], singlevalue[i], depth);
+    }
+
+    private Constant[] tuple(Scan s) {
+        Constant[] row = new Constant[buildpos.size()];
+        for (Map.Entry<String,Integer> e : buildpos.entrySet())
+            row[e.getValue()] = s.getVal(e.getKey());
+        return row;
+    }
+
+    private UpdateScan openBuildPartition(int i) {
+        buildparts[i] = new TempTable(tx, buildsch);
+        return buildparts[i].open();
+    }
+
+    private void writeBuild(UpdateScan s, Constant[] row) {
+        s.insert();
+        for (Map.Entry<String,Integer> e : buildpos.entrySet())
+            s.setVal(e.getKey(), row[e.getValue()]);
+    }
+
+    private void closePartitions() {
+        if (probespills != null)
+            for (UpdateScan s : probespills)
+                if (s != null)
+                    s.close();
+        probespills = null;
+        if (probe != null && probe != probescan)
+            probe.close();
+        probe = null;
+        if (chunkscan != null)
+            chunkscan.close();
+        chunkscan = null;
+        chunked = false;
+    }
+
+    /**
+     * Choose a partition for the join value: the extra partition n
+     * for the heavy value, and otherwise a hashed partition.
+     */
+    private static int route(Constant key, Constant heavy, int depth, int n) {
+        if (heavy != null && key.equals(heavy))
+            return n;
+        return (n == 1) ? 0 : partition(key, depth, n);
+    }
+
+    /**
+     * Choose a partition for the join value, rehashing
+     * differently at each depth so that the records of
+     * a partition are spread when it is partitioned again.
+     */
+    static int partition(Constant key, int depth, int numparts) {
+        int h = key.hashCode() ^ (depth * 0x9E3779B9);
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return Math.floorMod(h, numparts);
+    }
+
+    private static class PartitionPair {
+        final TempTable build, probe;
+        final int buildcount, topcount, depth;
+        final Constant topval;
+        final boolean singlevalue;
+
+        PartitionPair(TempTable build, TempTable probe, int buildcount,
+                      Constant topval, int topcount, boolean singlevalue, int depth) {
+            this.build = build;
+            this.probe = probe;
+            this.buildcount = buildcount;
+            this.topval = topval;
+            this.topcount = topcount;
+            this.singlevalue = singlevalue;
+            this.depth = depth;
+        }
     }
 }
@@ -0,0 +1,91 @@
+package simpledb.materialize;
+
+import java.io.File;
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.plan.*;
+import simpledb.query.*;
+
+/**
+ * Join two tables with a hash join, once with room for the
+ * build input and then with memory budgets so small that both
+ * inputs are partitioned, and the partitions partitioned again.
+ * The tables are joined first on evenly spread values, and
+ * then on values of which one is frequent in the build input
+ * and another in the probe input.
+ * The join must return every matching pair of records once,
+ * and every buffer must be released once the scan is closed.
+ */
+public class HashJoinTest {
+   public static void main(String[] args) {
+      deleteDir(new File("hashjointest"));
+      SimpleDB db = new SimpleDB("hashjointest");
+      Random r = new Random(40);
+      boolean ok = true;
+      for (boolean skewed : new boolean[] {false, true}) {
+         Transaction tx = db.newTx();
+         Planner planner = db.planner();
+         String rname = skewed ? "RK" : "R", sname = skewed ? "SK" : "S";
+         planner.executeUpdate("create table " + rname + "(A int, X varchar(9))", tx);
+         planner.executeUpdate("create table " + sname + "(B int, Y int)", tx);
+         Map<Integer,List<String>> rs = new HashMap<>();
+         for (int i=0; i<1500; i++) {
+            int a = r.nextInt(1000);
+            if (skewed && i % 4 == 0)
+               a = (i % 40 == 0) ? 7 : 9;
+            planner.executeUpdate("insert into " + rname + "(A,X) values(" + a + ", 'x" + i + "')", tx);
+            rs.computeIfAbsent(a, k -> new ArrayList<>()).add("x" + i);
+         }
+         List<String> expected = new ArrayList<>();
+         for (int i=0; i<2000; i++) {
+            int b = r.nextInt(1500);
+            if (skewed && i % 6 == 0)
+               b = (i % 300 == 0) ? 9 : 7;
+            planner.executeUpdate("insert into " + sname + "(B,Y) values(" + b + ", " + i + ")", tx);
+            for (String x : rs.getOrDefault(b, Collections.emptyList()))
+               expected.add(b + " " + x + " " + i);
+         }
+         tx.commit();
+         Collections.sort(expected);
+         ok = check(db, rname, sname, expected) && ok;
+      }
+      System.out.println(ok ? "hash join ok" : "hash join FAILED");
+   }
+
+   private static boolean check(SimpleDB db, String rname, String sname, List<String> expected) {
+      boolean ok = true;
+      int budget = SimpleDB.MEMORY_BUDGET;
+      for (int mem : new int[] {budget, 2000, 1}) {
+         SimpleDB.MEMORY_BUDGET = mem;
+         Transaction tx = db.newTx();
+         Plan p = new HashJoinPlan(tx, new TablePlan(tx, rname.toLowerCase(), db.mdMgr()),
+               new TablePlan(tx, sname.toLowerCase(), db.mdMgr()), "a", "b");
+         List<String> found = new ArrayList<>();
+         Scan s = p.open();
+         while (s.next())
+            found.add(s.getInt("a") + " " + s.getString("x") + " " + s.getInt("y"));
+         s.close();
+         Collections.sort(found);
+         if (!found.equals(expected)) {
+            System.out.println(found.size() + " joined records instead of " + expected.size()
+                  + " from " + rname + " and " + sname + " with a budget of " + mem);
+            ok = false;
+         }
+         if (tx.availableBuffs() != SimpleDB.BUFFER_SIZE) {
+            System.out.println((SimpleDB.BUFFER_SIZE - tx.availableBuffs()) + " buffers still pinned");
+            ok = false;
+         }
+         tx.commit();
+      }
+      SimpleDB.MEMORY_BUDGET = budget;
+      return ok;
+   }
+
+   private static void deleteDir(File f) {
+      if (f.isDirectory())
+         for (File child : f.listFiles())
+            deleteDir(child);
+      f.delete();
+   }
+}
@@ -0,0 +1,96 @@
+package simpledb.materialize;
+
+import simpledb.record.Schema;
+import simpledb.plan.Plan;
+import simpledb.query.*;
+
+/**
+ * The Plan class for the <i>limit</i> operator,
+ * which skips the first records of its input
+ * and returns at most a given number of the rest.
+ */
+public class LimitPlan implements Plan {
+   private Plan p;
+   private int limit, offset;
+   
+   /**
+    * Create a limit plan for the specified query.
+    * @param p the plan for the underlying query
+    * @param limit the maximum number of records to return
+    * @param offset the number of records to skip
+    */
+   public LimitPlan(Plan p, int limit, int offset) {
+      this.p = p;
+      this.limit = limit;
+      this.offset = offset;
+   }
+   
+   /**
+    * Creates a limit scan for this query.
+    * @see simpledb.plan.Plan#open()
+    */
+   public Scan open() {
+      return new LimitScan(p.open(), limit, offset);
+   }
+   
+   /**
+    * Estimates the number of block accesses,
+    * which is the same as in the underlying query.
+    * A pipelined input stops being read once the limit
+    * is reached, so this is an upper bound.
+    * @see simpledb.plan.Plan#blocksAccessed()
+    */
+   public int blocksAccessed() {
+      return p.blocksAccessed();
+   }
+   
+   /**
+    * Estimates the number of output records,
+    * which is at most the limit.
+    * @see simpledb.plan.Plan#recordsOutput()
+    */
+   public int recordsOutput() {
+      return Math.min(limit, Math.max(0, p.recordsOutput() - offset));
+   }
+   
+   /**
+    * Returns the distinct values of the underlying query,
+    * but not more than the size of the output.
+    * @see simpledb.plan.Plan#distinctValues(java.lang.String)
+    */
+   public int distinctValues(String fldname) {
+      return Math.min(p.distinctValues(fldname), recordsOutput());
+   }
+
+   /**
+    * Estimate the fraction of the records whose value of the
+    * field lies in the range, which is the same as in
+    * the underlying query.
+    * @see simpledb.plan.Plan#rangeFraction(java.lang.String, simpledb.query.Range)
+    */
+   public double rangeFraction(String fldname, Range range) {
+      return p.rangeFraction(fldname, range);
+   }
+   
+   /**
+    * Returns the schema of the underlying query.
+    * @see simpledb.plan.Plan#schema()
+    */
+   public Schema schema() {
+      return p.schema();
+   }
+   
+   /**
+    * Return the order of the records of the query.
+    * The records are in the order of the underlying query.
+    * @see simpledb.plan.Plan#ordering()
+    */
+   public Sort ordering() {
+      return p.ordering();
+   }
+
+
+   public String toString() {
+      return String.format("limit %d offset %d (%s)", limit, offset, p.toString());
+   }
+}
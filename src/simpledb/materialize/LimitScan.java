@@ -0,0 +1,69 @@
+package simpledb.materialize;
+
+import simpledb.query.*;
+
+/**
+ * The Scan class for the <i>limit</i> operator.
+ * Once the limit is reached, the underlying scan
+ * is no longer read.
+ */
+public class LimitScan implements Scan {
+   private Scan s;
+   private int limit, offset, count;
+   
+   /**
+    * Create a limit scan having the specified underlying scan.
+    * @param s the underlying scan
+    * @param limit the maximum number of records to return
+    * @param offset the number of records to skip
+    */
+   public LimitScan(Scan s, int limit, int offset) {
+      this.s = s;
+      this.limit = limit;
+      this.offset = offset;
+      beforeFirst();
+   }
+   
+   /**
+    * Position the scan before its first record,
+    * skipping the offset records of the underlying scan.
+    * @see simpledb.query.Scan#beforeFirst()
+    */
+   public void beforeFirst() {
+      s.beforeFirst();
+      count = 0;
+      for (int i=0; i<offset && s.next(); i++)
+         ;
+   }
+   
+   /**
+    * Move to the next record, unless the limit has been reached.
+    * @see simpledb.query.Scan#next()
+    */
+   public boolean next() {
+      if (count >= limit)
+         return false;
+      count++;
+      return s.next();
+   }
+   
+   public int getInt(String fldname) {
+      return s.getInt(fldname);
+   }
+   
+   public String getString(String fldname) {
+      return s.getString(fldname);
+   }
+   
+   public Constant getVal(String fldname) {
+      return s.getVal(fldname);
+   }
+   
+   public boolean hasField(String fldname) {
+      return s.hasField(fldname);
+   }
+   
+   public void close() {
+      s.close();
+   }
+}
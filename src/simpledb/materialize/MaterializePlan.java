@@ -58,6 +58,17 @@ public class MaterializePlan implements Plan {
       return (int) Math.ceil(srcplan.recordsOutput() / rpb);
    }
    
+   /**
+    * Return the one-time cost of materializing the records,
+    * which {@link #blocksAccessed()} leaves out:
+    * the underlying query is read once and
+    * each block of the temporary table is written.
+    * @return the number of block accesses of the materialization
+    */
+   public int preprocessingCost() {
+      return srcplan.blocksAccessed() + blocksAccessed();
+   }
+   
    /**
     * Return the number of records in the materialized table,
     * which is the same as in the underlying plan.
@@ -75,6 +86,16 @@ public class MaterializePlan implements Plan {
    public int distinctValues(String fldname) {
       return srcplan.distinctValues(fldname);
    }
+
+   /**
+    * Estimate the fraction of the records whose value of the
+    * field lies in the range, which is the same as in
+    * the underlying query.
+    * @see simpledb.plan.Plan#rangeFraction(java.lang.String, simpledb.query.Range)
+    */
+   public double rangeFraction(String fldname, Range range) {
+      return srcplan.rangeFraction(fldname, range);
+   }
    
    /**
     * Return the schema of the materialized table,
@@ -84,6 +105,17 @@ public class MaterializePlan implements Plan {
    public Schema schema() {
       return srcplan.schema();
    }
+   
+   /**
+    * Return the order of the records of the query.
+    * The temporary table holds the records in the
+    * order of the underlying query.
+    * @see simpledb.plan.Plan#ordering()
+    */
+   public Sort ordering() {
+      return srcplan.ordering();
+   }
+
 
    public String toString() {return String.format("materialize(%s)", srcplan.toString()); }
 }
@@ -1,6 +1,8 @@
 package simpledb.materialize;
 
 import simpledb.query.*;
+import simpledb.record.Schema;
+import static java.sql.Types.INTEGER;
 
 /**
  * The <i>max</i> aggregation function.
@@ -30,11 +32,13 @@ public class MaxFn implements AggregationFn {
    /**
     * Replace the current maximum by the field value
     * in the current record, if it is higher.
+    * Null values are skipped, so the maximum is null
+    * only if every value is null.
     * @see simpledb.materialize.AggregationFn#processNext(simpledb.query.Scan)
     */
    public void processNext(Scan s) {
       Constant newval = s.getVal(fldname);
-      if (newval.compareTo(val) > 0)
+      if (!newval.isNull() && (val.isNull() || newval.compareTo(val) > 0))
          val = newval;
    }
    
@@ -60,6 +64,62 @@ public class MaxFn implements AggregationFn {
       return val;
    }
 
+   /**
+    * Return the number of long slots in the partial state.
+    * @see simpledb.materialize.AggregationFn#stateSize()
+    */
+   public int stateSize() {
+      return 1;
+   }
+
+   /**
+    * Return true if the field is an integer field, so its
+    * values can be kept in the partial state.
+    * @see simpledb.materialize.AggregationFn#hasPartialState(simpledb.record.Schema)
+    */
+   public boolean hasPartialState(Schema sch) {
+      return !sch.hasField(fldname) || sch.type(fldname) == INTEGER;
+   }
+
+   /**
+    * Start an empty maximum, which is below every integer.
+    * @see simpledb.materialize.AggregationFn#init(long[], int)
+    */
+   public void init(long[] state, int pos) {
+      state[pos] = Long.MIN_VALUE;
+   }
+
+   /**
+    * Replace the maximum by the field value
+    * of the current record, if it is higher.
+    * Null values are skipped.
+    * @see simpledb.materialize.AggregationFn#accumulate(long[], int, simpledb.query.Scan)
+    */
+   public void accumulate(long[] state, int pos, Scan s) {
+      Constant val = s.getVal(fldname);
+      if (!val.isNull())
+         state[pos] = Math.max(state[pos], val.asInt());
+   }
+
+   /**
+    * Replace the maximum by the other one, if it is higher.
+    * @see simpledb.materialize.AggregationFn#merge(long[], int, long[], int)
+    */
+   public void merge(long[] state, int pos, long[] other, int otherpos) {
+      state[pos] = Math.max(state[pos], other[otherpos]);
+   }
+
+   /**
+    * Return the maximum, or null if the maximum
+    * is still empty because every value was null.
+    * @see simpledb.materialize.AggregationFn#finalValue(long[], int)
+    */
+   public Constant finalValue(long[] state, int pos) {
+      if (state[pos] == Long.MIN_VALUE)
+         return Constant.NULL;
+      return new Constant((int) state[pos]);
+   }
+
    @Override
    public boolean isAggregate() {
       return true;
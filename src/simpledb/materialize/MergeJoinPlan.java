@@ -9,11 +9,18 @@ import java.util.*;
 
 /**
  * The Plan class for the <i>mergejoin</i> operator.
+ * Besides the inner join, the plan implements the left outer join,
+ * the semi join and the anti join, in which the LHS is preserved.
+ * The join may be on several pairs of fields, in which case each
+ * input is sorted on its join fields and the records are merged
+ * on the composite value of those fields.
  * @author Edward Sciore
  */
 public class MergeJoinPlan implements Plan {
    private Plan p1, p2;
-   private String fldname1, fldname2;
+   private List<String> fldnames1, fldnames2;
+   private String jointype;
+   private Predicate residual;
    private Schema sch = new Schema();
    Transaction tx;
    
@@ -28,26 +35,73 @@ public class MergeJoinPlan implements Plan {
     * @param tx the calling transaction
     */
    public MergeJoinPlan(Transaction tx, Plan p1, Plan p2, String fldname1, String  fldname2) {
-      this.fldname1 = fldname1;
-      this.p1 = new SortPlan(tx, p1, new Sort(new Expression(fldname1), "asc"));
-
-      this.fldname2 = fldname2;
-      this.p2 = new SortPlan(tx, p2, new Sort(new Expression(fldname2), "asc"));
+      this(tx, p1, p2, fldname1, fldname2, "inner", new Predicate());
+   }
+   
+   /**
+    * Creates a mergejoin plan of the specified type
+    * for the two specified queries.
+    * Records match if their join fields are equal and they
+    * satisfy the residual predicate.
+    * The schema of a semi or anti join is that of the LHS.
+    * @param p1 the LHS query plan
+    * @param p2 the RHS query plan
+    * @param fldname1 the LHS join fields
+    * @param fldname2 the RHS join fields
+    * @param jointype one of "inner", "left", "semi" or "anti"
+    * @param residual the rest of the join predicate
+    * @param tx the calling transaction
+    */
+   public MergeJoinPlan(Transaction tx, Plan p1, Plan p2, String fldname1, String fldname2,
+                        String jointype, Predicate residual) {
+      this(tx, p1, p2, Arrays.asList(fldname1), Arrays.asList(fldname2), jointype, residual);
+   }
+   
+   /**
+    * Creates a mergejoin plan of the specified type
+    * on several pairs of join fields.
+    * Records match if each LHS join field equals the
+    * corresponding RHS join field and they satisfy the
+    * residual predicate.
+    * @param p1 the LHS query plan
+    * @param p2 the RHS query plan
+    * @param fldnames1 the LHS join fields
+    * @param fldnames2 the corresponding RHS join fields
+    * @param jointype one of "inner", "left", "semi" or "anti"
+    * @param residual the rest of the join predicate
+    * @param tx the calling transaction
+    */
+   public MergeJoinPlan(Transaction tx, Plan p1, Plan p2, List<String> fldnames1, List<String> fldnames2,
+                        String jointype, Predicate residual) {
+      this.jointype = jointype;
+      this.residual = residual;
+      this.fldnames1 = new ArrayList<>(fldnames1);
+      this.fldnames2 = new ArrayList<>(fldnames2);
+      // the pairs of join fields can be merged in any order,
+      // so follow the order that an input is already sorted in
+      if (!orderKeys(p1.ordering(), this.fldnames1, this.fldnames2))
+         orderKeys(p2.ordering(), this.fldnames2, this.fldnames1);
+      Sort sort1 = Sort.ascending(this.fldnames1);
+      this.p1 = p1.ordering().satisfies(sort1) ? p1 : new SortPlan(tx, p1, sort1);
+      // the RHS is always a sort plan, since the scan repositions it,
+      // but it only copies the records if they are already sorted
+      this.p2 = new SortPlan(tx, p2, Sort.ascending(this.fldnames2));
       this.tx = tx;
       
       sch.addAll(p1.schema());
-      sch.addAll(p2.schema());
+      if (!jointype.equals("semi") && !jointype.equals("anti"))
+         sch.addAll(p2.schema());
    }
    
    /** The method first sorts its two underlying scans
-     * on their join field. It then returns a mergejoin scan
-     * of the two sorted table scans.
+     * on their join field, unless they are already sorted.
+     * It then returns a mergejoin scan of the two sorted scans.
      * @see simpledb.plan.Plan#open()
      */
    public Scan open() {
       Scan s1 = p1.open();
       SortScan s2 = (SortScan) p2.open();
-      return new MergeJoinScan(s1, s2, fldname1, fldname2);
+      return new MergeJoinScan(s1, s2, fldnames1, fldnames2, jointype, residual);
    }
    
    /**
@@ -56,26 +110,56 @@ public class MergeJoinPlan implements Plan {
     * Since a mergejoin can be preformed with a single
     * pass through each table, the method returns
     * the sum of the block accesses of the 
-    * materialized sorted tables.
-    * It does <i>not</i> include the one-time cost
-    * of materializing and sorting the records.
+    * materialized sorted tables, plus the one-time
+    * cost of each input that has to be sorted.
     * @see simpledb.plan.Plan#blocksAccessed()
     */
    public int blocksAccessed() {
-      return (int) (2 * (Math.log(p1.blocksAccessed() / Math.log(tx.availableBuffs() - 1) + Math.log(p2.blocksAccessed())
-              / Math.log(tx.availableBuffs() - 1)) + p1.blocksAccessed() + p2.blocksAccessed()));
+      double total = (double) p1.blocksAccessed() + p2.blocksAccessed()
+                   + sortCost(p1) + sortCost(p2);
+      return (int) Math.min(Integer.MAX_VALUE, total);
+   }
+   
+   /**
+    * Return the one-time cost of sorting the input of a join,
+    * which is zero unless it is a sort plan.
+    */
+   static int sortCost(Plan p) {
+      if (!(p instanceof SortPlan))
+         return 0;
+      return ((SortPlan) p).preprocessingCost();
+   }
+   
+   /**
+    * Move the pairs of join fields on which the specified
+    * order sorts the first list to the front of the lists,
+    * in the order of the sort.
+    * Return false if the order does not begin with a join field.
+    */
+   private static boolean orderKeys(Sort ordering, List<String> flds, List<String> others) {
+      int n = 0;
+      List<Expression> exprs = ordering.getFlds();
+      while (n < exprs.size() && ordering.getSortTypes().get(n).equals("asc")) {
+         int i = flds.indexOf(exprs.get(n).toString());
+         if (i < n)
+            break;
+         flds.add(n, flds.remove(i));
+         others.add(n, others.remove(i));
+         n++;
+      }
+      return n > 0;
    }
    
    /**
     * Return the number of records in the join.
     * Assuming uniform distribution, the formula is:
     * <pre> R(join(p1,p2)) = R(p1)*R(p2)/max{V(p1,F1),V(p2,F2)}</pre>
+    * A left join outputs at least R(p1) records;
+    * a semi join at most R(p1), and an anti join the rest.
     * @see simpledb.plan.Plan#recordsOutput()
     */
    public int recordsOutput() {
-      int maxvals = Math.max(p1.distinctValues(fldname1),
-                             p2.distinctValues(fldname2));
-      return (p1.recordsOutput() * p2.recordsOutput()) / maxvals;
+      return HashJoinPlan.joinRecords(jointype, p1, p2, fldnames1, fldnames2);
    }
    
    /**
@@ -90,6 +174,28 @@ public class MergeJoinPlan implements Plan {
       else
          return p2.distinctValues(fldname);
    }
+
+   /**
+    * Estimate the fraction of the join records whose value
+    * of the field lies in the range, which is the same
+    * as in the appropriate underlying query.
+    * @see simpledb.plan.Plan#rangeFraction(java.lang.String, simpledb.query.Range)
+    */
+   public double rangeFraction(String fldname, Range range) {
+      if (p1.schema().hasField(fldname))
+         return p1.rangeFraction(fldname, range);
+      else
+         return p2.rangeFraction(fldname, range);
+   }
+   
+   /**
+    * Return the order of the join, which is that of
+    * the sorted LHS, since it is read once in order.
+    * @see simpledb.plan.Plan#ordering()
+    */
+   public Sort ordering() {
+      return p1.ordering();
+   }
    
    /**
     * Return the schema of the join,
@@ -101,6 +207,8 @@ public class MergeJoinPlan implements Plan {
    }
 
    public String toString(){
-      return String.format("{%s} mergejoin {%s} on (%s)", p1.toString(), p2.toString(), fldname1 + " , "+ fldname2);}
+      String type = jointype.equals("inner") ? "" : jointype + " ";
+      String on = HashJoinPlan.equalities(fldnames1, fldnames2) + (residual.isEmpty() ? "" : " and " + residual);
+      return String.format("{%s} %smergejoin {%s} on (%s)", p1.toString(), type, p2.toString(), on);}
 }
 
@@ -1,29 +1,59 @@
 package simpledb.materialize;
 
+import java.util.*;
+
 import simpledb.query.*;
 
 /**
  * The Scan class for the <i>mergejoin</i> operator.
+ * The scan also implements the left outer join, which outputs
+ * an unmatched LHS record with null RHS fields, the semi join,
+ * which outputs each matched LHS record once,
+ * and the anti join, which outputs the unmatched LHS records.
+ * A join on several fields merges on the composite value of
+ * each record's join fields, in the order of the sorted scans.
  * @author Edward Sciore
  */
 public class MergeJoinScan implements Scan {
    private Scan s1;
    private SortScan s2;
-   private String fldname1, fldname2;
+   private List<String> fldnames1, fldnames2;
+   private String jointype;
+   private Predicate residual;
    private Constant joinval = null;
+   private boolean hasmore2, ingroup, advance2, matched, padded;
    
    /**
-    * Create a mergejoin scan for the two underlying sorted scans.
+    * Create an inner mergejoin scan for the two underlying sorted scans.
     * @param s1 the LHS sorted scan
     * @param s2 the RHS sorted scan
     * @param fldname1 the LHS join field
     * @param fldname2 the RHS join field
     */
    public MergeJoinScan(Scan s1, SortScan s2, String fldname1, String fldname2) {
+      this(s1, s2, Arrays.asList(fldname1), Arrays.asList(fldname2), "inner", new Predicate());
+   }
+   
+   /**
+    * Create a mergejoin scan of the specified type
+    * for the two underlying sorted scans.
+    * Records match if their join values are equal and they
+    * satisfy the residual predicate.
+    * @param s1 the LHS sorted scan
+    * @param s2 the RHS sorted scan
+    * @param fldnames1 the LHS join fields, on which s1 is sorted
+    * @param fldnames2 the corresponding RHS join fields, on which s2 is sorted
+    * @param jointype one of "inner", "left", "semi" or "anti"
+    * @param residual the rest of the join predicate
+    */
+   public MergeJoinScan(Scan s1, SortScan s2, List<String> fldnames1, List<String> fldnames2,
+                        String jointype, Predicate residual) {
       this.s1 = s1;
       this.s2 = s2;
-      this.fldname1 = fldname1;
-      this.fldname2 = fldname2;
+      this.fldnames1 = fldnames1;
+      this.fldnames2 = fldnames2;
+      this.jointype = jointype;
+      this.residual = residual;
       beforeFirst();
    }
    
@@ -45,46 +75,89 @@ public class MergeJoinScan implements Scan {
    public void beforeFirst() {
       s1.beforeFirst();
       s2.beforeFirst();
+      hasmore2 = s2.next();
+      joinval = null;
+      ingroup = false;
    }
    
    /**
     * Move to the next record.  This is where the action is.
     * <P>
-    * If the next RHS record has the same join value,
-    * then move to it.
-    * Otherwise, if the next LHS record has the same join value,
-    * then reposition the RHS scan back to the first record
-    * having that join value.
-    * Otherwise, repeatedly move the scan having the smallest
-    * value until a common join value is found.
-    * When one of the scans runs out of records, return false.
+    * While the current LHS record is joined with the group of
+    * RHS records having its join value, move to the next RHS record
+    * of the group that satisfies the residual predicate.
+    * Once the group is done, an unmatched LHS record is output
+    * by a left or anti join.
+    * Then move to the next LHS record.  If it has the same join value
+    * as the previous group, reposition the RHS scan back to the first
+    * record of the group; otherwise move the RHS scan forward
+    * until its value is not smaller, and start a group if it is equal.
+    * When the LHS scan runs out of records, return false.
     * @see simpledb.query.Scan#next()
     */
    public boolean next() {
-      boolean hasmore2 = s2.next();
-      if (hasmore2 && joinval != null && s2.getVal(fldname2).equals(joinval))
-         return true;
-      
-      boolean hasmore1 = s1.next();
-      if (hasmore1 && joinval != null && s1.getVal(fldname1).equals(joinval)) {
-         s2.restorePosition();
-         return true;
-      }
-      
-      while (hasmore1 && hasmore2) {
-         Constant v1 = s1.getVal(fldname1);
-         Constant v2 = s2.getVal(fldname2);
-         if (v1.compareTo(v2) < 0)
-            hasmore1 = s1.next();
-         else if (v1.compareTo(v2) > 0)
-            hasmore2 = s2.next();
+      while (true) {
+         if (ingroup) {
+            if (nextInGroup())
+               return true;
+            ingroup = false;
+            if (!matched && (jointype.equals("left") || jointype.equals("anti"))) {
+               padded = true;
+               return true;
+            }
+         }
+         if (!s1.next())
+            return false;
+         matched = false;
+         padded = false;
+         Constant v1 = RecordComparator.keyValue(s1, fldnames1);
+         if (v1.isNull())
+            ingroup = false;
+         else if (joinval != null && v1.equals(joinval)) {
+            s2.restorePosition();
+            hasmore2 = true;
+            ingroup = true;
+         }
          else {
-            s2.savePosition();
-            joinval  = s2.getVal(fldname2);
+            while (hasmore2 && RecordComparator.keyValue(s2, fldnames2).compareTo(v1) < 0)
+               hasmore2 = s2.next();
+            ingroup = hasmore2 && RecordComparator.keyValue(s2, fldnames2).equals(v1);
+            if (ingroup) {
+               s2.savePosition();
+               joinval = v1;
+            }
+         }
+         advance2 = false;
+         if (!ingroup && (jointype.equals("left") || jointype.equals("anti"))) {
+            padded = true;
             return true;
          }
       }
-      return false;
+   }
+   
+   /**
+    * Move to the next RHS record of the current group that satisfies
+    * the residual predicate, and return true if the joined record is
+    * to be output: always in an inner or left join, for the first match
+    * in a semi join, and never in an anti join, where the first match
+    * ends the group.
+    */
+   private boolean nextInGroup() {
+      while (true) {
+         if (advance2) {
+            hasmore2 = s2.next();
+            if (!hasmore2 || !RecordComparator.keyValue(s2, fldnames2).equals(joinval))
+               return false;
+         }
+         advance2 = true;
+         if (!residual.isSatisfied(this))
+            continue;
+         matched = true;
+         if (jointype.equals("inner") || jointype.equals("left"))
+            return true;
+         ingroup = false;
+         return jointype.equals("semi");
+      }
    }
    
    /** 
@@ -94,10 +167,7 @@ public class MergeJoinScan implements Scan {
     * @see simpledb.query.Scan#getInt(java.lang.String)
     */
    public int getInt(String fldname) {
-      if (s1.hasField(fldname))
-         return s1.getInt(fldname);
-      else
-         return s2.getInt(fldname);
+      return getVal(fldname).asInt();
    }
    
    /** 
@@ -107,10 +177,7 @@ public class MergeJoinScan implements Scan {
     * @see simpledb.query.Scan#getString(java.lang.String)
     */
    public String getString(String fldname) {
-      if (s1.hasField(fldname))
-         return s1.getString(fldname);
-      else
-         return s2.getString(fldname);
+      return getVal(fldname).asString();
    }
    
    /** 
@@ -122,6 +189,8 @@ public class MergeJoinScan implements Scan {
    public Constant getVal(String fldname) {
       if (s1.hasField(fldname))
          return s1.getVal(fldname);
+      else if (padded)
+         return Constant.NULL;
       else
          return s2.getVal(fldname);
    }
@@ -132,6 +201,8 @@ public class MergeJoinScan implements Scan {
     * @see simpledb.query.Scan#hasField(java.lang.String)
     */
    public boolean hasField(String fldname) {
+      if (jointype.equals("semi") || jointype.equals("anti"))
+         return s1.hasField(fldname);
       return s1.hasField(fldname) || s2.hasField(fldname);
    }
 }
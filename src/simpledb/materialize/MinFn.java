@@ -1,6 +1,8 @@
 package simpledb.materialize;
 
 import simpledb.query.*;
+import simpledb.record.Schema;
+import static java.sql.Types.INTEGER;
 
 /**
  * The <i>min</i> aggregation function.
@@ -30,11 +32,13 @@ public class MinFn implements AggregationFn {
     /**
      * Replace the current minimum by the field value
      * in the current record, if it is lower.
+     * Null values are skipped, so the minimum is null
+     * only if every value is null.
      * @see simpledb.materialize.AggregationFn#processNext(simpledb.query.Scan)
      */
     public void processNext(Scan s) {
         Constant newval = s.getVal(fldname);
-        if (newval.compareTo(val) < 0)
+        if (!newval.isNull() && (val.isNull() || newval.compareTo(val) < 0))
             val = newval;
     }
 
@@ -60,6 +64,62 @@ public class MinFn implements AggregationFn {
         return val;
     }
 
+    /**
+     * Return the number of long slots in the partial state.
+     * @see simpledb.materialize.AggregationFn#stateSize()
+     */
+    public int stateSize() {
+        return 1;
+    }
+
+    /**
+     * Return true if the field is an integer field, so its
+     * values can be kept in the partial state.
+     * @see simpledb.materialize.AggregationFn#hasPartialState(simpledb.record.Schema)
+     */
+    public boolean hasPartialState(Schema sch) {
+        return !sch.hasField(fldname) || sch.type(fldname) == INTEGER;
+    }
+
+    /**
+     * Start an empty minimum, which is above every integer.
+     * @see simpledb.materialize.AggregationFn#init(long[], int)
+     */
+    public void init(long[] state, int pos) {
+        state[pos] = Long.MAX_VALUE;
+    }
+
+    /**
+     * Replace the minimum by the field value
+     * of the current record, if it is lower.
+     * Null values are skipped.
+     * @see simpledb.materialize.AggregationFn#accumulate(long[], int, simpledb.query.Scan)
+     */
+    public void accumulate(long[] state, int pos, Scan s) {
+        Constant val = s.getVal(fldname);
+        if (!val.isNull())
+            state[pos] = Math.min(state[pos], val.asInt());
+    }
+
+    /**
+     * Replace the minimum by the other one, if it is lower.
+     * @see simpledb.materialize.AggregationFn#merge(long[], int, long[], int)
+     */
+    public void merge(long[] state, int pos, long[] other, int otherpos) {
+        state[pos] = Math.min(state[pos], other[otherpos]);
+    }
+
+    /**
+     * Return the minimum, or null if the minimum
+     * is still empty because every value was null.
+     * @see simpledb.materialize.AggregationFn#finalValue(long[], int)
+     */
+    public Constant finalValue(long[] state, int pos) {
+        if (state[pos] == Long.MAX_VALUE)
+            return Constant.NULL;
+        return new Constant((int) state[pos]);
+    }
+
     @Override
     public boolean isAggregate() {
         return true;
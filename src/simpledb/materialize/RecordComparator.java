@@ -6,6 +6,8 @@ import simpledb.query.*;
 
 /**
  * A comparator for scans.
+ * The class also forms the join keys of records,
+ * whose order is that of an ascending comparator on the key fields.
  * @author Edward Sciore
  */
 public class RecordComparator implements Comparator<Scan> {
@@ -52,4 +54,57 @@ public class RecordComparator implements Comparator<Scan> {
       }
       return 0;
    }
+
+   /**
+    * Return a comparator for records held in memory,
+    * each as an array of constants whose values appear
+    * in the order of the specified fields.
+    * The position and direction of each sort field
+    * are determined once, when the comparator is created.
+    * @param fields the names of the fields of each record, in order
+    * @return a comparator that orders the records as compare does
+    */
+   public Comparator<Constant[]> rowComparator(List<String> fields) {
+      List<Expression> sortFields = sort.getFlds();
+      List<String> sortTypes = sort.getSortTypes();
+      int n = sortFields.size();
+      int[] pos = new int[n];
+      boolean[] desc = new boolean[n];
+      for (int i = 0; i < n; i++) {
+         pos[i] = fields.indexOf(sortFields.get(i).toString());
+         desc[i] = sortTypes.get(i).equals("desc");
+      }
+      return (r1, r2) -> {
+         for (int i = 0; i < n; i++) {
+            int result = r1[pos[i]].compareTo(r2[pos[i]]);
+            if (result != 0)
+               return desc[i] ? -result : result;
+         }
+         return 0;
+      };
+   }
+
+   /**
+    * Return the key of the current record of the specified scan
+    * on the specified fields: the value of a single field,
+    * or else the composite value of the fields, which compares
+    * as the records would by an ascending sort on those fields.
+    * Since a key having a null value matches no other key,
+    * the key of a record having a null in any of the fields is null.
+    * @param s the scan
+    * @param fldnames the names of the key fields
+    * @return the key of the current record
+    */
+   public static Constant keyValue(Scan s, List<String> fldnames) {
+      if (fldnames.size() == 1)
+         return s.getVal(fldnames.get(0));
+      List<Constant> vals = new ArrayList<>(fldnames.size());
+      for (String fldname : fldnames) {
+         Constant val = s.getVal(fldname);
+         if (val.isNull())
+            return Constant.NULL;
+         vals.add(val);
+      }
+      return new Constant(vals);
+   }
 }
@@ -5,9 +5,15 @@ import simpledb.tx.Transaction;
 import simpledb.record.*;
 import simpledb.plan.Plan;
 import simpledb.query.*;
+import simpledb.multibuffer.BufferNeeds;
+import simpledb.server.SimpleDB;
 
 /**
  * The Plan class for the <i>sort</i> operator.
+ * If the underlying query is already in the order of the sort,
+ * its records are only copied, so that the plan still provides
+ * the positioning of a SortScan (as a merge join needs)
+ * without sorting anything.
  * @author Edward Sciore
  */
 public class SortPlan implements Plan {
@@ -15,6 +21,7 @@ public class SortPlan implements Plan {
    private Plan p;
    private Schema sch;
    private RecordComparator comp;
+   private Comparator<Constant[]> rowcomp;
    private Sort sort;
    /**
     * Create a sort plan for the specified query.
@@ -27,22 +34,58 @@ public class SortPlan implements Plan {
       this.p = p;
       sch = p.schema();
       comp = new RecordComparator(sort);
+      rowcomp = comp.rowComparator(sch.fields());
       this.sort = sort;
 
    }
    
    /**
     * This method is where most of the action is.
-    * Up to 2 sorted temporary tables are created,
-    * and are passed into SortScan for final merging.
+    * If the underlying query is estimated to fit within the
+    * memory budget, its records are read into memory;
+    * if they all fit, they are sorted there and returned
+    * by an in-memory SortScan, without any temporary tables.
+    * Otherwise the records are split into sorted runs,
+    * which are merged k at a time, where k is chosen from
+    * the available buffers, until at most k of them remain;
+    * those runs are passed into SortScan for final merging.
+    * Records already in order are not sorted, and form a single run.
     * @see simpledb.plan.Plan#open()
     */
    public Scan open() {
       Scan src = p.open();
-      List<TempTable> runs = splitIntoRuns(src);
+      src.beforeFirst();
+      List<Constant[]> rows = new ArrayList<>();
+      int capacity = Math.max(memoryCapacity(), runCapacity());
+      boolean presorted = isPresorted();
+      if (!readRows(src, rows, capacity)) {
+         src.close();
+         if (!presorted)
+            rows.sort(rowcomp);
+         return new SortScan(rows, sch.fields());
+      }
+      if (presorted) {
+         // the input is a single run, which only needs to be copied
+         TempTable run = new TempTable(tx, sch);
+         UpdateScan dest = run.open();
+         List<String> fields = sch.fields();
+         for (Constant[] row : rows) {
+            dest.insert();
+            for (int i=0; i<row.length; i++)
+               dest.setVal(fields.get(i), row[i]);
+         }
+         boolean more = src.next();
+         while (more)
+            more = copy(src, dest);
+         dest.close();
+         src.close();
+         return new SortScan(Arrays.asList(run), comp);
+      }
+      List<TempTable> runs = splitIntoRuns(src, rows);
       src.close();
-      while (runs.size() >= 2)
-         runs = doAMergeIteration(runs);
+      int k = mergeOrder(runs.size());
+      while (runs.size() > k)
+         runs = doAMergeIteration(runs, k);
       return new SortScan(runs, comp);
    }
    
@@ -60,6 +103,47 @@ public class SortPlan implements Plan {
       return mp.blocksAccessed();
    }
    
+   /**
+    * Return the one-time cost of sorting the records,
+    * which {@link #blocksAccessed()} leaves out:
+    * the underlying query is read once, and unless its records
+    * fit in memory, they are written as runs and merged
+    * k at a time, each pass reading and writing every block.
+    * Records already in order are only copied.
+    * @return the number of block accesses of the sort
+    */
+   public int preprocessingCost() {
+      double b = blocksAccessed();
+      double cost = p.blocksAccessed();
+      if (memoryCapacity() == 0) {
+         if (isPresorted())
+            cost += b;
+         else {
+            double k = Math.max(2, tx.availableBuffs() - 2);
+            double passes = Math.max(1, Math.ceil(Math.log(Math.max(1, b)) / Math.log(k)));
+            cost += 2 * b * passes;
+         }
+      }
+      return (int) Math.min(Integer.MAX_VALUE, cost);
+   }
+   
+   /**
+    * Return the order of the sorted table, which is the sort.
+    * @see simpledb.plan.Plan#ordering()
+    */
+   public Sort ordering() {
+      return sort;
+   }
+   
+   /**
+    * Return true if the underlying query is already
+    * in the order of the sort.
+    * @return true if the records need not be sorted
+    */
+   public boolean isPresorted() {
+      return p.ordering().satisfies(sort);
+   }
+   
    /**
     * Return the number of records in the sorted table,
     * which is the same as in the underlying query.
@@ -78,6 +162,16 @@ public class SortPlan implements Plan {
    public int distinctValues(String fldname) {
       return p.distinctValues(fldname);
    }
+
+   /**
+    * Estimate the fraction of the records whose value of the
+    * field lies in the range, which is the same as in
+    * the underlying query.
+    * @see simpledb.plan.Plan#rangeFraction(java.lang.String, simpledb.query.Range)
+    */
+   public double rangeFraction(String fldname, Range range) {
+      return p.rangeFraction(fldname, range);
+   }
    
    /**
     * Return the schema of the sorted table, which
@@ -88,72 +182,134 @@ public class SortPlan implements Plan {
       return sch;
    }
    
-   private List<TempTable> splitIntoRuns(Scan src) {
+   /**
+    * Split the input into sorted runs, the first of which
+    * holds the records already read.
+    * Records are read into memory until they fill the
+    * available buffers; they are then sorted and written
+    * to a new temporary table, so that each run is as
+    * large as the memory allows.
+    */
+   private List<TempTable> splitIntoRuns(Scan src, List<Constant[]> rows) {
       List<TempTable> temps = new ArrayList<>();
-      src.beforeFirst();
-      if (!src.next())
-         return temps;
-      TempTable currenttemp = new TempTable(tx, sch);
-      temps.add(currenttemp);
-      UpdateScan currentscan = currenttemp.open();
-      while (copy(src, currentscan))
-         if (comp.compare(src, currentscan) < 0) {
-         // start a new run
-         currentscan.close();
-         currenttemp = new TempTable(tx, sch);
-         temps.add(currenttemp);
-         currentscan = (UpdateScan) currenttemp.open();
+      temps.add(writeRun(rows));
+      int capacity = runCapacity();
+      boolean more = true;
+      while (more) {
+         rows.clear();
+         more = readRows(src, rows, capacity);
+         if (!rows.isEmpty())
+            temps.add(writeRun(rows));
       }
-      currentscan.close();
       return temps;
    }
    
-   private List<TempTable> doAMergeIteration(List<TempTable> runs) {
+   /**
+    * Read records from the scan into the list until
+    * the list holds the specified number of records.
+    * Return false if the scan ran out of records first.
+    */
+   private boolean readRows(Scan src, List<Constant[]> rows, int capacity) {
+      List<String> fields = sch.fields();
+      while (rows.size() < capacity) {
+         if (!src.next())
+            return false;
+         Constant[] row = new Constant[fields.size()];
+         for (int i=0; i<row.length; i++)
+            row[i] = src.getVal(fields.get(i));
+         rows.add(row);
+      }
+      return true;
+   }
+   
+   /**
+    * Return the number of records that fit into the memory
+    * budget, or 0 if the underlying query is estimated
+    * to be larger than the budget.
+    */
+   private int memoryCapacity() {
+      int slotsize = new Layout(sch).slotSize();
+      if ((long) p.recordsOutput() * slotsize > SimpleDB.MEMORY_BUDGET)
+         return 0;
+      return SimpleDB.MEMORY_BUDGET / slotsize;
+   }
+   
+   /**
+    * Return the number of records that fit into the
+    * available buffers, reserving a couple of them
+    * as BufferNeeds does.
+    */
+   private int runCapacity() {
+      int avail = Math.max(1, tx.availableBuffs() - 2);
+      int rpb = tx.blockSize() / new Layout(sch).slotSize();
+      return Math.max(1, avail * rpb);
+   }
+   
+   private TempTable writeRun(List<Constant[]> rows) {
+      rows.sort(rowcomp);
+      List<String> fields = sch.fields();
+      TempTable temp = new TempTable(tx, sch);
+      UpdateScan dest = temp.open();
+      for (Constant[] row : rows) {
+         dest.insert();
+         for (int i=0; i<row.length; i++)
+            dest.setVal(fields.get(i), row[i]);
+      }
+      dest.close();
+      return temp;
+   }
+   
+   /**
+    * Return the number of runs to merge at a time.
+    * If all of the runs fit into the available buffers
+    * they are merged at once; otherwise, BufferNeeds chooses
+    * the largest number of runs such that each merge pass
+    * reduces the runs evenly.
+    */
+   private int mergeOrder(int numruns) {
+      int avail = tx.availableBuffs();
+      if (numruns <= avail - 2)
+         return Math.max(2, numruns);
+      return Math.max(2, BufferNeeds.bestRoot(avail, numruns));
+   }
+   
+   private List<TempTable> doAMergeIteration(List<TempTable> runs, int k) {
       List<TempTable> result = new ArrayList<>();
       while (runs.size() > 1) {
-         TempTable p1 = runs.remove(0);
-         TempTable p2 = runs.remove(0);
-         result.add(mergeTwoRuns(p1, p2));
+         List<TempTable> group = new ArrayList<>();
+         while (group.size() < k && !runs.isEmpty())
+            group.add(runs.remove(0));
+         result.add(mergeRuns(group));
       }
 
-      // adds the last record in
+      // adds the last run in
       if (runs.size() == 1)
          result.add(runs.get(0));
       return result;
    }
    
-   private TempTable mergeTwoRuns(TempTable p1, TempTable p2) {
-      Scan src1 = p1.open();
-      Scan src2 = p2.open();
+   /**
+    * Merge the specified runs into a new run,
+    * using a heap of the runs ordered by their current records.
+    */
+   private TempTable mergeRuns(List<TempTable> group) {
+      PriorityQueue<Scan> heap = new PriorityQueue<>(group.size(), comp);
+      List<Scan> srcs = new ArrayList<>();
+      for (TempTable run : group) {
+         Scan src = run.open();
+         srcs.add(src);
+         if (src.next())
+            heap.add(src);
+      }
       TempTable result = new TempTable(tx, sch);
       UpdateScan dest = result.open();
-
-      boolean hasmore1 = src1.next();
-      boolean hasmore2 = src2.next();
-
-      while (hasmore1 && hasmore2){
-
-         if (comp.compare(src1, src2) < 0){
-            hasmore1 = copy(src1, dest);
-         }
-         else{
-            hasmore2 = copy(src2, dest);
-         }
-
-      }
-      if (hasmore1){
-         while (hasmore1){
-            hasmore1 = copy(src1, dest);
-         }
+      while (!heap.isEmpty()) {
+         Scan src = heap.poll();
+         if (copy(src, dest))
+            heap.add(src);
       }
-      else{
-         while (hasmore2){
-            hasmore2 = copy(src2, dest);
-         }
-      }
-
-      src1.close();
-      src2.close();
+      for (Scan src : srcs)
+         src.close();
       dest.close();
       return result;
    }
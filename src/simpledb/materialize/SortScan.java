@@ -14,87 +14,90 @@ import simpledb.record.*;
  *
  */
 public class SortScan implements Scan {
-   private UpdateScan s1, s2=null, currentscan=null;
-   private RecordComparator comp;
-   private boolean hasmore1, hasmore2=false;
+   private List<UpdateScan> scans = new ArrayList<>();
+   private PriorityQueue<UpdateScan> heap;
+   private UpdateScan currentscan=null, savedscan=null;
    private List<RID> savedposition;
+   private List<Constant[]> rows = null;
+   private Map<String,Integer> positions;
+   private int currentrow, savedrow;
    
    /**
-    * Create a sort scan, given a list of 1 or 2 runs.
-    * If there is only 1 run, then s2 will be null and
-    * hasmore2 will be false.
+    * Create a sort scan, given a list of runs.
+    * The runs are merged using a heap of the scans
+    * that have records left, ordered by their current records.
     * @param runs the list of runs
     * @param comp the record comparator
     */
    public SortScan(List<TempTable> runs, RecordComparator comp) {
-      this.comp = comp;
-      if(runs.size() > 0){
-         s1 = (UpdateScan) runs.get(0).open();
-         hasmore1 = s1.next();
-         if (runs.size() > 1) {
-            s2 = (UpdateScan) runs.get(1).open();
-            hasmore2 = s2.next();
-         }
-      }
+      heap = new PriorityQueue<>(Math.max(1, runs.size()), comp);
+      for (TempTable run : runs)
+         scans.add(run.open());
+      beforeFirst();
+   }
+   
+   /**
+    * Create a sort scan over records that have already
+    * been sorted in memory.
+    * Each record is an array of constants, whose values
+    * appear in the order of the specified fields.
+    * @param rows the sorted records
+    * @param fields the names of the fields of each record
+    */
+   public SortScan(List<Constant[]> rows, List<String> fields) {
+      this.rows = rows;
+      positions = new HashMap<>();
+      for (int i=0; i<fields.size(); i++)
+         positions.put(fields.get(i), i);
+      beforeFirst();
    }
    
    /**
     * Position the scan before the first record in sorted order.
-    * Internally, it moves to the first record of each underlying scan.
+    * Internally, it moves to the first record of each underlying scan,
+    * and places the non-empty scans in the heap.
     * The variable currentscan is set to null, indicating that there is
     * no current scan.
     * @see simpledb.query.Scan#beforeFirst()
     */
    public void beforeFirst() {
+      if (rows != null) {
+         currentrow = -1;
+         return;
+      }
       currentscan = null;
-      s1.beforeFirst();
-      hasmore1 = s1.next();
-      if (s2 != null) {
-         s2.beforeFirst();
-         hasmore2 = s2.next();
+      heap.clear();
+      for (UpdateScan s : scans) {
+         s.beforeFirst();
+         if (s.next())
+            heap.add(s);
       }
    }
    
    /**
     * Move to the next record in sorted order.
-    * First, the current scan is moved to the next record.
-    * Then the lowest record of the two scans is found, and that
-    * scan is chosen to be the new current scan.
+    * First, the current scan is moved to the next record,
+    * and returned to the heap if it has one.
+    * Then the scan having the lowest record is removed from
+    * the heap, and chosen to be the new current scan.
     * @see simpledb.query.Scan#next()
     */
    public boolean next() {
-      if (currentscan != null) {
-         if (currentscan == s1)
-            hasmore1 = s1.next();
-         else if (currentscan == s2)
-            hasmore2 = s2.next();
-      }
-      
-      if (!hasmore1 && !hasmore2)
-         return false;
-      else if (hasmore1 && hasmore2) {
-         if (comp.compare(s1, s2) < 0)
-            currentscan = s1;
-         else
-            currentscan = s2;
-      }
-      else if (hasmore1)
-         currentscan = s1;
-      else if (hasmore2)
-         currentscan = s2;
-      return true;
+      if (rows != null)
+         return ++currentrow < rows.size();
+      if (currentscan != null && currentscan.next())
+         heap.add(currentscan);
+      currentscan = heap.poll();
+      return currentscan != null;
    }
    
    /**
-    * Close the two underlying scans.
+    * Close the underlying scans.
     * @see simpledb.query.Scan#close()
     */
    public void close() {
-      if(s1 != null)
-         s1.close();
-      if (s2 != null)
-         s2.close();
-
+      for (UpdateScan s : scans)
+         s.close();
    }
    
    /**
@@ -103,6 +106,12 @@ public class SortScan implements Scan {
     * @see simpledb.query.Scan#getVal(java.lang.String)
     */
    public Constant getVal(String fldname) {
+      if (rows != null) {
+         Integer pos = positions.get(fldname);
+         if (pos == null)
+            throw new RuntimeException("field " + fldname + " not found.");
+         return rows.get(currentrow)[pos];
+      }
       return currentscan.getVal(fldname);
    }
    
@@ -112,6 +121,8 @@ public class SortScan implements Scan {
     * @see simpledb.query.Scan#getInt(java.lang.String)
     */
    public int getInt(String fldname) {
+      if (rows != null)
+         return getVal(fldname).asInt();
       return currentscan.getInt(fldname);
    }
    
@@ -121,35 +132,58 @@ public class SortScan implements Scan {
     * @see simpledb.query.Scan#getString(java.lang.String)
     */
    public String getString(String fldname) {
+      if (rows != null)
+         return getVal(fldname).asString();
       return currentscan.getString(fldname);
    }
    
    /**
-    * Return true if the specified field is in the current scan.
+    * Return true if the specified field is in the runs.
     * @see simpledb.query.Scan#hasField(java.lang.String)
     */
    public boolean hasField(String fldname) {
-      return currentscan.hasField(fldname);
+      if (rows != null)
+         return positions.containsKey(fldname);
+      return !scans.isEmpty() && scans.get(0).hasField(fldname);
    }
    
    /**
     * Save the position of the current record,
     * so that it can be restored at a later time.
+    * The position of each run that still has records is saved,
+    * together with the current scan.
     */
    public void savePosition() {
-      RID rid1 = s1.getRid();
-      RID rid2 = (s2 == null) ? null : s2.getRid();
-      savedposition = Arrays.asList(rid1,rid2);
+      if (rows != null) {
+         savedrow = currentrow;
+         return;
+      }
+      savedposition = new ArrayList<>();
+      for (UpdateScan s : scans) {
+         boolean live = (s == currentscan) || heap.contains(s);
+         savedposition.add(live ? s.getRid() : null);
+      }
+      savedscan = currentscan;
    }
    
    /**
     * Move the scan to its previously-saved position.
     */
    public void restorePosition() {
-      RID rid1 = savedposition.get(0);
-      RID rid2 = savedposition.get(1);
-      s1.moveToRid(rid1);
-      if (rid2 != null)
-         s2.moveToRid(rid2);
+      if (rows != null) {
+         currentrow = savedrow;
+         return;
+      }
+      heap.clear();
+      for (int i=0; i<scans.size(); i++) {
+         UpdateScan s = scans.get(i);
+         RID rid = savedposition.get(i);
+         if (rid == null)
+            continue;
+         s.moveToRid(rid);
+         if (s != savedscan)
+            heap.add(s);
+      }
+      currentscan = savedscan;
    }
 }
@@ -0,0 +1,130 @@
+package simpledb.materialize;
+
+import java.io.File;
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.plan.*;
+import simpledb.query.*;
+import simpledb.parse.Parser;
+
+/**
+ * Sort a table too large for the buffers, by a descending
+ * and then an ascending field, so that it is split into many runs.
+ * Selections of the table give inputs from a single run up to
+ * more runs than can be merged in one pass.
+ * The sorted records must be those of the input, in order,
+ * and every buffer must be released once the scan is closed.
+ * A position saved in the middle of the merge must be restored
+ * to the same record, as a merge join requires.
+ * Everything is repeated with a memory budget large enough
+ * for the table, which must then be sorted without any
+ * temporary tables.
+ */
+public class SortTest {
+   public static void main(String[] args) {
+      deleteDir(new File("sorttest"));
+      SimpleDB db = new SimpleDB("sorttest");
+      Transaction tx = db.newTx();
+      Planner planner = db.planner();
+      planner.executeUpdate("create table T(A int, B varchar(9))", tx);
+      List<String> expected = new ArrayList<>();
+      Random r = new Random(31);
+      for (int i=0; i<3000; i++) {
+         int a = r.nextInt(500);
+         planner.executeUpdate("insert into T(A,B) values(" + a + ", 'b" + i + "')", tx);
+         expected.add(String.format("%03d b%d", 999 - a, i));
+      }
+      tx.commit();
+      Collections.sort(expected, (x, y) -> {
+         int c = x.substring(0, 3).compareTo(y.substring(0, 3));
+         return c != 0 ? c : x.substring(4).compareTo(y.substring(4));
+      });
+
+      boolean ok = true;
+      int budget = SimpleDB.MEMORY_BUDGET;
+      for (int mem : new int[] {1, 1024 * 1024}) {
+         SimpleDB.MEMORY_BUDGET = mem;
+         tx = db.newTx();
+         int temps = tempFiles();
+         for (int max : new int[] {20, 100, 500}) {
+            Plan p = new TablePlan(tx, "t", db.mdMgr());
+            p = new SelectPlan(p, new Parser("A < " + max).predicate());
+            List<String> sub = new ArrayList<>();
+            for (String rec : expected)
+               if (999 - Integer.parseInt(rec.substring(0, 3)) < max)
+                  sub.add(rec);
+            ok = check(p, sub, tx) && ok;
+         }
+         ok = checkRestore(new TablePlan(tx, "t", db.mdMgr()), expected, tx) && ok;
+         boolean inmemory = (tempFiles() == temps);
+         if (inmemory != (mem > 1)) {
+            System.out.println("with a budget of " + mem + " the records were "
+                  + (inmemory ? "" : "not ") + "sorted in memory");
+            ok = false;
+         }
+         tx.commit();
+      }
+      SimpleDB.MEMORY_BUDGET = budget;
+      System.out.println(ok ? "sort ok" : "sort FAILED");
+   }
+
+   private static boolean check(Plan p, List<String> expected, Transaction tx) {
+      Scan s = open(p, tx);
+      List<String> found = new ArrayList<>();
+      while (s.next())
+         found.add(record(s));
+      s.close();
+      if (!found.equals(expected)) {
+         System.out.println(found.size() + " records instead of " + expected.size()
+               + ", or out of order");
+         return false;
+      }
+      if (tx.availableBuffs() != SimpleDB.BUFFER_SIZE) {
+         System.out.println((SimpleDB.BUFFER_SIZE - tx.availableBuffs()) + " buffers still pinned");
+         return false;
+      }
+      return true;
+   }
+
+   private static boolean checkRestore(Plan p, List<String> expected, Transaction tx) {
+      SortScan s = (SortScan) open(p, tx);
+      List<String> found = new ArrayList<>();
+      for (int i=0; i<1000 && s.next(); i++)
+         found.add(record(s));
+      s.savePosition();
+      for (int i=0; i<500; i++)
+         s.next();
+      s.restorePosition();
+      boolean ok = record(s).equals(found.get(found.size() - 1));
+      while (s.next())
+         found.add(record(s));
+      s.close();
+      if (!ok || !found.equals(expected)) {
+         System.out.println("restored position " + (ok ? "continues out of order" : "holds the wrong record"));
+         return false;
+      }
+      return true;
+   }
+
+   private static Scan open(Plan p, Transaction tx) {
+      Sort sort = new Sort(new Expression("a"), "desc");
+      sort.conjoinWith(new Sort(new Expression("b"), "asc"));
+      return new SortPlan(tx, p, sort).open();
+   }
+
+   private static String record(Scan s) {
+      return String.format("%03d %s", 999 - s.getInt("a"), s.getString("b"));
+   }
+
+   private static int tempFiles() {
+      return new File("sorttest").list((dir, name) -> name.startsWith("temp")).length;
+   }
+
+   private static void deleteDir(File f) {
+      if (f.isDirectory())
+         for (File child : f.listFiles())
+            deleteDir(child);
+      f.delete();
+   }
+}
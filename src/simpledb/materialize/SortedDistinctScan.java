@@ -0,0 +1,103 @@
+package simpledb.materialize;
+
+import java.util.*;
+
+import simpledb.query.*;
+
+/**
+ * The Scan class for the <i>distinct</i> operator
+ * over a scan that is sorted on the selected fields.
+ * Duplicate tuples are then adjacent, so each tuple
+ * need only be compared with the previous one,
+ * and no tuples are kept.
+ * The scan may also output other fields, whose values
+ * are those of the first record of each tuple.
+ */
+public class SortedDistinctScan implements Scan {
+    private Scan s;
+    private List<String> keyfields, fields;
+    private Constant[] prevkey;
+    private boolean first;
+
+    /**
+     * Create a distinct scan over a sorted scan.
+     * @param s the sorted scan
+     * @param keyfields the selected fields
+     */
+    public SortedDistinctScan(Scan s, List<String> keyfields) {
+        this(s, keyfields, keyfields);
+    }
+
+    /**
+     * Create a distinct scan over a sorted scan
+     * that outputs the specified fields.
+     * @param s the sorted scan
+     * @param keyfields the selected fields
+     * @param fields the output fields, which include the selected fields
+     */
+    public SortedDistinctScan(Scan s, List<String> keyfields, List<String> fields) {
+        this.s = s;
+        this.keyfields = keyfields;
+        this.fields = fields;
+        prevkey = new Constant[keyfields.size()];
+        beforeFirst();
+    }
+
+    /**
+     * Position the scan before the first tuple.
+     * @see simpledb.query.Scan#beforeFirst()
+     */
+    public void beforeFirst() {
+        s.beforeFirst();
+        first = true;
+    }
+
+    /**
+     * Move to the next tuple that differs from the previous one,
+     * saving its values for the next comparison.
+     * @see simpledb.query.Scan#next()
+     */
+    public boolean next() {
+        while (s.next()) {
+            boolean same = !first;
+            for (int i = 0; i < prevkey.length; i++) {
+                Constant val = s.getVal(keyfields.get(i));
+                if (same && !val.equals(prevkey[i]))
+                    same = false;
+                prevkey[i] = val;
+            }
+            if (!same) {
+                first = false;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Close the scan by closing the underlying scan.
+     * @see simpledb.query.Scan#close()
+     */
+    public void close() {
+        s.close();
+    }
+
+    public Constant getVal(String fldname) {
+        if (fields.contains(fldname))
+            return s.getVal(fldname);
+
+        throw new RuntimeException("field " + fldname + " not found.");
+    }
+
+    public int getInt(String fldname) {
+        return getVal(fldname).asInt();
+    }
+
+    public String getString(String fldname) {
+        return getVal(fldname).asString();
+    }
+
+    public boolean hasField(String fldname) {
+        return fields.contains(fldname);
+    }
+}
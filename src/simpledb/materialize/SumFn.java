@@ -1,6 +1,8 @@
 package simpledb.materialize;
 
 import simpledb.query.*;
+import simpledb.record.Schema;
+import static java.sql.Types.INTEGER;
 
 /**
  * The <i>sum</i> aggregation function.
@@ -9,6 +11,7 @@ import simpledb.query.*;
 public class SumFn implements AggregationFn {
     private String fldname;
     private int sum;
+    private boolean seen;
 
     /**
      * Create a sum aggregation function for the specified field.
@@ -20,21 +23,27 @@ public class SumFn implements AggregationFn {
 
     /**
      * Start a new sum.
-     * The current sum is thus set to the value of the field in the first tuple.
+     * The current sum is thus set to the value of the field in the first tuple,
+     * or to no value if the field is null.
      * @see simpledb.materialize.AggregationFn#processFirst(simpledb.query.Scan)
      */
     public void processFirst(Scan s) {
-        sum = s.getInt(fldname);
+        sum = 0;
+        seen = false;
+        processNext(s);
     }
 
     /**
-     * Since SimpleDB does not support null values,
-     * this method always increments the sum,
-     * regardless of the field.
+     * Add the field value of the current record to the sum,
+     * unless it is null.
      * @see simpledb.materialize.AggregationFn#processNext(simpledb.query.Scan)
      */
     public void processNext(Scan s) {
-        sum += s.getInt(fldname);
+        Constant val = s.getVal(fldname);
+        if (!val.isNull()) {
+            sum += val.asInt();
+            seen = true;
+        }
     }
 
     /**
@@ -52,11 +61,70 @@ public class SumFn implements AggregationFn {
     public String originalFieldName() {return fldname;}
 
     /**
-     * Return the current sum.
+     * Return the current sum, or null if every value was null.
      * @see simpledb.materialize.AggregationFn#value()
      */
     public Constant value() {
-        return new Constant(sum);
+        return seen ? new Constant(sum) : Constant.NULL;
+    }
+
+    /**
+     * Return the number of long slots in the partial state.
+     * @see simpledb.materialize.AggregationFn#stateSize()
+     */
+    public int stateSize() {
+        return 2;
+    }
+
+    /**
+     * Return true if the field is an integer field, so its
+     * values can be kept in the partial state.
+     * @see simpledb.materialize.AggregationFn#hasPartialState(simpledb.record.Schema)
+     */
+    public boolean hasPartialState(Schema sch) {
+        return !sch.hasField(fldname) || sch.type(fldname) == INTEGER;
+    }
+
+    /**
+     * Start an empty sum, whose state is the sum
+     * followed by the number of non-null values.
+     * @see simpledb.materialize.AggregationFn#init(long[], int)
+     */
+    public void init(long[] state, int pos) {
+        state[pos] = 0;
+        state[pos+1] = 0;
+    }
+
+    /**
+     * Add the field value of the current record to the sum,
+     * unless it is null.
+     * @see simpledb.materialize.AggregationFn#accumulate(long[], int, simpledb.query.Scan)
+     */
+    public void accumulate(long[] state, int pos, Scan s) {
+        Constant val = s.getVal(fldname);
+        if (!val.isNull()) {
+            state[pos] += val.asInt();
+            state[pos+1]++;
+        }
+    }
+
+    /**
+     * Add the other sum and count to these.
+     * @see simpledb.materialize.AggregationFn#merge(long[], int, long[], int)
+     */
+    public void merge(long[] state, int pos, long[] other, int otherpos) {
+        state[pos] += other[otherpos];
+        state[pos+1] += other[otherpos+1];
+    }
+
+    /**
+     * Return the sum, or null if every value was null.
+     * @see simpledb.materialize.AggregationFn#finalValue(long[], int)
+     */
+    public Constant finalValue(long[] state, int pos) {
+        if (state[pos+1] == 0)
+            return Constant.NULL;
+        return new Constant((int) state[pos]);
     }
 
     @Override
@@ -0,0 +1,145 @@
+package simpledb.materialize;
+
+import java.util.*;
+import simpledb.tx.Transaction;
+import simpledb.record.*;
+import simpledb.plan.Plan;
+import simpledb.query.*;
+import simpledb.server.SimpleDB;
+
+/**
+ * The Plan class for the <i>top-N</i> operator, which
+ * returns the first n records of its input in sorted order.
+ * The records are read in a single pass, keeping the
+ * n lowest records seen so far in a bounded heap,
+ * so no temporary tables are needed.
+ */
+public class TopNPlan implements Plan {
+   private Transaction tx;
+   private Plan p;
+   private Schema sch;
+   private Sort sort;
+   private int n;
+   private Comparator<Constant[]> rowcomp;
+   
+   /**
+    * Create a top-N plan for the specified query.
+    * @param tx the calling transaction
+    * @param p the plan for the underlying query
+    * @param sort the fields to sort by and its corresponding order
+    * @param n the number of records to return
+    */
+   public TopNPlan(Transaction tx, Plan p, Sort sort, int n) {
+      this.tx = tx;
+      this.p = p;
+      this.sort = sort;
+      this.n = n;
+      sch = p.schema();
+      rowcomp = new RecordComparator(sort).rowComparator(sch.fields());
+   }
+   
+   /**
+    * Read the input, keeping the n lowest records
+    * in a heap whose root is the highest of them.
+    * The kept records are then sorted and returned
+    * by an in-memory SortScan.
+    * If n records would not fit into the memory budget,
+    * the input is sorted by a SortPlan instead.
+    * @see simpledb.plan.Plan#open()
+    */
+   public Scan open() {
+      if (!fitsInMemory())
+         return new SortPlan(tx, p, sort).open();
+      List<String> fields = sch.fields();
+      PriorityQueue<Constant[]> heap = new PriorityQueue<>(Math.max(1, n), rowcomp.reversed());
+      Scan src = p.open();
+      Constant[] row = new Constant[fields.size()];
+      while (n > 0 && src.next()) {
+         for (int i=0; i<row.length; i++)
+            row[i] = src.getVal(fields.get(i));
+         if (heap.size() < n) {
+            heap.add(row);
+            row = new Constant[fields.size()];
+         }
+         else if (rowcomp.compare(row, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(row);
+            row = new Constant[fields.size()];
+         }
+      }
+      src.close();
+      List<Constant[]> rows = new ArrayList<>(heap);
+      rows.sort(rowcomp);
+      return new SortScan(rows, fields);
+   }
+   
+   /**
+    * Return the number of blocks accessed, which is that of
+    * the single pass over the underlying query, or that
+    * of the SortPlan used when n records do not fit in memory.
+    * @see simpledb.plan.Plan#blocksAccessed()
+    */
+   public int blocksAccessed() {
+      if (!fitsInMemory())
+         return new SortPlan(tx, p, sort).blocksAccessed();
+      return p.blocksAccessed();
+   }
+   
+   /**
+    * Return the number of records output,
+    * which is at most n.
+    * @see simpledb.plan.Plan#recordsOutput()
+    */
+   public int recordsOutput() {
+      return Math.min(n, p.recordsOutput());
+   }
+   
+   /**
+    * Return the number of distinct field values,
+    * but not more than the size of the output.
+    * @see simpledb.plan.Plan#distinctValues(java.lang.String)
+    */
+   public int distinctValues(String fldname) {
+      return Math.min(p.distinctValues(fldname), recordsOutput());
+   }
+
+   /**
+    * Estimate the fraction of the records whose value of the
+    * field lies in the range, which is the same as in
+    * the underlying query.
+    * @see simpledb.plan.Plan#rangeFraction(java.lang.String, simpledb.query.Range)
+    */
+   public double rangeFraction(String fldname, Range range) {
+      return p.rangeFraction(fldname, range);
+   }
+   
+   /**
+    * Return the schema of the underlying query.
+    * @see simpledb.plan.Plan#schema()
+    */
+   public Schema schema() {
+      return sch;
+   }
+   
+   /**
+    * Return the order of the records of the query.
+    * The records are in the order of the sort.
+    * @see simpledb.plan.Plan#ordering()
+    */
+   public Sort ordering() {
+      return sort;
+   }
+
+
+   /**
+    * Return true if n records fit into the memory budget,
+    * so that they can be kept in the heap.
+    */
+   private boolean fitsInMemory() {
+      return (long) n * new Layout(sch).slotSize() <= SimpleDB.MEMORY_BUDGET;
+   }
+
+   public String toString() {
+      return String.format("top %d by (%s) %s", n, p.toString(), sort.toString());
+   }
+}
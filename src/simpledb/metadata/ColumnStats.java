@@ -0,0 +1,290 @@
+package simpledb.metadata;
+
+import java.util.*;
+import simpledb.query.Constant;
+import simpledb.query.Range;
+
+/**
+ * The statistics of a field, as computed by the <i>analyze</i>
+ * command from the records of a table, or from a sample of its
+ * blocks if the table is large:
+ * the number of distinct values, the number of nulls,
+ * the smallest and largest values, and an equi-depth histogram.
+ * <P>
+ * The histogram divides the sorted non-null values into buckets
+ * holding about the same number of values; each bucket records
+ * its largest value, its number of values and its number of
+ * distinct values.
+ * All copies of a value are in the same bucket, so that a
+ * frequent value fills a bucket of its own.
+ * The counts are those of the sample; the number of distinct
+ * values is an estimate for the whole table.
+ */
+public class ColumnStats {
+   /**
+    * The number of buckets of a histogram.
+    */
+   public static int NUM_BUCKETS = 20;
+
+   /**
+    * The number of blocks of a table that are read by
+    * <i>analyze</i>; a larger table is sampled.
+    */
+   public static int SAMPLE_BLOCKS = 1000;
+
+   private int sampled, nulls, ndv;
+   private Constant min, max;
+   private Constant[] highs;
+   private int[] counts, distincts;
+
+   /**
+    * Create the statistics of a field having the specified
+    * summary values and number of buckets; the buckets
+    * are then set by calls to setBucket.
+    * @param sampled the number of records examined
+    * @param nulls the number of those records having a null value
+    * @param ndv the estimated number of distinct values in the table
+    * @param min the smallest value, or null if all values are null
+    * @param max the largest value, or null if all values are null
+    * @param numbuckets the number of buckets of the histogram
+    */
+   public ColumnStats(int sampled, int nulls, int ndv, Constant min,
+                      Constant max, int numbuckets) {
+      this.sampled = sampled;
+      this.nulls = nulls;
+      this.ndv = ndv;
+      this.min = min;
+      this.max = max;
+      highs = new Constant[numbuckets];
+      counts = new int[numbuckets];
+      distincts = new int[numbuckets];
+   }
+
+   /**
+    * Compute the statistics of a field from its values
+    * in the examined records.
+    * If only some of the blocks were examined, the number of
+    * distinct values is extrapolated by the GEE estimator,
+    * which scales the values seen once by the square root
+    * of the sampling ratio and counts the others once:
+    * <pre> D = sqrt(scale)*f1 + (d - f1) </pre>
+    * @param vals the values of the field
+    * @param scale the ratio of the table size to the sample size
+    * @return the statistics of the field
+    */
+   public static ColumnStats analyze(List<Constant> vals, double scale) {
+      List<Constant> sorted = new ArrayList<>();
+      for (Constant val : vals)
+         if (!val.isNull())
+            sorted.add(val);
+      Collections.sort(sorted);
+      int n = sorted.size();
+      int d = 0, f1 = 0;
+      for (int i=0; i<n; ) {
+         int j = endOfRun(sorted, i);
+         d++;
+         if (j == i)
+            f1++;
+         i = j + 1;
+      }
+      double estimate = (scale <= 1) ? d : Math.sqrt(scale) * f1 + (d - f1);
+      int ndv = (int) Math.max(d, Math.min(n * Math.max(1, scale), Math.round(estimate)));
+
+      List<Integer> ends = new ArrayList<>();
+      int depth = Math.max(1, (int) Math.ceil((double) n / NUM_BUCKETS));
+      for (int i=0; i<n; ) {
+         int j = endOfRun(sorted, Math.min(n, i + depth) - 1);
+         ends.add(j);
+         i = j + 1;
+      }
+      Constant lo = (n == 0) ? null : sorted.get(0);
+      Constant hi = (n == 0) ? null : sorted.get(n - 1);
+      ColumnStats cs = new ColumnStats(vals.size(), vals.size() - n, ndv, lo, hi, ends.size());
+      int start = 0;
+      for (int b=0; b<ends.size(); b++) {
+         int end = ends.get(b);
+         int distinct = 0;
+         for (int i=start; i<=end; i = endOfRun(sorted, i) + 1)
+            distinct++;
+         cs.setBucket(b, sorted.get(end), end - start + 1, distinct);
+         start = end + 1;
+      }
+      return cs;
+   }
+
+   /**
+    * Set the contents of the specified bucket.
+    * @param bucket the number of the bucket
+    * @param high the largest value in the bucket
+    * @param count the number of values in the bucket
+    * @param distinct the number of distinct values in the bucket
+    */
+   public void setBucket(int bucket, Constant high, int count, int distinct) {
+      highs[bucket] = high;
+      counts[bucket] = count;
+      distincts[bucket] = distinct;
+   }
+
+   /**
+    * Return the estimated number of distinct non-null values.
+    * @return the number of distinct values
+    */
+   public int distinctValues() {
+      return ndv;
+   }
+
+   /**
+    * Return the fraction of the records having a null value.
+    * @return the fraction of null values
+    */
+   public double nullFraction() {
+      return (sampled == 0) ? 0 : (double) nulls / sampled;
+   }
+
+   /**
+    * Estimate the fraction of the records whose value lies
+    * in the specified range.
+    * Each bucket lying entirely in the range contributes all
+    * of its values, and a bucket overlapping the range a part
+    * of them: for integers, the part of the bucket's values
+    * covered by the range, assuming that they are spread evenly,
+    * and otherwise half of them.
+    * A single value takes its share of the distinct values of
+    * its bucket.
+    * Null values lie in no range.
+    * The estimate is never less than half a record of the sample,
+    * since the statistics may be out of date.
+    * @param range the range of values
+    * @return the estimated fraction of records in the range
+    */
+   public double rangeFraction(Range range) {
+      if (sampled == 0)
+         return range.guessFraction(1);
+      double inrange = 0;
+      int nonnull = sampled - nulls;
+      for (int b=0; b<highs.length; b++) {
+         Constant low = (b == 0) ? null : highs[b-1];
+         if (range.isEquality())
+            inrange += equalityPart(b, low, range.low());
+         else
+            inrange += counts[b] * bucketPart(b, low, range);
+      }
+      double fraction = (nonnull == 0) ? 0 : inrange / nonnull * (1 - nullFraction());
+      return Math.max(fraction, 0.5 / sampled);
+   }
+
+   /**
+    * Return the smallest value, or null if all values are null.
+    * @return the smallest value
+    */
+   public Constant min() {
+      return min;
+   }
+
+   /**
+    * Return the largest value, or null if all values are null.
+    * @return the largest value
+    */
+   public Constant max() {
+      return max;
+   }
+
+   /**
+    * Return the number of records examined.
+    * @return the size of the sample
+    */
+   public int sampled() {
+      return sampled;
+   }
+
+   /**
+    * Return the number of examined records having a null value.
+    * @return the number of nulls
+    */
+   public int nulls() {
+      return nulls;
+   }
+
+   /**
+    * Return the number of buckets of the histogram.
+    * @return the number of buckets
+    */
+   public int numBuckets() {
+      return highs.length;
+   }
+
+   public Constant bucketHigh(int bucket) {return highs[bucket];}
+
+   public int bucketCount(int bucket) {return counts[bucket];}
+
+   public int bucketDistinct(int bucket) {return distincts[bucket];}
+
+   /**
+    * Return the number of sampled values in the bucket
+    * that equal the specified value: its share of the
+    * bucket's values, each distinct value of the sample
+    * standing for several of the table, unless it is
+    * a frequent value filling the bucket on its own.
+    */
+   private double equalityPart(int b, Constant low, Constant val) {
+      if ((low != null && val.compareTo(low) <= 0) || val.compareTo(highs[b]) > 0
+            || val.compareTo(min) < 0)
+         return 0;
+      if (distincts[b] == 1)
+         return counts[b];
+      double sampledistinct = 0;
+      for (int d : distincts)
+         sampledistinct += d;
+      double bucketndv = distincts[b] * Math.max(1, ndv / sampledistinct);
+      return counts[b] / bucketndv;
+   }
+
+   /**
+    * Return the fraction of the values of the bucket that lie in
+    * the range; the bucket holds the values above the largest
+    * value of the previous bucket, or from min if it is the first.
+    */
+   private double bucketPart(int b, Constant low, Range range) {
+      Constant high = highs[b];
+      Constant first = (low == null) ? min : low;
+      boolean firstinclusive = (low == null);
+      if (!range.isAboveLow(high) || (range.high() != null
+            && !admits(range.high(), range.highInclusive(), first, firstinclusive, false)))
+         return 0;
+      boolean lowcovered = range.low() == null
+            || admits(range.low(), range.lowInclusive(), first, firstinclusive, true);
+      if (lowcovered && range.isBelowHigh(high))
+         return 1;
+      if (high.asString() != null)
+         return 0.5;
+      long from = (low == null) ? min.asInt() : (long) low.asInt() + 1;
+      long to = high.asInt();
+      if (range.low() != null)
+         from = Math.max(from, range.low().asInt() + (range.lowInclusive() ? 0L : 1L));
+      if (range.high() != null)
+         to = Math.min(to, range.high().asInt() - (range.highInclusive() ? 0L : 1L));
+      long width = high.asInt() - ((low == null) ? (long) min.asInt() : (long) low.asInt() + 1) + 1;
+      return (to < from || width <= 0) ? 0 : (double) (to - from + 1) / width;
+   }
+
+   /**
+    * Return true if the bound of a range admits the first value
+    * of a bucket: a lower bound admits every value of the bucket,
+    * and an upper bound admits some of them.
+    * The first value is not in the bucket unless it is inclusive.
+    */
+   private static boolean admits(Constant bound, boolean inclusive, Constant first,
+                                 boolean firstinclusive, boolean islow) {
+      int cmp = bound.compareTo(first);
+      if (islow)
+         return cmp < 0 || (cmp == 0 && (inclusive || !firstinclusive));
+      else
+         return cmp > 0 || (cmp == 0 && inclusive && firstinclusive);
+   }
+
+   private static int endOfRun(List<Constant> sorted, int i) {
+      while (i + 1 < sorted.size() && sorted.get(i + 1).equals(sorted.get(i)))
+         i++;
+      return i;
+   }
+}
@@ -0,0 +1,64 @@
+package simpledb.metadata;
+
+import java.io.File;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.record.*;
+import simpledb.plan.*;
+import simpledb.query.*;
+
+/**
+ * Open a database whose catalog predates the idxfldcat table,
+ * by removing that table from the catalog of a new database,
+ * and then create and use an index with an included field.
+ */
+public class IndexCatalogTest {
+   public static void main(String[] args) throws Exception {
+      File dir = new File("indexcatalogtest");
+      deleteDir(dir);
+      SimpleDB db = new SimpleDB(dir.getName());
+      Transaction tx = db.newTx();
+      Planner planner = db.planner();
+      planner.executeUpdate("create table T(A int, B int, C varchar(9))", tx);
+      for (int i=0; i<300; i++)
+         planner.executeUpdate("insert into T(A,B,C) values(" + (i % 10) + ", " + i + ", 'c" + i + "')", tx);
+
+      // forget the idxfldcat table, as in a database created before it
+      TableMgr tm = new TableMgr(false, tx);
+      for (String cat : new String[] {"tblcat", "fldcat"}) {
+         TableScan ts = new TableScan(tx, cat, tm.getLayout(cat, tx));
+         while (ts.next())
+            if (ts.getString("tblname").equals("idxfldcat"))
+               ts.delete();
+         ts.close();
+      }
+      tx.commit();
+      new File(dir, "idxfldcat.tbl").delete();
+
+      db = new SimpleDB(dir.getName());
+      planner = db.planner();
+      tx = db.newTx();
+      boolean recreated = !tm.getLayout("idxfldcat", tx).schema().fields().isEmpty();
+      planner.executeUpdate("create index TB on T(B) include (C) using btree", tx);
+      String qry = "select B, C from T where B = 53";
+      Plan p = planner.createQueryPlan(qry, tx);
+      Scan s = p.open();
+      int count = 0;
+      boolean ok = recreated;
+      while (s.next()) {
+         count++;
+         ok = ok && s.getInt("b") == 53 && s.getString("c").equals("c53");
+      }
+      s.close();
+      tx.commit();
+      ok = ok && count == 1;
+      System.out.println(ok ? "index catalog ok" : "index catalog FAILED");
+   }
+
+   private static void deleteDir(File f) {
+      if (f.isDirectory())
+         for (File child : f.listFiles())
+            deleteDir(child);
+      f.delete();
+   }
+}
@@ -1,8 +1,12 @@
 package simpledb.metadata;
 
 import static java.sql.Types.INTEGER;
+import java.util.*;
 import simpledb.tx.Transaction;
 import simpledb.record.*;
+import simpledb.query.Constant;
+import simpledb.query.Range;
+import simpledb.query.Scan;
 import simpledb.index.Index;
 import simpledb.index.hash.HashIndex; 
 import simpledb.index.btree.BTreeIndex; //in case we change to btree indexing
@@ -18,6 +22,7 @@ import simpledb.index.btree.BTreeIndex; //in case we change to btree indexing
  */
 public class IndexInfo {
    private String idxname, fldname, idxType;
+   private List<String> keyFlds, includeFlds;
    private Transaction tx;
    private Schema tblSchema;
    private Layout idxLayout;
@@ -33,8 +38,26 @@ public class IndexInfo {
     */
    public IndexInfo(String idxname, String fldname, Schema tblSchema,
                     Transaction tx,  StatInfo si, String idxType) {
+      this(idxname, Arrays.asList(fldname), new ArrayList<>(), tblSchema, tx, si, idxType);
+   }
+   
+   /**
+    * Create an IndexInfo object for the specified index,
+    * whose search key consists of the specified fields
+    * and whose records also hold the values of the included fields.
+    * @param idxname the name of the index
+    * @param keyFlds the names of the indexed fields, in key order
+    * @param includeFlds the names of the included fields
+    * @param tx the calling transaction
+    * @param tblSchema the schema of the table
+    * @param si the statistics for the table
+    */
+   public IndexInfo(String idxname, List<String> keyFlds, List<String> includeFlds,
+                    Schema tblSchema, Transaction tx, StatInfo si, String idxType) {
       this.idxname = idxname;
-      this.fldname = fldname;
+      this.fldname = keyFlds.get(0);
+      this.keyFlds = keyFlds;
+      this.includeFlds = includeFlds;
       this.tx = tx;
       this.tblSchema = tblSchema;
       this.idxLayout = createIdxLayout();
@@ -47,7 +70,7 @@ public class IndexInfo {
     * @return the Index object associated with this information
     */
    public Index open() {
-      if(idxType == "hash"){
+      if(idxType.equals("hash")){
          return new HashIndex(tx, idxname, idxLayout);
       }
       return new BTreeIndex(tx, idxname, idxLayout);
@@ -67,7 +90,7 @@ public class IndexInfo {
    public int blocksAccessed() {
       int rpb = tx.blockSize() / idxLayout.slotSize();
       int numblocks = si.recordsOutput() / rpb;
-      if(idxType == "hash"){
+      if(idxType.equals("hash")){
          return HashIndex.searchCost(numblocks, rpb);
       }
       return BTreeIndex.searchCost(numblocks, rpb);
@@ -84,13 +107,147 @@ public class IndexInfo {
       return si.recordsOutput() / si.distinctValues(fldname);
    }
    
+   /**
+    * Estimate the number of block accesses required to
+    * find all index records whose search key lies in the
+    * specified range: the cost of traversing to the first
+    * such record, plus the leaf blocks spanned by the range.
+    * @param range the range of search keys
+    * @return the number of block accesses required to scan the range
+    */
+   public int rangeBlocksAccessed(Range range) {
+      int rpb = tx.blockSize() / idxLayout.slotSize();
+      int numblocks = si.recordsOutput() / rpb;
+      return blocksAccessed() + (int) Math.ceil(numblocks * rangeFraction(range));
+   }
+   
+   /**
+    * Return the estimated number of records whose search key
+    * lies in the specified range.
+    * @param range the range of search keys
+    * @return the estimated number of records in the range
+    */
+   public int rangeRecordsOutput(Range range) {
+      return (int) Math.ceil(si.recordsOutput() * rangeFraction(range));
+   }
+   
    /** 
     * Return the distinct values for a specified field 
     * in the underlying table, or 1 for the indexed field.
     * @param fname the specified field
     */
    public int distinctValues(String fname) {
-      return fldname.equals(fname) ? 1 : si.distinctValues(fldname);
+      return fldname.equals(fname) ? 1 : si.distinctValues(fname);
+   }
+   
+   /**
+    * Return the names of the indexed fields, in key order.
+    * An index on a single field has a one-element list.
+    * @return the names of the indexed fields
+    */
+   public List<String> keyFields() {
+      return keyFlds;
+   }
+   
+   /**
+    * Return true if the search key consists of more than one field,
+    * in which case the search key values are composite constants.
+    * @return true if the index is a multi-column index
+    */
+   public boolean isComposite() {
+      return keyFlds.size() > 1;
+   }
+   
+   /**
+    * Return the search key of the current record of the
+    * specified scan: the value of the indexed field,
+    * or the composite value of the indexed fields.
+    * @param s a scan of the indexed table
+    * @return the search key of the record
+    */
+   public Constant keyValue(Scan s) {
+      if (!isComposite())
+         return s.getVal(fldname);
+      List<Constant> vals = new ArrayList<>();
+      for (String fname : keyFlds)
+         vals.add(s.getVal(fname));
+      return new Constant(vals);
+   }
+   
+   /**
+    * Return the names of the fields included in the index records.
+    * @return the names of the included fields
+    */
+   public List<String> includeFields() {
+      return includeFlds;
+   }
+   
+   /**
+    * Return true if the index records hold the values of
+    * all of the specified fields, so that a query needing
+    * only those fields can be answered without reading the table.
+    * @param fldnames the names of the fields
+    * @return true if the index covers the fields
+    */
+   public boolean covers(Collection<String> fldnames) {
+      for (String fname : fldnames)
+         if (!dependsOn(fname))
+            return false;
+      return true;
+   }
+   
+   /**
+    * Return true if the index records depend on the
+    * value of the specified field.
+    * @param fname the name of the field
+    * @return true if the field is indexed or included
+    */
+   public boolean dependsOn(String fname) {
+      return keyFlds.contains(fname) || includeFlds.contains(fname);
+   }
+   
+   /**
+    * Return the name of the index record field that holds
+    * the value of the specified table field.
+    * @param fname the name of the indexed or included field
+    * @return the name of the corresponding index record field
+    */
+   public String indexColumn(String fname) {
+      int pos = keyFlds.indexOf(fname);
+      if (pos == 0)
+         return "dataval";
+      else if (pos > 0)
+         return "key" + pos;
+      else
+         return "inc_" + fname;
+   }
+   
+   /**
+    * Return the values of the included fields in the
+    * current record of the specified scan,
+    * keyed by the names of their index record fields.
+    * @param s a scan of the indexed table
+    * @return the values to be stored in the index record
+    */
+   public Map<String,Constant> includedValues(Scan s) {
+      Map<String,Constant> vals = new HashMap<>();
+      for (String fname : includeFlds)
+         vals.put(indexColumn(fname), s.getVal(fname));
+      return vals;
+   }
+   
+   /**
+    * Return the schema of the table fields held in the
+    * index records: the indexed fields and the included fields.
+    * @return the schema of the covered fields
+    */
+   public Schema coveredSchema() {
+      Schema sch = new Schema();
+      for (String fname : keyFlds)
+         sch.add(fname, tblSchema);
+      for (String fname : includeFlds)
+         sch.add(fname, tblSchema);
+      return sch;
    }
    
    /**
@@ -100,6 +257,9 @@ public class IndexInfo {
     * record ID) and the dataval (which is the indexed field).
     * Schema information about the indexed field is obtained
     * via the table's schema.
+    * The remaining fields of a multi-column key and the
+    * included fields are added under the names
+    * given by indexColumn.
     * @return the layout of the index records
     */
    private Layout createIdxLayout() {
@@ -112,8 +272,54 @@ public class IndexInfo {
          int fldlen = tblSchema.length(fldname);
          sch.addStringField("dataval", fldlen);
       }
+      for (String fname : keyFlds.subList(1, keyFlds.size()))
+         sch.addField(indexColumn(fname), tblSchema.type(fname), tblSchema.length(fname));
+      for (String fname : includeFlds)
+         sch.addField(indexColumn(fname), tblSchema.type(fname), tblSchema.length(fname));
       return new Layout(sch);
    }
 
+   /**
+    * Estimate the fraction of records lying in a range,
+    * which the statistics manager estimates from the histogram
+    * of the indexed field, or by the customary guesses if
+    * the table has not been analyzed.
+    * For a multi-column key, each leading column having
+    * the same value in both bounds selects the fraction of
+    * records having that value, and the next column is
+    * treated as a range.
+    */
+   private double rangeFraction(Range range) {
+      if (isComposite())
+         return compositeFraction(range);
+      else
+         return si.rangeFraction(fldname, range);
+   }
+
+   private double compositeFraction(Range range) {
+      List<Constant> low = (range.low() == null) ? new ArrayList<>() : range.low().asList();
+      List<Constant> high = (range.high() == null) ? new ArrayList<>() : range.high().asList();
+      double fraction = 1.0;
+      int pos = 0;
+      while (pos < low.size() && pos < high.size() && low.get(pos).equals(high.get(pos))) {
+         Constant val = low.get(pos);
+         fraction *= si.rangeFraction(keyFlds.get(pos), new Range(val, true, val, true));
+         pos++;
+      }
+      Constant lowval = (pos < low.size()) ? low.get(pos) : null;
+      Constant highval = (pos < high.size()) ? high.get(pos) : null;
+      if (lowval != null || highval != null) {
+         Range trailing = new Range(lowval, range.lowInclusive(), highval, range.highInclusive());
+         fraction *= si.rangeFraction(keyFlds.get(pos), trailing);
+      }
+      return fraction;
+   }
+
+   public String getIndexName() {return idxname;}
+
    public String getFieldName() {return fldname;}
+
+   public Layout getIndexLayout() {return idxLayout;}
+
+   public String getIndexType() {return idxType;}
 }
@@ -12,7 +12,7 @@ import simpledb.record.*;
  * @author Edward Sciore
  */
 class IndexMgr {
-   private Layout layout;
+   private Layout layout, fldLayout;
    private TableMgr tblmgr;
    private StatMgr statmgr;
    
@@ -20,6 +20,10 @@ class IndexMgr {
     * Create the index manager.
     * This constructor is called during system startup.
     * If the database is new, then the <i>idxcat</i> table is created.
+    * The <i>idxfldcat</i> table, which holds the
+    * key fields of each multi-column index and the
+    * fields included in each index record, is created
+    * if the database is new or was created without it.
     * @param isnew indicates whether this is a new database
     * @param tx the system startup transaction
     */
@@ -32,9 +36,19 @@ class IndexMgr {
          sch.addStringField("indexType", MAX_NAME);
          tblmgr.createTable("idxcat", sch, tx);
       }
+      boolean missing = tblmgr.getLayout("idxfldcat", tx).schema().fields().isEmpty();
+      if (isnew || missing) {
+         Schema fldsch = new Schema();
+         fldsch.addStringField("indexname", MAX_NAME);
+         fldsch.addStringField("fieldname", MAX_NAME);
+         fldsch.addIntField("iskey");
+         fldsch.addIntField("position");
+         tblmgr.createTable("idxfldcat", fldsch, tx);
+      }
       this.tblmgr = tblmgr;
       this.statmgr = statmgr;
       layout = tblmgr.getLayout("idxcat", tx);
+      fldLayout = tblmgr.getLayout("idxfldcat", tx);
    }
    
    /**
@@ -47,24 +61,48 @@ class IndexMgr {
     * @param tx the calling transaction
     */
    public void createIndex(String idxname, String tblname, String fldname, String idxType, Transaction tx) {
+      createIndex(idxname, tblname, Arrays.asList(fldname), new ArrayList<>(), idxType, tx);
+   }
+   
+   /**
+    * Create an index of the specified type whose search key
+    * consists of the specified fields, and whose records also
+    * hold the values of the included fields.
+    * The idxcat table holds the first key field;
+    * the key fields of a multi-column index and the
+    * included fields are stored in the idxfldcat table.
+    * @param idxname the name of the index
+    * @param tblname the name of the indexed table
+    * @param keyFlds the names of the indexed fields, in key order
+    * @param includeFlds the names of the included fields
+    * @param tx the calling transaction
+    */
+   public void createIndex(String idxname, String tblname, List<String> keyFlds,
+                           List<String> includeFlds, String idxType, Transaction tx) {
       TableScan ts = new TableScan(tx, "idxcat", layout);
       ts.insert();
       ts.setString("indexname", idxname);
       ts.setString("tablename", tblname);
-      ts.setString("fieldname", fldname);
+      ts.setString("fieldname", keyFlds.get(0));
       ts.setString("indexType", idxType);
       ts.close();
+
+      TableScan fs = new TableScan(tx, "idxfldcat", fldLayout);
+      if (keyFlds.size() > 1)
+         insertFields(fs, idxname, keyFlds, 1);
+      insertFields(fs, idxname, includeFlds, 0);
+      fs.close();
    }
    
    /**
-    * Return a map containing the index info for all indexes
-    * on the specified table.
+    * Return the index info for all indexes
+    * on the specified table, in the order of their creation.
     * @param tblname the name of the table
     * @param tx the calling transaction
-    * @return a map of IndexInfo objects, keyed by their field names
+    * @return a list of IndexInfo objects
     */
-   public Map<String,IndexInfo> getIndexInfo(String tblname, Transaction tx) {
-      Map<String,IndexInfo> result = new HashMap<String,IndexInfo>();
+   public List<IndexInfo> getIndexes(String tblname, Transaction tx) {
+      List<IndexInfo> result = new ArrayList<>();
       TableScan ts = new TableScan(tx, "idxcat", layout);
       while (ts.next())
          if (ts.getString("tablename").equals(tblname)) {
@@ -73,10 +111,58 @@ class IndexMgr {
          String idxType = ts.getString("indexType");
          Layout tblLayout = tblmgr.getLayout(tblname, tx);
          StatInfo tblsi = statmgr.getStatInfo(tblname, tblLayout, tx);
-         IndexInfo ii = new IndexInfo(idxname, fldname, tblLayout.schema(), tx, tblsi, idxType);
-         result.put(fldname, ii);
+         List<String> keyFlds = getFields(idxname, 1, tx);
+         if (keyFlds.isEmpty())
+            keyFlds.add(fldname);
+         List<String> includeFlds = getFields(idxname, 0, tx);
+         result.add(new IndexInfo(idxname, keyFlds, includeFlds, tblLayout.schema(), tx, tblsi, idxType));
       }
       ts.close();
       return result;
    }
+   
+   /**
+    * Return a map containing the index info for the indexes
+    * on the specified table, keyed by their first key fields.
+    * If several indexes have the same first key field, the map
+    * holds the one on that field alone without included fields,
+    * if any, and otherwise the first one created;
+    * the method getIndexes returns all of them.
+    * @param tblname the name of the table
+    * @param tx the calling transaction
+    * @return a map of IndexInfo objects, keyed by their field names
+    */
+   public Map<String,IndexInfo> getIndexInfo(String tblname, Transaction tx) {
+      Map<String,IndexInfo> result = new HashMap<String,IndexInfo>();
+      for (IndexInfo ii : getIndexes(tblname, tx)) {
+         IndexInfo prev = result.get(ii.getFieldName());
+         if (prev == null || (!isPlain(prev) && isPlain(ii)))
+            result.put(ii.getFieldName(), ii);
+      }
+      return result;
+   }
+   
+   private static boolean isPlain(IndexInfo ii) {
+      return !ii.isComposite() && ii.includeFields().isEmpty();
+   }
+   
+   private void insertFields(TableScan fs, String idxname, List<String> flds, int iskey) {
+      for (int i=0; i<flds.size(); i++) {
+         fs.insert();
+         fs.setString("indexname", idxname);
+         fs.setString("fieldname", flds.get(i));
+         fs.setInt("iskey", iskey);
+         fs.setInt("position", i);
+      }
+   }
+   
+   private List<String> getFields(String idxname, int iskey, Transaction tx) {
+      Map<Integer,String> flds = new TreeMap<>();
+      TableScan fs = new TableScan(tx, "idxfldcat", fldLayout);
+      while (fs.next())
+         if (fs.getString("indexname").equals(idxname) && fs.getInt("iskey") == iskey)
+            flds.put(fs.getInt("position"), fs.getString("fieldname"));
+      fs.close();
+      return new ArrayList<>(flds.values());
+   }
 }
@@ -1,6 +1,6 @@
 package simpledb.metadata;
 
-import java.util.Map;
+import java.util.*;
 import simpledb.tx.Transaction;
 import simpledb.record.*;
 
@@ -13,7 +13,7 @@ public class MetadataMgr {
    public MetadataMgr(boolean isnew, Transaction tx) {
       tblmgr  = new TableMgr(isnew, tx);
       viewmgr = new ViewMgr(isnew, tblmgr, tx);
-      statmgr = new StatMgr(tblmgr, tx);
+      statmgr = new StatMgr(isnew, tblmgr, tx);
       idxmgr  = new IndexMgr(isnew, tblmgr, statmgr, tx);
    }
    
@@ -37,11 +37,24 @@ public class MetadataMgr {
       idxmgr.createIndex(idxname, tblname, fldname, idxType, tx);
    }
    
+   public void createIndex(String idxname, String tblname, List<String> keyFlds,
+                           List<String> includeFlds, String idxType, Transaction tx) {
+      idxmgr.createIndex(idxname, tblname, keyFlds, includeFlds, idxType, tx);
+   }
+   
    public Map<String,IndexInfo> getIndexInfo(String tblname, Transaction tx) {
       return idxmgr.getIndexInfo(tblname, tx);
    }
    
+   public List<IndexInfo> getIndexes(String tblname, Transaction tx) {
+      return idxmgr.getIndexes(tblname, tx);
+   }
+   
    public StatInfo getStatInfo(String tblname, Layout layout, Transaction tx) {
       return statmgr.getStatInfo(tblname, layout, tx);
    }
+   
+   public int analyze(String tblname, Transaction tx) {
+      return statmgr.analyze(tblname, tx);
+   }
 }
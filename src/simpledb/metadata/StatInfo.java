@@ -1,15 +1,22 @@
 package simpledb.metadata;
 
+import java.util.*;
+import simpledb.query.Range;
+
 /**
  * A StatInfo object holds three pieces of 
  * statistical information about a table:
  * the number of blocks, the number of records,
  * and the number of distinct values for each field. 
+ * If the table has been analyzed, the object also holds
+ * the statistics of each field, including a histogram
+ * of its values.
  * @author Edward Sciore
  */
 public class StatInfo {
    private int numBlocks;
    private int numRecs;
+   private Map<String,ColumnStats> colstats;
    
    /**
     * Create a StatInfo object.
@@ -20,8 +27,19 @@ public class StatInfo {
     * @param numrecs the number of records in the table
     */
    public StatInfo(int numblocks, int numrecs) {
+      this(numblocks, numrecs, new HashMap<String,ColumnStats>());
+   }
+   
+   /**
+    * Create a StatInfo object for an analyzed table.
+    * @param numblocks the number of blocks in the table
+    * @param numrecs the number of records in the table
+    * @param colstats the statistics of the analyzed fields
+    */
+   public StatInfo(int numblocks, int numrecs, Map<String,ColumnStats> colstats) {
       this.numBlocks = numblocks;
       this.numRecs   = numrecs;
+      this.colstats  = colstats;
    }
    
    /**
@@ -43,12 +61,42 @@ public class StatInfo {
    /**
     * Return the estimated number of distinct values
     * for the specified field.
-    * This estimate is a complete guess, because doing something
-    * reasonable is beyond the scope of this system.
+    * The estimate of an analyzed field comes from its statistics,
+    * but is not more than the number of records.
+    * Otherwise the estimate is a complete guess.
     * @param fldname the name of the field
     * @return a guess as to the number of distinct field values
     */
    public int distinctValues(String fldname) {
-      return 1 + (numRecs / 3);
+      ColumnStats cs = colstats.get(fldname);
+      if (cs == null)
+         return 1 + (numRecs / 3);
+      return Math.max(1, Math.min(numRecs, cs.distinctValues()));
+   }
+   
+   /**
+    * Return the estimated fraction of records whose value of
+    * the specified field lies in the range.
+    * The estimate of an analyzed field comes from its histogram;
+    * otherwise the customary guesses are used.
+    * @param fldname the name of the field
+    * @param range the range of values
+    * @return the estimated fraction of records in the range
+    */
+   public double rangeFraction(String fldname, Range range) {
+      ColumnStats cs = colstats.get(fldname);
+      if (cs == null)
+         return range.guessFraction(distinctValues(fldname));
+      return cs.rangeFraction(range);
+   }
+   
+   /**
+    * Return the statistics of the specified field,
+    * or null if the field has not been analyzed.
+    * @param fldname the name of the field
+    * @return the statistics of the field
+    */
+   public ColumnStats columnStats(String fldname) {
+      return colstats.get(fldname);
    }
 }
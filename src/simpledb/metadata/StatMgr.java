@@ -1,33 +1,73 @@
 package simpledb.metadata;
 
+import static java.sql.Types.INTEGER;
+import static simpledb.metadata.TableMgr.MAX_NAME;
 import java.util.*;
 import simpledb.tx.Transaction;
+import simpledb.query.Constant;
 import simpledb.record.*;
 
 /**
  * The statistics manager is responsible for
  * keeping statistical information about each table.
- * The manager does not store this information in the database.
+ * The manager does not store the sizes of the tables in
+ * the database.
  * Instead, it calculates this information on system startup,
  * and periodically refreshes it.
+ * The statistics of the fields of an analyzed table are
+ * stored in the <i>colstat</i> table, together with the
+ * <i>histcat</i> table, which holds the buckets of
+ * their histograms.
  * @author Edward Sciore
  */
 class StatMgr {
+   // The max characters of a value stored in the catalog.
+   public static final int MAX_VALUE = 32;
    private TableMgr tblMgr;
+   private Layout statLayout, histLayout;
    private Map<String,StatInfo> tablestats;
+   private Map<String,Map<String,ColumnStats>> colstats;
    private int numcalls;
-   
+
    /**
     * Create the statistics manager.
+    * If the database is new, or was created before the
+    * statistics were kept in the catalog, the <i>colstat</i>
+    * and <i>histcat</i> tables are created.
     * The initial statistics are calculated by
     * traversing the entire database.
+    * @param isnew indicates whether this is a new database
     * @param tx the startup transaction
     */
-   public StatMgr(TableMgr tblMgr, Transaction tx) {
+   public StatMgr(boolean isnew, TableMgr tblMgr, Transaction tx) {
+      boolean missing = tblMgr.getLayout("colstat", tx).schema().fields().isEmpty();
+      if (isnew || missing) {
+         Schema sch = new Schema();
+         sch.addStringField("tblname", MAX_NAME);
+         sch.addStringField("fldname", MAX_NAME);
+         sch.addIntField("sampled");
+         sch.addIntField("nulls");
+         sch.addIntField("ndv");
+         sch.addStringField("minval", MAX_VALUE);
+         sch.addStringField("maxval", MAX_VALUE);
+         sch.addIntField("buckets");
+         tblMgr.createTable("colstat", sch, tx);
+
+         Schema histsch = new Schema();
+         histsch.addStringField("tblname", MAX_NAME);
+         histsch.addStringField("fldname", MAX_NAME);
+         histsch.addIntField("bucket");
+         histsch.addStringField("hival", MAX_VALUE);
+         histsch.addIntField("numrecs");
+         histsch.addIntField("ndv");
+         tblMgr.createTable("histcat", histsch, tx);
+      }
       this.tblMgr = tblMgr;
+      statLayout = tblMgr.getLayout("colstat", tx);
+      histLayout = tblMgr.getLayout("histcat", tx);
       refreshStatistics(tx);
    }
-   
+
    /**
     * Return the statistical information about the specified table.
     * @param tblname the name of the table
@@ -35,7 +75,7 @@ class StatMgr {
     * @param tx the calling transaction
     * @return the statistical information about the table
     */
-   public synchronized StatInfo getStatInfo(String tblname, 
+   public synchronized StatInfo getStatInfo(String tblname,
                               Layout layout, Transaction tx) {
       numcalls++;
       if (numcalls > 100)
@@ -47,9 +87,124 @@ class StatMgr {
       }
       return si;
    }
-   
+
+   /**
+    * Compute the statistics of each field of the specified table,
+    * or of every table if the name is null, and save them in
+    * the catalog, replacing the previous ones.
+    * A table having more than ColumnStats.SAMPLE_BLOCKS blocks
+    * is sampled, by reading that many of its blocks
+    * chosen at random.
+    * @param tblname the name of the table, or null
+    * @param tx the calling transaction
+    * @return the number of records examined
+    */
+   public synchronized int analyze(String tblname, Transaction tx) {
+      List<String> tblnames = new ArrayList<>();
+      if (tblname != null)
+         tblnames.add(tblname);
+      else {
+         Layout tcatlayout = tblMgr.getLayout("tblcat", tx);
+         TableScan tcat = new TableScan(tx, "tblcat", tcatlayout);
+         while (tcat.next())
+            tblnames.add(tcat.getString("tblname"));
+         tcat.close();
+      }
+      int count = 0;
+      for (String name : tblnames)
+         count += analyzeTable(name, tblMgr.getLayout(name, tx), tx);
+      return count;
+   }
+
+   private int analyzeTable(String tblname, Layout layout, Transaction tx) {
+      List<String> fields = layout.schema().fields();
+      Map<String,List<Constant>> vals = new HashMap<>();
+      for (String fldname : fields)
+         vals.put(fldname, new ArrayList<>());
+      int numblocks = tx.size(tblname + ".tbl");
+      List<Integer> blocks = sampleBlocks(numblocks);
+      int count = 0;
+      if (!blocks.isEmpty()) {
+         TableScan ts = new TableScan(tx, tblname, layout);
+         for (int blknum : blocks) {
+            ts.moveToRid(new RID(blknum, -1));
+            while (ts.next() && ts.getRid().blockNumber() == blknum) {
+               count++;
+               for (String fldname : fields)
+                  vals.get(fldname).add(ts.getVal(fldname));
+            }
+         }
+         ts.close();
+      }
+      double scale = (double) numblocks / Math.max(1, blocks.size());
+      Map<String,ColumnStats> stats = new HashMap<>();
+      for (String fldname : fields)
+         stats.put(fldname, ColumnStats.analyze(vals.get(fldname), scale));
+      saveColumnStats(tblname, layout.schema(), stats, tx);
+      colstats.put(tblname, stats);
+      tablestats.put(tblname, calcTableStats(tblname, layout, tx));
+      return count;
+   }
+
+   /**
+    * Return the numbers of the blocks to be read, in order:
+    * all of them, or a random selection of SAMPLE_BLOCKS
+    * blocks if the table is larger.
+    */
+   private List<Integer> sampleBlocks(int numblocks) {
+      List<Integer> blocks = new ArrayList<>();
+      int needed = Math.min(numblocks, ColumnStats.SAMPLE_BLOCKS);
+      Random rand = new Random();
+      for (int blknum=0; blknum<numblocks && needed > 0; blknum++)
+         if (rand.nextInt(numblocks - blknum) < needed) {
+            blocks.add(blknum);
+            needed--;
+         }
+      return blocks;
+   }
+
+   private void saveColumnStats(String tblname, Schema sch,
+                                Map<String,ColumnStats> stats, Transaction tx) {
+      deleteStats("colstat", statLayout, tblname, tx);
+      deleteStats("histcat", histLayout, tblname, tx);
+      TableScan scat = new TableScan(tx, "colstat", statLayout);
+      TableScan hcat = new TableScan(tx, "histcat", histLayout);
+      for (String fldname : stats.keySet()) {
+         ColumnStats cs = stats.get(fldname);
+         scat.insert();
+         scat.setString("tblname", tblname);
+         scat.setString("fldname", fldname);
+         scat.setInt   ("sampled", cs.sampled());
+         scat.setInt   ("nulls",   cs.nulls());
+         scat.setInt   ("ndv",     cs.distinctValues());
+         scat.setVal   ("minval",  toText(cs.min()));
+         scat.setVal   ("maxval",  toText(cs.max()));
+         scat.setInt   ("buckets", cs.numBuckets());
+         for (int b=0; b<cs.numBuckets(); b++) {
+            hcat.insert();
+            hcat.setString("tblname", tblname);
+            hcat.setString("fldname", fldname);
+            hcat.setInt   ("bucket",  b);
+            hcat.setVal   ("hival",   toText(cs.bucketHigh(b)));
+            hcat.setInt   ("numrecs", cs.bucketCount(b));
+            hcat.setInt   ("ndv",     cs.bucketDistinct(b));
+         }
+      }
+      scat.close();
+      hcat.close();
+   }
+
+   private void deleteStats(String catname, Layout catlayout, String tblname, Transaction tx) {
+      TableScan ts = new TableScan(tx, catname, catlayout);
+      while (ts.next())
+         if (ts.getString("tblname").equals(tblname))
+            ts.delete();
+      ts.close();
+   }
+
    private synchronized void refreshStatistics(Transaction tx) {
       tablestats = new HashMap<String,StatInfo>();
+      colstats = loadColumnStats(tx);
       numcalls = 0;
       Layout tcatlayout = tblMgr.getLayout("tblcat", tx);
       TableScan tcat = new TableScan(tx, "tblcat", tcatlayout);
@@ -61,8 +216,75 @@ class StatMgr {
       }
       tcat.close();
    }
-   
-   private synchronized StatInfo calcTableStats(String tblname, 
+
+   /**
+    * Read the statistics of the analyzed fields from the catalog,
+    * converting the stored values back to the types of their fields.
+    */
+   private Map<String,Map<String,ColumnStats>> loadColumnStats(Transaction tx) {
+      Map<String,Map<String,ColumnStats>> result = new HashMap<>();
+      Map<String,Schema> schemas = new HashMap<>();
+      TableScan scat = new TableScan(tx, "colstat", statLayout);
+      while (scat.next()) {
+         String tblname = scat.getString("tblname");
+         String fldname = scat.getString("fldname");
+         Schema sch = schemas.computeIfAbsent(tblname, t -> tblMgr.getLayout(t, tx).schema());
+         if (!sch.hasField(fldname))
+            continue;
+         int type = sch.type(fldname);
+         ColumnStats cs = new ColumnStats(scat.getInt("sampled"), scat.getInt("nulls"),
+                                          scat.getInt("ndv"),
+                                          fromText(scat.getVal("minval"), type, false),
+                                          fromText(scat.getVal("maxval"), type, true),
+                                          scat.getInt("buckets"));
+         result.computeIfAbsent(tblname, t -> new HashMap<>()).put(fldname, cs);
+      }
+      scat.close();
+      TableScan hcat = new TableScan(tx, "histcat", histLayout);
+      while (hcat.next()) {
+         String tblname = hcat.getString("tblname");
+         ColumnStats cs = result.getOrDefault(tblname, Collections.emptyMap())
+                                .get(hcat.getString("fldname"));
+         if (cs == null || hcat.getInt("bucket") >= cs.numBuckets())
+            continue;
+         int type = schemas.get(tblname).type(hcat.getString("fldname"));
+         cs.setBucket(hcat.getInt("bucket"), fromText(hcat.getVal("hival"), type, true),
+                      hcat.getInt("numrecs"), hcat.getInt("ndv"));
+      }
+      hcat.close();
+      return result;
+   }
+
+   /**
+    * Return the catalog representation of a value:
+    * its text, cut to MAX_VALUE characters.
+    * A string cut short is less than the value it stands for.
+    */
+   private static Constant toText(Constant val) {
+      if (val == null || val.isNull())
+         return Constant.NULL;
+      String s = (val.asString() != null) ? val.asString() : Integer.toString(val.asInt());
+      return new Constant(s.length() > MAX_VALUE ? s.substring(0, MAX_VALUE) : s);
+   }
+
+   /**
+    * Return the value represented in the catalog by the text.
+    * A string of MAX_VALUE characters may have been cut short,
+    * so as an upper bound, such as the largest value of a bucket,
+    * it stands for every string having it as a prefix;
+    * as a lower bound, the prefix itself is small enough.
+    */
+   private static Constant fromText(Constant text, int type, boolean upper) {
+      if (text.isNull())
+         return null;
+      if (type == INTEGER)
+         return new Constant(Integer.parseInt(text.asString()));
+      if (upper && text.asString().length() >= MAX_VALUE)
+         return new Constant(text.asString() + Character.MAX_VALUE);
+      return text;
+   }
+
+   private synchronized StatInfo calcTableStats(String tblname,
                               Layout layout, Transaction tx) {
       int numRecs = 0;
       int numblocks = 0;
@@ -72,6 +294,9 @@ class StatMgr {
          numblocks = ts.getRid().blockNumber() + 1;
       }
       ts.close();
-      return new StatInfo(numblocks, numRecs);
+      Map<String,ColumnStats> stats = colstats.get(tblname);
+      if (stats == null)
+         return new StatInfo(numblocks, numRecs);
+      return new StatInfo(numblocks, numRecs, stats);
    }
 }
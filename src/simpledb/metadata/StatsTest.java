@@ -0,0 +1,86 @@
+package simpledb.metadata;
+
+import java.io.File;
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.record.*;
+import simpledb.plan.*;
+import simpledb.query.*;
+
+/**
+ * Analyze a table with a skewed field in a database whose
+ * catalog predates the statistics tables, by removing them
+ * from the catalog of a new database.
+ * The estimates for the table must then follow the data,
+ * and must be the same after the database is opened again.
+ */
+public class StatsTest {
+   public static void main(String[] args) {
+      File dir = new File("statstest");
+      deleteDir(dir);
+      SimpleDB db = new SimpleDB(dir.getName());
+      Transaction tx = db.newTx();
+      Planner planner = db.planner();
+      planner.executeUpdate("create table T(A int, B varchar(9))", tx);
+      Random r = new Random(50);
+      int n = 3000, low = 0;
+      Set<Integer> distinct = new HashSet<>();
+      for (int i=0; i<n; i++) {
+         int a = (i % 10 < 7) ? r.nextInt(10) : 10 + r.nextInt(990);
+         if (a < 10)
+            low++;
+         distinct.add(a);
+         planner.executeUpdate("insert into T(A,B) values(" + a + ", 'b" + (i % 100) + "')", tx);
+      }
+
+      // forget the statistics tables, as in a database created before them
+      TableMgr tm = new TableMgr(false, tx);
+      for (String cat : new String[] {"tblcat", "fldcat"}) {
+         TableScan ts = new TableScan(tx, cat, tm.getLayout(cat, tx));
+         while (ts.next())
+            if (ts.getString("tblname").equals("colstat") || ts.getString("tblname").equals("histcat"))
+               ts.delete();
+         ts.close();
+      }
+      tx.commit();
+      new File(dir, "colstat.tbl").delete();
+      new File(dir, "histcat.tbl").delete();
+
+      db = new SimpleDB(dir.getName());
+      tx = db.newTx();
+      db.planner().executeUpdate("analyze t", tx);
+      double fraction = (double) low / n;
+      double[] analyzed = estimates(db, tx);
+      tx.commit();
+      boolean ok = Math.abs(analyzed[0] - distinct.size()) < 0.1 * distinct.size() && analyzed[1] == 100
+            && Math.abs(analyzed[2] - fraction) < 0.05;
+      if (!ok)
+         System.out.println("estimated " + analyzed[0] + " and " + analyzed[1] + " distinct values and "
+               + analyzed[2] + " of the records below 10 instead of about "
+               + distinct.size() + ", 100 and " + fraction);
+
+      db = new SimpleDB(dir.getName());
+      tx = db.newTx();
+      double[] reopened = estimates(db, tx);
+      tx.commit();
+      if (!Arrays.equals(analyzed, reopened)) {
+         System.out.println("estimates changed after reopening to " + Arrays.toString(reopened));
+         ok = false;
+      }
+      System.out.println(ok ? "statistics ok" : "statistics FAILED");
+   }
+
+   private static double[] estimates(SimpleDB db, Transaction tx) {
+      Plan p = new TablePlan(tx, "t", db.mdMgr());
+      Range below10 = new Range(null, false, new Constant(10), false);
+      return new double[] {p.distinctValues("a"), p.distinctValues("b"), p.rangeFraction("a", below10)};
+   }
+
+   private static void deleteDir(File f) {
+      if (f.isDirectory())
+         for (File child : f.listFiles())
+            deleteDir(child);
+      f.delete();
+   }
+}
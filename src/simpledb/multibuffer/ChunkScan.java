@@ -93,6 +93,8 @@ public class ChunkScan implements Scan {
     * @see simpledb.query.Scan#getVal(java.lang.String)
     */
    public Constant getVal(String fldname) {
+      if (rp.isNull(currentslot, fldname))
+         return Constant.NULL;
       if (layout.schema().type(fldname) == INTEGER)
          return new Constant(getInt(fldname));
       else
@@ -13,7 +13,8 @@ import simpledb.plan.Plan;
  */
 public class MultibufferProductPlan implements Plan {
    private Transaction tx;
-   private Plan lhs, rhs;
+   private MaterializePlan lhs;
+   private Plan rhs;
    private Schema schema = new Schema();
 
    /**
@@ -51,7 +52,8 @@ public class MultibufferProductPlan implements Plan {
     * Returns an estimate of the number of block accesses
     * required to execute the query. The formula is:
     * <pre> B(product(p1,p2)) = B(p2) + B(p1)*C(p2) </pre>
-    * where C(p2) is the number of chunks of p2.
+    * where C(p2) is the number of chunks of p2,
+    * plus the one-time cost of materializing both inputs.
     * The method uses the current number of available buffers
     * to calculate C(p2), and so this value may differ
     * when the query scan is opened.
@@ -61,9 +63,11 @@ public class MultibufferProductPlan implements Plan {
       // this guesses at the # of chunks
       int avail = tx.availableBuffs();
       int size = new MaterializePlan(tx, rhs).blocksAccessed();
-      int numchunks = (int) Math.ceil( (double) size / (double) avail);
-      return rhs.blocksAccessed() * 100 *
-            (lhs.blocksAccessed() * numchunks);
+      int chunksize = Math.max(1, BufferNeeds.bestFactor(avail, size));
+      int numchunks = (int) Math.ceil( (double) size / (double) chunksize);
+      double total = rhs.blocksAccessed() + 2.0 * size
+            + lhs.preprocessingCost() + (double) lhs.blocksAccessed() * numchunks;
+      return (int) Math.min(Integer.MAX_VALUE, total);
    }
 
    /**
@@ -73,7 +77,7 @@ public class MultibufferProductPlan implements Plan {
     * @see simpledb.plan.Plan#recordsOutput()
     */
    public int recordsOutput() {
-      return lhs.recordsOutput() * rhs.recordsOutput();
+      return (int) Math.min(Integer.MAX_VALUE, (double) lhs.recordsOutput() * rhs.recordsOutput());
    }
 
    /**
@@ -89,6 +93,19 @@ public class MultibufferProductPlan implements Plan {
          return rhs.distinctValues(fldname);
    }
 
+   /**
+    * Estimate the fraction of the join records whose value
+    * of the field lies in the range, which is the same
+    * as in the appropriate underlying query.
+    * @see simpledb.plan.Plan#rangeFraction(java.lang.String, simpledb.query.Range)
+    */
+   public double rangeFraction(String fldname, Range range) {
+      if (lhs.schema().hasField(fldname))
+         return lhs.rangeFraction(fldname, range);
+      else
+         return rhs.rangeFraction(fldname, range);
+   }
+
    /**
     * Returns the schema of the product,
     * which is the union of the schemas of the underlying queries.
@@ -97,6 +114,17 @@ public class MultibufferProductPlan implements Plan {
    public Schema schema() {
       return schema;
    }
+   
+   /**
+    * Return the order of the records of the query.
+    * The LHS is reread for each chunk of the RHS,
+    * so the records are in no particular order.
+    * @see simpledb.plan.Plan#ordering()
+    */
+   public Sort ordering() {
+      return new Sort();
+   }
+
 
    private TempTable copyRecordsFrom(Plan p) {
       Scan   src = p.open(); 
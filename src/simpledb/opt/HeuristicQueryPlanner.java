@@ -8,26 +8,52 @@ import simpledb.record.Schema;
 import simpledb.tx.Transaction;
 import simpledb.materialize.*;
 import simpledb.metadata.MetadataMgr;
+import simpledb.parse.JoinData;
 import simpledb.parse.QueryData;
+import simpledb.query.Predicate;
 import simpledb.plan.*;
 
 import javax.swing.*;
 
 /**
  * A query planner that optimizes using a heuristic-based algorithm.
+ * The tables of a query are joined in the cheapest left-deep
+ * order found by dynamic programming, unless there are too
+ * many of them, in which case the order is chosen greedily.
  * @author Edward Sciore
  */
 public class HeuristicQueryPlanner implements QueryPlanner {
+   /**
+    * The default largest number of tables whose join order
+    * is found by dynamic programming, which considers every
+    * subset of the tables.
+    */
+   public static final int DP_TABLE_LIMIT = 8;
    private Collection<TablePlanner> tableplanners = new ArrayList<>();
    private MetadataMgr mdm;
+   private int dplimit;
    
    public HeuristicQueryPlanner(MetadataMgr mdm) {
+      this(mdm, DP_TABLE_LIMIT);
+   }
+   
+   /**
+    * Create a planner that finds the join order of
+    * at most the specified number of tables
+    * by dynamic programming.
+    * @param mdm the metadata manager
+    * @param dplimit the largest number of tables joined in the cheapest order
+    */
+   public HeuristicQueryPlanner(MetadataMgr mdm, int dplimit) {
       this.mdm = mdm;
+      this.dplimit = dplimit;
    }
    
    /**
-    * Creates an optimized left-deep query plan using the following
-    * heuristics.
+    * Creates an optimized left-deep query plan.
+    * If the query mentions at most dplimit tables, the join
+    * order is the cheapest by blocks accessed (see getCheapestJoinOrder);
+    * otherwise it is chosen using the following heuristics.
     * H1. Choose the smallest table (considering selection predicates)
     * to be first in the join order.
     * H2. Add the table to the join order which
@@ -37,59 +63,264 @@ public class HeuristicQueryPlanner implements QueryPlanner {
 
       
       // Step 1:  Create a TablePlanner object for each mentioned table
+      Set<String> neededflds = neededFields(data);
       for (String tblname : data.tables()) {
-         TablePlanner tp = new TablePlanner(tblname, data.pred(), tx, mdm);
+         TablePlanner tp = new TablePlanner(tblname, data.pred(), neededflds, tx, mdm);
          tableplanners.add(tp);
       }
       
-      // Step 2:  Choose the lowest-size plan to begin the join order
-      Plan currentplan = getLowestSelectPlan();
+      Plan currentplan;
+      if (tableplanners.size() <= dplimit)
+         currentplan = getCheapestJoinOrder();
+      else {
+         // Step 2:  Choose the lowest-size plan to begin the join order
+         currentplan = getLowestSelectPlan();
 
-      
-      // Step 3:  Repeatedly add a plan to the join order
-      while (!tableplanners.isEmpty()) {
-         Plan p = getLowestJoinPlan(currentplan);
-         if (p != null)
-            currentplan = p;
-         else  // no applicable join
-            currentplan = getLowestProductPlan(currentplan);
+         // Step 3:  Repeatedly add a plan to the join order
+         while (!tableplanners.isEmpty()) {
+            Plan p = getLowestJoinPlan(currentplan);
+            if (p != null)
+               currentplan = p;
+            else  // no applicable join
+               currentplan = getLowestProductPlan(currentplan);
+         }
+      }
+
+      // Step 3a:  Join the tables of the join clauses in order.
+      // The where-clause terms that mention their fields
+      // are applied to the result of the joins
+      if (!data.joins().isEmpty()) {
+         Predicate postpred = data.pred().outsideSubPred(currentplan.schema());
+         for (JoinData join : data.joins()) {
+            TablePlanner tp = new TablePlanner(join.tableName(), join.pred(), neededflds, tx, mdm);
+            if (join.joinType().equals("inner")) {
+               Plan p = tp.makeJoinPlan(currentplan);
+               currentplan = (p != null) ? p : tp.makeProductPlan(currentplan);
+            }
+            else
+               currentplan = tp.makeOuterJoinPlan(currentplan, join.joinType());
+         }
+         if (postpred != null)
+            currentplan = new SelectPlan(currentplan, postpred);
       }
 
-      // Optional step: Do Group By (if not empty)
-      if (!data.groupByFields().isEmpty()) {
+      // Optional step: Do Group By (if not empty).
+      // Group records that are already in order as they are read;
+      // otherwise aggregate in a hash table if the groups are expected
+      // to fit in memory, or else sort the table before grouping
+      if (!data.groupByFields().isEmpty() || data.aggFnsFields().size() > 0) {
          List<Expression> exprs = new ArrayList<>();
          List<String> sortTypes = new ArrayList<>();
          for (String field : data.groupByFields()) {
             exprs.add(new Expression(field));
             sortTypes.add("asc");
          }
-         // Sort the table before performing group by
+         // If the distinct aggregates are all on one field, sort on it
+         // within each group, so that they need not keep their values
+         String distinctfld = distinctAggField(data.aggFnsFields());
+         if (distinctfld != null && !data.groupByFields().contains(distinctfld)) {
+            exprs.add(new Expression(distinctfld));
+            sortTypes.add("asc");
+         }
          Sort s = new Sort(exprs, sortTypes);
-
-         currentplan = new GroupByPlan(tx, currentplan, data.groupByFields(), data.aggFnsFields(), s);
-
+         HashGroupByPlan hashplan = new HashGroupByPlan(tx, currentplan, data.groupByFields(), data.aggFnsFields());
+         if (!currentplan.ordering().satisfies(s) && hashplan.hasPartialState() && hashplan.fitsInMemory())
+            currentplan = hashplan;
+         else {
+            for (AggregationFn fn : data.aggFnsFields())
+               if (fn instanceof DistinctAggFn)
+                  ((DistinctAggFn) fn).setSorted(distinctfld != null);
+            currentplan = new GroupByPlan(tx, currentplan, data.groupByFields(), data.aggFnsFields(), s);
+         }
       }
 
-      if (data.groupByFields().isEmpty() && data.aggFnsFields().size() > 0) { // aggFn without groupBy clause
-         Sort s = new Sort(new ArrayList<>(), new ArrayList<>());
-         currentplan = new GroupByPlan(tx, currentplan, data.groupByFields(), data.aggFnsFields(), s);
+      // A distinct query sorted on the selected fields
+      // can remove duplicates by comparing adjacent records
+      Sort distinctsort = data.isDistinct() ? distinctSort(data.sort(), data.fields(), currentplan.schema()) : null;
+
+      // A distinct query sorted on an unselected field removes the
+      // duplicates first, from records sorted on the selected fields
+      // and then the order by fields, keeping those of the first record
+      // of each tuple; the distinct records are then sorted
+      boolean distinctfirst = data.isDistinct() && data.sort().isSortOrder() && distinctsort == null;
+      if (distinctfirst) {
+         Sort grouped = groupedSort(data.sort(), data.fields(), currentplan.schema());
+         if (!currentplan.ordering().satisfies(grouped))
+            currentplan = new SortPlan(tx, currentplan, grouped);
+         List<String> carried = new ArrayList<>();
+         for (Expression e : data.sort().getFlds())
+            if (e.isFieldName())
+               carried.add(e.asFieldName());
+         currentplan = new DistinctPlan(tx, currentplan, data.fields(), carried);
       }
 
       if(data.sort().isSortOrder()){
-         // Step 4.  Sort the table if there is an order by clause
-         currentplan = new SortPlan(tx, currentplan, data.sort());
+         // Step 4.  Sort the table if there is an order by clause,
+         // unless its records are already in that order;
+         // when only the first records are wanted, keep just those
+         Sort needed = (distinctsort != null) ? distinctsort : data.sort();
+         if (!currentplan.ordering().satisfies(needed)) {
+            if (data.hasLimit() && (!data.isDistinct() || distinctfirst)) {
+               int n = (int) Math.min(Integer.MAX_VALUE, (long) data.offset() + data.limit());
+               currentplan = new TopNPlan(tx, currentplan, data.sort(), n);
+            }
+            else
+               currentplan = new SortPlan(tx, currentplan, needed);
+         }
       }
 
-      if(data.isDistinct()){
-         currentplan = new DistinctPlan(tx, currentplan, data.fields());
+      if(data.isDistinct() && !distinctfirst){
+         currentplan = new DistinctPlan(tx, currentplan, data.fields(), distinctsort != null);
       }
 
+      // Stop reading the pipelined input once the limit is reached
+      if (data.hasLimit())
+         currentplan = new LimitPlan(currentplan, data.limit(), data.offset());
+
       // Step 5.  Project on the field names and return
       currentplan = new ProjectPlan(currentplan, data.fields());
       System.out.println(currentplan.toString());
       return currentplan;
    }
 
+   /**
+    * Return the names of the fields that the query reads:
+    * the selected, grouping, aggregated, sorting and predicate fields,
+    * including those of the join clauses.
+    * A table whose needed fields are all held in an index
+    * can be read from the index alone.
+    */
+   private Set<String> neededFields(QueryData data) {
+      Set<String> flds = new HashSet<>(data.fields());
+      flds.addAll(data.groupByFields());
+      for (AggregationFn fn : data.aggFnsFields())
+         flds.add(fn.originalFieldName());
+      for (Expression e : data.sort().getFlds())
+         if (e.isFieldName())
+            flds.add(e.asFieldName());
+      flds.addAll(data.pred().fields());
+      for (JoinData join : data.joins())
+         flds.addAll(join.pred().fields());
+      return flds;
+   }
+
+   /**
+    * Return the field of the distinct aggregation functions,
+    * or null if there are none or they are on different fields.
+    */
+   private String distinctAggField(List<AggregationFn> aggfns) {
+      String fldname = null;
+      for (AggregationFn fn : aggfns)
+         if (fn instanceof DistinctAggFn) {
+            if (fldname != null && !fldname.equals(fn.originalFieldName()))
+               return null;
+            fldname = fn.originalFieldName();
+         }
+      return fldname;
+   }
+
+   /**
+    * Return the order by clause extended with the remaining selected
+    * fields, so that duplicate records become adjacent,
+    * or null if there is no order by clause or it
+    * sorts on a field that is not selected.
+    */
+   private Sort distinctSort(Sort sort, List<String> fields, Schema sch) {
+      if (!sort.isSortOrder())
+         return null;
+      List<Expression> exprs = new ArrayList<>(sort.getFlds());
+      List<String> sortTypes = new ArrayList<>(sort.getSortTypes());
+      List<String> sorted = new ArrayList<>();
+      for (Expression e : exprs) {
+         if (!fields.contains(e.toString()))
+            return null;
+         sorted.add(e.toString());
+      }
+      for (String fldname : fields)
+         if (sch.hasField(fldname) && !sorted.contains(fldname)) {
+            exprs.add(new Expression(fldname));
+            sortTypes.add("asc");
+         }
+      return new Sort(exprs, sortTypes);
+   }
+
+   /**
+    * Return the selected fields in ascending order, followed by
+    * the unselected fields of the order by clause, so that duplicate
+    * records are adjacent and the first of them comes first
+    * in the order by clause.
+    */
+   private Sort groupedSort(Sort sort, List<String> fields, Schema sch) {
+      List<Expression> exprs = new ArrayList<>();
+      List<String> sortTypes = new ArrayList<>();
+      for (String fldname : fields)
+         if (sch.hasField(fldname)) {
+            exprs.add(new Expression(fldname));
+            sortTypes.add("asc");
+         }
+      for (int i=0; i<sort.getFlds().size(); i++)
+         if (!fields.contains(sort.getFlds().get(i).toString())) {
+            exprs.add(sort.getFlds().get(i));
+            sortTypes.add(sort.getSortTypes().get(i));
+         }
+      return new Sort(exprs, sortTypes);
+   }
+
+   /**
+    * Finds the cheapest left-deep join order of the tables
+    * by dynamic programming, in the manner of System R.
+    * The best plan for a set of tables is the cheapest, by blocks
+    * accessed, of the joins of the best plan for the set without
+    * one of its tables with that table, using the cheapest join
+    * algorithm for each; the sets are built up from the select
+    * plans of the single tables.
+    * Plans that access as many blocks are told apart by the
+    * total number of records output by their joins, so that
+    * the intermediate results are kept small.
+    * A set is joined by a product only if none of its tables
+    * can be joined with the rest.
+    */
+   private Plan getCheapestJoinOrder() {
+      List<TablePlanner> tps = new ArrayList<>(tableplanners);
+      tableplanners.clear();
+      int n = tps.size();
+      Plan[] best = new Plan[1 << n];
+      double[] outputs = new double[1 << n];
+      for (int i=0; i<n; i++)
+         best[1 << i] = tps.get(i).makeSelectPlan();
+      // every subset of a set is numbered below the set
+      for (int set=1; set < best.length; set++) {
+         if (Integer.bitCount(set) < 2)
+            continue;
+         for (boolean product : new boolean[] {false, true}) {
+            for (int i=0; i<n; i++) {
+               int rest = set & ~(1 << i);
+               if (rest == set)
+                  continue;
+               TablePlanner tp = tps.get(i);
+               Plan p = product ? tp.makeProductPlan(best[rest]) : tp.makeJoinPlan(best[rest]);
+               if (p == null)
+                  continue;
+               double output = outputs[rest] + p.recordsOutput();
+               if (best[set] == null || isCheaper(p, output, best[set], outputs[set])) {
+                  best[set] = p;
+                  outputs[set] = output;
+               }
+            }
+            if (best[set] != null)
+               break;
+         }
+      }
+      return best[best.length - 1];
+   }
+
+   private static boolean isCheaper(Plan p1, double output1, Plan p2, double output2) {
+      int b1 = p1.blocksAccessed(), b2 = p2.blocksAccessed();
+      if (b1 != b2)
+         return b1 < b2;
+      return output1 < output2;
+   }
+
    private Plan getLowestJoinPlan(Plan current) {
       TablePlanner besttp = null;
       Plan bestplan = null;
@@ -0,0 +1,66 @@
+package simpledb.opt;
+
+import java.io.File;
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.plan.*;
+import simpledb.query.*;
+import simpledb.index.planner.IndexUpdatePlanner;
+
+/**
+ * Join a fact table to three dimension tables, one of them
+ * filtered, in the cheapest order found by dynamic programming
+ * and in the greedy order.  Both orders must return the same
+ * records, and the cheapest order must cost no more.
+ */
+public class JoinOrderTest {
+   public static void main(String[] args) {
+      deleteDir(new File("joinordertest"));
+      SimpleDB db = new SimpleDB("joinordertest");
+      Transaction tx = db.newTx();
+      Planner planner = db.planner();
+      planner.executeUpdate("create table F(FId int, FK1 int, FK2 int, FK3 int)", tx);
+      Random r = new Random(49);
+      for (int d=1; d<=3; d++) {
+         planner.executeUpdate("create table D" + d + "(K" + d + " int, A" + d + " int)", tx);
+         for (int i=0; i<20*d; i++)
+            planner.executeUpdate("insert into D" + d + "(K" + d + ",A" + d + ") values(" + i + ", " + (i % 10) + ")", tx);
+      }
+      for (int i=0; i<1000; i++)
+         planner.executeUpdate("insert into F(FId,FK1,FK2,FK3) values(" + i + ", " + r.nextInt(20)
+               + ", " + r.nextInt(40) + ", " + r.nextInt(60) + ")", tx);
+      tx.commit();
+
+      String qry = "select FId, A2 from F, D1, D2, D3 where FK1 = K1 and FK2 = K2 and FK3 = K3 and A1 = 3";
+      tx = db.newTx();
+      List<String> results = new ArrayList<>();
+      int[] costs = new int[2];
+      int[] limits = {HeuristicQueryPlanner.DP_TABLE_LIMIT, 0};
+      for (int i=0; i<limits.length; i++) {
+         QueryPlanner qp = new HeuristicQueryPlanner(db.mdMgr(), limits[i]);
+         Planner p = new Planner(qp, new IndexUpdatePlanner(db.mdMgr()));
+         Plan plan = p.createQueryPlan(qry, tx);
+         costs[i] = plan.blocksAccessed();
+         List<String> recs = new ArrayList<>();
+         Scan s = plan.open();
+         while (s.next())
+            recs.add(s.getInt("fid") + " " + s.getInt("a2"));
+         s.close();
+         Collections.sort(recs);
+         results.add(String.join(",", recs));
+      }
+      tx.commit();
+      System.out.println("cost of cheapest order " + costs[0] + ", of greedy order " + costs[1]);
+      boolean ok = results.get(0).equals(results.get(1)) && !results.get(0).isEmpty()
+                   && costs[0] <= costs[1];
+      System.out.println(ok ? "join order ok" : "join order FAILED");
+   }
+
+   private static void deleteDir(File f) {
+      if (f.isDirectory())
+         for (File child : f.listFiles())
+            deleteDir(child);
+      f.delete();
+   }
+}
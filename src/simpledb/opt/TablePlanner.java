@@ -1,10 +1,13 @@
 package simpledb.opt;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.Set;
 
+import simpledb.materialize.BandJoinPlan;
 import simpledb.materialize.BlockNestedLoopPlan;
 import simpledb.materialize.HashJoinPlan;
 import simpledb.materialize.MergeJoinPlan;
@@ -14,6 +17,7 @@ import simpledb.query.*;
 import simpledb.metadata.*;
 import simpledb.index.planner.*;
 import simpledb.multibuffer.MultibufferProductPlan;
+import simpledb.parse.BadSyntaxException;
 import simpledb.plan.*;
 
 /**
@@ -22,9 +26,11 @@ import simpledb.plan.*;
  */
 class TablePlanner {
    private TablePlan myplan;
+   private Plan selectplan;
    private Predicate mypred;
    private Schema myschema;
-   private Map<String,IndexInfo> indexes;
+   private List<IndexInfo> indexes;
+   private List<String> neededflds = new ArrayList<>();
    private Transaction tx;
    private String tblname;
 
@@ -44,7 +50,27 @@ class TablePlanner {
       this.tblname = tblname;
       myplan   = new TablePlan(tx, tblname, mdm);
       myschema = myplan.schema();
-      indexes  = mdm.getIndexInfo(tblname, tx);
+      indexes  = mdm.getIndexes(tblname, tx);
+      neededflds.addAll(myschema.fields());
+   }
+   
+   /**
+    * Creates a new table planner for a query that reads
+    * only the specified fields.
+    * If an index holds all of the needed fields of the table,
+    * the select plan may read the index instead of the table.
+    * @param tblname the name of the table
+    * @param mypred the query predicate
+    * @param queryflds the fields read by the query
+    * @param tx the calling transaction
+    */
+   public TablePlanner(String tblname, Predicate mypred, Collection<String> queryflds,
+                       Transaction tx, MetadataMgr mdm) {
+      this(tblname, mypred, tx, mdm);
+      neededflds.clear();
+      for (String fldname : myschema.fields())
+         if (queryflds.contains(fldname))
+            neededflds.add(fldname);
    }
    
    /**
@@ -53,10 +79,14 @@ class TablePlanner {
     * @return a select plan for the table.
     */
    public Plan makeSelectPlan() {
-      Plan p = makeIndexSelect();
-      if (p == null)
-         p = myplan;
-      return addSelectPred(p);
+      // the plan is reused by every join of the table
+      if (selectplan == null) {
+         Plan p = makeIndexSelect();
+         if (p == null)
+            p = myplan;
+         selectplan = addSelectPred(p);
+      }
+      return selectplan;
    }
    
    /**
@@ -79,13 +109,15 @@ class TablePlanner {
       Plan indexJoinPlan = makeIndexJoin(current, currsch, joinpred);
       Plan mergeJoinPlan = makeMergeJoin(current, currsch, joinpred);
       Plan productJoinPlan = makeProductJoin(current, currsch);
-      Plan nestedLoopJoinPlan = makeNestedLoopJoin(current, joinpred, 2);
+      Plan nestedLoopJoinPlan = makeNestedLoopJoin(current, joinpred);
       Plan hashJoinPlan = makeHashJoin(current, currsch, joinpred);
+      Plan bandJoinPlan = makeBandJoin(current, currsch, joinpred);
       planList.add(indexJoinPlan);
       planList.add(mergeJoinPlan);
       planList.add(productJoinPlan);
       planList.add(nestedLoopJoinPlan);
       planList.add(hashJoinPlan);
+      planList.add(bandJoinPlan);
 
       for(Plan plan : planList){
          if(plan == null) continue;
@@ -96,6 +128,56 @@ class TablePlanner {
       return bestPlan;
    }
    
+   /**
+    * Constructs a left outer, semi or anti join plan of the
+    * specified plan, which is the preserved side, and the table,
+    * whose on clause is the predicate of this planner.
+    * The join needs a term equating a field of the table with
+    * a field of the plan; the records are matched on all such
+    * fields, choosing the cheapest of a hash join, a merge join
+    * and an index join on any index whose key fields are all
+    * joined.
+    * The terms of the on clause that mention only the table select
+    * its records before a hash or merge join; the other terms are
+    * tested by the join as each pair of records is matched.
+    * @param current the specified plan
+    * @param jointype one of "left", "semi" or "anti"
+    * @return a join plan of the plan and this table
+    * @throws BadSyntaxException if the on clause equates no fields
+    */
+   public Plan makeOuterJoinPlan(Plan current, String jointype) {
+      Schema currsch = current.schema();
+      List<String> myflds = new ArrayList<>(), outerflds = new ArrayList<>();
+      List<Term> keyterms = equiJoinFields(mypred, currsch, myflds, outerflds);
+      if (keyterms.isEmpty())
+         throw new BadSyntaxException();
+      Plan selectplan = makeSelectPlan();
+      Predicate outside = mypred.outsideSubPred(myschema);
+      Predicate residual = (outside == null) ? new Predicate() : without(outside, keyterms);
+      List<Plan> planList = new ArrayList<>();
+      planList.add(new HashJoinPlan(tx, current, selectplan, outerflds, myflds, jointype, residual));
+      planList.add(new MergeJoinPlan(tx, current, selectplan, outerflds, myflds, jointype, residual));
+      for (IndexInfo ii : indexes) {
+         List<Integer> pos = keyPositions(ii, myflds);
+         if (pos == null)
+            continue;
+         List<String> joinflds = new ArrayList<>();
+         List<Term> idxterms = new ArrayList<>();
+         for (int i : pos) {
+            joinflds.add(outerflds.get(i));
+            idxterms.add(keyterms.get(i));
+         }
+         Predicate idxresidual = without(mypred, idxterms);
+         planList.add(new IndexJoinPlan(current, myplan, ii, joinflds, jointype, idxresidual));
+         planList.add(new BatchedIndexJoinPlan(current, myplan, ii, joinflds, jointype, idxresidual));
+      }
+      Plan bestplan = null;
+      for (Plan plan : planList)
+         if (bestplan == null || plan.blocksAccessed() < bestplan.blocksAccessed())
+            bestplan = plan;
+      return bestplan;
+   }
+   
    /**
     * Constructs a product plan of the specified plan and
     * this table.
@@ -107,91 +189,193 @@ class TablePlanner {
       return new MultibufferProductPlan(tx, current, p);
    }
 
-   private Plan makeNestedLoopJoin(Plan current, Predicate joinpred, int numBuffers) {
-      Plan p = new BlockNestedLoopPlan(tx, myplan, current, joinpred, numBuffers);
-      p = addSelectPred(p);
-      p = addJoinPred(p, current.schema());
-      return p;
+   private Plan makeNestedLoopJoin(Plan current, Predicate joinpred) {
+      // the join tests the whole join predicate,
+      // and the table is selected before it is materialized
+      return new BlockNestedLoopPlan(tx, makeSelectPlan(), current, joinpred);
    }
 
+   /**
+    * Constructs the cheapest index select plan for the table,
+    * using either an equality term on an indexed field
+    * or the range of a B-tree indexed field.
+    * A multi-column B-tree index is used for the range
+    * given by equality terms on a prefix of its fields,
+    * followed by a range on the next field.
+    * If a B-tree index holds all of the fields needed from
+    * the table, the plan reads only the index,
+    * over the whole index if no range applies.
+    * The method returns null if no index select plan
+    * is cheaper than scanning the table.
+    */
    private Plan makeIndexSelect() {
-      for (String fldname : indexes.keySet()) {
-         Constant val = mypred.equatesWithConstant(fldname);
-         Term term = mypred.equatesWithConstantGetTerm(fldname);
-
-         //skips creating an index plan since it does not allow non-equi join
-         if(term != null && term.getComparator() != "="){
-            return null;
-         }
-         if (val != null) {
-            IndexInfo ii = indexes.get(fldname);
-            System.out.println("index on " + fldname + " used");
-            return new IndexSelectPlan(myplan, ii, val , tblname);
+      Plan bestplan = null;
+      for (IndexInfo ii : indexes) {
+         String fldname = ii.getFieldName();
+         Plan p = null;
+         Constant val = ii.isComposite() ? null : mypred.equatesWithConstant(fldname);
+         Range range = ii.isComposite() ? mypred.rangeOn(ii.keyFields()) : mypred.rangeOn(fldname);
+         boolean btree = ii.getIndexType().equals("btree");
+         if (btree && ii.covers(neededflds)) {
+            if (range == null)
+               range = new Range(null, false, null, false);
+            p = new IndexOnlyPlan(myplan, ii, range, tblname);
          }
+         else if (val != null)
+            p = new IndexSelectPlan(myplan, ii, val , tblname);
+         else if (range != null && btree)
+            p = new IndexRangeSelectPlan(myplan, ii, range, tblname);
+         if (p != null && (bestplan == null || p.blocksAccessed() < bestplan.blocksAccessed()))
+            bestplan = p;
       }
-      return null;
+      if (bestplan == null || bestplan.blocksAccessed() >= myplan.blocksAccessed())
+         return null;
+      System.out.println("index used: " + bestplan);
+      return bestplan;
    }
    
+   /*
+    * Returns the cheapest index join on an index whose key
+    * fields are all joined, searching the index for each
+    * record of the plan or for each batch of its records
+    */
    private Plan makeIndexJoin(Plan current, Schema currsch, Predicate pred) {
-      for (String fldname : indexes.keySet()) {
-         String outerfield = pred.equatesWithField(fldname);
-         Term term = pred.equatesWithFieldGetOpr(fldname);
-
-         //skips creating an index plan since it does not allow non-equi join
-         if(term != null && !Objects.equals(term.getComparator(), "=")){
+      List<String> myflds = new ArrayList<>(), outerflds = new ArrayList<>();
+      List<Term> keyterms = equiJoinFields(pred, currsch, myflds, outerflds);
+      Plan bestplan = null;
+      for (IndexInfo ii : indexes) {
+         //the search key of a multi-column index needs all of its key fields
+         List<Integer> pos = keyPositions(ii, myflds);
+         if (pos == null)
             continue;
+         List<String> joinflds = new ArrayList<>();
+         List<Term> idxterms = new ArrayList<>();
+         for (int i : pos) {
+            joinflds.add(outerflds.get(i));
+            idxterms.add(keyterms.get(i));
          }
-         if (outerfield != null && currsch.hasField(outerfield)) {
-            IndexInfo ii = indexes.get(fldname);
-            Plan p = new IndexJoinPlan(current, myplan, ii, outerfield);
+         Plan[] joins = {new IndexJoinPlan(current, myplan, ii, joinflds, "inner", new Predicate()),
+                         new BatchedIndexJoinPlan(current, myplan, ii, joinflds, "inner", new Predicate())};
+         for (Plan p : joins) {
             p = addSelectPred(p);
-            return addJoinPred(p, currsch);
+            p = addJoinPred(p, currsch, idxterms);
+            if (bestplan == null || p.blocksAccessed() < bestplan.blocksAccessed())
+               bestplan = p;
          }
       }
-      return null;
+      return bestplan;
    }
 
    private Plan makeMergeJoin(Plan current ,Schema currsch, Predicate pred) {
-      // Get the fieldname from the predicate
-      // Get the list of fldnames from the schemas, loop through and see if fits into the predicate
-      // currently working with only one join column
+      // the join is on every pair of fields equated by the predicate,
+      // so only the other join terms are checked afterwards
+      List<String> myflds = new ArrayList<>(), outerflds = new ArrayList<>();
+      List<Term> keyterms = equiJoinFields(pred, currsch, myflds, outerflds);
+      if (keyterms.isEmpty())
+         return null;
+      Plan p = new MergeJoinPlan(tx, makeSelectPlan(), current, myflds, outerflds, "inner", new Predicate());
+      return addJoinPred(p, currsch, keyterms);
+   }
 
-      for(String fldname: myschema.fields()){
-         String outerfield = pred.equatesWithField(fldname);
-         Term term = pred.equatesWithFieldGetOpr(fldname);
+   private Plan makeHashJoin(Plan current ,Schema currsch, Predicate pred) { // makes a hashjoin based on the join preds equating fields
+      List<String> myflds = new ArrayList<>(), outerflds = new ArrayList<>();
+      List<Term> keyterms = equiJoinFields(pred, currsch, myflds, outerflds);
+      if (keyterms.isEmpty())
+         return null;
+      Plan p = new HashJoinPlan(tx, makeSelectPlan(), current, myflds, outerflds, "inner", new Predicate());
+      return addJoinPred(p, currsch, keyterms);
+   }
+   
+   /**
+    * Constructs the cheapest band join of the specified plan and
+    * the table, on a field of either side that is compared with
+    * fields of the other side.
+    * Its lower and upper bounds are the first terms that bound it
+    * from each side; the other join terms are checked afterwards.
+    * The method returns null if the predicate equates fields,
+    * since an equi join matches fewer pairs of records,
+    * or if it compares none.
+    */
+   private Plan makeBandJoin(Plan current, Schema currsch, Predicate pred) {
+      if (!pred.equiJoinTerms(myschema, currsch).isEmpty())
+         return null;
+      List<Term> bandterms = pred.bandJoinTerms(myschema, currsch);
+      Set<String> tried = new HashSet<>();
+      Plan bestplan = null;
+      for (Term t : bandterms)
+         for (String fldname : t.fields()) {
+            if (!tried.add(fldname))
+               continue;
+            boolean mine = myschema.hasField(fldname);
+            Schema boundsch = mine ? currsch : myschema;
+            Term low = bandBound(bandterms, fldname, boundsch, true);
+            Term high = bandBound(bandterms, fldname, boundsch, false);
+            List<Term> used = new ArrayList<>();
+            if (low != null)
+               used.add(low);
+            if (high != null)
+               used.add(high);
+            Plan p = mine ? new BandJoinPlan(tx, current, makeSelectPlan(), fldname, low, high)
+                          : new BandJoinPlan(tx, makeSelectPlan(), current, fldname, low, high);
+            p = addJoinPred(p, currsch, used);
+            if (bestplan == null || p.blocksAccessed() < bestplan.blocksAccessed())
+               bestplan = p;
+         }
+      return bestplan;
+   }
 
-         //skips creating an index plan since it does not allow non-equi join
-         if(term != null && !Objects.equals(term.getComparator(), "=")){
+   /**
+    * Returns the first of the terms that bounds the field from below
+    * (or above) by a field of the specified schema, or null if none does.
+    */
+   private static Term bandBound(List<Term> terms, String fldname, Schema boundsch, boolean lower) {
+      for (Term t : terms) {
+         String comparator = t.comparatorWithField(fldname);
+         String other = t.equatesWithField(fldname);
+         if (comparator == null || !boundsch.hasField(other))
             continue;
-         }
-         if(outerfield != null && currsch.hasField(outerfield)){
-            Plan p = new MergeJoinPlan(tx, myplan, current, fldname, outerfield);
-            p = addSelectPred(p);
-            p = addJoinPred(p, currsch);
-            return p;
-         }
+         if (lower == comparator.startsWith(">"))
+            return t;
       }
-
       return null;
    }
 
-   private Plan makeHashJoin(Plan current ,Schema currsch, Predicate pred) { // makes a hashjoin based on a common join pred
-      for(String fldname: myschema.fields()){
-         String outerfield = pred.equatesWithField(fldname);
-         Term term = pred.equatesWithFieldGetOpr(fldname);
+   /**
+    * Finds the terms of the predicate that equate a field of the
+    * table with a field of the specified schema, adding the field
+    * of the table to myflds and the other field to outerflds.
+    * The terms are returned in the same order as the fields.
+    */
+   private List<Term> equiJoinFields(Predicate pred, Schema currsch,
+                                     List<String> myflds, List<String> outerflds) {
+      List<Term> keyterms = pred.equiJoinTerms(myschema, currsch);
+      for (Term t : keyterms) {
+         String fldname = t.fields().get(myschema.hasField(t.fields().get(0)) ? 0 : 1);
+         myflds.add(fldname);
+         outerflds.add(t.equatesWithField(fldname));
+      }
+      return keyterms;
+   }
 
-         //skips creating an index plan since it does not allow non-equi join
-         if(term != null && !Objects.equals(term.getComparator(), "=")){
-            continue;
-         }
-         if(outerfield != null && currsch.hasField(outerfield)){
-            Plan p = new HashJoinPlan(tx, myplan, current, fldname, outerfield);
-            p = addSelectPred(p);
-            p = addJoinPred(p, currsch);
-            return p;
-         }
+   /**
+    * Returns the positions in myflds of the key fields of the
+    * index, in key order, or null if some key field is not joined.
+    */
+   private List<Integer> keyPositions(IndexInfo ii, List<String> myflds) {
+      List<Integer> pos = new ArrayList<>();
+      for (String keyfld : ii.keyFields()) {
+         int i = myflds.indexOf(keyfld);
+         if (i < 0)
+            return null;
+         pos.add(i);
       }
-      return null;
+      return pos;
+   }
+
+   private static Predicate without(Predicate pred, List<Term> terms) {
+      for (Term t : terms)
+         pred = pred.without(t);
+      return pred;
    }
    
    private Plan makeProductJoin(Plan current, Schema currsch) {
@@ -211,12 +395,22 @@ class TablePlanner {
     * Returns a plan if the predicate holds on both schemas
     */
    private Plan addJoinPred(Plan p, Schema currsch) {
+      return addJoinPred(p, currsch, new ArrayList<>());
+   }
+
+   /*
+    * Returns a plan if the predicate, other than the terms
+    * already matched by the join, holds on both schemas
+    */
+   private Plan addJoinPred(Plan p, Schema currsch, List<Term> keyterms) {
       //checks and creates a predicate based on the schema of the plan and myscheme
       Predicate joinpred = mypred.joinSubPred(currsch, myschema);
-      if (joinpred != null)
-         return new SelectPlan(p, joinpred);
-      else
+      if (joinpred == null)
+         return p;
+      joinpred = without(joinpred, keyterms);
+      if (joinpred.isEmpty())
          return p;
+      return new SelectPlan(p, joinpred);
    }
 
    public String getTableName() {return tblname;}
@@ -0,0 +1,25 @@
+package simpledb.parse;
+
+/**
+ * Data for the SQL <i>analyze</i> statement.
+ */
+public class AnalyzeData {
+   private String tblname;
+   
+   /**
+    * Saves the table name, which is null
+    * if every table is to be analyzed.
+    */
+   public AnalyzeData(String tblname) {
+      this.tblname = tblname;
+   }
+   
+   /**
+    * Returns the name of the table to be analyzed,
+    * or null if every table is to be analyzed.
+    * @return the name of the table, or null
+    */
+   public String tableName() {
+      return tblname;
+   }
+}
@@ -1,19 +1,34 @@
 package simpledb.parse;
 
+import java.util.*;
+
 /**
  * The parser for the <i>create index</i> statement.
  * @author Edward Sciore
  */
 public class CreateIndexData {
-   private String idxname, tblname, fldname, idxType;
+   private String idxname, tblname, idxType;
+   private List<String> fldnames, includeFlds;
    
    /**
     * Saves the table and field names of the specified index.
     */
    public CreateIndexData(String idxname, String tblname, String fldname, String idxType) {
+      this(idxname, tblname, Arrays.asList(fldname), new ArrayList<>(), idxType);
+   }
+   
+   /**
+    * Saves the table and field names of the specified index,
+    * which may be indexed on several fields,
+    * together with the fields whose values are to be
+    * stored in each index record.
+    */
+   public CreateIndexData(String idxname, String tblname, List<String> fldnames,
+                          List<String> includeFlds, String idxType) {
       this.idxname = idxname;
       this.tblname = tblname;
-      this.fldname = fldname;
+      this.fldnames = fldnames;
+      this.includeFlds = includeFlds;
       this.idxType = idxType;
    }
    
@@ -34,11 +49,28 @@ public class CreateIndexData {
    }
    
    /**
-    * Returns the name of the indexed field.
+    * Returns the name of the indexed field,
+    * which is the first field of a multi-column index.
     * @return the name of the indexed field
     */
    public String fieldName() {
-      return fldname;
+      return fldnames.get(0);
+   }
+
+   /**
+    * Returns the names of the indexed fields, in key order.
+    * @return the names of the indexed fields
+    */
+   public List<String> fieldNames() {
+      return fldnames;
+   }
+
+   /**
+    * Returns the names of the fields included in the index records.
+    * @return the names of the included fields
+    */
+   public List<String> includeFields() {
+      return includeFlds;
    }
 
    /**
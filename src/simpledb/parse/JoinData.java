@@ -0,0 +1,59 @@
+package simpledb.parse;
+
+import simpledb.query.*;
+
+/**
+ * Data for a <i>join ... on</i> clause of the SQL <i>select</i> statement
+ * that is joined to the result of the tables before it:
+ * an inner join, a left outer join, or a left semi or anti join.
+ * The join type is one of "inner", "left", "semi" or "anti".
+ */
+public class JoinData {
+   private String jointype;
+   private String tblname;
+   private Predicate pred;
+   
+   /**
+    * Saves the join type, table name and join predicate.
+    */
+   public JoinData(String jointype, String tblname, Predicate pred) {
+      this.jointype = jointype;
+      this.tblname = tblname;
+      this.pred = pred;
+   }
+   
+   /**
+    * Returns the type of the join.
+    * @return "inner", "left", "semi" or "anti"
+    */
+   public String joinType() {
+      return jointype;
+   }
+   
+   /**
+    * Returns the name of the joined table.
+    * @return the name of the joined table
+    */
+   public String tableName() {
+      return tblname;
+   }
+   
+   /**
+    * Returns the predicate of the on clause.
+    * @return the join predicate
+    */
+   public Predicate pred() {
+      return pred;
+   }
+   
+   public String toString() {
+      String result;
+      if (jointype.equals("left"))
+         result = "left join ";
+      else if (jointype.equals("semi") || jointype.equals("anti"))
+         result = "left " + jointype + " join ";
+      else
+         result = "join ";
+      return result + tblname + " on " + pred;
+   }
+}
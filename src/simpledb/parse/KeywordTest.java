@@ -0,0 +1,70 @@
+package simpledb.parse;
+
+import java.util.*;
+
+/**
+ * Parse statements that use the words of the newer clauses
+ * as table and field names.  Those words are not reserved,
+ * being matched only where their clause may occur.
+ */
+public class KeywordTest {
+   private static boolean ok = true;
+
+   public static void main(String[] args) {
+      CreateIndexData idx = (CreateIndexData)
+            update("create index i on include(include) include (include) using btree");
+      check("include as a name", idx != null && idx.tableName().equals("include")
+            && idx.fieldName().equals("include")
+            && idx.includeFields().get(0).equals("include"));
+
+      QueryData q = query("select limit, offset from limit where offset = 1 order by limit desc limit 5 offset 2");
+      check("limit and offset as names", q != null && q.fields().equals(Arrays.asList("limit", "offset"))
+            && q.tables().contains("limit") && q.limit() == 5 && q.offset() == 2);
+      q = query("select limit from t order by limit limit 3");
+      check("limit as a sort field", q != null && q.limit() == 3 && q.offset() == 0);
+      q = query("select approx_count_distinct, approx_percentile(approx_percentile, 50) from approx_percentile "
+              + "where approx_count_distinct = 1 group by approx_count_distinct order by approx_count_distinct");
+      check("approximate aggregate names as fields", q != null
+            && q.fields().equals(Arrays.asList("approx_count_distinct", "approx_percentile(approx_percentile,50)"))
+            && q.aggFnsFields().size() == 1 && q.tables().contains("approx_percentile"));
+      q = query("select a, approx_count_distinct(b) from t group by a order by approx_count_distinct(b) desc");
+      check("approximate aggregate in order by", q != null && q.aggFnsFields().size() == 1
+            && q.sort().toString().contains("approx_count_distinct(b)"));
+      AnalyzeData an = (AnalyzeData) update("analyze analyze");
+      check("analyze as a table name", an != null && "analyze".equals(an.tableName()));
+      an = (AnalyzeData) update("analyze");
+      check("analyze of every table", an != null && an.tableName() == null);
+      q = query("select analyze from analyze where analyze > 0");
+      check("analyze as a field name", q != null && q.fields().equals(Arrays.asList("analyze")));
+      System.out.println(ok ? "keywords ok" : "keywords FAILED");
+   }
+
+   private static QueryData query(String qry) {
+      try {
+         return new Parser(qry).query();
+      }
+      catch (BadSyntaxException ex) {
+         System.out.println("cannot parse: " + qry);
+         ok = false;
+         return null;
+      }
+   }
+
+   private static Object update(String cmd) {
+      try {
+         return new Parser(cmd).updateCmd();
+      }
+      catch (BadSyntaxException ex) {
+         System.out.println("cannot parse: " + cmd);
+         ok = false;
+         return null;
+      }
+   }
+
+   private static void check(String what, boolean cond) {
+      if (!cond) {
+         System.out.println("wrong: " + what);
+         ok = false;
+      }
+   }
+}
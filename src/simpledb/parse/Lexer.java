@@ -71,6 +71,16 @@ public class Lexer {
       return  tok.ttype==StreamTokenizer.TT_WORD && !keywords.contains(tok.sval) ;
    }
 
+   /**
+    * Returns true if the specified word is reserved,
+    * and so cannot name a table or field.
+    * @param w the word
+    * @return true if the word is a keyword
+    */
+   public boolean isKeyword(String w) {
+      return keywords.contains(w);
+   }
+
    /**
     * Returns true if the current token is a legal index type (hash/ b+tree).
     * @return true if the current token is an index type
@@ -84,11 +94,14 @@ public class Lexer {
    }
 
    /**
-    * Returns true if the current token is a legal aggregate keyword.
+    * Returns true if the current token is a legal aggregate keyword,
+    * or the name of an approximate aggregate.  Those names are
+    * not reserved, and name an aggregate only if an argument list follows.
     * @return true if the current token is a legal aggregate keyword
     */
    public boolean matchAggFn() {
-      String[] aggTypes = new String[] { "sum", "count", "avg", "min", "max" };
+      String[] aggTypes = new String[] { "sum", "count", "avg", "min", "max",
+                                         "approx_count_distinct", "approx_percentile" };
       return Arrays.stream(aggTypes).anyMatch(this::matchKeyword);
    }
 
@@ -262,7 +275,8 @@ public class Lexer {
    }
 
    public String eatAgg() {
-      String[] aggTypes = new String[] { "sum", "count", "avg", "min", "max" };
+      String[] aggTypes = new String[] { "sum", "count", "avg", "min", "max",
+                                         "approx_count_distinct", "approx_percentile" };
       for (String agg: aggTypes) {
          if (matchKeyword(agg)) {
             eatKeyword(agg);
@@ -26,13 +26,27 @@ public class Parser {
    public Field selectField() { // previous checks ensures
       if (lex.matchAggFn()) {
          String aggType = lex.eatAgg();
+         // an unreserved aggregate name without arguments names a field
+         if (!lex.matchDelim('(') && !lex.isKeyword(aggType))
+            return new DefaultField(aggType);
          lex.eatDelim('(');
          boolean isDistinct = distinct();
          String fldname = lex.eatId();
+         int percent = 0;
+         if (aggType.equals("approx_percentile")) { // approx_percentile(field, percent)
+            lex.eatDelim(',');
+            percent = lex.eatIntConstant();
+            if (percent < 0 || percent > 100)
+               throw new BadSyntaxException();
+         }
          lex.eatDelim(')');
 
          AggregationFn aggFn ;
-         if (aggType.equals("sum")) { // previous checks ensures that a valid group by exists
+         if (aggType.equals("approx_count_distinct")) {
+            aggFn = new ApproxCountDistinctFn(fldname);
+         } else if (aggType.equals("approx_percentile")) {
+            aggFn = new ApproxPercentileFn(fldname, percent);
+         } else if (aggType.equals("sum")) { // previous checks ensures that a valid group by exists
             aggFn = new SumFn(fldname);
          } else if (aggType.equals("count")) {
             aggFn = new CountFn(fldname);
@@ -66,8 +80,14 @@ public class Parser {
 
       if(lex.matchAggFn()){
          String aggType = lex.eatAgg();
+         if (!lex.matchDelim('(') && !lex.isKeyword(aggType))
+            return new Expression(aggType);
          lex.eatDelim('(');
          String fldname = field();
+         if (aggType.equals("approx_percentile")) {
+            lex.eatDelim(',');
+            fldname += "," + lex.eatIntConstant();
+         }
          lex.eatDelim(')');
          String fieldName = aggType + "(" + fldname + ")";
          return new Expression(fieldName);
@@ -147,10 +167,11 @@ public class Parser {
 
       Collection<String> tables = tableList();
       Predicate pred = new Predicate();
+      List<JoinData> joins = joinList(tables, pred);
 
       if (lex.matchKeyword("where")) {
          lex.eatKeyword("where");
-         pred = predicate();
+         pred.conjoinWith(predicate());
       }
 
       // "group by" after "where" and before "order by"
@@ -192,7 +213,63 @@ public class Parser {
 
       }
 
-      return new QueryData(selectFields, tables, pred, groupByFields, aggFns, sort, fields, isDistinct);
+      // "limit n [offset m]" comes last; its words are not
+      // reserved, so fields may still use them
+      int limit = -1, offset = 0;
+      if (lex.matchKeyword("limit")) {
+         lex.eatKeyword("limit");
+         limit = lex.eatIntConstant();
+         if (lex.matchKeyword("offset")) {
+            lex.eatKeyword("offset");
+            offset = lex.eatIntConstant();
+         }
+      }
+
+      return new QueryData(selectFields, tables, joins, pred, groupByFields, aggFns, sort, fields, isDistinct,
+                           limit, offset);
+   }
+   
+   /**
+    * Parse the join clauses that follow the table list:
+    * <pre> [inner | left [outer] | left semi | left anti] join T on P </pre>
+    * Inner joins that precede any other join are equivalent to
+    * listing the table and adding the predicate to the where clause,
+    * and are parsed that way; the other join clauses are returned.
+    * The words of a join clause are not reserved: they are
+    * matched only here, so tables and fields may still use them.
+    */
+   private List<JoinData> joinList(Collection<String> tables, Predicate pred) {
+      List<JoinData> joins = new ArrayList<>();
+      while (lex.matchKeyword("join") || lex.matchKeyword("inner") || lex.matchKeyword("left")) {
+         String jointype = "inner";
+         if (lex.matchKeyword("inner"))
+            lex.eatKeyword("inner");
+         else if (lex.matchKeyword("left")) {
+            lex.eatKeyword("left");
+            jointype = "left";
+            if (lex.matchKeyword("outer"))
+               lex.eatKeyword("outer");
+            else if (lex.matchKeyword("semi")) {
+               lex.eatKeyword("semi");
+               jointype = "semi";
+            }
+            else if (lex.matchKeyword("anti")) {
+               lex.eatKeyword("anti");
+               jointype = "anti";
+            }
+         }
+         lex.eatKeyword("join");
+         String tblname = lex.eatId();
+         lex.eatKeyword("on");
+         Predicate on = predicate();
+         if (jointype.equals("inner") && joins.isEmpty()) {
+            tables.add(tblname);
+            pred.conjoinWith(on);
+         }
+         else
+            joins.add(new JoinData(jointype, tblname, on));
+      }
+      return joins;
    }
    
    private List<Field> selectList() {
@@ -224,6 +301,8 @@ public class Parser {
          return delete();
       else if (lex.matchKeyword("update"))
          return modify();
+      else if (lex.matchKeyword("analyze"))
+         return analyze();
       else
          return create();
    }
@@ -358,6 +437,16 @@ public class Parser {
    }
    
    
+//  Method for parsing analyze commands
+   
+   public AnalyzeData analyze() {
+      // "analyze" is not reserved, so it may also name a table
+      lex.eatKeyword("analyze");
+      String tblname = lex.matchId() ? lex.eatId() : null;
+      return new AnalyzeData(tblname);
+   }
+   
+   
 //  Method for parsing create index commands
    
    public CreateIndexData createIndex() {
@@ -366,11 +455,22 @@ public class Parser {
       lex.eatKeyword("on");
       String tblname = lex.eatId();
       lex.eatDelim('(');
-      String fldname = field();
+      List<String> fldnames = fieldList();
       lex.eatDelim(')');
+      // "include" is not reserved, so fields may still use it
+      List<String> includeFlds = new ArrayList<>();
+      if (lex.matchKeyword("include")) {
+         lex.eatKeyword("include");
+         lex.eatDelim('(');
+         includeFlds = fieldList();
+         lex.eatDelim(')');
+      }
       lex.eatKeyword("using");
       String idxType = lex.eatIndexType();
-      return new CreateIndexData(idxname, tblname, fldname, idxType);
+      // only B-tree indexes can search on a prefix of a multi-column key
+      if (fldnames.size() > 1 && !idxType.equals("btree"))
+         throw new BadSyntaxException();
+      return new CreateIndexData(idxname, tblname, fldnames, includeFlds, idxType);
    }
 }
 
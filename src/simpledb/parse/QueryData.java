@@ -13,19 +13,45 @@ import simpledb.query.*;
 public class QueryData {
    private List<String> fields;
    private Collection<String> tables;
+   private List<JoinData> joins;
    private Predicate pred;
    private List<String> groupByFields;
    private List<AggregationFn> aggFns;
    private List<Field> originalSelect;
    private Sort sort;
    private boolean isDistinct;
+   private int limit, offset;
    
    /**
     * Saves the field and table list and predicate.
     */
    public QueryData(List<String> fields, Collection<String> tables, Predicate pred, List<String> groupByFields,
                     List<AggregationFn> aggFns, Sort sort, List<Field> originalSelect, boolean isDistinct) {
+      this(fields, tables, pred, groupByFields, aggFns, sort, originalSelect, isDistinct, -1, 0);
+   }
+   
+   /**
+    * Saves the field and table list and predicate,
+    * together with the number of records to return
+    * and the number of records to skip.
+    * A negative limit means that all records are returned.
+    */
+   public QueryData(List<String> fields, Collection<String> tables, Predicate pred, List<String> groupByFields,
+                    List<AggregationFn> aggFns, Sort sort, List<Field> originalSelect, boolean isDistinct,
+                    int limit, int offset) {
+      this(fields, tables, new ArrayList<>(), pred, groupByFields, aggFns, sort, originalSelect, isDistinct,
+           limit, offset);
+   }
+   
+   /**
+    * Saves the field and table list, the join clauses
+    * that follow the tables, and the other clauses.
+    */
+   public QueryData(List<String> fields, Collection<String> tables, List<JoinData> joins, Predicate pred,
+                    List<String> groupByFields, List<AggregationFn> aggFns, Sort sort,
+                    List<Field> originalSelect, boolean isDistinct, int limit, int offset) {
       this.fields = fields;
+      this.joins = joins;
       this.tables = tables;
       this.pred = pred;
       this.groupByFields = groupByFields;
@@ -33,7 +59,8 @@ public class QueryData {
       this.sort = sort;
       this.originalSelect = originalSelect;
       this.isDistinct = isDistinct;
-
+      this.limit = limit;
+      this.offset = offset;
    }
    
    /**
@@ -52,6 +79,16 @@ public class QueryData {
       return tables;
    }
    
+   /**
+    * Returns the join clauses that follow the tables of the
+    * from clause, in order.  Each is joined to the result
+    * of the tables and join clauses before it.
+    * @return a list of join clauses
+    */
+   public List<JoinData> joins() {
+      return joins;
+   }
+   
    /**
     * Returns the predicate that describes which
     * records should be in the output table.
@@ -85,6 +122,31 @@ public class QueryData {
       return isDistinct;
    }
 
+   /**
+    * Returns true if the query has a limit clause.
+    * @return true if the number of output records is limited
+    */
+   public boolean hasLimit() {
+      return limit >= 0;
+   }
+
+   /**
+    * Returns the maximum number of records to return.
+    * @return the limit, or a negative number if there is none
+    */
+   public int limit() {
+      return limit;
+   }
+
+   /**
+    * Returns the number of records to skip
+    * before returning any.
+    * @return the offset
+    */
+   public int offset() {
+      return offset;
+   }
+
    /**
     * Returns the sort that describes which
     * which order by which field.
@@ -105,6 +167,8 @@ public class QueryData {
       for (String tblname : tables)
          result += tblname + ", ";
       result = result.substring(0, result.length()-2); //remove final comma
+      for (JoinData join : joins)
+         result += " " + join;
       String predstring = pred.toString();
       if (!predstring.equals(""))
          result += " where " + predstring;
@@ -116,6 +180,11 @@ public class QueryData {
       }
       String sortString = sort.toString();
       result += sortString;
+      if (hasLimit()) {
+         result += " limit " + limit;
+         if (offset > 0)
+            result += " offset " + offset;
+      }
 
       return result;
    }
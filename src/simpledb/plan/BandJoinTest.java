@@ -0,0 +1,100 @@
+package simpledb.plan;
+
+import java.io.File;
+import java.util.*;
+import java.util.function.BiPredicate;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.query.*;
+import simpledb.materialize.BandJoinPlan;
+
+/**
+ * Join events to the time windows that contain them,
+ * with windows that overlap and events on their bounds,
+ * and with one-sided and two-sided bounds of either kind,
+ * written either way round.
+ * Each band join, and the plan the planner chooses for a band
+ * with both bounds, must return exactly the pairs within its bounds.
+ */
+public class BandJoinTest {
+   public static void main(String[] args) {
+      deleteDir(new File("bandjointest"));
+      SimpleDB db = new SimpleDB("bandjointest");
+      Transaction tx = db.newTx();
+      Planner planner = db.planner();
+      planner.executeUpdate("create table W(WId int, Lo int, Hi int)", tx);
+      planner.executeUpdate("create table E(EvId int, Ts int)", tx);
+      Random r = new Random(46);
+      List<int[]> ws = new ArrayList<>(), es = new ArrayList<>();
+      for (int i=0; i<60; i++) {
+         int lo = r.nextInt(1000), hi = lo + r.nextInt(100);
+         planner.executeUpdate("insert into W(WId,Lo,Hi) values(" + i + ", " + lo + ", " + hi + ")", tx);
+         ws.add(new int[] {i, lo, hi});
+      }
+      for (int i=0; i<400; i++) {
+         int ts = (i % 5 == 0) ? ws.get(i % ws.size())[1 + i % 2] : r.nextInt(1100);
+         planner.executeUpdate("insert into E(EvId,Ts) values(" + i + ", " + ts + ")", tx);
+         es.add(new int[] {i, ts});
+      }
+      tx.commit();
+
+      Term[][] bounds = {
+            {term("lo", "<=", "ts"), term("ts", "<", "hi")},
+            {term("ts", ">=", "lo"), term("hi", ">=", "ts")},
+            {term("lo", "<", "ts"), term("ts", "<=", "hi")},
+            {null, term("ts", "<", "lo")},
+            {term("hi", "<", "ts"), null}};
+      List<BiPredicate<int[],int[]>> matches = Arrays.asList(
+            (w, e) -> w[1] <= e[1] && e[1] < w[2],
+            (w, e) -> e[1] >= w[1] && w[2] >= e[1],
+            (w, e) -> w[1] < e[1] && e[1] <= w[2],
+            (w, e) -> e[1] < w[1],
+            (w, e) -> w[2] < e[1]);
+      tx = db.newTx();
+      boolean ok = true;
+      for (int i=0; i<bounds.length; i++) {
+         List<String> expected = new ArrayList<>();
+         for (int[] w : ws)
+            for (int[] e : es)
+               if (matches.get(i).test(w, e))
+                  expected.add(w[0] + " " + e[0]);
+         Collections.sort(expected);
+         Plan band = new BandJoinPlan(tx, new TablePlan(tx, "w", db.mdMgr()),
+               new TablePlan(tx, "e", db.mdMgr()), "ts", bounds[i][0], bounds[i][1]);
+         StringJoiner pred = new StringJoiner(" and ");
+         for (Term t : bounds[i])
+            if (t != null)
+               pred.add(t.toString());
+         List<Plan> plans = new ArrayList<>(Arrays.asList(band));
+         if (bounds[i][0] != null && bounds[i][1] != null)
+            plans.add(planner.createQueryPlan("select wid, evid from w, e where " + pred, tx));
+         for (Plan p : plans) {
+            List<String> found = new ArrayList<>();
+            Scan s = p.open();
+            while (s.next())
+               found.add(s.getInt("wid") + " " + s.getInt("evid"));
+            s.close();
+            Collections.sort(found);
+            if (!found.equals(expected)) {
+               System.out.println(pred + ": " + found.size() + " records instead of "
+                     + expected.size() + " by " + p);
+               ok = false;
+            }
+         }
+      }
+      ok = ok && tx.availableBuffs() == SimpleDB.BUFFER_SIZE;
+      tx.commit();
+      System.out.println(ok ? "band join ok" : "band join FAILED");
+   }
+
+   private static Term term(String lhs, String comparator, String rhs) {
+      return new Term(new Expression(lhs), new Expression(rhs), comparator);
+   }
+
+   private static void deleteDir(File f) {
+      if (f.isDirectory())
+         for (File child : f.listFiles())
+            deleteDir(child);
+      f.delete();
+   }
+}
@@ -0,0 +1,86 @@
+package simpledb.plan;
+
+import java.io.File;
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.query.*;
+import simpledb.metadata.IndexInfo;
+import simpledb.materialize.*;
+import simpledb.index.planner.IndexJoinPlan;
+
+/**
+ * Join two tables on a pair of fields, neither of which
+ * is selective by itself, as hash, merge and index joins
+ * and through the planner, which must join on both fields.
+ * Every join must return exactly the records matching on both.
+ */
+public class CompositeJoinTest {
+   public static void main(String[] args) {
+      deleteDir(new File("compositejointest"));
+      SimpleDB db = new SimpleDB("compositejointest");
+      Transaction tx = db.newTx();
+      Planner planner = db.planner();
+      planner.executeUpdate("create table P(X int, Y varchar(5), PV int)", tx);
+      planner.executeUpdate("create table Q(QX int, QY varchar(5), QV int)", tx);
+      planner.executeUpdate("create index QXY on Q(QX, QY) using btree", tx);
+      Random r = new Random(44);
+      List<int[]> ps = new ArrayList<>(), qs = new ArrayList<>();
+      for (int i=0; i<400; i++) {
+         int x = r.nextInt(10), y = r.nextInt(8);
+         planner.executeUpdate("insert into P(X,Y,PV) values(" + x + ", 'y" + y + "', " + i + ")", tx);
+         ps.add(new int[] {x, y, i});
+      }
+      for (int i=0; i<300; i++) {
+         int x = r.nextInt(10), y = r.nextInt(8);
+         planner.executeUpdate("insert into Q(QX,QY,QV) values(" + x + ", 'y" + y + "', " + i + ")", tx);
+         qs.add(new int[] {x, y, i});
+      }
+      tx.commit();
+      List<String> expected = new ArrayList<>();
+      for (int[] p : ps)
+         for (int[] q : qs)
+            if (p[0] == q[0] && p[1] == q[1])
+               expected.add(p[2] + " " + q[2]);
+      Collections.sort(expected);
+
+      tx = db.newTx();
+      List<String> pflds = Arrays.asList("x", "y"), qflds = Arrays.asList("qx", "qy");
+      IndexInfo ii = db.mdMgr().getIndexInfo("q", tx).get("qx");
+      Plan[] plans = {
+         new HashJoinPlan(tx, table(db, "p", tx), table(db, "q", tx), pflds, qflds, "inner", new Predicate()),
+         new MergeJoinPlan(tx, table(db, "p", tx), table(db, "q", tx), pflds, qflds, "inner", new Predicate()),
+         new IndexJoinPlan(table(db, "p", tx), table(db, "q", tx), ii, pflds, "inner", new Predicate()),
+         planner.createQueryPlan("select pv, qv from p, q where x = qx and qy = y", tx)};
+      boolean ok = true;
+      for (Plan p : plans) {
+         List<String> found = new ArrayList<>();
+         Scan s = p.open();
+         while (s.next())
+            found.add(s.getInt("pv") + " " + s.getInt("qv"));
+         s.close();
+         Collections.sort(found);
+         if (!found.equals(expected)) {
+            System.out.println(found.size() + " records instead of " + expected.size() + " by " + p);
+            ok = false;
+         }
+      }
+      if (plans[3].toString().contains("select")) {
+         System.out.println("the planner joins on a single field: " + plans[3]);
+         ok = false;
+      }
+      tx.commit();
+      System.out.println(ok ? "composite join ok" : "composite join FAILED");
+   }
+
+   private static Plan table(SimpleDB db, String tblname, Transaction tx) {
+      return new TablePlan(tx, tblname, db.mdMgr());
+   }
+
+   private static void deleteDir(File f) {
+      if (f.isDirectory())
+         for (File child : f.listFiles())
+            deleteDir(child);
+      f.delete();
+   }
+}
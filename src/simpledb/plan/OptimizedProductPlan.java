@@ -1,6 +1,8 @@
 package simpledb.plan;
 
+import simpledb.query.Range;
 import simpledb.query.Scan;
+import simpledb.query.Sort;
 import simpledb.record.Schema;
 
 /** A Plan class corresponding to the <i>product</i>
@@ -35,7 +37,27 @@ public class OptimizedProductPlan implements Plan {
       return bestplan.distinctValues(fldname);
    }
 
+   /**
+    * Estimate the fraction of the records whose value of the
+    * field lies in the range, which is the same as in
+    * the chosen product.
+    * @see simpledb.plan.Plan#rangeFraction(java.lang.String, simpledb.query.Range)
+    */
+   public double rangeFraction(String fldname, Range range) {
+      return bestplan.rangeFraction(fldname, range);
+   }
+
    public Schema schema() {
       return bestplan.schema();
    }
+   
+   /**
+    * Return the order of the records of the query.
+    * The order is that of the chosen product.
+    * @see simpledb.plan.Plan#ordering()
+    */
+   public Sort ordering() {
+      return bestplan.ordering();
+   }
+
 }
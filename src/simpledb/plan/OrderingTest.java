@@ -0,0 +1,101 @@
+package simpledb.plan;
+
+import java.io.File;
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.query.*;
+import simpledb.materialize.*;
+
+/**
+ * Order, group and merge join records that a select through
+ * a two-column index or an earlier sort already returns in order.
+ * The plans must not sort those records again, and must
+ * still return the right records in the right order.
+ */
+public class OrderingTest {
+   public static void main(String[] args) {
+      deleteDir(new File("orderingtest"));
+      SimpleDB db = new SimpleDB("orderingtest");
+      Transaction tx = db.newTx();
+      Planner planner = db.planner();
+      planner.executeUpdate("create table T(A int, B int, C int)", tx);
+      planner.executeUpdate("create table U(UA int, C int)", tx);
+      planner.executeUpdate("create index TAB on T(A, B) using btree", tx);
+      Random r = new Random(45);
+      List<int[]> ts = new ArrayList<>();
+      for (int i=0; i<1000; i++) {
+         int a = r.nextInt(50), b = r.nextInt(20);
+         planner.executeUpdate("insert into T(A,B,C) values(" + a + ", " + b + ", " + i + ")", tx);
+         ts.add(new int[] {a, b});
+      }
+      Map<Integer,Integer> us = new HashMap<>();
+      for (int i=0; i<300; i++) {
+         int ua = r.nextInt(60);
+         planner.executeUpdate("insert into U(UA,C) values(" + ua + ", " + i + ")", tx);
+         us.merge(ua, 1, Integer::sum);
+      }
+      tx.commit();
+
+      tx = db.newTx();
+      boolean ok = true;
+      Plan p = planner.createQueryPlan("select a, b from t where a = 17 order by a, b", tx);
+      List<Integer> found = new ArrayList<>();
+      Scan s = p.open();
+      while (s.next())
+         found.add(s.getInt("b"));
+      s.close();
+      List<Integer> expected = new ArrayList<>();
+      for (int[] t : ts)
+         if (t[0] == 17)
+            expected.add(t[1]);
+      Collections.sort(expected);
+      ok = check("order by", p, 0, found.equals(expected)) && ok;
+
+      p = planner.createQueryPlan("select b, count(c) from t where a = 17 group by a, b", tx);
+      found.clear();
+      s = p.open();
+      while (s.next())
+         for (int i=0; i<s.getInt("count(c)"); i++)
+            found.add(s.getInt("b"));
+      s.close();
+      boolean streamed = !p.toString().contains("hash group by");
+      ok = check("group by", p, 0, streamed && found.equals(expected)) && ok;
+
+      Sort sort = new Sort(new Expression("a"), "asc");
+      Plan sorted = new SortPlan(tx, new TablePlan(tx, "t", db.mdMgr()), sort);
+      p = new MergeJoinPlan(tx, sorted, new TablePlan(tx, "u", db.mdMgr()), "a", "ua");
+      int prev = -1, count = 0;
+      boolean inorder = true;
+      s = p.open();
+      while (s.next()) {
+         inorder = inorder && s.getInt("a") >= prev && s.getInt("a") == s.getInt("ua");
+         prev = s.getInt("a");
+         count++;
+      }
+      s.close();
+      int expectedcount = 0;
+      for (int[] t : ts)
+         expectedcount += us.getOrDefault(t[0], 0);
+      ok = check("merge join", p, 2, inorder && count == expectedcount) && ok;
+      tx.commit();
+      System.out.println(ok ? "ordering ok" : "ordering FAILED");
+   }
+
+   private static boolean check(String what, Plan p, int sorts, boolean correct) {
+      int found = p.toString().split("sort by", -1).length - 1;
+      if (found != sorts || !correct) {
+         System.out.println(what + (correct ? "" : " returns the wrong records") + " with "
+               + found + " sorts instead of " + sorts + ": " + p);
+         return false;
+      }
+      return true;
+   }
+
+   private static void deleteDir(File f) {
+      if (f.isDirectory())
+         for (File child : f.listFiles())
+            deleteDir(child);
+      f.delete();
+   }
+}
@@ -0,0 +1,96 @@
+package simpledb.plan;
+
+import java.io.File;
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.query.*;
+
+/**
+ * Aggregate the null fields of the unmatched records of a left join.
+ * Departments without employees must have a null min, max, avg,
+ * sum and percentile, and a zero count and distinct count,
+ * whether the planner chooses the hash or the sort group by.
+ */
+public class OuterJoinAggregateTest {
+   public static void main(String[] args) {
+      deleteDir(new File("outerjointest"));
+      SimpleDB db = new SimpleDB("outerjointest");
+      Transaction tx = db.newTx();
+      Planner planner = db.planner();
+
+      planner.executeUpdate("create table D(DId int, DName varchar(9))", tx);
+      planner.executeUpdate("create table E(EId int, Sal int, Dept int)", tx);
+      int ndepts = 20;
+      for (int d=0; d<ndepts; d++)
+         planner.executeUpdate("insert into D(DId,DName) values(" + d + ", 'dept" + d + "')", tx);
+      Map<String,List<Integer>> sals = new TreeMap<>();
+      for (int d=0; d<ndepts; d++)
+         sals.put("dept" + d, new ArrayList<>());
+      Random r = new Random(43);
+      for (int i=0; i<300; i++) {
+         int d = r.nextInt(ndepts / 2) * 2;   // odd departments stay empty
+         int sal = 100 + r.nextInt(900);
+         planner.executeUpdate("insert into E(EId,Sal,Dept) values(" + i + ", " + sal + ", " + d + ")", tx);
+         sals.get("dept" + d).add(sal);
+      }
+      tx.commit();
+
+      String qry = "select dname, min(sal), max(sal), avg(sal), sum(sal), count(sal), "
+                 + "approx_count_distinct(sal), approx_percentile(sal, 50) "
+                 + "from d left join e on did = dept group by dname";
+      boolean ok = true;
+      int budget = SimpleDB.MEMORY_BUDGET;
+      for (int mem : new int[] {budget, 1}) {
+         SimpleDB.MEMORY_BUDGET = mem;
+         tx = db.newTx();
+         Plan p = planner.createQueryPlan(qry, tx);
+         Scan s = p.open();
+         int groups = 0;
+         while (s.next()) {
+            groups++;
+            List<Integer> vals = sals.get(s.getString("dname"));
+            Constant min = s.getVal("min(sal)"), max = s.getVal("max(sal)");
+            Constant avg = s.getVal("avg(sal)"), sum = s.getVal("sum(sal)");
+            Constant pct = s.getVal("approx_percentile(sal,50)");
+            int count = s.getInt("count(sal)");
+            int distinct = s.getInt("approx_count_distinct(sal)");
+            boolean groupok;
+            if (vals.isEmpty())
+               groupok = min.isNull() && max.isNull() && avg.isNull() && sum.isNull()
+                         && pct.isNull() && count == 0 && distinct == 0;
+            else {
+               int total = 0;
+               for (int v : vals)
+                  total += v;
+               groupok = min.asInt() == Collections.min(vals)
+                         && max.asInt() == Collections.max(vals)
+                         && sum.asInt() == total
+                         && avg.asInt() == total / vals.size()
+                         && count == vals.size()
+                         && !pct.isNull() && distinct > 0;
+            }
+            if (!groupok) {
+               System.out.println("wrong aggregates for " + s.getString("dname") + ": "
+                     + min + " " + max + " " + avg + " " + sum + " " + count + " " + distinct + " " + pct);
+               ok = false;
+            }
+         }
+         s.close();
+         tx.commit();
+         if (groups != ndepts) {
+            System.out.println("expected " + ndepts + " groups, got " + groups);
+            ok = false;
+         }
+      }
+      SimpleDB.MEMORY_BUDGET = budget;
+      System.out.println(ok ? "outer join aggregates ok" : "outer join aggregates FAILED");
+   }
+
+   private static void deleteDir(File f) {
+      if (f.isDirectory())
+         for (File child : f.listFiles())
+            deleteDir(child);
+      f.delete();
+   }
+}
@@ -0,0 +1,165 @@
+package simpledb.plan;
+
+import java.io.File;
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.query.*;
+import simpledb.parse.Parser;
+import simpledb.metadata.IndexInfo;
+import simpledb.materialize.*;
+import simpledb.index.planner.IndexJoinPlan;
+
+/**
+ * Join departments with their employees by left, semi and anti
+ * joins, where half of the departments have no employees and
+ * some employees have no department, as hash, merge and index
+ * joins and through the planner, also with a residual predicate.
+ * The left join is then joined again on the employee field,
+ * which it pads with nulls; a null must never match.
+ */
+public class OuterJoinTest {
+   private static Map<Integer,List<Integer>> emps = new TreeMap<>();
+   private static Map<Integer,Integer> sals = new HashMap<>();
+
+   public static void main(String[] args) {
+      deleteDir(new File("outerjoinstest"));
+      SimpleDB db = new SimpleDB("outerjoinstest");
+      Transaction tx = db.newTx();
+      Planner planner = db.planner();
+      planner.executeUpdate("create table D(DId int, DName varchar(9))", tx);
+      planner.executeUpdate("create table E(EId int, Sal int, Dept int)", tx);
+      planner.executeUpdate("create table B(BEId int, Bonus int)", tx);
+      planner.executeUpdate("create index EDept on E(Dept) using btree", tx);
+      int ndepts = 20;
+      for (int d=0; d<ndepts; d++) {
+         planner.executeUpdate("insert into D(DId,DName) values(" + d + ", 'dept" + d + "')", tx);
+         emps.put(d, new ArrayList<>());
+      }
+      Random r = new Random(43);
+      for (int i=0; i<200; i++) {
+         int d = (i % 10 == 0) ? 100 : r.nextInt(ndepts / 2) * 2;   // odd departments stay empty
+         int sal = 100 + r.nextInt(900);
+         planner.executeUpdate("insert into E(EId,Sal,Dept) values(" + i + ", " + sal + ", " + d + ")", tx);
+         if (d < ndepts)
+            emps.get(d).add(i);
+         sals.put(i, sal);
+      }
+      for (int i=0; i<200; i+=3)
+         planner.executeUpdate("insert into B(BEId,Bonus) values(" + i + ", " + i + ")", tx);
+      tx.commit();
+
+      tx = db.newTx();
+      boolean ok = true;
+      IndexInfo ii = db.mdMgr().getIndexInfo("e", tx).get("dept");
+      for (String type : new String[] {"left", "semi", "anti"}) {
+         for (String residual : new String[] {"", "sal > 500"}) {
+            Predicate pred = residual.isEmpty() ? new Predicate() : new Parser(residual).predicate();
+            List<String> expected = expected(type, residual.isEmpty() ? 0 : 500);
+            Plan[] plans = {
+               new HashJoinPlan(tx, table(db, "d", tx), table(db, "e", tx), "did", "dept", type, pred),
+               new MergeJoinPlan(tx, table(db, "d", tx), table(db, "e", tx), "did", "dept", type, pred),
+               new IndexJoinPlan(table(db, "d", tx), table(db, "e", tx), ii, "did", type, pred)};
+            for (Plan p : plans)
+               ok = check(p, expected, type) && ok;
+            String on = "did = dept" + (residual.isEmpty() ? "" : " and " + residual);
+            String join = type.equals("left") ? "left join" : "left " + type + " join";
+            Plan p = planner.createQueryPlan("select dname" + (type.equals("left") ? ", eid" : "")
+                  + " from d " + join + " e on " + on, tx);
+            ok = check(p, expected, type) && ok;
+         }
+      }
+
+      // join the padded employee field of a left join
+      for (String type : new String[] {"left", "semi", "anti"}) {
+         List<String> expected = new ArrayList<>();
+         for (Map.Entry<Integer,List<Integer>> e : emps.entrySet()) {
+            List<Integer> eids = e.getValue().isEmpty() ? Arrays.asList((Integer) null) : e.getValue();
+            for (Integer eid : eids) {
+               boolean matched = eid != null && eid % 3 == 0;
+               String rec = "dept" + e.getKey() + " " + eid;
+               if (type.equals("left"))
+                  expected.add(rec + " " + (matched ? eid : null));
+               else if (matched == type.equals("semi"))
+                  expected.add(rec);
+            }
+         }
+         Collections.sort(expected);
+         Plan[] plans = {
+            new HashJoinPlan(tx, leftJoin(db, tx), table(db, "b", tx), "eid", "beid", type, new Predicate()),
+            new MergeJoinPlan(tx, leftJoin(db, tx), table(db, "b", tx), "eid", "beid", type, new Predicate())};
+         for (Plan p : plans) {
+            List<String> found = new ArrayList<>();
+            Scan s = p.open();
+            while (s.next())
+               found.add(s.getString("dname") + " " + value(s, "eid")
+                     + (type.equals("left") ? " " + value(s, "bonus") : ""));
+            s.close();
+            Collections.sort(found);
+            if (!found.equals(expected)) {
+               System.out.println(found.size() + " records instead of " + expected.size() + " by " + p);
+               ok = false;
+            }
+         }
+      }
+      ok = ok && tx.availableBuffs() == SimpleDB.BUFFER_SIZE;
+      tx.commit();
+      System.out.println(ok ? "outer joins ok" : "outer joins FAILED");
+   }
+
+   private static List<String> expected(String type, int minsal) {
+      List<String> expected = new ArrayList<>();
+      for (Map.Entry<Integer,List<Integer>> e : emps.entrySet()) {
+         List<Integer> eids = new ArrayList<>();
+         for (int eid : e.getValue())
+            if (sals.get(eid) > minsal)
+               eids.add(eid);
+         String dname = "dept" + e.getKey();
+         if (type.equals("left")) {
+            for (int eid : eids)
+               expected.add(dname + " " + eid);
+            if (eids.isEmpty())
+               expected.add(dname + " null");
+         }
+         else if (eids.isEmpty() == type.equals("anti"))
+            expected.add(dname);
+      }
+      Collections.sort(expected);
+      return expected;
+   }
+
+   private static boolean check(Plan p, List<String> expected, String type) {
+      List<String> found = new ArrayList<>();
+      Scan s = p.open();
+      while (s.next())
+         found.add(s.getString("dname") + (type.equals("left") ? " " + value(s, "eid") : ""));
+      s.close();
+      Collections.sort(found);
+      if (!found.equals(expected)) {
+         System.out.println(found.size() + " records instead of " + expected.size() + " by " + p);
+         return false;
+      }
+      return true;
+   }
+
+   private static Plan leftJoin(SimpleDB db, Transaction tx) {
+      return new HashJoinPlan(tx, table(db, "d", tx), table(db, "e", tx), "did", "dept",
+            "left", new Predicate());
+   }
+
+   private static Plan table(SimpleDB db, String tblname, Transaction tx) {
+      return new TablePlan(tx, tblname, db.mdMgr());
+   }
+
+   private static String value(Scan s, String fldname) {
+      Constant val = s.getVal(fldname);
+      return val.isNull() ? "null" : val.toString();
+   }
+
+   private static void deleteDir(File f) {
+      if (f.isDirectory())
+         for (File child : f.listFiles())
+            deleteDir(child);
+      f.delete();
+   }
+}
@@ -1,6 +1,8 @@
 package simpledb.plan;
 
+import simpledb.query.Range;
 import simpledb.query.Scan;
+import simpledb.query.Sort;
 import simpledb.record.*;
 
 /**
@@ -40,11 +42,31 @@ public interface Plan {
     */
    public int    distinctValues(String fldname);
    
+   /**
+    * Returns an estimate of the fraction of the records
+    * in the query's output table whose value of the
+    * specified field lies in the specified range.
+    * @param fldname the name of a field
+    * @param range the range of values
+    * @return the estimated fraction of output records in the range
+    */
+   public double rangeFraction(String fldname, Range range);
+   
    /**
     * Returns the schema of the query.
     * @return the query's schema
     */
    public Schema schema();
+   
+   /**
+    * Returns the order in which the records of the query
+    * are known to appear, such as the order of a sort or of
+    * a B-tree index, so that a later sort into that order
+    * can be skipped.
+    * The order is empty if nothing is known about it.
+    * @return the order of the query's output records
+    */
+   public Sort   ordering();
 
    /**
     * Returns a string containing the plan
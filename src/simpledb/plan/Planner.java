@@ -55,6 +55,8 @@ public class Planner {
          return uplanner.executeCreateView((CreateViewData)data, tx);
       else if (data instanceof CreateIndexData)
          return uplanner.executeCreateIndex((CreateIndexData)data, tx);
+      else if (data instanceof AnalyzeData)
+         return uplanner.executeAnalyze((AnalyzeData)data, tx);
       else
          return 0;
    }
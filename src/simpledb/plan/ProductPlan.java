@@ -2,7 +2,9 @@ package simpledb.plan;
 
 import simpledb.materialize.MaterializePlan;
 import simpledb.query.ProductScan;
+import simpledb.query.Range;
 import simpledb.query.Scan;
+import simpledb.query.Sort;
 import simpledb.record.Schema;
 
 /** The Plan class corresponding to the <i>product</i>
@@ -68,6 +70,19 @@ public class ProductPlan implements Plan {
       else
          return p2.distinctValues(fldname);
    }
+
+   /**
+    * Estimate the fraction of the join records whose value
+    * of the field lies in the range, which is the same
+    * as in the appropriate underlying query.
+    * @see simpledb.plan.Plan#rangeFraction(java.lang.String, simpledb.query.Range)
+    */
+   public double rangeFraction(String fldname, Range range) {
+      if (p1.schema().hasField(fldname))
+         return p1.rangeFraction(fldname, range);
+      else
+         return p2.rangeFraction(fldname, range);
+   }
    
    /**
     * Returns the schema of the product,
@@ -77,6 +92,17 @@ public class ProductPlan implements Plan {
    public Schema schema() {
       return schema;
    }
+   
+   /**
+    * Return the order of the records of the query.
+    * The product reads the RHS once for each LHS record,
+    * so its records are in the order of the LHS.
+    * @see simpledb.plan.Plan#ordering()
+    */
+   public Sort ordering() {
+      return p1.ordering();
+   }
+
 
    public String toString() {
       return String.format(" {%s} cross product {%s} ", p1.toString(), p2.toString());}
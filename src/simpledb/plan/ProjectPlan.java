@@ -62,6 +62,16 @@ public class ProjectPlan implements Plan {
       return p.distinctValues(fldname);
    }
 
+   /**
+    * Estimate the fraction of the records whose value of the
+    * field lies in the range, which is the same as in
+    * the underlying query.
+    * @see simpledb.plan.Plan#rangeFraction(java.lang.String, simpledb.query.Range)
+    */
+   public double rangeFraction(String fldname, Range range) {
+      return p.rangeFraction(fldname, range);
+   }
+
    /**
     * Returns the schema of the projection,
     * which is taken from the field list.
@@ -70,6 +80,17 @@ public class ProjectPlan implements Plan {
    public Schema schema() {
       return schema;
    }
+   
+   /**
+    * Return the order of the records of the query.
+    * The order is that of the underlying query,
+    * as far as its sort fields are projected.
+    * @see simpledb.plan.Plan#ordering()
+    */
+   public Sort ordering() {
+      return p.ordering().restrictTo(schema);
+   }
+
 
    public String toString() {return String.format("Project(%s)[%s]", schema.fields(), p.toString());}
 }
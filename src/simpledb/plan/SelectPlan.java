@@ -1,8 +1,10 @@
 package simpledb.plan;
 
 import simpledb.query.Predicate;
+import simpledb.query.Range;
 import simpledb.query.Scan;
 import simpledb.query.SelectScan;
+import simpledb.query.Sort;
 import simpledb.record.Schema;
 
 /** The Plan class corresponding to the <i>select</i>
@@ -74,6 +76,25 @@ public class SelectPlan implements Plan {
             return p.distinctValues(fldname);
       }
    }
+
+   /**
+    * Estimates the fraction of the selected records whose
+    * value of the field lies in the range.
+    * If the predicate restricts the field to a range of its own,
+    * the fraction is that of the intersection of the two ranges
+    * among the records of the predicate's range in the underlying query.
+    * Otherwise, it is the fraction in the underlying query.
+    * @see simpledb.plan.Plan#rangeFraction(java.lang.String, simpledb.query.Range)
+    */
+   public double rangeFraction(String fldname, Range range) {
+      Range selected = pred.rangeOn(fldname);
+      if (selected == null)
+         return p.rangeFraction(fldname, range);
+      double fraction = p.rangeFraction(fldname, selected);
+      if (fraction <= 0)
+         return 0;
+      return Math.min(1, p.rangeFraction(fldname, range.intersect(selected)) / fraction);
+   }
    
    /**
     * Returns the schema of the selection,
@@ -83,6 +104,16 @@ public class SelectPlan implements Plan {
    public Schema schema() {
       return p.schema();
    }
+   
+   /**
+    * Return the order of the records of the query.
+    * Selection does not change the order of the records.
+    * @see simpledb.plan.Plan#ordering()
+    */
+   public Sort ordering() {
+      return p.ordering();
+   }
+
 
    public String toString(){ return String.format("select(%s)[%s]", pred.toString(), p.toString()); }
 }
@@ -2,7 +2,9 @@ package simpledb.plan;
 
 import simpledb.tx.Transaction;
 import simpledb.metadata.*;
+import simpledb.query.Range;
 import simpledb.query.Scan;
+import simpledb.query.Sort;
 import simpledb.record.*;
 
 /** The Plan class corresponding to a table.
@@ -61,6 +63,16 @@ public class TablePlan implements Plan {
    public int distinctValues(String fldname) {
       return si.distinctValues(fldname);
    }
+
+   /**
+    * Estimates the fraction of the records whose value of the
+    * field lies in the range, which is obtainable from
+    * the statistics manager.
+    * @see simpledb.plan.Plan#rangeFraction(java.lang.String, simpledb.query.Range)
+    */
+   public double rangeFraction(String fldname, Range range) {
+      return si.rangeFraction(fldname, range);
+   }
    
    /**
     * Determines the schema of the table,
@@ -70,6 +82,16 @@ public class TablePlan implements Plan {
    public Schema schema() {
       return layout.schema();
    }
+   
+   /**
+    * Return the order of the records of the query.
+    * The records of a table are in no particular order.
+    * @see simpledb.plan.Plan#ordering()
+    */
+   public Sort ordering() {
+      return new Sort();
+   }
+
 
    public String toString() { return "Scan " + tblname;}
 }
@@ -0,0 +1,76 @@
+package simpledb.plan;
+
+import java.io.File;
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.query.*;
+import simpledb.materialize.*;
+
+/**
+ * Run an ordered query with a limit and an offset,
+ * once with the records kept in memory by a top-N plan
+ * and once with a memory budget too small for them,
+ * so that the plan sorts its input instead.
+ * The cost of the plan must then be that of the sort.
+ */
+public class TopNTest {
+   public static void main(String[] args) {
+      deleteDir(new File("topntest"));
+      SimpleDB db = new SimpleDB("topntest");
+      Transaction tx = db.newTx();
+      Planner planner = db.planner();
+      planner.executeUpdate("create table T(A int, B varchar(9))", tx);
+      List<String> expected = new ArrayList<>();
+      Random r = new Random(34);
+      for (int i=0; i<500; i++) {
+         int a = r.nextInt(100);
+         planner.executeUpdate("insert into T(A,B) values(" + a + ", 'b" + i + "')", tx);
+         expected.add(String.format("%03d b%d", 999 - a, i));
+      }
+      tx.commit();
+      Collections.sort(expected, (x, y) -> {
+         int c = x.substring(0, 3).compareTo(y.substring(0, 3));
+         return c != 0 ? c : x.substring(4).compareTo(y.substring(4));
+      });
+      expected = expected.subList(5, 30);
+
+      String qry = "select A, B from T order by A desc, B limit 25 offset 5";
+      boolean ok = true;
+      int budget = SimpleDB.MEMORY_BUDGET;
+      for (int mem : new int[] {budget, 100}) {
+         SimpleDB.MEMORY_BUDGET = mem;
+         tx = db.newTx();
+         Plan p = planner.createQueryPlan(qry, tx);
+         Scan s = p.open();
+         List<String> found = new ArrayList<>();
+         while (s.next())
+            found.add(String.format("%03d %s", 999 - s.getInt("a"), s.getString("b")));
+         s.close();
+         if (!found.equals(expected)) {
+            System.out.println("wrong records with a budget of " + mem + ": " + found);
+            ok = false;
+         }
+
+         Sort sort = new Sort(new Expression("a"), "desc");
+         Plan tp = new TablePlan(tx, "t", db.mdMgr());
+         int topncost = new TopNPlan(tx, tp, sort, 30).blocksAccessed();
+         int sortcost = new SortPlan(tx, tp, sort).blocksAccessed();
+         int expectedcost = (mem == budget) ? tp.blocksAccessed() : sortcost;
+         if (topncost != expectedcost) {
+            System.out.println("top-N cost " + topncost + " instead of " + expectedcost);
+            ok = false;
+         }
+         tx.commit();
+      }
+      SimpleDB.MEMORY_BUDGET = budget;
+      System.out.println(ok ? "top-N ok" : "top-N FAILED");
+   }
+
+   private static void deleteDir(File f) {
+      if (f.isDirectory())
+         for (File child : f.listFiles())
+            deleteDir(child);
+      f.delete();
+   }
+}
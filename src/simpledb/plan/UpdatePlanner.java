@@ -63,4 +63,13 @@ public interface UpdatePlanner {
     * @return the number of affected records
     */
    public int executeCreateIndex(CreateIndexData data, Transaction tx);
+   
+   /**
+    * Executes the specified analyze statement, and
+    * returns the number of records examined.
+    * @param data the parsed representation of the analyze statement
+    * @param tx the calling transaction
+    * @return the number of records examined
+    */
+   public int executeAnalyze(AnalyzeData data, Transaction tx);
 }
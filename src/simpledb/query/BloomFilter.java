@@ -0,0 +1,65 @@
+package simpledb.query;
+
+/**
+ * A Bloom filter over a set of constants.
+ * A constant that was added is always reported as possibly
+ * present; a constant that was not added is reported as
+ * possibly present with a small probability, so that a
+ * filter can discard records that cannot match a join.
+ * The filter uses about ten bits per expected constant
+ * and seven hash functions, giving about 1% false positives.
+ */
+public class BloomFilter {
+   private static final int BITS_PER_KEY = 10;
+   private static final int NUM_HASHES = 7;
+   private long[] bits;
+   private int numbits;
+
+   /**
+    * Create an empty filter sized for the specified
+    * number of constants.
+    * @param expected the expected number of constants
+    */
+   public BloomFilter(int expected) {
+      long n = Math.max(64, (long) expected * BITS_PER_KEY);
+      numbits = (int) Math.min(n, Integer.MAX_VALUE - 63);
+      bits = new long[(numbits + 63) / 64];
+   }
+
+   /**
+    * Remove all constants from the filter.
+    */
+   public void clear() {
+      java.util.Arrays.fill(bits, 0);
+   }
+
+   /**
+    * Add the constant to the filter.
+    * @param val the constant
+    */
+   public void add(Constant val) {
+      long h = val.hash64();
+      int h1 = (int) h, h2 = (int) (h >>> 32);
+      for (int i=0; i<NUM_HASHES; i++) {
+         int bit = Math.floorMod(h1 + i*h2, numbits);
+         bits[bit >>> 6] |= 1L << bit;
+      }
+   }
+
+   /**
+    * Return false if the constant was certainly not added
+    * to the filter, and true if it may have been.
+    * @param val the constant
+    * @return true if the constant may be in the filter
+    */
+   public boolean mightContain(Constant val) {
+      long h = val.hash64();
+      int h1 = (int) h, h2 = (int) (h >>> 32);
+      for (int i=0; i<NUM_HASHES; i++) {
+         int bit = Math.floorMod(h1 + i*h2, numbits);
+         if ((bits[bit >>> 6] & (1L << bit)) == 0)
+            return false;
+      }
+      return true;
+   }
+}
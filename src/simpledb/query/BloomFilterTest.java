@@ -0,0 +1,38 @@
+package simpledb.query;
+
+/**
+ * Add integer and string constants to a Bloom filter,
+ * and then look up those constants and others.
+ * Every added constant must be reported as possibly present,
+ * and the others only about as often as the filter promises.
+ */
+public class BloomFilterTest {
+   public static void main(String[] args) {
+      int n = 10000;
+      BloomFilter filter = new BloomFilter(2 * n);
+      for (int i=0; i<n; i++) {
+         filter.add(new Constant(3 * i));
+         filter.add(new Constant("s" + i));
+      }
+      boolean ok = true;
+      for (int i=0; i<n; i++)
+         if (!filter.mightContain(new Constant(3 * i)) || !filter.mightContain(new Constant("s" + i))) {
+            System.out.println("constant " + i + " added but not found");
+            ok = false;
+         }
+      int falsepos = 0;
+      for (int i=0; i<n; i++) {
+         if (filter.mightContain(new Constant(3 * i + 1)))
+            falsepos++;
+         if (filter.mightContain(new Constant("t" + i)))
+            falsepos++;
+      }
+      double rate = falsepos / (2.0 * n);
+      System.out.println("false positive rate " + rate);
+      ok = ok && rate < 0.03;
+
+      filter.clear();
+      ok = ok && !filter.mightContain(new Constant(0));
+      System.out.println(ok ? "bloom filter ok" : "bloom filter FAILED");
+   }
+}
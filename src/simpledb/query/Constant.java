@@ -1,12 +1,28 @@
 package simpledb.query;
 
+import java.util.*;
+
 /**
  * The class that denotes values stored in the database.
+ * A composite constant is a list of constants,
+ * used as the search key of a multi-column index;
+ * composite constants are compared lexicographically.
+ * The null constant stands for a missing value, such as
+ * the fields of an unmatched record in an outer join;
+ * it equals only itself and sorts before every other value.
  * @author Edward Sciore
  */
 public class Constant implements Comparable<Constant> {
+   /**
+    * The null constant.
+    */
+   public static final Constant NULL = new Constant();
    private Integer ival = null;
    private String  sval = null;
+   private List<Constant> vals = null;
+   
+   private Constant() {
+   }
    
    public Constant(Integer ival) {
       this.ival = ival;
@@ -16,28 +32,95 @@ public class Constant implements Comparable<Constant> {
       this.sval = sval;
    }
    
+   public Constant(List<Constant> vals) {
+      this.vals = vals;
+   }
+   
+   /**
+    * Return the integer value, or 0 for the null constant
+    * (as JDBC does for a null value).
+    */
    public int asInt() {
-      return ival;
+      return (ival != null) ? ival : 0;
    }
    
    public String asString() {
       return sval;
    }
    
+   public List<Constant> asList() {
+      return vals;
+   }
+   
+   public boolean isComposite() {
+      return vals != null;
+   }
+   
+   public boolean isNull() {
+      return this == NULL;
+   }
+   
    public boolean equals(Object obj) {
       Constant c = (Constant) obj;
+      if (isNull() || c.isNull())
+         return this == c;
+      if (vals != null)
+         return vals.equals(c.vals);
       return (ival != null) ? ival.equals(c.ival) : sval.equals(c.sval);
    }
    
+   /**
+    * Compare composite constants column by column;
+    * if one is a prefix of the other, the shorter one is smaller.
+    */
    public int compareTo(Constant c) {
+      if (isNull() || c.isNull())
+         return Boolean.compare(!isNull(), !c.isNull());
+      if (vals != null) {
+         int n = Math.min(vals.size(), c.vals.size());
+         for (int i=0; i<n; i++) {
+            int cmp = vals.get(i).compareTo(c.vals.get(i));
+            if (cmp != 0)
+               return cmp;
+         }
+         return Integer.compare(vals.size(), c.vals.size());
+      }
       return (ival != null) ? ival.compareTo(c.ival) : sval.compareTo(c.sval);
    }
    
    public int hashCode() {
+      if (isNull())
+         return 0;
+      if (vals != null)
+         return vals.hashCode();
       return (ival != null) ? ival.hashCode() : sval.hashCode();
    }
+
+   /**
+    * Return a 64-bit hash of the constant, made by spreading
+    * its hash code with the finalizer of MurmurHash3,
+    * for the structures that need many well-mixed bits.
+    * @return the 64-bit hash of the constant
+    */
+   public long hash64() {
+      long h = hashCode();
+      h ^= h >>> 33;
+      h *= 0xff51afd7ed558ccdL;
+      h ^= h >>> 33;
+      h *= 0xc4ceb9fe1a85ec53L;
+      h ^= h >>> 33;
+      return h;
+   }
    
    public String toString() {
+      if (isNull())
+         return "null";
+      if (vals != null) {
+         StringJoiner sj = new StringJoiner(", ", "(", ")");
+         for (Constant c : vals)
+            sj.add(c.toString());
+         return sj.toString();
+      }
       return (ival != null) ? ival.toString() : sval.toString();
    }   
 }
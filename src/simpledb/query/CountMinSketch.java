@@ -0,0 +1,65 @@
+package simpledb.query;
+
+/**
+ * A count-min sketch, which estimates how often each
+ * constant has been added, in a fixed amount of space.
+ * Each constant is counted in one cell of each of four rows;
+ * its estimate is the smallest of those cells, which is never
+ * less than the true count and exceeds it by at most about
+ * 2/width of the total count with high probability.
+ * The sketch is used to find the frequent values of a stream.
+ */
+public class CountMinSketch {
+   private static final int DEPTH = 4;
+   private int[] counts;
+   private int width;
+
+   /**
+    * Create an empty sketch having the specified number of
+    * cells in each row.
+    * @param width the number of cells per row
+    */
+   public CountMinSketch(int width) {
+      this.width = Math.max(16, width);
+      counts = new int[DEPTH * this.width];
+   }
+
+   /**
+    * Reset every count to zero.
+    */
+   public void clear() {
+      java.util.Arrays.fill(counts, 0);
+   }
+
+   /**
+    * Count one occurrence of the constant,
+    * and return its new estimated count.
+    * @param val the constant
+    * @return the estimated number of times the constant was added
+    */
+   public int add(Constant val) {
+      long h = val.hash64();
+      int h1 = (int) h, h2 = (int) (h >>> 32);
+      int min = Integer.MAX_VALUE;
+      for (int i=0; i<DEPTH; i++) {
+         int cell = i*width + Math.floorMod(h1 + i*h2, width);
+         counts[cell]++;
+         min = Math.min(min, counts[cell]);
+      }
+      return min;
+   }
+
+   /**
+    * Return the estimated number of times the constant was added.
+    * @param val the constant
+    * @return the estimated count
+    */
+   public int estimate(Constant val) {
+      long h = val.hash64();
+      int h1 = (int) h, h2 = (int) (h >>> 32);
+      int min = Integer.MAX_VALUE;
+      for (int i=0; i<DEPTH; i++)
+         min = Math.min(min, counts[i*width + Math.floorMod(h1 + i*h2, width)]);
+      return min;
+   }
+}
@@ -53,14 +53,24 @@ public class Predicate {
     * reduces the number of records output by a query.
     * For example if the reduction factor is 2, then the
     * predicate cuts the size of the output in half.
+    * The terms comparing a field with constants are taken
+    * together, as the range of the field that they allow,
+    * so that "F &gt; 3 and F &lt; 7" is estimated as one range.
     * @param p the query's plan
     * @return the integer reduction factor.
     */ 
    public int reductionFactor(Plan p) {
-      int factor = 1;
-      for (Term t : terms)
-         factor *= t.reductionFactor(p);
-      return factor;
+      double factor = 1;
+      Set<String> ranged = new HashSet<>();
+      for (Term t : terms) {
+         List<String> flds = t.fields();
+         String comparator = (flds.size() == 1) ? t.comparatorOn(flds.get(0)) : null;
+         if (comparator == null || comparator.equals("!=") || comparator.equals("<>"))
+            factor *= t.reductionFactor(p);
+         else if (ranged.add(flds.get(0)))
+            factor *= Term.reductionFactor(p.rangeFraction(flds.get(0), rangeOn(flds.get(0))));
+      }
+      return (int) Math.min(Integer.MAX_VALUE, factor);
    }
 
    /**
@@ -103,6 +113,89 @@ public class Predicate {
          return result;
    }
 
+   /**
+    * Return the subpredicate consisting of the terms
+    * that do not apply to the specified schema.
+    * @param sch the schema
+    * @return the subpredicate not applying to the schema, or null if there is none
+    */
+   public Predicate outsideSubPred(Schema sch) {
+      Predicate result = new Predicate();
+      for (Term t : terms)
+         if (!t.appliesTo(sch))
+            result.terms.add(t);
+      if (result.terms.size() == 0)
+         return null;
+      else
+         return result;
+   }
+
+   /**
+    * Return the terms of the form "F1=F2" where one field
+    * is in the first schema and the other in the second.
+    * These are the terms on which a hash, merge or index join
+    * of records of the two schemas can match.
+    * @param sch1 the first schema
+    * @param sch2 the second schema
+    * @return the equi-join terms, which may be empty
+    */
+   public List<Term> equiJoinTerms(Schema sch1, Schema sch2) {
+      List<Term> result = new ArrayList<>();
+      for (Term t : terms) {
+         List<String> flds = t.fields();
+         if (!"=".equals(t.getComparator()) || flds.size() != 2)
+            continue;
+         String f1 = flds.get(0), f2 = flds.get(1);
+         if ((sch1.hasField(f1) && sch2.hasField(f2)) || (sch1.hasField(f2) && sch2.hasField(f1)))
+            result.add(t);
+      }
+      return result;
+   }
+
+   /**
+    * Return the terms of the form "F1 op F2", where op is one of
+    * &lt;, &lt;=, &gt; or &gt;=, and one field is in the first schema
+    * and the other in the second.
+    * These are the terms that can bound a band join.
+    * @param sch1 the first schema
+    * @param sch2 the second schema
+    * @return the band join terms, which may be empty
+    */
+   public List<Term> bandJoinTerms(Schema sch1, Schema sch2) {
+      List<Term> result = new ArrayList<>();
+      for (Term t : terms) {
+         List<String> flds = t.fields();
+         if (!Arrays.asList("<", "<=", ">", ">=").contains(t.getComparator()) || flds.size() != 2)
+            continue;
+         String f1 = flds.get(0), f2 = flds.get(1);
+         if ((sch1.hasField(f1) && sch2.hasField(f2)) || (sch1.hasField(f2) && sch2.hasField(f1)))
+            result.add(t);
+      }
+      return result;
+   }
+
+   /**
+    * Return the predicate consisting of the terms
+    * of this predicate other than the specified one.
+    * @param term the term to leave out
+    * @return the remaining predicate, which may be empty
+    */
+   public Predicate without(Term term) {
+      Predicate result = new Predicate();
+      for (Term t : terms)
+         if (t != term)
+            result.terms.add(t);
+      return result;
+   }
+
+   /**
+    * Return true if the predicate has no terms.
+    * @return true if the predicate is always true
+    */
+   public boolean isEmpty() {
+      return terms.isEmpty();
+   }
+
    /**
     * Determine if there is a term of the form "F=c"
     * where F is the specified field and c is some constant.
@@ -137,6 +230,83 @@ public class Predicate {
       return null;
    }
 
+   /**
+    * Return the range of values of the specified field
+    * allowed by the terms comparing the field with a constant.
+    * If there are no such terms, the method returns null.
+    * @param fldname the name of the field
+    * @return the range of the field, or null
+    */
+   public Range rangeOn(String fldname) {
+      Range range = null;
+      for (Term t : terms) {
+         String comparator = t.comparatorOn(fldname);
+         if (comparator == null || comparator.equals("!=") || comparator.equals("<>"))
+            continue;
+         if (range == null)
+            range = new Range(null, false, null, false);
+         range.restrict(comparator, t.constantOperand());
+      }
+      return range;
+   }
+
+   /**
+    * Return the range of composite values of the specified fields
+    * allowed by the predicate: the values of a prefix of the
+    * fields that are equated with constants, followed by the
+    * range of the next field, if any.
+    * If the first field is neither equated with a constant
+    * nor restricted to a range, the method returns null.
+    * @param fldnames the names of the fields, in key order
+    * @return the composite range of the fields, or null
+    */
+   public Range rangeOn(List<String> fldnames) {
+      List<Constant> prefix = new ArrayList<>();
+      Range trailing = null;
+      for (String fldname : fldnames) {
+         Constant val = equatesWithConstant(fldname);
+         if (val == null) {
+            trailing = rangeOn(fldname);
+            break;
+         }
+         prefix.add(val);
+      }
+      if (prefix.isEmpty() && trailing == null)
+         return null;
+      Constant low = null, high = null;
+      boolean lowinclusive = true, highinclusive = true;
+      if (trailing != null && trailing.low() != null) {
+         low = extend(prefix, trailing.low());
+         lowinclusive = trailing.lowInclusive();
+      }
+      else if (!prefix.isEmpty())
+         low = new Constant(prefix);
+      if (trailing != null && trailing.high() != null) {
+         high = extend(prefix, trailing.high());
+         highinclusive = trailing.highInclusive();
+      }
+      else if (!prefix.isEmpty())
+         high = new Constant(prefix);
+      return new Range(low, lowinclusive, high, highinclusive);
+   }
+
+   private static Constant extend(List<Constant> prefix, Constant val) {
+      List<Constant> vals = new ArrayList<>(prefix);
+      vals.add(val);
+      return new Constant(vals);
+   }
+
+   /**
+    * Return the names of the fields mentioned in the predicate.
+    * @return the names of the fields of all terms
+    */
+   public Set<String> fields() {
+      Set<String> flds = new HashSet<>();
+      for (Term t : terms)
+         flds.addAll(t.fields());
+      return flds;
+   }
+
    /**
     * Determine if there is a term of the form "F1=F2"
     * where F1 is the specified field and F2 is another field.
@@ -0,0 +1,210 @@
+package simpledb.query;
+
+import java.util.*;
+
+/**
+ * A range of constants, as described by the terms of a
+ * predicate that compare a field with a constant.
+ * Either bound may be null, meaning that the range
+ * is unbounded on that side.
+ * The bounds of a range of composite constants may be
+ * shorter than the constants in the range, in which case
+ * only that prefix of each constant is compared with the bound.
+ */
+public class Range {
+   private Constant low, high;
+   private boolean lowinclusive, highinclusive;
+
+   /**
+    * Create a range having the specified bounds.
+    * @param low the lower bound, or null if none
+    * @param lowinclusive true if the lower bound is in the range
+    * @param high the upper bound, or null if none
+    * @param highinclusive true if the upper bound is in the range
+    */
+   public Range(Constant low, boolean lowinclusive, Constant high, boolean highinclusive) {
+      this.low = low;
+      this.lowinclusive = lowinclusive;
+      this.high = high;
+      this.highinclusive = highinclusive;
+   }
+
+   /**
+    * Return the lower bound of the range, or null if there is none.
+    * @return the lower bound
+    */
+   public Constant low() {
+      return low;
+   }
+
+   /**
+    * Return the upper bound of the range, or null if there is none.
+    * @return the upper bound
+    */
+   public Constant high() {
+      return high;
+   }
+
+   /**
+    * Return true if the lower bound is in the range.
+    * @return true if the lower bound is inclusive
+    */
+   public boolean lowInclusive() {
+      return lowinclusive;
+   }
+
+   /**
+    * Return true if the upper bound is in the range.
+    * @return true if the upper bound is inclusive
+    */
+   public boolean highInclusive() {
+      return highinclusive;
+   }
+
+   /**
+    * Return true if the range has both a lower and an upper bound.
+    * @return true if the range is bounded on both sides
+    */
+   public boolean isBounded() {
+      return low != null && high != null;
+   }
+
+   /**
+    * Return true if the range holds a single value.
+    * @return true if both bounds are the same inclusive value
+    */
+   public boolean isEquality() {
+      return isBounded() && lowinclusive && highinclusive && low.equals(high);
+   }
+
+   /**
+    * Return true if the specified value satisfies the lower bound.
+    * @param val the value
+    * @return true if the value is not below the range
+    */
+   public boolean isAboveLow(Constant val) {
+      if (low == null)
+         return true;
+      int cmp = compare(val, low);
+      return cmp > 0 || (cmp == 0 && lowinclusive);
+   }
+
+   /**
+    * Return true if the specified value satisfies the upper bound.
+    * @param val the value
+    * @return true if the value is not above the range
+    */
+   public boolean isBelowHigh(Constant val) {
+      if (high == null)
+         return true;
+      int cmp = compare(val, high);
+      return cmp < 0 || (cmp == 0 && highinclusive);
+   }
+
+   /**
+    * Return true if the specified value lies in the range.
+    * @param val the value
+    * @return true if the value is in the range
+    */
+   public boolean contains(Constant val) {
+      return isAboveLow(val) && isBelowHigh(val);
+   }
+
+   /**
+    * Narrow the range by the bound described by the
+    * specified comparator and constant,
+    * as in the term "F comparator val".
+    * Comparators that do not describe a bound are ignored.
+    * @param comparator the comparator
+    * @param val the constant
+    */
+   public void restrict(String comparator, Constant val) {
+      switch (comparator) {
+         case "=":
+            restrictLow(val, true);
+            restrictHigh(val, true);
+            break;
+         case ">":
+            restrictLow(val, false);
+            break;
+         case ">=":
+            restrictLow(val, true);
+            break;
+         case "<":
+            restrictHigh(val, false);
+            break;
+         case "<=":
+            restrictHigh(val, true);
+            break;
+         default:
+            break;
+      }
+   }
+
+   /**
+    * Return the range of the values lying in both this range
+    * and the specified one.
+    * @param other the other range
+    * @return the intersection of the two ranges
+    */
+   public Range intersect(Range other) {
+      Range result = new Range(low, lowinclusive, high, highinclusive);
+      if (other.low != null)
+         result.restrictLow(other.low, other.lowinclusive);
+      if (other.high != null)
+         result.restrictHigh(other.high, other.highinclusive);
+      return result;
+   }
+
+   /**
+    * Estimate the fraction of values lying in the range
+    * when nothing is known about their distribution,
+    * using the customary guesses of 1/3 for a range
+    * bounded on one side and 1/4 for a range bounded on both.
+    * A single value selects 1/distinctvalues of the values,
+    * and an unbounded range selects all of them.
+    * @param distinctvalues the number of distinct values
+    * @return the estimated fraction of values in the range
+    */
+   public double guessFraction(int distinctvalues) {
+      if (isEquality())
+         return 1.0 / Math.max(1, distinctvalues);
+      else if (isBounded())
+         return 0.25;
+      else if (low == null && high == null)
+         return 1.0;
+      else
+         return 1.0 / 3;
+   }
+
+   private void restrictLow(Constant val, boolean inclusive) {
+      int cmp = (low == null) ? 1 : val.compareTo(low);
+      if (cmp > 0 || (cmp == 0 && !inclusive)) {
+         low = val;
+         lowinclusive = inclusive;
+      }
+   }
+
+   private void restrictHigh(Constant val, boolean inclusive) {
+      int cmp = (high == null) ? -1 : val.compareTo(high);
+      if (cmp < 0 || (cmp == 0 && !inclusive)) {
+         high = val;
+         highinclusive = inclusive;
+      }
+   }
+
+   private static int compare(Constant val, Constant bound) {
+      if (bound.isComposite() && val.isComposite()
+            && bound.asList().size() < val.asList().size()) {
+         List<Constant> prefix = val.asList().subList(0, bound.asList().size());
+         return new Constant(prefix).compareTo(bound);
+      }
+      return val.compareTo(bound);
+   }
+
+   public String toString() {
+      String lo = (low == null) ? "(-inf" : (lowinclusive ? "[" : "(") + low;
+      String hi = (high == null) ? "+inf)" : high + (highinclusive ? "]" : ")");
+      return lo + ", " + hi;
+   }
+}
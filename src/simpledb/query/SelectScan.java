@@ -1,5 +1,6 @@
 package simpledb.query;
 
+import java.util.*;
 import simpledb.record.*;
 
 /**
@@ -12,6 +13,7 @@ import simpledb.record.*;
 public class SelectScan implements UpdateScan {
 	private Scan s;
 	private Predicate pred;
+	private Map<List<String>,BloomFilter> filters = new LinkedHashMap<>();
 
 	/**
 	 * Create a select scan having the specified underlying
@@ -32,12 +34,50 @@ public class SelectScan implements UpdateScan {
 
 	public boolean next() {
 		while (s.next()) {
-			if (pred.isSatisfied(s))
+			if (passesFilters() && pred.isSatisfied(s))
 				return true;
 		}
 		return false;
 	}
 
+	/**
+	 * Add a Bloom filter on the specified field, replacing any
+	 * previous filter on it.  Records whose value of the field is
+	 * not in the filter are skipped before the predicate is tested.
+	 * A hash join uses this to discard probe records that cannot match.
+	 * @param fldname the name of the field
+	 * @param filter the filter of values that may match
+	 */
+	public void setFilter(String fldname, BloomFilter filter) {
+		setFilter(Arrays.asList(fldname), filter);
+	}
+
+	/**
+	 * Add a Bloom filter on the composite value of the specified
+	 * fields, as for a hash join on several fields.
+	 * @param fldnames the names of the fields
+	 * @param filter the filter of composite values that may match
+	 */
+	public void setFilter(List<String> fldnames, BloomFilter filter) {
+		filters.put(fldnames, filter);
+	}
+
+	private boolean passesFilters() {
+		for (Map.Entry<List<String>,BloomFilter> e : filters.entrySet())
+			if (!e.getValue().mightContain(filterValue(e.getKey())))
+				return false;
+		return true;
+	}
+
+	private Constant filterValue(List<String> fldnames) {
+		if (fldnames.size() == 1)
+			return s.getVal(fldnames.get(0));
+		List<Constant> vals = new ArrayList<>(fldnames.size());
+		for (String fldname : fldnames)
+			vals.add(s.getVal(fldname));
+		return new Constant(vals);
+	}
+
 	public int getInt(String fldname) {
 		return s.getInt(fldname);
 	}
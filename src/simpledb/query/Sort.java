@@ -74,6 +74,56 @@ public class Sort {
 //        return sortType;
 //    }
 
+    /**
+     * Return the sort on the specified fields,
+     * each in ascending order.
+     * @param fldnames the names of the fields
+     * @return the ascending sort on the fields
+     */
+    public static Sort ascending(List<String> fldnames) {
+        List<Expression> exprs = new ArrayList<>();
+        List<String> types = new ArrayList<>();
+        for (String fldname : fldnames) {
+            exprs.add(new Expression(fldname));
+            types.add("asc");
+        }
+        return new Sort(exprs, types);
+    }
+
+    /**
+     * Return true if records in this order are also in the
+     * specified order, which is so if the specified sort is
+     * a prefix of this one.
+     * Every order satisfies the empty sort.
+     * @param sort the required order
+     * @return true if this order satisfies the required order
+     */
+    public boolean satisfies(Sort sort) {
+        if (sort.flds.size() > flds.size())
+            return false;
+        for (int i = 0; i < sort.flds.size(); i++)
+            if (!sort.flds.get(i).toString().equals(flds.get(i).toString())
+                    || !sort.sortTypes.get(i).equals(sortTypes.get(i)))
+                return false;
+        return true;
+    }
+
+    /**
+     * Return the longest prefix of this sort whose fields are
+     * in the specified schema, which is the order that remains
+     * when the records are projected on the schema.
+     * @param sch the schema
+     * @return the part of the sort that applies to the schema
+     */
+    public Sort restrictTo(Schema sch) {
+        int n = 0;
+        while (n < flds.size() && flds.get(n).appliesTo(sch))
+            n++;
+        if (n == flds.size())
+            return this;
+        return new Sort(new ArrayList<>(flds.subList(0, n)), new ArrayList<>(sortTypes.subList(0, n)));
+    }
+
     public List<Expression> getFlds(){
         return flds;
     }
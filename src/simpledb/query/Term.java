@@ -40,6 +40,10 @@ public class Term {
 
       Constant rhsval = rhs.evaluate(s);
 
+      // a comparison with a null value is never true
+      if (lhsval.isNull() || rhsval.isNull())
+         return false;
+
       switch(comparator){
          case("<"):
             return lhsval.compareTo(rhsval) < 0;
@@ -64,6 +68,10 @@ public class Term {
     * the number of records output by a query.
     * For example if the reduction factor is 2, then the
     * term cuts the size of the output in half.
+    * A term comparing a field with a constant selects the
+    * plan's estimated fraction of the records in the range
+    * of the comparison; an inequality such as "F != c"
+    * selects the records not having the value c.
     * @param p the query's plan
     * @return the integer reduction factor.
     */
@@ -75,13 +83,16 @@ public class Term {
          return Math.max(p.distinctValues(lhsName),
                          p.distinctValues(rhsName));
       }
-      if (lhs.isFieldName()) {
-         lhsName = lhs.asFieldName();
-         return p.distinctValues(lhsName);
-      }
-      if (rhs.isFieldName()) {
-         rhsName = rhs.asFieldName();
-         return p.distinctValues(rhsName);
+      if (lhs.isFieldName() || rhs.isFieldName()) {
+         String fldname = lhs.isFieldName() ? lhs.asFieldName() : rhs.asFieldName();
+         String cmp = comparatorOn(fldname);
+         if (cmp.equals("!=") || cmp.equals("<>")) {
+            Constant val = constantOperand();
+            return reductionFactor(1 - p.rangeFraction(fldname, new Range(val, true, val, true)));
+         }
+         Range range = new Range(null, false, null, false);
+         range.restrict(cmp, constantOperand());
+         return reductionFactor(p.rangeFraction(fldname, range));
       }
       // otherwise, the term equates constants
       if (lhs.asConstant().equals(rhs.asConstant()))
@@ -90,6 +101,18 @@ public class Term {
          return Integer.MAX_VALUE;
    }
    
+   /**
+    * Return the reduction factor of a selection that keeps
+    * the specified fraction of the records.
+    * @param fraction the fraction of records selected
+    * @return the integer reduction factor
+    */
+   static int reductionFactor(double fraction) {
+      if (fraction <= 0)
+         return Integer.MAX_VALUE;
+      return (int) Math.max(1, Math.min(Integer.MAX_VALUE, Math.round(1 / fraction)));
+   }
+   
    /**
     * Determine if this term is of the form "F=c"
     * where F is the specified field and c is some constant.
@@ -99,7 +122,9 @@ public class Term {
     * @return either the constant or null
     */
    public Constant equatesWithConstant(String fldname) {
-      if (lhs.isFieldName() &&
+      if (!comparator.equals("="))
+         return null;
+      else if (lhs.isFieldName() &&
           lhs.asFieldName().equals(fldname) &&
           !rhs.isFieldName())
          return rhs.asConstant();
@@ -111,6 +136,65 @@ public class Term {
          return null;
    }
    
+   /**
+    * Determine if this term compares the specified field
+    * with a constant, as in "F op c" or "c op F".
+    * If so, the method returns the comparator as seen with
+    * the field on the left-hand side; for example,
+    * the term "5<F" returns ">".
+    * If not, the method returns null.
+    * @param fldname the name of the field
+    * @return either the comparator or null
+    */
+   public String comparatorOn(String fldname) {
+      if (lhs.isFieldName() &&
+          lhs.asFieldName().equals(fldname) &&
+          !rhs.isFieldName())
+         return comparator;
+      else if (rhs.isFieldName() &&
+               rhs.asFieldName().equals(fldname) &&
+               !lhs.isFieldName())
+         return flip(comparator);
+      else
+         return null;
+   }
+   
+   /**
+    * Determine if this term compares the specified field
+    * with another field, as in "F1 op F2" or "F2 op F1".
+    * If so, the method returns the comparator as seen with
+    * the specified field on the left-hand side.
+    * If not, the method returns null.
+    * @param fldname the name of the field
+    * @return either the comparator or null
+    */
+   public String comparatorWithField(String fldname) {
+      if (lhs.isFieldName() &&
+          lhs.asFieldName().equals(fldname) &&
+          rhs.isFieldName())
+         return comparator;
+      else if (rhs.isFieldName() &&
+               rhs.asFieldName().equals(fldname) &&
+               lhs.isFieldName())
+         return flip(comparator);
+      else
+         return null;
+   }
+   
+   /**
+    * Return the constant that this term compares with a field,
+    * or null if the term does not compare a field with a constant.
+    * @return the constant, or null
+    */
+   public Constant constantOperand() {
+      if (lhs.isFieldName() && !rhs.isFieldName())
+         return rhs.asConstant();
+      else if (rhs.isFieldName() && !lhs.isFieldName())
+         return lhs.asConstant();
+      else
+         return null;
+   }
+   
    /**
     * Determine if this term is of the form "F1=F2"
     * where F1 is the specified field and F2 is another field.
@@ -142,8 +226,31 @@ public class Term {
       return lhs.appliesTo(sch) && rhs.appliesTo(sch);
    }
 
+   /**
+    * Return the names of the fields mentioned in the term.
+    * @return the names of the fields of both expressions
+    */
+   public List<String> fields() {
+      List<String> flds = new ArrayList<>();
+      if (lhs.isFieldName())
+         flds.add(lhs.asFieldName());
+      if (rhs.isFieldName())
+         flds.add(rhs.asFieldName());
+      return flds;
+   }
+
    public String getComparator(){return comparator;}
    
+   private static String flip(String comparator) {
+      switch (comparator) {
+         case "<":  return ">";
+         case ">":  return "<";
+         case "<=": return ">=";
+         case ">=": return "<=";
+         default:   return comparator;
+      }
+   }
+   
    public String toString() {
       return lhs.toString() + comparator + rhs.toString();
    }
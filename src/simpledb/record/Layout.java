@@ -8,13 +8,19 @@ import simpledb.file.Page;
  * Description of the structure of a record.
  * It contains the name, type, length and offset of
  * each field of the table.
+ * The empty/inuse flag at the start of each slot also holds
+ * a null bit for each of the first 31 fields;
+ * the null bits of the other fields are kept in
+ * the words that follow the flag.
  * @author Edward Sciore
  *
  */
 public class Layout {
    private Schema schema;
    private Map<String,Integer> offsets;
-   private int slotsize;
+   private Map<String,Integer> nullbits = new HashMap<>();
+   private Map<String,Integer> nullpos  = new HashMap<>();
+   private int slotsize, nullwords;
 
    /**
     * This constructor creates a Layout object from a schema. 
@@ -27,12 +33,14 @@ public class Layout {
    public Layout(Schema schema) {
       this.schema = schema;
       offsets  = new HashMap<>();
-      int pos = Integer.BYTES; // leave space for the empty/inuse flag
+      // leave space for the empty/inuse flag and the null bits
+      int pos = Integer.BYTES * (1 + extraNullWords(schema.fields().size()));
       for (String fldname : schema.fields()) {
          offsets.put(fldname, pos);
          pos += lengthInBytes(fldname);
       }
       slotsize = pos;
+      assignNullBits(extraNullWords(schema.fields().size()));
    }
 
    /**
@@ -48,6 +56,10 @@ public class Layout {
       this.schema    = schema;
       this.offsets   = offsets;
       this.slotsize = slotsize;
+      int first = slotsize;
+      for (int offset : offsets.values())
+         first = Math.min(first, offset);
+      assignNullBits((first - Integer.BYTES) / Integer.BYTES);
    }
 
    /**
@@ -67,6 +79,39 @@ public class Layout {
       return offsets.get(fldname);
    }
 
+   /**
+    * Return the mask of the bit that marks the specified
+    * field as null, within the word at nullOffset,
+    * or 0 if the field cannot be null.
+    * @param fldname the name of the field
+    * @return the null bit of that field
+    */
+   public int nullBit(String fldname) {
+      Integer bit = nullbits.get(fldname);
+      return (bit == null) ? 0 : bit;
+   }
+
+   /**
+    * Return the offset within a record of the word
+    * holding the null bit of the specified field;
+    * the offset of the flag is 0.
+    * @param fldname the name of the field
+    * @return the offset of the field's null bit
+    */
+   public int nullOffset(String fldname) {
+      Integer pos = nullpos.get(fldname);
+      return (pos == null) ? 0 : pos;
+   }
+
+   /**
+    * Return the number of words of null bits
+    * that follow the flag in each slot.
+    * @return the number of extra words of null bits
+    */
+   public int nullWords() {
+      return nullwords;
+   }
+
    /**
     * Return the size of a slot, in bytes.
     * @return the size of a slot
@@ -75,6 +120,29 @@ public class Layout {
       return slotsize;
    }
 
+   // bit 0 of the flag is the empty/inuse bit;
+   // a table stored before the extra words existed may have none
+   private void assignNullBits(int extrawords) {
+      int bit = 1, pos = 0;
+      for (String fldname : schema.fields()) {
+         if (bit == 32) {
+            pos += Integer.BYTES;
+            bit = 0;
+         }
+         if (pos > Integer.BYTES * extrawords)
+            break;
+         nullbits.put(fldname, 1 << bit);
+         nullpos.put(fldname, pos);
+         nullwords = pos / Integer.BYTES;
+         bit++;
+      }
+   }
+
+   // the words needed after the flag for the fields past the 31st
+   private static int extraNullWords(int numfields) {
+      return (Math.max(0, numfields - 31) + 31) / 32;
+   }
+
    private int lengthInBytes(String fldname) {
       int fldtype = schema.type(fldname);
       if (fldtype == INTEGER)
@@ -6,6 +6,9 @@ import simpledb.tx.Transaction;
 
 /**
  * Store a record at a given location in a block. 
+ * The flag of a used slot, and the words of null bits
+ * that may follow it, have a bit set for each
+ * field whose value is null.
  * @author Edward Sciore
  */
 public class RecordPage {
@@ -65,6 +68,38 @@ public class RecordPage {
       tx.setString(blk, fldpos, val, true);
    }
    
+   /**
+    * Return true if the specified field of the
+    * specified slot holds a null value.
+    * @param fldname the name of the field
+    * @return true if the field is null
+    */
+   public boolean isNull(int slot, String fldname) {
+      int bit = layout.nullBit(fldname);
+      int pos = offset(slot) + layout.nullOffset(fldname);
+      return bit != 0 && (tx.getInt(blk, pos) & bit) != 0;
+   }
+
+   /**
+    * Mark the specified field of the specified slot
+    * as holding a null value, or as not holding one.
+    * @param fldname the name of the field
+    * @param isnull true if the field is to be null
+    */
+   public void setNull(int slot, String fldname, boolean isnull) {
+      int bit = layout.nullBit(fldname);
+      if (bit == 0) {
+         if (isnull)
+            throw new UnsupportedOperationException("field " + fldname + " cannot be null");
+         return;
+      }
+      int pos = offset(slot) + layout.nullOffset(fldname);
+      int flag = tx.getInt(blk, pos);
+      int newflag = isnull ? (flag | bit) : (flag & ~bit);
+      if (newflag != flag)
+         tx.setInt(blk, pos, newflag, true);
+   }
+
    public void delete(int slot) {
       setFlag(slot, EMPTY);
    }
@@ -77,6 +112,8 @@ public class RecordPage {
       int slot = 0;
       while (isValidSlot(slot)) {
          tx.setInt(blk, offset(slot), EMPTY, false); 
+         for (int w=1; w<=layout.nullWords(); w++)
+            tx.setInt(blk, offset(slot) + w*Integer.BYTES, 0, false);
          Schema sch = layout.schema();
          for (String fldname : sch.fields()) {
             int fldpos = offset(slot) + layout.offset(fldname);
@@ -95,8 +132,11 @@ public class RecordPage {
  
    public int insertAfter(int slot) {
       int newslot = searchAfter(slot, EMPTY);
-      if (newslot >= 0)
+      if (newslot >= 0) {
          setFlag(newslot, USED);
+         for (int w=1; w<=layout.nullWords(); w++)
+            tx.setInt(blk, offset(newslot) + w*Integer.BYTES, 0, true);
+      }
       return newslot;
    }
   
@@ -116,7 +156,7 @@ public class RecordPage {
    private int searchAfter(int slot, int flag) {
       slot++;
       while (isValidSlot(slot)) {
-         if (tx.getInt(blk, offset(slot)) == flag)
+         if ((tx.getInt(blk, offset(slot)) & USED) == flag)
             return slot;
          slot++;
       }
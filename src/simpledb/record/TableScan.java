@@ -53,6 +53,8 @@ public class TableScan implements UpdateScan {
    }
 
    public Constant getVal(String fldname) {
+      if (rp.isNull(currentslot, fldname))
+         return Constant.NULL;
       if (layout.schema().type(fldname) == INTEGER)
          return new Constant(getInt(fldname));
       else
@@ -79,6 +81,9 @@ public class TableScan implements UpdateScan {
    }
 
    public void setVal(String fldname, Constant val) {
+      rp.setNull(currentslot, fldname, val.isNull());
+      if (val.isNull())
+         return;
       if (layout.schema().type(fldname) == INTEGER)
          setInt(fldname, val.asInt());
       else
@@ -19,6 +19,9 @@ public class SimpleDB {
    public static int BLOCK_SIZE = 400;
    public static int BUFFER_SIZE = 8;
    public static String LOG_FILE = "simpledb.log";
+   // bytes of records that a sort, hash or batch operator may
+   // hold in memory, measured by their slot size in a temporary table
+   public static int MEMORY_BUDGET = 64 * 1024;
 
    private  FileMgr     fm;
    private  BufferMgr   bm;